@@ -0,0 +1,14 @@
+package ch.zhaw.mapreduce;
+
+/**
+ * Eine ReduceInstruction, die auf ihre eigenen Resultate angewendet werden kann: Werden die Werte eines Keys in
+ * mehrere Teile aufgeteilt, jeder Teil für sich reduziert und die Resultate der Teile nochmals reduziert, ergibt das
+ * dasselbe, wie wenn alle Werte auf einmal reduziert worden wären. Das gilt zum Beispiel für Summen, Minima oder
+ * Maxima, nicht aber für einen Durchschnitt.
+ *
+ * Das Framework darf dann einen Key mit sehr vielen Werten auf mehrere Reduce Tasks verteilen, damit nicht ein
+ * einziger Task den Grossteil der Daten reduzieren muss. Die Resultate der Teile werden der Instruction beim letzten
+ * Reduce wieder als Werte des Keys übergeben.
+ */
+public interface AssociativeReduceInstruction extends ReduceInstruction {
+}
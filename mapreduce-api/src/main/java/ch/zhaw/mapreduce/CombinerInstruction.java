@@ -7,6 +7,10 @@ import java.util.List;
  * Die nötigen Befehle um Zwischenergebnisse in einem Map Task zu aggregieren bevor diese vom Reduce abgefragt werden.
  * Dies könnte in konkreten Implementationen Netzwerktraffic sparen.
  * 
+ * Ist ShuffleCombineThreshold gesetzt, wendet der Master den Combiner beim Shuffeln nochmals auf lange Listen eines
+ * Keys an, die Resultate mehrerer Map Tasks enthalten. Der Combiner muss dann auch mit seinen eigenen Resultaten als
+ * Input umgehen können. Standardmässig ist das ausgeschaltet.
+ * 
  * @author Max
  *
  */
@@ -31,11 +31,42 @@ public interface MapReduce {
 	 * @param combinerInstruction
 	 *            eine optionale combiner Instruction, die ausgeführt werden soll
 	 * @param shuffleProcessorFactory
-	 *            Eine Factory die runnables zurückgibt, von denen jeweils einer ausgeführt wird mit den ergebnissen der shuffle Phase ausgeführt wird, sobald die shuffle Phase beendet ist.
+	 *            Eine Factory die runnables zurückgibt, von denen pro Partition einer mit den ergebnissen der shuffle Phase
+	 *            ausgeführt wird, sobald die shuffle Phase beendet ist.
 	 */
 	MapReduce newMRTask(MapInstruction mapInstruction, ReduceInstruction reduceInstruction,
 			CombinerInstruction combinerInstruction, ShuffleProcessorFactory shuffleProcessorFactory);
 
+	/**
+	 * Erstellt einen neuen Job mit eigener ID. Im Gegensatz zu newMRTask hat jeder Job seinen eigenen Zustand, diese
+	 * Methode ist daher thread-safe und mehrere Jobs können gleichzeitig ausgeführt werden.
+	 * 
+	 * @param mapInstruction
+	 *            eine Map Anweisung, die ausgeführt werden soll
+	 * @param reduceInstruction
+	 *            eine Reduce Anweisung, die ausgeführt werden soll
+	 * @param combinerInstruction
+	 *            eine optionale combiner Instruction, die ausgeführt werden soll
+	 * @param shuffleProcessorFactory
+	 *            eine optionale Factory, deren Runnables pro Partition parallel mit den Ergebnissen der shuffle Phase
+	 *            ausgeführt werden
+	 * @return der neue Job
+	 */
+	MapReduceJob newJob(MapInstruction mapInstruction, ReduceInstruction reduceInstruction,
+			CombinerInstruction combinerInstruction, ShuffleProcessorFactory shuffleProcessorFactory);
+
+	/**
+	 * Erstellt einen neuen Job mit der gegebenen Priorität. Wie die Worker auf gleichzeitige Jobs verteilt werden,
+	 * bestimmt die konfigurierte SchedulingPolicy. Standardmässig bekommt jeder Job einen Anteil der Worker, der seiner
+	 * Priorität entspricht.
+	 * 
+	 * @param priority
+	 *            die Priorität des Jobs, mindestens 1. Jobs von newJob ohne Priorität haben Priorität 1.
+	 * @see #newJob(MapInstruction, ReduceInstruction, CombinerInstruction, ShuffleProcessorFactory)
+	 */
+	MapReduceJob newJob(MapInstruction mapInstruction, ReduceInstruction reduceInstruction,
+			CombinerInstruction combinerInstruction, ShuffleProcessorFactory shuffleProcessorFactory, int priority);
+
 	/**
 	 * Wendet auf alle Elemente vom übergebenen Iterator (via next) den Map- und Reduce-Task an. Die
 	 * Methode blockiert, bis alle Aufgaben erledigt sind. Es wird über den Iterator iteriert und
@@ -45,6 +76,8 @@ public interface MapReduce {
 	 * @param inputs
 	 *            der gesamte input als Iterator
 	 * @return das Resultat von dem ganzen MapReduceTask
+	 * @see #newJob(MapInstruction, ReduceInstruction, CombinerInstruction, ShuffleProcessorFactory) für mehrere
+	 *      gleichzeitige Berechnungen
 	 */
 	Map<String, List<String>> runMapReduceTask(Iterator<String> input);
 }
@@ -0,0 +1,41 @@
+package ch.zhaw.mapreduce;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eine einzelne Berechnung mit eigener ID. Mehrere Jobs können gleichzeitig aus verschiedenen Threads ausgeführt
+ * werden und teilen sich dabei die Worker des Frameworks.
+ */
+public interface MapReduceJob {
+
+	/**
+	 * Die eindeutige ID dieses Jobs.
+	 */
+	String getJobId();
+
+	/**
+	 * Legt fest, wie die Zwischenresultate dieses Jobs komprimiert gespeichert werden: none, snappy (schnell) oder
+	 * deflate (kleiner, braucht mehr CPU). Ohne Aufruf gilt die Konfiguration des Frameworks. Muss vor
+	 * {@link #run(Iterator)} aufgerufen werden.
+	 *
+	 * @param codec
+	 *            der Name des Codecs
+	 * @throws IllegalArgumentException
+	 *             wenn es keinen Codec mit diesem Namen gibt
+	 */
+	void setCompression(String codec);
+
+	/**
+	 * Wendet auf alle Elemente vom übergebenen Iterator den Map- und Reduce-Task an. Die Methode blockiert, bis alle
+	 * Aufgaben erledigt sind. Ein Job kann nur einmal ausgeführt werden.
+	 *
+	 * @param input
+	 *            der gesamte input als Iterator
+	 * @return das Resultat von dem ganzen Job
+	 * @throws IllegalStateException
+	 *             wenn der Job schon ausgeführt wurde
+	 */
+	Map<String, List<String>> run(Iterator<String> input);
+}
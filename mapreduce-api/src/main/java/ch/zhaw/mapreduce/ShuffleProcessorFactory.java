@@ -13,6 +13,15 @@ import java.util.Map.Entry;
  */
 public interface ShuffleProcessorFactory {
 
+	/**
+	 * Wird nach dem Shuffeln einmal pro Reduce-Partition aufgerufen, sobald die Partition für die Reduce-Phase geholt
+	 * wird. Die Runnables laufen parallel zueinander und zur Reduce-Phase, müssen also thread-safe sein. Die
+	 * Berechnung ist erst fertig, wenn alle Runnables fertig sind. Wirft eines eine Exception, schlägt die Berechnung
+	 * fehl.
+	 * 
+	 * @param results
+	 *            alle Keys einer Partition mit ihren Werten
+	 */
 	Runnable getNewRunnable(Iterator<Entry<String, List<KeyValuePair>>> results);
 
 }
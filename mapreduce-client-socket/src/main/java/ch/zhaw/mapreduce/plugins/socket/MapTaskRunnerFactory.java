@@ -1,7 +1,10 @@
 package ch.zhaw.mapreduce.plugins.socket;
 
+import java.util.List;
+
 import ch.zhaw.mapreduce.CombinerInstruction;
 import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.MapPartitioning;
 import ch.zhaw.mapreduce.plugins.socket.impl.MapTaskRunner;
 
 import com.google.inject.assistedinject.Assisted;
@@ -9,6 +12,6 @@ import com.google.inject.assistedinject.Assisted;
 public interface MapTaskRunnerFactory {
 
 	MapTaskRunner createMapTaskRunner(@Assisted("taskUuid") String taskUuid, MapInstruction mapInstr,
-			CombinerInstruction combInstr, @Assisted("input") String input);
+			CombinerInstruction combInstr, List<String> inputs, MapPartitioning partitioning);
 
 }
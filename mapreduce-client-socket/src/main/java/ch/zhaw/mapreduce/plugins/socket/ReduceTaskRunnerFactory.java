@@ -1,6 +1,7 @@
 package ch.zhaw.mapreduce.plugins.socket;
 
 import java.util.List;
+import java.util.Map;
 
 import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.ReduceInstruction;
@@ -11,6 +12,6 @@ import com.google.inject.assistedinject.Assisted;
 public interface ReduceTaskRunnerFactory {
 
 	ReduceTaskRunner createReduceTaskRunner(@Assisted("taskUuid") String taskUuid, ReduceInstruction redInstr,
-			@Assisted("key") String key, List<KeyValuePair> values);
+			Map<String, List<KeyValuePair>> inputs);
 
 }
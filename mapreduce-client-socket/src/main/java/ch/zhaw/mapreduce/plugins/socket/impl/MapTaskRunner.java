@@ -11,13 +11,17 @@ import ch.zhaw.mapreduce.CombinerInstruction;
 import ch.zhaw.mapreduce.Context;
 import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.MapPartitioning;
+import ch.zhaw.mapreduce.impl.PartitionedMapResult;
 import ch.zhaw.mapreduce.plugins.socket.TaskResult;
 import ch.zhaw.mapreduce.plugins.socket.TaskRunner;
 
 import com.google.inject.assistedinject.Assisted;
 
 /**
- * Führt eine MapInstruction mit deren Input aus.
+ * Führt eine MapInstruction mit deren Input aus. Alle Inputs eines Batches werden im gleichen Context gemappt. Wird
+ * eine Aufteilung mitgeschickt, teilt der Context die Resultate schon beim Emitten auf die Partitionen auf, so muss
+ * der Master die Keys nicht mehr anschauen.
  * 
  * @author Reto Hablützel (rethab)
  * 
@@ -33,18 +37,28 @@ public class MapTaskRunner implements TaskRunner {
 	// optional. null wenn nicht vorhanden
 	private final CombinerInstruction combInstr;
 
-	private final String input;
+	private final List<String> inputs;
+
+	// optional. null wenn nicht aufgeteilt wird
+	private final MapPartitioning partitioning;
 
 	private final Provider<Context> ctxProvider;
 
+	MapTaskRunner(String taskUuid, MapInstruction mapInstr, @Nullable CombinerInstruction combInstr,
+			List<String> inputs, Provider<Context> ctxProvider) {
+		this(taskUuid, mapInstr, combInstr, inputs, null, ctxProvider);
+	}
+
 	@Inject
 	MapTaskRunner(@Assisted("taskUuid") String taskUuid,
 			@Assisted MapInstruction mapInstr, @Assisted @Nullable CombinerInstruction combInstr,
-			@Assisted("input") String input, Provider<Context> ctxProvider) {
+			@Assisted List<String> inputs, @Assisted @Nullable MapPartitioning partitioning,
+			Provider<Context> ctxProvider) {
 		this.taskUuid = taskUuid;
 		this.mapInstr = mapInstr;
 		this.combInstr = combInstr;
-		this.input = input;
+		this.inputs = inputs;
+		this.partitioning = partitioning;
 		this.ctxProvider = ctxProvider;
 	}
 
@@ -57,13 +71,22 @@ public class MapTaskRunner implements TaskRunner {
 		// TODO ineffizient. impliziert das postconstructfeature, welches per reflection zeugs macht
 		Context ctx = this.ctxProvider.get();
 		try {
+			if (this.partitioning != null) {
+				ctx.partitionMapResult(this.partitioning);
+			}
+
 			// Mappen
-			this.mapInstr.map(ctx, input);
+			for (String input : this.inputs) {
+				this.mapInstr.map(ctx, input);
+			}
 
 			// Alle Ergebnisse verdichten.
 			List<KeyValuePair> mapResult = ctx.getMapResult();
 			if (this.combInstr != null) {
 				mapResult = this.combInstr.combine(mapResult.iterator());
+				if (this.partitioning != null) {
+					mapResult = PartitionedMapResult.of(this.partitioning, mapResult);
+				}
 			}
 			return new MapTaskResult(this.taskUuid, mapResult);
 		} catch (Exception e) {
@@ -2,6 +2,7 @@ package ch.zhaw.mapreduce.plugins.socket.impl;
 
 import java.util.List;
 
+import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.plugins.socket.TaskResult;
 
 import com.google.inject.assistedinject.Assisted;
@@ -10,7 +11,7 @@ public final class ReduceTaskResult implements TaskResult {
 	
 	private final String taskUuid;
 
-	private final List<String> result;
+	private final List<KeyValuePair> result;
 
 	private final Exception exception;
 	
@@ -18,11 +19,11 @@ public final class ReduceTaskResult implements TaskResult {
 		this(taskUuid, e, null);
 	}
 
-	ReduceTaskResult(@Assisted("taskUuid") String taskUuid, @Assisted List<String> result) {
+	ReduceTaskResult(@Assisted("taskUuid") String taskUuid, @Assisted List<KeyValuePair> result) {
 		this(taskUuid, null, result);
 	}
 
-	private ReduceTaskResult(String taskUuid, Exception exception, List<String> result) {
+	private ReduceTaskResult(String taskUuid, Exception exception, List<KeyValuePair> result) {
 		this.taskUuid = taskUuid;
 		this.exception = exception;
 		this.result = result;
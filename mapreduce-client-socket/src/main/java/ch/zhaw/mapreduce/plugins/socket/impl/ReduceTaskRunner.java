@@ -1,6 +1,8 @@
 package ch.zhaw.mapreduce.plugins.socket.impl;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
@@ -15,7 +17,8 @@ import ch.zhaw.mapreduce.plugins.socket.TaskRunner;
 import com.google.inject.assistedinject.Assisted;
 
 /**
- * Führt eine ReduceInstruction mit ihren Eingabewerten aus.
+ * Führt eine ReduceInstruction mit ihren Eingabewerten aus. Es werden alle Keys einer Partition nacheinander
+ * reduziert.
  * 
  * @author Reto Hablützel (rethab)
  * 
@@ -28,20 +31,16 @@ public class ReduceTaskRunner implements TaskRunner {
 
 	private final ReduceInstruction redInstr;
 
-	private final String key;
-
-	private final List<KeyValuePair> values;
+	private final Map<String, List<KeyValuePair>> inputs;
 
 	private final Provider<Context> ctxProvider;
 
 	@Inject
-	ReduceTaskRunner(@Assisted("taskUuid") String taskUuid,
-			@Assisted ReduceInstruction redInstr, @Assisted("key") String key, @Assisted List<KeyValuePair> values,
-			Provider<Context> ctxProvider) {
+	ReduceTaskRunner(@Assisted("taskUuid") String taskUuid, @Assisted ReduceInstruction redInstr,
+			@Assisted Map<String, List<KeyValuePair>> inputs, Provider<Context> ctxProvider) {
 		this.taskUuid = taskUuid;
 		this.redInstr = redInstr;
-		this.key = key;
-		this.values = values;
+		this.inputs = inputs;
 		this.ctxProvider = ctxProvider;
 	}
 
@@ -53,7 +52,10 @@ public class ReduceTaskRunner implements TaskRunner {
 		LOG.entering(getClass().getName(), "runTask");
 		Context ctx = this.ctxProvider.get();
 		try {
-			this.redInstr.reduce(ctx, this.key, this.values.iterator());
+			for (Entry<String, List<KeyValuePair>> entry : this.inputs.entrySet()) {
+				ctx.startReduce(entry.getKey());
+				this.redInstr.reduce(ctx, entry.getKey(), entry.getValue().iterator());
+			}
 			return new ReduceTaskResult(this.taskUuid, ctx.getReduceResult());
 		} catch (Exception e) {
 			return new ReduceTaskResult(this.taskUuid, e);
@@ -63,13 +63,12 @@ public final class TaskRunnerFactoryImpl implements TaskRunnerFactory {
 						CombinerInstruction.class);
 			}
 			return this.mtrFactory.createMapTaskRunner(mt.getTaskUuid(), mapInstr,
-					combInstr, mt.getInput());
+					combInstr, mt.getInputs(), mt.getPartitioning());
 		} else if (task instanceof ReduceAgentTask) {
 			ReduceAgentTask rt = (ReduceAgentTask) task;
 			ReduceInstruction redInstr = loadClass(rt.getReduceInstructionName(), rt.getReduceInstruction(),
 					ReduceInstruction.class);
-			return this.rtrFactory.createReduceTaskRunner(rt.getTaskUuid(), redInstr,
-					rt.getKey(), rt.getValues());
+			return this.rtrFactory.createReduceTaskRunner(rt.getTaskUuid(), redInstr, rt.getInputs());
 		} else {
 			throw new InvalidAgentTaskException("Cannot Handle: " + task);
 		}
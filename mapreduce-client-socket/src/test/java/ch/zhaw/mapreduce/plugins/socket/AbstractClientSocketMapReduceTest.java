@@ -4,7 +4,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 import javax.inject.Provider;
@@ -118,11 +120,16 @@ public abstract class AbstractClientSocketMapReduceTest {
 
 	protected final String mapInput = "mapInput";
 
+	protected final List<String> mapInputs = Arrays.asList(mapInput);
+
 	protected final String reduceKey = "redKey";
 
 	protected final List<KeyValuePair> reduceValues = Arrays.asList(new KeyValuePair("key1", "val1"));
 
-	protected final List<String> reduceResult = Arrays.asList(new String[] { "reduceRes1", "reduceRes2" });
+	protected final Map<String, List<KeyValuePair>> reduceInputs = Collections.singletonMap(reduceKey, reduceValues);
+
+	protected final List<KeyValuePair> reduceResult = Arrays.asList(new KeyValuePair(reduceKey, "reduceRes1"),
+			new KeyValuePair(reduceKey, "reduceRes2"));
 
 	protected ThreadingPolicy useThreadingPolicy() {
 		return null;
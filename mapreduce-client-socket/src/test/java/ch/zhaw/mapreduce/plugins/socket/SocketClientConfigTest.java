@@ -24,7 +24,7 @@ public class SocketClientConfigTest extends AbstractClientSocketMapReduceTest {
 	public void shouldCreateMapTaskRunner() {
 		MapTaskRunnerFactory fac = Guice.createInjector(new SocketClientConfig(resCollector, 1)).getInstance(
 				MapTaskRunnerFactory.class);
-		MapTaskRunner run = fac.createMapTaskRunner(taskUuid, mapInstr, combInstr, mapInput);
+		MapTaskRunner run = fac.createMapTaskRunner(taskUuid, mapInstr, combInstr, mapInputs, null);
 		assertNotNull(run);
 	}
 
@@ -32,7 +32,7 @@ public class SocketClientConfigTest extends AbstractClientSocketMapReduceTest {
 	public void shouldCreateReduceTaskRunner() {
 		ReduceTaskRunnerFactory fac = Guice.createInjector(new SocketClientConfig(resCollector, 1)).getInstance(
 				ReduceTaskRunnerFactory.class);
-		ReduceTaskRunner run = fac.createReduceTaskRunner(taskUuid, redInstr, reduceKey, reduceValues);
+		ReduceTaskRunner run = fac.createReduceTaskRunner(taskUuid, redInstr, reduceInputs);
 		assertNotNull(run);
 	}
 
@@ -5,11 +5,17 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+import ch.zhaw.mapreduce.impl.HashPartitioner;
+import ch.zhaw.mapreduce.impl.PartitionedMapResult;
 import ch.zhaw.mapreduce.plugins.socket.AbstractClientSocketMapReduceTest;
 import ch.zhaw.mapreduce.plugins.socket.TaskResult;
 
@@ -17,7 +23,7 @@ public class MapTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 
 	@Test
 	public void shouldCallFailureFactoryMethodOnException() {
-		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, combInstr, mapInput, ctxProvider);
+		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, combInstr, mapInputs, ctxProvider);
 		final RuntimeException e = new RuntimeException();
 		mockery.checking(new Expectations() {
 			{
@@ -37,7 +43,7 @@ public class MapTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 
 	@Test
 	public void shouldCallSuccessFactoryMethodOnRegularCall() {
-		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, combInstr, mapInput, ctxProvider);
+		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, combInstr, mapInputs, ctxProvider);
 		mockery.checking(new Expectations() {
 			{
 				oneOf(ctxProvider).get(); will(returnValue(ctx));
@@ -55,7 +61,7 @@ public class MapTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 
 	@Test
 	public void shouldCallFailureFactoryMethodOnExceptionWitoutCombiner() {
-		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, null, mapInput, ctxProvider);
+		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, null, mapInputs, ctxProvider);
 		mockery.checking(new Expectations() {
 			{
 				oneOf(ctxProvider).get(); will(returnValue(ctx));
@@ -69,5 +75,42 @@ public class MapTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 		assertTrue(res.wasSuccessful());
 		assertSame(mapResult, ((MapTaskResult) res).getResult());
 	}
-	
+
+	@Test
+	public void shouldMapAllInputsOfBatchInOneContext() {
+		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, combInstr, Arrays.asList("in1", "in2"), ctxProvider);
+		mockery.checking(new Expectations() {
+			{
+				oneOf(ctxProvider).get(); will(returnValue(ctx));
+				oneOf(mapInstr).map(ctx, "in1");
+				oneOf(mapInstr).map(ctx, "in2");
+				oneOf(ctx).getMapResult(); will(returnValue(mapResult));
+				oneOf(combInstr).combine(with(aNonNull(Iterator.class))); will(returnValue(mapResult));
+			}
+		});
+		assertTrue(mrt.runTask().wasSuccessful());
+	}
+
+	@Test
+	public void shouldPartitionMapResultsInContextAndAfterCombining() {
+		final MapPartitioning partitioning = new MapPartitioning(new HashPartitioner(), 4);
+		final List<KeyValuePair> combined = Arrays.asList(new KeyValuePair("a", "2"), new KeyValuePair("b", "1"));
+		MapTaskRunner mrt = new MapTaskRunner(taskUuid, mapInstr, combInstr, mapInputs, partitioning, ctxProvider);
+		mockery.checking(new Expectations() {
+			{
+				oneOf(ctxProvider).get(); will(returnValue(ctx));
+				oneOf(ctx).partitionMapResult(partitioning);
+				oneOf(mapInstr).map(ctx, mapInput);
+				oneOf(ctx).getMapResult(); will(returnValue(mapResult));
+				oneOf(combInstr).combine(with(aNonNull(Iterator.class))); will(returnValue(combined));
+			}
+		});
+		TaskResult res = mrt.runTask();
+		assertTrue(res.wasSuccessful());
+		List<?> result = ((MapTaskResult) res).getResult();
+		assertTrue(result instanceof PartitionedMapResult);
+		assertEquals(4, ((PartitionedMapResult) result).getPartitions());
+		assertEquals(combined.size(), result.size());
+	}
+
 }
@@ -5,11 +5,15 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.plugins.socket.AbstractClientSocketMapReduceTest;
 import ch.zhaw.mapreduce.plugins.socket.TaskResult;
 
@@ -17,10 +21,11 @@ public class ReduceTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 	
 	@Test
 	public void shouldCallFailureFactoryMethodOnException() {
-		ReduceTaskRunner rtr = new ReduceTaskRunner(taskUuid, redInstr, reduceKey, reduceValues, ctxProvider);
+		ReduceTaskRunner rtr = new ReduceTaskRunner(taskUuid, redInstr, reduceInputs, ctxProvider);
 		final RuntimeException e = new RuntimeException();
 		mockery.checking(new Expectations() {{ 
 			oneOf(ctxProvider).get(); will(returnValue(ctx));
+			oneOf(ctx).startReduce(reduceKey);
 			oneOf(redInstr).reduce(with(ctx), with(reduceKey), with(aNonNull(Iterator.class))); will(throwException(e));
 		}});
 		TaskResult res = rtr.runTask();
@@ -33,9 +38,10 @@ public class ReduceTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 	
 	@Test
 	public void shouldCallSuccessFactoryMethodOnRegularCall() {
-		ReduceTaskRunner rtr = new ReduceTaskRunner(taskUuid, redInstr, reduceKey, reduceValues, ctxProvider);
+		ReduceTaskRunner rtr = new ReduceTaskRunner(taskUuid, redInstr, reduceInputs, ctxProvider);
 		mockery.checking(new Expectations() {{ 
 			oneOf(ctxProvider).get(); will(returnValue(ctx));
+			oneOf(ctx).startReduce(reduceKey);
 			oneOf(redInstr).reduce(with(ctx), with(reduceKey), with(aNonNull(Iterator.class)));
 			oneOf(ctx).getReduceResult(); will(returnValue(reduceResult));
 		}});
@@ -45,4 +51,21 @@ public class ReduceTaskRunnerTest extends AbstractClientSocketMapReduceTest {
 		assertTrue(rres.wasSuccessful());
 		assertSame(reduceResult, rres.getResult());
 	}
+
+	@Test
+	public void shouldReduceAllKeysOfPartition() {
+		Map<String, List<KeyValuePair>> inputs = new HashMap<String, List<KeyValuePair>>();
+		inputs.put("k1", reduceValues);
+		inputs.put("k2", reduceValues);
+		ReduceTaskRunner rtr = new ReduceTaskRunner(taskUuid, redInstr, inputs, ctxProvider);
+		mockery.checking(new Expectations() {{ 
+			oneOf(ctxProvider).get(); will(returnValue(ctx));
+			oneOf(ctx).startReduce("k1");
+			oneOf(redInstr).reduce(with(ctx), with("k1"), with(aNonNull(Iterator.class)));
+			oneOf(ctx).startReduce("k2");
+			oneOf(redInstr).reduce(with(ctx), with("k2"), with(aNonNull(Iterator.class)));
+			oneOf(ctx).getReduceResult(); will(returnValue(reduceResult));
+		}});
+		assertTrue(rtr.runTask().wasSuccessful());
+	}
 }
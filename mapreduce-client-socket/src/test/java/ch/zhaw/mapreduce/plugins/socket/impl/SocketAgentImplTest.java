@@ -91,6 +91,12 @@ public class SocketAgentImplTest extends AbstractClientSocketMapReduceTest {
 				will(returnValue(taskUuid));
 				oneOf(trFactory).createTaskRunner(aTask);
 				will(returnValue(taskRunner));
+				// der zweite task laeuft im hintergrund weiter, auch wenn der test schon fertig ist
+				allowing(taskRunner).runTask();
+				will(returnValue(taskResult));
+				allowing(sarFactory).createFromTaskResult(taskUuid, taskResult);
+				will(returnValue(saResult));
+				allowing(resCollector).pushResult(saResult);
 			}
 		});
 		AgentTaskState state1 = sa.runTask(aTask);
@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import ch.zhaw.mapreduce.CombinerInstruction;
 import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.MapPartitioning;
 import ch.zhaw.mapreduce.ReduceInstruction;
 import ch.zhaw.mapreduce.plugins.socket.AbstractClientSocketMapReduceTest;
 import ch.zhaw.mapreduce.plugins.socket.InvalidAgentTaskException;
@@ -12,12 +13,12 @@ import ch.zhaw.mapreduce.plugins.socket.InvalidAgentTaskException;
 public class TaskRunnerFactoryImplTest extends AbstractClientSocketMapReduceTest {
 
 	private final MapAgentTask mapAgentTaskWithCombiner = new MapAgentTask(taskUuid, miName, mi, ciName, ci,
-			mapInput);
+			mapInputs);
 
 	private final MapAgentTask mapAgentTaskWithoutCombiner = new MapAgentTask(taskUuid, miName, mi, null,
-			null, mapInput);
+			null, mapInputs);
 
-	private final ReduceAgentTask reduceAgentTask = new ReduceAgentTask(taskUuid, riName, ri, reduceKey, reduceValues);
+	private final ReduceAgentTask reduceAgentTask = new ReduceAgentTask(taskUuid, riName, ri, reduceInputs);
 
 	@Test
 	public void shouldCreateMapTaskRunnerForMapAgentTask() throws InvalidAgentTaskException {
@@ -25,7 +26,8 @@ public class TaskRunnerFactoryImplTest extends AbstractClientSocketMapReduceTest
 		this.mockery.checking(new Expectations() {
 			{
 				oneOf(mtrFactory).createMapTaskRunner(with(taskUuid),
-						with(aNonNull(MapInstruction.class)), with(aNonNull(CombinerInstruction.class)), with(mapInput));
+						with(aNonNull(MapInstruction.class)), with(aNonNull(CombinerInstruction.class)), with(mapInputs),
+						with(aNull(MapPartitioning.class)));
 			}
 		});
 		f.createTaskRunner(mapAgentTaskWithCombiner);
@@ -37,7 +39,8 @@ public class TaskRunnerFactoryImplTest extends AbstractClientSocketMapReduceTest
 		this.mockery.checking(new Expectations() {
 			{
 				oneOf(mtrFactory).createMapTaskRunner(with(taskUuid),
-						with(aNonNull(MapInstruction.class)), with(aNull(CombinerInstruction.class)), with(mapInput));
+						with(aNonNull(MapInstruction.class)), with(aNull(CombinerInstruction.class)), with(mapInputs),
+						with(aNull(MapPartitioning.class)));
 			}
 		});
 		f.createTaskRunner(mapAgentTaskWithoutCombiner);
@@ -49,7 +52,7 @@ public class TaskRunnerFactoryImplTest extends AbstractClientSocketMapReduceTest
 		this.mockery.checking(new Expectations() {
 			{
 				oneOf(rtrFactory).createReduceTaskRunner(with(taskUuid),
-						with(aNonNull(ReduceInstruction.class)), with(reduceKey), with(reduceValues));
+						with(aNonNull(ReduceInstruction.class)), with(reduceInputs));
 			}
 		});
 		f.createTaskRunner(reduceAgentTask);
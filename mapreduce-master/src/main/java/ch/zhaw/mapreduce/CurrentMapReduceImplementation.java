@@ -6,6 +6,9 @@ package ch.zhaw.mapreduce;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+
+import ch.zhaw.mapreduce.impl.MapReduceJobImpl;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -13,19 +16,22 @@ import com.google.inject.Injector;
 /**
  * Stellt die Serverseitige Implementation des MapReduce Frameworks dar.
  * 
+ * Mit newJob werden thread-safe Jobs erstellt, die gleichzeitig auf dem gemeinsamen Pool laufen können. newMRTask und
+ * runMapReduceTask merken sich die Instruktionen in dieser Instanz und sind deshalb nur für eine Berechnung gleichzeitig
+ * gedacht.
+ * 
  * @author Max
  * 
  */
 public class CurrentMapReduceImplementation implements MapReduce {
 
-	private MapInstruction mapInstruction;
-	private ReduceInstruction reduceInstruction;
-	private ShuffleProcessorFactory shuffleProcessorFactory;
-	private CombinerInstruction combinerInstruction;
+	private volatile MapInstruction mapInstruction;
+	private volatile ReduceInstruction reduceInstruction;
+	private volatile ShuffleProcessorFactory shuffleProcessorFactory;
+	private volatile CombinerInstruction combinerInstruction;
 
-	private Master master;
-	private static Injector currentMRConfig;
-	private static ServerStarter server;
+	private static volatile Injector currentMRConfig;
+	private static volatile ServerStarter server;
 
 	/*
 	 * (non-Javadoc)
@@ -63,11 +69,41 @@ public class CurrentMapReduceImplementation implements MapReduce {
 		this.reduceInstruction = reduceInstruction;
 		this.combinerInstruction = combinerInstruction;
 		this.shuffleProcessorFactory = shuffleProcessorFactory;
-
-		this.master = currentMRConfig.getInstance(Master.class);
 		return this;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ch.zhaw.mapreduce.MapReduce#newJob(ch.zhaw.mapreduce.MapInstruction, ch.zhaw.mapreduce.ReduceInstruction,
+	 * ch.zhaw.mapreduce.CombinerInstruction, ch.zhaw.mapreduce.ShuffleProcessorFactory)
+	 */
+	@Override
+	public MapReduceJob newJob(MapInstruction mapInstruction, ReduceInstruction reduceInstruction,
+			CombinerInstruction combinerInstruction, ShuffleProcessorFactory shuffleProcessorFactory) {
+		return newJob(mapInstruction, reduceInstruction, combinerInstruction, shuffleProcessorFactory, 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ch.zhaw.mapreduce.MapReduce#newJob(ch.zhaw.mapreduce.MapInstruction, ch.zhaw.mapreduce.ReduceInstruction,
+	 * ch.zhaw.mapreduce.CombinerInstruction, ch.zhaw.mapreduce.ShuffleProcessorFactory, int)
+	 */
+	@Override
+	public MapReduceJob newJob(MapInstruction mapInstruction, ReduceInstruction reduceInstruction,
+			CombinerInstruction combinerInstruction, ShuffleProcessorFactory shuffleProcessorFactory, int priority) {
+		if (priority < 1) {
+			throw new IllegalArgumentException("Priority must be at least 1: " + priority);
+		}
+		Injector injector = currentMRConfig;
+		if (injector == null) {
+			throw new IllegalStateException("MapReduce has not been started");
+		}
+		return new MapReduceJobImpl(UUID.randomUUID().toString(), priority, injector.getInstance(Master.class),
+				mapInstruction, reduceInstruction, combinerInstruction, shuffleProcessorFactory);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -75,13 +111,8 @@ public class CurrentMapReduceImplementation implements MapReduce {
 	 */
 	@Override
 	public Map<String, List<String>> runMapReduceTask(Iterator<String> input) {
-		try {
-			return this.master.runComputation(this.mapInstruction, this.combinerInstruction,
-					this.reduceInstruction, this.shuffleProcessorFactory, input); 
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-			throw new IllegalStateException("Computation aborted.");
-		}
+		return newJob(this.mapInstruction, this.reduceInstruction, this.combinerInstruction,
+				this.shuffleProcessorFactory).run(input);
 	}
 
 }
@@ -4,17 +4,29 @@ import static ch.zhaw.mapreduce.MapReduceUtil.loadWithOptionalDefaults;
 
 import java.io.IOException;
 import java.util.UUID;
-import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import ch.zhaw.mapreduce.impl.FairShareSchedulingPolicy;
+import ch.zhaw.mapreduce.impl.FifoSchedulingPolicy;
 import ch.zhaw.mapreduce.impl.FilePersistence;
+import ch.zhaw.mapreduce.impl.HashPartitioner;
 import ch.zhaw.mapreduce.impl.InMemoryShuffler;
+import ch.zhaw.mapreduce.impl.KeyCounter;
+import ch.zhaw.mapreduce.impl.MemoryPersistence;
+import ch.zhaw.mapreduce.impl.PersistentShuffler;
 import ch.zhaw.mapreduce.impl.PoolImpl;
 import ch.zhaw.mapreduce.impl.PoolStatisticsPrinter;
+import ch.zhaw.mapreduce.impl.PrioritySchedulingPolicy;
+import ch.zhaw.mapreduce.impl.RetriesFirstSchedulingPolicy;
+import ch.zhaw.mapreduce.impl.SegmentPersistence;
+import ch.zhaw.mapreduce.impl.ShuffleCombiner;
+import ch.zhaw.mapreduce.impl.SortingShuffler;
+import ch.zhaw.mapreduce.impl.WriteBehind;
 import ch.zhaw.mapreduce.plugins.Loader;
 import ch.zhaw.mapreduce.plugins.socket.impl.NamedThreadFactory;
 
@@ -45,11 +57,11 @@ public class MapReduceConfig extends AbstractModule {
 			addError(e);
 		}
 
-		bind(Master.class);
+		// der master hat keinen zustand pro berechnung, alle jobs teilen sich ihn und den pool
+		bind(Master.class).in(Singleton.class);
 		bind(Pool.class).to(PoolImpl.class).in(Singleton.class);
 		bind(Loader.class);
-		bind(Shuffler.class).to(InMemoryShuffler.class);
-		bind(Persistence.class).to(FilePersistence.class);
+		bind(Partitioner.class).to(HashPartitioner.class);
 
 		bind(PoolStatisticsPrinter.class).asEagerSingleton();
 
@@ -65,10 +77,92 @@ public class MapReduceConfig extends AbstractModule {
 		return UUID.randomUUID().toString();
 	}
 
+	/**
+	 * Wählt die SchedulingPolicy des Pools anhand des Namens im Property SchedulingPolicy.
+	 */
+	@Provides
+	private SchedulingPolicy createSchedulingPolicy(@Named("SchedulingPolicy") String name) {
+		if ("fifo".equalsIgnoreCase(name)) {
+			return new FifoSchedulingPolicy();
+		} else if ("retries".equalsIgnoreCase(name)) {
+			return new RetriesFirstSchedulingPolicy();
+		} else if ("priority".equalsIgnoreCase(name)) {
+			return new PrioritySchedulingPolicy();
+		} else if ("fairshare".equalsIgnoreCase(name)) {
+			return new FairShareSchedulingPolicy();
+		}
+		throw new IllegalArgumentException("Unknown SchedulingPolicy: " + name);
+	}
+
+	/**
+	 * Wählt die Persistence anhand des Namens im Property Persistence. Jede Berechnung bekommt eine neue.
+	 */
 	@Provides
-	@Named("poolExecutor")
-	private Executor createPoolExec() {
-		return Executors.newSingleThreadExecutor(new NamedThreadFactory("PoolExecutor"));
+	private Persistence createPersistence(@Named("Persistence") String name, Provider<MemoryPersistence> memory,
+			Provider<FilePersistence> file, Provider<SegmentPersistence> segment) {
+		if ("memory".equalsIgnoreCase(name)) {
+			return memory.get();
+		} else if ("file".equalsIgnoreCase(name)) {
+			return file.get();
+		} else if ("segment".equalsIgnoreCase(name)) {
+			return segment.get();
+		}
+		throw new IllegalArgumentException("Unknown Persistence: " + name);
+	}
+
+	/**
+	 * Wählt den Shuffler anhand des Namens im Property Shuffler. Jede Berechnung bekommt einen neuen, der ihren
+	 * Combiner verwendet. Eine totale Ordnung der Partitionen kann nur der sortierende Shuffler herstellen. Jeder
+	 * Shuffler zählt die Werte pro Key, damit der Master Keys mit mehr als HotKeyThreshold Werten aufteilen kann.
+	 */
+	@Provides
+	private ShufflerFactory createShufflerFactory(@Named("Shuffler") final String name,
+			@Named("Partitioning") final String partitioning, final Partitioner partitioner,
+			@Named("ReducePartitions") final int nPartitions, @Named("ShufflerMemoryBudget") final long memoryBudget,
+			@Named("shuffler.directory") final String directory,
+			@Named("ShuffleCombineThreshold") final int combineThreshold,
+			@Named("PartitionSampleSize") final int sampleSize, @Named("HotKeyThreshold") final int hotKeyThreshold) {
+		if (!"sorting".equalsIgnoreCase(name) && !"memory".equalsIgnoreCase(name)
+				&& !"persistent".equalsIgnoreCase(name)) {
+			throw new IllegalArgumentException("Unknown Shuffler: " + name);
+		}
+		final boolean totalOrder = "totalorder".equalsIgnoreCase(partitioning);
+		if (!totalOrder && !"hash".equalsIgnoreCase(partitioning)) {
+			throw new IllegalArgumentException("Unknown Partitioning: " + partitioning);
+		}
+		if (totalOrder && !"sorting".equalsIgnoreCase(name)) {
+			throw new IllegalArgumentException("Partitioning totalorder requires Shuffler sorting, not " + name);
+		}
+		return new ShufflerFactory() {
+			@Override
+			public Shuffler createShuffler(Persistence persistence, CombinerInstruction combinerInstruction) {
+				ShuffleCombiner combiner = new ShuffleCombiner(combinerInstruction, combineThreshold);
+				KeyCounter counter = new KeyCounter(hotKeyThreshold);
+				if (totalOrder) {
+					return SortingShuffler.totalOrder(nPartitions, memoryBudget, directory, combiner, counter,
+							sampleSize);
+				} else if ("sorting".equalsIgnoreCase(name)) {
+					return new SortingShuffler(partitioner, nPartitions, memoryBudget, directory, combiner, counter);
+				} else if ("memory".equalsIgnoreCase(name)) {
+					return new InMemoryShuffler(partitioner, nPartitions, combiner, counter);
+				}
+				return new PersistentShuffler(persistence, partitioner, nPartitions, combiner, counter);
+			}
+		};
+	}
+
+	/**
+	 * Ein WriteBehind für alle Berechnungen, damit auch Resultate verschiedener Jobs mit einem sync geschrieben werden.
+	 * Mit WriteBehindQueueSize 0 speichern die Tasks direkt.
+	 */
+	@Provides
+	@Singleton
+	private WriteBehind createWriteBehind(@Named("WriteBehindQueueSize") int capacity,
+			@Named("WriteBehindBatchSize") int batchSize) {
+		if (capacity == 0) {
+			return WriteBehind.disabled();
+		}
+		return new WriteBehind(capacity, batchSize, new NamedThreadFactory("WriteBehind"));
 	}
 
 	@Provides
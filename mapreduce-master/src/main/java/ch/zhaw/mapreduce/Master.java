@@ -1,8 +1,9 @@
 package ch.zhaw.mapreduce;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -15,18 +16,30 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 
+import ch.zhaw.mapreduce.impl.Checkpoints;
+import ch.zhaw.mapreduce.impl.GroupedValues;
+import ch.zhaw.mapreduce.impl.InputBatcher;
+import ch.zhaw.mapreduce.impl.InputPrefetcher;
+import ch.zhaw.mapreduce.impl.JobCheckpoint;
 import ch.zhaw.mapreduce.impl.MapWorkerTask;
 import ch.zhaw.mapreduce.impl.ReduceWorkerTask;
+import ch.zhaw.mapreduce.impl.ShuffleHookRunner;
+import ch.zhaw.mapreduce.impl.SpeculationPolicy;
+import ch.zhaw.mapreduce.impl.TaskPhase;
+import ch.zhaw.mapreduce.impl.TaskWindow;
 import ch.zhaw.mapreduce.plugins.socket.impl.NamedThreadFactory;
 
 public final class Master {
 
 	private static final Logger LOG = Logger.getLogger(Master.class.getName());
 
-	private final ExecutorService executorPool = Executors.newSingleThreadExecutor(new NamedThreadFactory(
+	/** Threads für die AfterShuffleHooks aller Jobs */
+	private static final int HOOK_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private final ExecutorService executorPool = Executors.newFixedThreadPool(HOOK_THREADS, new NamedThreadFactory(
 			"AfterShuffleHookService"));
 
-	private final Shuffler shuffler;
+	private final ShufflerFactory shufflerFactory;
 
 	private final Provider<Persistence> persistenceProvider;
 
@@ -34,190 +47,319 @@ public final class Master {
 
 	private final WorkerTaskFactory workerTaskFactory;
 
-	private final int maxrunningtasks;
+	private final TaskWindow window;
+
+	private final int mapBatchSize;
+
+	private final long mapBatchChars;
+
+	private final int prefetchPerWorker;
+
+	/** Keys mit mehr Werten werden bei einer AssociativeReduceInstruction aufgeteilt, 0 = nie */
+	private final int hotKeyThreshold;
+
+	private final SpeculationPolicy speculation;
+
+	private final Checkpoints checkpoints;
+
+	/** Liest die Inputs der laufenden Jobs im Voraus, ein Thread pro Job */
+	private final ExecutorService prefetchService = Executors.newCachedThreadPool(new NamedThreadFactory(
+			"InputPrefetcher"));
 
 	@Inject
-	Master(Pool pool, WorkerTaskFactory workerTaskFactory, Shuffler shuffler,
-			Provider<Persistence> persistenceProvider, @Named("MaxRunningTasks") int maxrunningtasks) {
+	Master(Pool pool, WorkerTaskFactory workerTaskFactory, ShufflerFactory shufflerFactory,
+			Provider<Persistence> persistenceProvider, TaskWindow window, @Named("MapBatchSize") int mapBatchSize,
+			@Named("MapBatchChars") long mapBatchChars, @Named("InputPrefetchPerWorker") int prefetchPerWorker,
+			@Named("HotKeyThreshold") int hotKeyThreshold, SpeculationPolicy speculation,
+			Checkpoints checkpoints) {
 		this.pool = pool;
 		this.workerTaskFactory = workerTaskFactory;
-		this.shuffler = shuffler;
+		this.shufflerFactory = shufflerFactory;
 		this.persistenceProvider = persistenceProvider;
-		this.maxrunningtasks = maxrunningtasks;
+		this.window = window;
+		this.mapBatchSize = mapBatchSize;
+		this.mapBatchChars = mapBatchChars;
+		this.prefetchPerWorker = prefetchPerWorker;
+		this.hotKeyThreshold = hotKeyThreshold;
+		this.speculation = speculation;
+		this.checkpoints = checkpoints;
 	}
 
-	public Map<String, List<String>> runComputation(final MapInstruction mapInstruction,
+	/**
+	 * Führt eine ganze Berechnung aus und blockiert, bis sie fertig ist. Der Master hat keinen Zustand pro
+	 * Berechnung, daher können mehrere Jobs gleichzeitig aus verschiedenen Threads laufen. Sie teilen sich den Pool,
+	 * aber jeder Job hat seine eigene Persistence und seinen eigenen Shuffler.
+	 * 
+	 * Ist Checkpointing eingeschaltet, werden die Resultate der abgeschlossenen Map Tasks unter der Job ID
+	 * aufgezeichnet. Wird eine abgebrochene Berechnung mit der gleichen Job ID und den gleichen Inputs in der gleichen
+	 * Reihenfolge neu gestartet, werden diese Map Tasks nicht nochmals ausgeführt. Erst wenn die Berechnung erfolgreich
+	 * war, wird der Checkpoint gelöscht.
+	 * 
+	 * @param jobId
+	 *            die ID der Berechnung, mit der alle ihre Tasks markiert werden
+	 * @param priority
+	 *            die Priorität der Berechnung, nach der die SchedulingPolicy des Pools die Worker verteilt
+	 */
+	public Map<String, List<String>> runComputation(String jobId, int priority, final MapInstruction mapInstruction,
 			final CombinerInstruction combinerInstruction, final ReduceInstruction reduceInstruction,
 			ShuffleProcessorFactory afterShuffleHook, Iterator<String> inputs) throws InterruptedException {
+		return runComputation(jobId, priority, null, mapInstruction, combinerInstruction, reduceInstruction,
+				afterShuffleHook, inputs);
+	}
+
+	/**
+	 * Führt eine ganze Berechnung aus, deren Resultate mit einem eigenen Codec komprimiert gespeichert werden.
+	 * 
+	 * @param compression
+	 *            der Codec für die Persistence dieser Berechnung, zum Beispiel snappy. Mit null gilt das Property
+	 *            Compression.
+	 * @see #runComputation(String, int, MapInstruction, CombinerInstruction, ReduceInstruction,
+	 *      ShuffleProcessorFactory, Iterator)
+	 */
+	public Map<String, List<String>> runComputation(String jobId, int priority, String compression,
+			final MapInstruction mapInstruction, final CombinerInstruction combinerInstruction,
+			final ReduceInstruction reduceInstruction, ShuffleProcessorFactory afterShuffleHook, Iterator<String> inputs)
+			throws InterruptedException {
 
 		// für sämtliche tasks einer berechnung muss die gleiche persistence verwendet werden!
 		Persistence pers = this.persistenceProvider.get();
+		// die map tasks uebergeben ihre resultate direkt dem shuffler, so wird schon waehrend der map-phase
+		// gruppiert und ueber alle tasks hinweg kombiniert
+		Shuffler shuffler = this.shufflerFactory.createShuffler(pers, combinerInstruction);
+		ShuffleHookRunner hook = null;
+		JobCheckpoint checkpoint = JobCheckpoint.disabled();
+		try {
+			// erst im try, damit persistence und shuffler auch aufgeraeumt werden, wenn das oeffnen fehlschlaegt
+			checkpoint = this.checkpoints.open(jobId);
+			if (compression != null) {
+				pers.setCompression(compression);
+			}
+			LOG.log(Level.INFO, "Start Running Map Tasks of Job {0}", jobId);
+			runMapTasks(jobId, priority, mapInstruction, combinerInstruction, inputs, pers, shuffler, checkpoint);
+			LOG.log(Level.INFO, "Done Running Map Tasks of Job {0}", jobId);
+
+			shuffler.finish();
+			LOG.log(Level.INFO, "Done shuffling Map Results of Job {0}", jobId);
+
+			if (afterShuffleHook != null) {
+				// der hook bekommt jede partition, sobald sie fuer die reduce-phase geholt wird
+				LOG.info("Running AfterShuffleHook per Partition with Exector");
+				hook = new ShuffleHookRunner(afterShuffleHook, this.executorPool, 2 * HOOK_THREADS);
+			} else {
+				LOG.info("No AfterShuffleHook");
+			}
 
-		LOG.info("Start Running Map Tasks");
-		runMapTasks(mapInstruction, combinerInstruction, inputs, pers);
-		LOG.info("Done Running Map Tasks");
-
-		LOG.info("Retrieve all Map Results from Persistence");
-		List<KeyValuePair> mapResults = pers.getMapResults();
+			LOG.log(Level.INFO, "Start Running Reduce Tasks of Job {0}", jobId);
+			runReduceTasks(jobId, priority, reduceInstruction, shuffler, pers, hook);
+			LOG.log(Level.INFO, "Done Running Reduce Tasks of Job {0}", jobId);
 
-		LOG.log(Level.INFO, "Shuffle all {0} Map Results", mapResults.size());
-		Map<String, List<KeyValuePair>> shuffledResults = shuffler.shuffle(mapResults);
-		LOG.info("Done shuffling Map Results");
+			if (hook != null) {
+				hook.awaitAll();
+				LOG.log(Level.INFO, "Done Running AfterShuffleHook of Job {0}", jobId);
+			}
 
-		if (afterShuffleHook != null) {
-			LOG.info("Running AfterShuffleHook with Exector");
-			executorPool.execute(afterShuffleHook.getNewRunnable(shuffledResults.entrySet().iterator()));
-		} else {
-			LOG.info("No AfterShuffleHook");
+			LOG.info("Retrieve all Reduce Results from Persistence");
+			Map<String, List<String>> results = pers.getReduceResults();
+			// erst jetzt ist nichts mehr von der berechnung zu wiederholen
+			checkpoint.delete();
+			return results;
+		} finally {
+			checkpoint.close();
+			// auch wenn der job abgebrochen wurde, sollen keine daten liegen bleiben
+			if (hook != null) {
+				hook.cancel();
+			}
+			LOG.log(Level.INFO, "Kill Persistence of Job {0}", jobId);
+			shuffler.discard();
+			pers.suicide();
 		}
-
-		LOG.info("Start Running Reduce Tasks");
-		runReduceTasks(reduceInstruction, shuffledResults, pers);
-		LOG.info("Done Running Reduce Tasks");
-
-		LOG.info("Retrieve all Reduce Results from Persistence");
-		Map<String, List<String>> results = pers.getReduceResults();
-
-		LOG.info("Kill Persistence");
-		pers.suicide();
-
-		return results;
 	}
 
 	/* Methoden fuer Map-Phase */
 
-	void runMapTasks(MapInstruction mapInstruction, CombinerInstruction combinerInstruction,
-			Iterator<String> inputs, Persistence pers) throws InterruptedException {
-		List<MapWorkerTask> runningTasks = new LinkedList<MapWorkerTask>();
-		while (inputs.hasNext()) {
-			while (runningTasks.size() >= maxrunningtasks) {
-				if (!housekeepingMap(runningTasks)) {
-					Thread.sleep(200);
+	void runMapTasks(String jobId, int priority, MapInstruction mapInstruction, CombinerInstruction combinerInstruction,
+			Iterator<String> inputs, Persistence pers, Shuffler shuffler) throws InterruptedException {
+		runMapTasks(jobId, priority, mapInstruction, combinerInstruction, inputs, pers, shuffler,
+				JobCheckpoint.disabled());
+	}
+
+	/**
+	 * Startet einen Map Task pro Batch. Batches, die im Checkpoint schon abgeschlossen sind, werden nicht ausgeführt,
+	 * ihre Resultate gehen direkt an den Shuffler.
+	 */
+	void runMapTasks(String jobId, int priority, MapInstruction mapInstruction, CombinerInstruction combinerInstruction,
+			Iterator<String> inputs, Persistence pers, Shuffler shuffler, JobCheckpoint checkpoint)
+			throws InterruptedException {
+		TaskPhase<MapWorkerTask> phase = new TaskPhase<MapWorkerTask>(this.pool, this.speculation,
+				priority, MapWorkerTask.class) {
+			@Override
+			protected MapWorkerTask newAttempt(MapWorkerTask task) {
+				return workerTaskFactory.createMapWorkerTask(task.getJobId(), task.getMapInstruction(),
+						task.getCombinerInstruction(), task.getInputs(), task.getPersistence(), task.getShuffler());
+			}
+		};
+		// viele kleine inputs werden zu einem task zusammengefasst. ein fehlgeschlagener batch wird als ganzes wiederholt.
+		// die batches werden im voraus gelesen, damit die worker nicht auf einen langsamen iterator warten muessen
+		InputPrefetcher<List<String>> batches = new InputPrefetcher<List<String>>(new InputBatcher(inputs,
+				this.mapBatchSize, this.mapBatchChars), this.pool, this.prefetchPerWorker);
+		batches.start(this.prefetchService);
+		try {
+			List<String> batch;
+			int seq = 0;
+			int resumed = 0;
+			while ((batch = batches.take()) != null) {
+				Shuffler target = shuffler;
+				if (checkpoint.isEnabled()) {
+					String key = JobCheckpoint.batchKey(seq++, batch);
+					List<KeyValuePair> completed = checkpoint.completedBatch(key);
+					if (completed != null) {
+						shuffler.put(completed);
+						resumed++;
+						continue;
+					}
+					// auch wiederholte und spekulative versuche zeichnen auf, newAttempt uebernimmt den shuffler
+					target = checkpoint.recording(shuffler, key);
 				}
+				phase.awaitWindow(this.window);
+				phase.submit(this.workerTaskFactory.createMapWorkerTask(jobId, mapInstruction, combinerInstruction,
+						batch, pers, target));
 			}
-			String input = inputs.next();
-			MapWorkerTask task = this.workerTaskFactory.createMapWorkerTask(mapInstruction, combinerInstruction, input,
-					pers);
-			this.pool.enqueueTask(task);
-			runningTasks.add(task);
-		}
-
-		// warten, bis alle ausgeführt worden sind
-		while (!runningTasks.isEmpty()) {
-			if (!housekeepingMap(runningTasks)) {
-				Thread.sleep(400); // nur warten, wenn sich nichts getan hat
+			if (resumed > 0) {
+				LOG.log(Level.INFO, "Took {0} Batches of Job {1} from Checkpoint", new Object[] { resumed, jobId });
 			}
+		} finally {
+			batches.close();
 		}
+		phase.awaitAll();
 	}
 
-	boolean housekeepingMap(List<MapWorkerTask> runningTasks) {
-		LOG.entering(getClass().getName(), "housekeepingMap", runningTasks.size());
-		List<MapWorkerTask> done = new LinkedList<MapWorkerTask>();
-		List<MapWorkerTask> failed = new LinkedList<MapWorkerTask>();
-		for (MapWorkerTask task : runningTasks) {
-			switch (task.getCurrentState()) {
-			case COMPLETED:
-				done.add(task);
-				break;
-			case FAILED:
-				failed.add(task);
-				break;
-			case ENQUEUED: // fall through
-			case INITIATED: // fall through
-			case INPROGRESS:
-				// ok, wird demnaechst ausgefuehrt
-				break;
-			case ABORTED:
-				throw new IllegalStateException("Task must not be in this list when in State ABORTED");
-			default:
-				throw new IllegalStateException("Unhandled state: " + task.getCurrentState());
+	/* Methoden fuer Reduce-Phase */
+
+	/**
+	 * Startet einen Reduce Task pro Partition. Die Partitionen werden erst geholt, wenn im Fenster Platz für einen
+	 * weiteren Task ist, so muss der Shuffler nicht alle auf einmal im Speicher halten.
+	 * 
+	 * Ist die ReduceInstruction assoziativ, nimmt der Master die Keys, die der Shuffler beim Abliefern mit mehr als
+	 * hotKeyThreshold Werten gezählt hat, aus ihren Partitionen. Jeder wird in Teilen von hotKeyThreshold Werten auf
+	 * eigene Reduce Tasks verteilt. Deren Resultate landen in einer eigenen Persistence und werden am Ende pro Key
+	 * nochmals reduziert. Die Partitionen selbst schaut der Master dafür nicht an, jeder Reduce Task liest seine
+	 * Partition weiterhin selbst.
+	 * 
+	 * @param hook
+	 *            bekommt jede Partition zusätzlich, darf null sein
+	 */
+	void runReduceTasks(String jobId, int priority, ReduceInstruction redInstruction, Shuffler shuffler,
+			Persistence pers, ShuffleHookRunner hook) throws InterruptedException {
+		TaskPhase<ReduceWorkerTask> phase = newReducePhase(priority);
+		boolean splittable = this.hotKeyThreshold > 0 && redInstruction instanceof AssociativeReduceInstruction;
+		// die teilresultate aufgeteilter keys duerfen nicht zu den resultaten der berechnung
+		Persistence partials = null;
+		try {
+			int partition = 0;
+			int split = 0;
+			if (splittable) {
+				Map<String, List<KeyValuePair>> hot = shuffler.takeHotKeys();
+				for (Entry<String, List<KeyValuePair>> entry : hot.entrySet()) {
+					if (entry.getValue().size() <= this.hotKeyThreshold) {
+						// zu viel gezaehlt oder schon beim shuffeln kombiniert, ein task reicht
+						phase.awaitWindow(this.window);
+						phase.submit(this.workerTaskFactory.createReduceWorkerTask(jobId, redInstruction,
+								partition++, Collections.singletonMap(entry.getKey(), entry.getValue()), pers));
+						continue;
+					}
+					if (partials == null) {
+						partials = this.persistenceProvider.get();
+					}
+					partition = submitSplitKey(phase, jobId, redInstruction, entry.getKey(), entry.getValue(),
+							partition, partials);
+					split++;
+				}
+				if (hook != null && !hot.isEmpty()) {
+					hook.submit(hot);
+				}
+			}
+			Iterator<Map<String, List<KeyValuePair>>> partitions = shuffler.partitions();
+			while (partitions.hasNext()) {
+				phase.awaitWindow(this.window);
+				Map<String, List<KeyValuePair>> next = partitions.next();
+				phase.submit(this.workerTaskFactory.createReduceWorkerTask(jobId, redInstruction, partition++, next,
+						pers));
+				if (hook != null) {
+					hook.submit(next);
+				}
+			}
+			LOG.log(Level.INFO, "Submitted {0} Reduce Tasks of Job {1}, split {2} hot Keys", new Object[] {
+					partition, jobId, split });
+			phase.awaitAll();
+			if (partials != null) {
+				mergeSplitKeys(jobId, priority, redInstruction, partials, partition, pers);
+			}
+		} finally {
+			if (partials != null) {
+				partials.suicide();
 			}
 		}
-		LOG.log(Level.FINE, "{0} Tasks done, {1} Tasks failed", new Object[] { done.size(), failed.size() });
-		runningTasks.removeAll(done);
-		runningTasks.removeAll(failed);
-		runningTasks.addAll(restartFailedMap(failed));
-		return done.isEmpty() && failed.isEmpty();
 	}
 
-	List<MapWorkerTask> restartFailedMap(List<MapWorkerTask> faileds) {
-		LOG.entering(getClass().getName(), "restartFailedMap", faileds.size());
-		List<MapWorkerTask> newtasks = new ArrayList<MapWorkerTask>(faileds.size());
-		for (MapWorkerTask failed : faileds) {
-			MapWorkerTask newtask = this.workerTaskFactory.createMapWorkerTask(failed.getMapInstruction(),
-					failed.getCombinerInstruction(), failed.getInput(), failed.getPersistence());
-			this.pool.enqueueTask(newtask);
-			newtasks.add(newtask);
+	/**
+	 * Verteilt die Werte eines Keys in Teilen von hotKeyThreshold Werten auf eigene Reduce Tasks.
+	 * 
+	 * @return die nächste freie Partitionsnummer
+	 */
+	private int submitSplitKey(TaskPhase<ReduceWorkerTask> phase, String jobId, ReduceInstruction redInstruction,
+			String key, List<KeyValuePair> values, int partition, Persistence partials) throws InterruptedException {
+		LOG.log(Level.INFO, "Splitting hot Key {0} with {1} Values of Job {2}", new Object[] { key, values.size(),
+				jobId });
+		for (int from = 0; from < values.size(); from += this.hotKeyThreshold) {
+			int to = Math.min(values.size(), from + this.hotKeyThreshold);
+			// die inputs werden zum socket agent serialisiert, eine subList waere nicht serialisierbar
+			List<KeyValuePair> chunk = values instanceof GroupedValues ? ((GroupedValues) values).copyOfRange(from,
+					to) : new ArrayList<KeyValuePair>(values.subList(from, to));
+			phase.awaitWindow(this.window);
+			phase.submit(this.workerTaskFactory.createReduceWorkerTask(jobId, redInstruction, partition++,
+					Collections.singletonMap(key, chunk), partials));
 		}
-		return newtasks;
+		return partition;
 	}
 
-	/* Methoden fuer Reduce-Phase */
-
-	void runReduceTasks(ReduceInstruction redInstruction, Map<String, List<KeyValuePair>> shuffled,
-			Persistence pers) throws InterruptedException {
-
-		List<ReduceWorkerTask> runningTasks = new LinkedList<ReduceWorkerTask>();
-		for (Entry<String, List<KeyValuePair>> entry : shuffled.entrySet()) {
-			while (runningTasks.size() >= maxrunningtasks) {
-				if (!housekeepingReduce(runningTasks)) {
-					Thread.sleep(200);
+	/**
+	 * Reduziert die Teilresultate jedes aufgeteilten Keys zu seinem Resultat.
+	 */
+	private void mergeSplitKeys(String jobId, int priority, ReduceInstruction redInstruction, Persistence partials,
+			int partition, Persistence pers) throws InterruptedException {
+		// die teilresultate werden direkt gruppiert, ohne zuerst eine map mit listen zu bauen
+		Map<String, GroupedValues> merged = new HashMap<String, GroupedValues>();
+		ResultCursor cursor = partials.openReduceResults();
+		try {
+			while (cursor.hasNext()) {
+				KeyValuePair pair = cursor.next();
+				GroupedValues values = merged.get(pair.getKey());
+				if (values == null) {
+					values = new GroupedValues(pair.getKey());
+					merged.put(pair.getKey(), values);
 				}
+				values.addValue(pair.getValue());
 			}
-			String key = entry.getKey();
-			List<KeyValuePair> values = entry.getValue();
-			ReduceWorkerTask task = this.workerTaskFactory.createReduceWorkerTask(redInstruction, key, values, pers);
-			this.pool.enqueueTask(task);
-			runningTasks.add(task);
+		} finally {
+			cursor.close();
 		}
-
-		// warten, bis alle ausgeführt worden sind
-		while (!runningTasks.isEmpty()) {
-			if (!housekeepingReduce(runningTasks)) {
-				// nur warten, wenn sich nichts getan hat
-				Thread.sleep(400);
-			}
+		TaskPhase<ReduceWorkerTask> phase = newReducePhase(priority);
+		for (Entry<String, GroupedValues> entry : merged.entrySet()) {
+			phase.awaitWindow(this.window);
+			phase.submit(this.workerTaskFactory.createReduceWorkerTask(jobId, redInstruction, partition++,
+					Collections.<String, List<KeyValuePair>> singletonMap(entry.getKey(), entry.getValue()), pers));
 		}
+		phase.awaitAll();
+		LOG.log(Level.INFO, "Merged split Keys of Job {0}", jobId);
 	}
 
-	boolean housekeepingReduce(List<ReduceWorkerTask> runningTasks) {
-		LOG.entering(getClass().getName(), "housekeepingReduce", runningTasks.size());
-		List<ReduceWorkerTask> done = new LinkedList<ReduceWorkerTask>();
-		List<ReduceWorkerTask> failed = new LinkedList<ReduceWorkerTask>();
-		for (ReduceWorkerTask task : runningTasks) {
-			switch (task.getCurrentState()) {
-			case COMPLETED:
-				done.add(task);
-				break;
-			case FAILED:
-				failed.add(task);
-				break;
-			case ENQUEUED: // fall through
-			case INITIATED: // fall through
-			case INPROGRESS:
-				// ok, wird demnaechst ausgefuehrt
-				break;
-			case ABORTED:
-				throw new IllegalStateException("Task must not be in this list when in State ABORTED");
-			default:
-				throw new IllegalStateException("Unhandled state: " + task.getCurrentState());
+	private TaskPhase<ReduceWorkerTask> newReducePhase(int priority) {
+		return new TaskPhase<ReduceWorkerTask>(this.pool, this.speculation, priority, ReduceWorkerTask.class) {
+			@Override
+			protected ReduceWorkerTask newAttempt(ReduceWorkerTask task) {
+				return workerTaskFactory.createReduceWorkerTask(task.getJobId(), task.getReduceInstruction(),
+						task.getPartition(), task.getInputs(), task.getPersistence());
 			}
-		}
-		LOG.log(Level.FINE, "{0} Tasks done, {1} Tasks failed", new Object[] { done.size(), failed.size() });
-		runningTasks.removeAll(done);
-		runningTasks.removeAll(failed);
-		runningTasks.addAll(restartFailedReduce(failed));
-		return done.isEmpty() && failed.isEmpty();
-	}
-
-	List<ReduceWorkerTask> restartFailedReduce(List<ReduceWorkerTask> faileds) {
-		List<ReduceWorkerTask> newtasks = new ArrayList<ReduceWorkerTask>(faileds.size());
-		for (ReduceWorkerTask failed : faileds) {
-			ReduceWorkerTask newtask = this.workerTaskFactory.createReduceWorkerTask(failed.getReduceInstruction(),
-					failed.getInput(), failed.getValues(), failed.getPersistence());
-			this.pool.enqueueTask(newtask);
-			newtasks.add(newtask);
-		}
-		return newtasks;
+		};
 	}
 }
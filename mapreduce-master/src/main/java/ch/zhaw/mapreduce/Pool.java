@@ -25,6 +25,12 @@ public interface Pool {
 	 */
 	boolean enqueueTask(WorkerTask task);
 
+	/**
+	 * Bricht einen Task ab, der nicht mehr gebraucht wird (z.B. weil ein anderer Versuch schneller war). Ist er noch
+	 * eingereiht, wird er entfernt, sonst wird der Worker angehalten, der ihn gerade ausführt.
+	 */
+	void abortTask(WorkerTask task);
+
 	/**
 	 * Nachdem der Worker einen Task ausgeführt hat, muss er sich selbst beim Pool zurückmelden.
 	 * 
@@ -0,0 +1,35 @@
+package ch.zhaw.mapreduce;
+
+/**
+ * Bestimmt, in welcher Reihenfolge der Pool die eingereihten Tasks an freie Worker verteilt. Der Pool synchronisiert
+ * alle Zugriffe, eine Implementation muss also nicht thread-safe sein. Der Pool hat nur eine Instanz, die alle
+ * eingereihten Tasks sieht.
+ *
+ * Der Pool ruft add und next bei jedem Task auf, daher sollten diese Operationen höchstens O(log n) sein.
+ */
+public interface SchedulingPolicy {
+
+	/**
+	 * Reiht einen Task ein.
+	 */
+	void add(WorkerTask task);
+
+	/**
+	 * Entfernt den Task, der als nächstes ausgeführt werden soll.
+	 *
+	 * @return der nächste Task oder null, wenn keiner eingereiht ist
+	 */
+	WorkerTask next();
+
+	/**
+	 * Entfernt einen eingereihten Task, z.B. weil er abgebrochen wurde. Muss nicht schnell sein.
+	 *
+	 * @return true, wenn der Task eingereiht war
+	 */
+	boolean remove(WorkerTask task);
+
+	/**
+	 * Anzahl eingereihter Tasks.
+	 */
+	int size();
+}
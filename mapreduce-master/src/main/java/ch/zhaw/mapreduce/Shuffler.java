@@ -1,10 +1,83 @@
 package ch.zhaw.mapreduce;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import ch.zhaw.mapreduce.impl.WriteBehind;
+
+/**
+ * Ein Shuffler gruppiert die Resultate der Map Tasks nach ihrem Key. Die Resultate werden laufend übergeben, sobald
+ * ein Map Task fertig ist. Somit überlappt das Gruppieren mit der Map-Phase und nach dem letzten Map Task muss nur
+ * noch abgeschlossen werden.
+ * 
+ * Die Keys werden mit dem Partitioner auf die Partitionen der Reduce-Phase aufgeteilt. Ein Shuffler muss nicht alle
+ * Resultate im Speicher halten, die Partitionen werden erst geladen, wenn sie gebraucht werden.
+ * 
+ * Ein Shuffler existiert pro Berechnung.
+ */
 public interface Shuffler {
 
-	Map<String, List<KeyValuePair>> shuffle(List<KeyValuePair> results); 
+	/**
+	 * Nimmt die Resultate von einem Map Task entgegen. Diese Methode wird von mehreren Workern gleichzeitig
+	 * aufgerufen und muss daher thread-safe sein.
+	 * 
+	 * @param mapResults
+	 *            die Resultate von einem Map Task
+	 */
+	void put(List<KeyValuePair> mapResults);
+
+	/**
+	 * Nimmt die Resultate von einem Map Task entgegen wie {@link #put(List)}. Was dabei auf die Disk geschrieben wird,
+	 * geht über den WriteBehind, damit der abliefernde Thread nicht auf die Disk wartet. Shuffler, die nichts
+	 * schreiben, nehmen die Resultate direkt entgegen.
+	 * 
+	 * @param delivered
+	 *            erfährt, sobald die Resultate dauerhaft abgeliefert sind. Bei false ist nichts davon übernommen worden
+	 */
+	void put(List<KeyValuePair> mapResults, WriteBehind writeBehind, WriteBehind.Callback delivered);
+
+	/**
+	 * Wie die Map Tasks ihre Resultate schon beim Emitten aufteilen sollen. Dann bekommt put eine
+	 * {@link ch.zhaw.mapreduce.impl.PartitionedMapResult} und muss die Keys nicht selbst aufteilen.
+	 * 
+	 * @return die Aufteilung oder null, wenn der Shuffler die Resultate selbst aufteilt
+	 */
+	MapPartitioning getMapPartitioning();
+
+	/**
+	 * Schliesst das Shuffeln ab. Danach dürfen keine Resultate mehr übergeben werden.
+	 */
+	void finish();
+
+	/**
+	 * Nimmt die heissen Keys heraus und liefert sie mit ihren Werten. Heiss ist ein Key, der beim Abliefern mehr Werte
+	 * bekommen hat als die Schwelle des Shufflers. Gezählt wird schon beim Abliefern, die Partitionen müssen dafür
+	 * nicht gelesen werden. Die Zählung ist ungefähr: ein Key kann zu viele Werte gezählt bekommen, aber nie zu wenige.
+	 * Danach liefern partitions und entries diese Keys nicht mehr. Darf erst nach finish und vor partitions aufgerufen
+	 * werden.
+	 * 
+	 * @return die heissen Keys mit ihren Werten, leer wenn es keine gibt oder der Shuffler nicht zählt
+	 */
+	Map<String, List<KeyValuePair>> takeHotKeys();
+
+	/**
+	 * Liefert die gruppierten Resultate Partition für Partition. Leere Partitionen werden weggelassen, es gibt also
+	 * nie mehr Partitionen als Keys. Jede Partition enthält alle Keys mit ihren Werten, ausser den mit takeHotKeys
+	 * herausgenommenen. Eine Partition, die nur heisse Keys hatte, kann deshalb leer sein. Darf erst nach finish
+	 * aufgerufen werden.
+	 */
+	Iterator<Map<String, List<KeyValuePair>>> partitions();
+
+	/**
+	 * Liefert alle Keys mit ihren Werten. Darf erst nach finish aufgerufen werden, auch mehrmals und gleichzeitig mit
+	 * partitions.
+	 */
+	Iterator<Map.Entry<String, List<KeyValuePair>>> entries();
+
+	/**
+	 * Gibt alle Zwischenresultate frei. Bereits gestartete Iteratoren können noch zu Ende gelesen werden.
+	 */
+	void discard();
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package ch.zhaw.mapreduce;
+
+/**
+ * Erstellt den Shuffler für eine Berechnung. Weil manche Shuffler die Zwischenresultate in der Persistence der
+ * Berechnung ablegen, wird ihnen diese mitgegeben.
+ */
+public interface ShufflerFactory {
+
+	/**
+	 * @param persistence
+	 *            die Persistence der Berechnung, die auch alle ihre Tasks verwenden
+	 * @param combinerInstruction
+	 *            der Combiner der Berechnung, mit dem der Shuffler lange Listen zusammenfasst, darf null sein
+	 * @return ein neuer Shuffler für genau eine Berechnung
+	 */
+	Shuffler createShuffler(Persistence persistence, CombinerInstruction combinerInstruction);
+
+}
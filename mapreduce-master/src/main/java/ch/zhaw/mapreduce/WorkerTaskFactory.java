@@ -1,6 +1,7 @@
 package ch.zhaw.mapreduce;
 
 import java.util.List;
+import java.util.Map;
 
 import ch.zhaw.mapreduce.impl.MapWorkerTask;
 import ch.zhaw.mapreduce.impl.ReduceWorkerTask;
@@ -21,32 +22,42 @@ public interface WorkerTaskFactory {
 	 * Erstellt eine neue Instanz vom MapWorkerTask mit den übergebenen Parametern. Wenn der Konstruktor der konkreten
 	 * Implemtation mehr Parameter hat als hier angegeben, werden diese von Guice injected.
 	 * 
+	 * @param jobId
+	 *            die ID des Jobs, zu dem der Task gehört
 	 * @param mapInstr
 	 *            die zu verwendende MapInstruction
 	 * @param combinerInstr
 	 *            die zu verwendende CombinerInstruction
+	 * @param inputs
+	 *            ein Batch von Inputs, die alle von diesem Task gemappt werden
+	 * @param shuffler
+	 *            der Shuffler dieser Berechnung, der die Resultate entgegennimmt
 	 * @return eine neue Instanz eines MapWorkerTask
 	 */
-	MapWorkerTask createMapWorkerTask(MapInstruction mapInstruction,
+	MapWorkerTask createMapWorkerTask(String jobId,
+									  MapInstruction mapInstruction,
 									  CombinerInstruction combinerInstr,
-									  @Assisted("input") String input,
-									  Persistence persistence);
+									  List<String> inputs,
+									  Persistence persistence,
+									  Shuffler shuffler);
 
 	/**
 	 * Erstellt eine neue Instanz vom ReduceWorkerTask mit den übergebenen Parametern. Wenn der Konstruktor der
 	 * konkreten Implemtation mehr Parameter hat als hier angegeben, werden diese von Guice injected.
 	 * 
-	 * Da zwei Parameter vom Typ String sind, müssen diese in der @Assisted Annotation näher beschrieben werden. So
-	 * werden Verwechslungen vermieden.
-	 * 
-	 * @param key
-	 *            der Key, für den reduziert wird
+	 * @param jobId
+	 *            die ID des Jobs, zu dem der Task gehört
 	 * @param reduceInstr
 	 *            die zu verwendenden ReduceInstruction
+	 * @param partition
+	 *            die Nummer der Partition, die reduziert wird
+	 * @param toDo
+	 *            alle Keys dieser Partition mit ihren Werten
 	 * @return eine neue Instanz eines ReduceWorkerTask
 	 */
-	ReduceWorkerTask createReduceWorkerTask( ReduceInstruction reduceInstr,
-											@Assisted("key") String key,
-											List<KeyValuePair> toDo,
+	ReduceWorkerTask createReduceWorkerTask(String jobId,
+											ReduceInstruction reduceInstr,
+											int partition,
+											Map<String, List<KeyValuePair>> toDo,
 											Persistence persistence);
 }
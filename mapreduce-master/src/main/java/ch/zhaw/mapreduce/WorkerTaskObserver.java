@@ -0,0 +1,19 @@
+package ch.zhaw.mapreduce;
+
+/**
+ * Ein WorkerTaskObserver wird von einem WorkerTask benachrichtigt, sobald dieser fertig ist - also entweder im Zustand
+ * COMPLETED oder FAILED. Damit muss der Master nicht periodisch alle laufenden Tasks nach ihrem Zustand fragen.
+ */
+public interface WorkerTaskObserver {
+
+	/**
+	 * Wird genau einmal pro Task aufgerufen, sobald dieser COMPLETED oder FAILED ist. Der Aufruf geschieht auf dem
+	 * Thread, der den Zustand gewechselt hat (typischerweise ein Worker). Die Implementation darf also nicht
+	 * blockieren.
+	 *
+	 * @param task
+	 *            der Task, der fertig ist
+	 */
+	void taskFinished(WorkerTask task);
+
+}
@@ -1,9 +1,12 @@
 package ch.zhaw.mapreduce.impl;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import ch.zhaw.mapreduce.Persistence;
 import ch.zhaw.mapreduce.WorkerTask;
+import ch.zhaw.mapreduce.WorkerTaskObserver;
 
 /**
  * Abstrakter WorkerTask, der das State-Handling implementiert, den Worker verwaltet und die Uuid speichert.
@@ -16,14 +19,43 @@ abstract class AbstractWorkerTask implements WorkerTask {
 	private static final Logger LOG = Logger.getLogger(AbstractWorkerTask.class.getName());
 
 	private final String taskUuid;
+
+	private final String jobId;
 	
 	protected final Persistence persistence;
 
 	/** Der Zustand in dem sich der Worker befindet */
 	private volatile State currentState = State.INITIATED;
 
-	AbstractWorkerTask(String taskUuid, Persistence pers) {
+	/** Wird benachrichtigt, sobald der Task fertig ist. Optional */
+	private volatile WorkerTaskObserver observer;
+
+	/** Damit der Observer nur einmal benachrichtigt wird */
+	private final AtomicBoolean observerNotified = new AtomicBoolean();
+
+	/**
+	 * Wird von allen Versuchen desselben Tasks geteilt (siehe joinAttempts). Enthält den Versuch, der seine Resultate
+	 * speichern darf, null solange keiner erfolgreich war oder wenn dieser danach fehlgeschlagen ist.
+	 */
+	private volatile AtomicReference<AbstractWorkerTask> committer = new AtomicReference<AbstractWorkerTask>();
+
+	/** Ob dieser Versuch das Recht zum Speichern bekommen hat, auch wenn er danach fehlgeschlagen ist */
+	private volatile boolean heldCommit;
+
+	/** Zeitpunkte in Millisekunden, 0 solange nicht gestartet bzw. fertig */
+	private volatile long startedAt;
+
+	private volatile long finishedAt;
+
+	/** Priorität des Jobs, siehe SchedulingPolicy */
+	private volatile int priority = 1;
+
+	/** Ob dieser Task ein Neustart oder Backup ist */
+	private volatile boolean retry;
+
+	AbstractWorkerTask(String taskUuid, String jobId, Persistence pers) {
 		this.taskUuid = taskUuid;
+		this.jobId = jobId;
 		this.persistence = pers;
 	}
 
@@ -35,6 +67,35 @@ abstract class AbstractWorkerTask implements WorkerTask {
 		return this.taskUuid;
 	}
 	
+	@Override
+	public final String getJobId() {
+		return this.jobId;
+	}
+
+	@Override
+	public final int getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Setzt die Priorität des Jobs. Muss vor dem Einreihen in den Pool geschehen.
+	 */
+	public final void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	@Override
+	public final boolean isRetry() {
+		return this.retry;
+	}
+
+	/**
+	 * Markiert diesen Task als Wiederholung, damit der Pool ihn bevorzugen kann. Muss vor dem Einreihen geschehen.
+	 */
+	final void markRetry() {
+		this.retry = true;
+	}
+
 	@Override
 	public final Persistence getPersistence() {
 		return this.persistence;
@@ -56,19 +117,87 @@ abstract class AbstractWorkerTask implements WorkerTask {
 
 	@Override
 	public final void started() {
-		setState(State.INPROGRESS);
+		// ein abgebrochener task bleibt abgebrochen, auch wenn ihn ein worker noch startet
+		if (this.currentState != State.ABORTED) {
+			this.startedAt = System.currentTimeMillis();
+			setState(State.INPROGRESS);
+		}
 	}
 
 	protected final void failed() {
-		setState(State.FAILED);
+		// ein anderer versuch darf seine resultate jetzt doch noch speichern
+		this.committer.compareAndSet(this, null);
+		if (this.currentState != State.ABORTED) {
+			this.finishedAt = System.currentTimeMillis();
+			setState(State.FAILED);
+			notifyObserver();
+		}
 	}
 
 	protected final void completed() {
+		this.finishedAt = System.currentTimeMillis();
 		setState(State.COMPLETED);
+		notifyObserver();
+	}
+
+	/**
+	 * Verwirft die Resultate dieses Versuchs, weil ein anderer Versuch sie speichert. Der Versuch ist danach ABORTED
+	 * und meldet das dem Observer, damit die TaskPhase nicht auf ihn wartet.
+	 */
+	protected final void discarded() {
+		aborted();
+		notifyObserver();
+	}
+
+	/**
+	 * Reserviert das Recht, die Resultate zu speichern. Das gelingt nur dem ersten Versuch eines Tasks, alle weiteren
+	 * Versuche muessen ihre Resultate verwerfen. Schlägt der reservierende Versuch danach fehl, wird das Recht mit
+	 * failed wieder frei. Ein abgebrochener Versuch bekommt es nie.
+	 * 
+	 * @return true, wenn dieser Versuch die Resultate speichern darf
+	 */
+	protected final boolean commit() {
+		if (this.currentState == State.ABORTED || !this.committer.compareAndSet(null, this)) {
+			return false;
+		}
+		this.heldCommit = true;
+		return true;
+	}
+
+	/**
+	 * Ob dieser Versuch das Recht zum Speichern bekommen hat. Bleibt true, auch wenn er danach fehlgeschlagen ist.
+	 */
+	final boolean heldCommit() {
+		return this.heldCommit;
+	}
+
+	/**
+	 * Macht diesen Task zu einem weiteren Versuch des gegebenen Tasks (z.B. Backup für einen Nachzügler). Von allen
+	 * Versuchen kann nur einer seine Resultate speichern.
+	 */
+	final void joinAttempts(AbstractWorkerTask original) {
+		this.committer = original.committer;
+	}
+
+	/**
+	 * Laufzeit in Millisekunden seit dem Start bis zum Ende bzw. bis jetzt, wenn der Task noch läuft. 0 wenn er noch
+	 * nicht gestartet wurde.
+	 */
+	final long getRuntime() {
+		long started = this.startedAt;
+		if (started == 0) {
+			return 0;
+		}
+		long finished = this.finishedAt;
+		return (finished != 0 ? finished : System.currentTimeMillis()) - started;
 	}
 
+	/**
+	 * Kann mehrmals geschehen, z.B. wenn der Pool einen Versuch abbricht, der seine Resultate schon verworfen hat.
+	 */
 	protected final void aborted() {
-		setState(State.ABORTED);
+		LOG.finest("From " + this.currentState + " to " + State.ABORTED);
+		this.currentState = State.ABORTED;
 	}
 	
 	/**
@@ -82,9 +211,33 @@ abstract class AbstractWorkerTask implements WorkerTask {
 		this.currentState = newState;
 	}
 
+	/**
+	 * Registriert den Observer, der benachrichtigt wird, sobald dieser Task COMPLETED oder FAILED ist. Wenn der Task
+	 * bereits fertig ist, wird der Observer sofort benachrichtigt.
+	 */
+	public final void setObserver(WorkerTaskObserver observer) {
+		this.observer = observer;
+		// der task koennte schon fertig gewesen sein, bevor der observer gesetzt wurde
+		State state = this.currentState;
+		if (state == State.COMPLETED || state == State.FAILED) {
+			notifyObserver();
+		}
+	}
+
+	/**
+	 * Benachrichtigt den Observer, falls einer gesetzt ist. Das geschieht hoechstens einmal, auch wenn der Task
+	 * nachtraeglich nochmals den Zustand wechselt.
+	 */
+	private void notifyObserver() {
+		WorkerTaskObserver observer = this.observer;
+		if (observer != null && this.observerNotified.compareAndSet(false, true)) {
+			observer.taskFinished(this);
+		}
+	}
+
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + "[TaskUuid=" + this.taskUuid + ",State=" + this.currentState + "]";
+		return getClass().getSimpleName() + "[TaskUuid=" + this.taskUuid + ",JobId=" + this.jobId + ",State=" + this.currentState + "]";
 	}
 
 }
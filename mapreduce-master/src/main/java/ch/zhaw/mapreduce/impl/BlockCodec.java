@@ -0,0 +1,141 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.iq80.snappy.CorruptionException;
+import org.iq80.snappy.Snappy;
+
+/**
+ * Komprimiert die Blöcke von {@link RecordFile}. Die ID des Codecs wird mit den Daten gespeichert, gelesen wird also
+ * immer mit dem Codec, mit dem geschrieben wurde.
+ *
+ * SNAPPY ist schnell und spart bei Text typischerweise die Hälfte, DEFLATE braucht deutlich mehr CPU, komprimiert aber
+ * stärker. Lohnt sich vor allem, wenn die Disk und nicht die CPU der Engpass ist.
+ */
+enum BlockCodec {
+
+	NONE(0) {
+		@Override
+		byte[] compress(byte[] raw) {
+			return raw;
+		}
+
+		@Override
+		byte[] decompress(byte[] stored, int rawLength) throws IOException {
+			if (stored.length != rawLength) {
+				throw new IOException("Block has wrong Length");
+			}
+			return stored;
+		}
+	},
+
+	SNAPPY(1) {
+		@Override
+		byte[] compress(byte[] raw) {
+			return Snappy.compress(raw);
+		}
+
+		@Override
+		byte[] decompress(byte[] stored, int rawLength) throws IOException {
+			byte[] raw;
+			try {
+				raw = Snappy.uncompress(stored, 0, stored.length);
+			} catch (CorruptionException e) {
+				throw new IOException("Snappy Block is corrupt", e);
+			}
+			if (raw.length != rawLength) {
+				throw new IOException("Block has wrong Length");
+			}
+			return raw;
+		}
+	},
+
+	DEFLATE(2) {
+		@Override
+		byte[] compress(byte[] raw) {
+			Deflater deflater = new Deflater();
+			try {
+				deflater.setInput(raw);
+				deflater.finish();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+				byte[] buffer = new byte[8192];
+				while (!deflater.finished()) {
+					out.write(buffer, 0, deflater.deflate(buffer));
+				}
+				return out.toByteArray();
+			} finally {
+				// sonst bleibt der native speicher bis zur finalisierung belegt
+				deflater.end();
+			}
+		}
+
+		@Override
+		byte[] decompress(byte[] stored, int rawLength) throws IOException {
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(stored);
+				byte[] raw = new byte[rawLength];
+				int n = 0;
+				while (n < rawLength) {
+					int read = inflater.inflate(raw, n, rawLength - n);
+					if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+						throw new IOException("Deflate Block is too short");
+					}
+					n += read;
+				}
+				return raw;
+			} catch (DataFormatException e) {
+				throw new IOException("Deflate Block is corrupt", e);
+			} finally {
+				inflater.end();
+			}
+		}
+	};
+
+	private final int id;
+
+	private BlockCodec(int id) {
+		this.id = id;
+	}
+
+	int id() {
+		return this.id;
+	}
+
+	abstract byte[] compress(byte[] raw);
+
+	/**
+	 * @throws IOException
+	 *             wenn die Daten nicht dekomprimiert werden können oder nicht rawLength Bytes ergeben
+	 */
+	abstract byte[] decompress(byte[] stored, int rawLength) throws IOException;
+
+	/**
+	 * @throws IOException
+	 *             wenn es keinen Codec mit dieser ID gibt, die Daten also beschädigt sind
+	 */
+	static BlockCodec forId(int id) throws IOException {
+		for (BlockCodec codec : values()) {
+			if (codec.id == id) {
+				return codec;
+			}
+		}
+		throw new IOException("Unknown Codec: " + id);
+	}
+
+	/**
+	 * Der Codec zum Namen in der Konfiguration, zum Beispiel snappy.
+	 */
+	static BlockCodec forName(String name) {
+		for (BlockCodec codec : values()) {
+			if (codec.name().equalsIgnoreCase(name)) {
+				return codec;
+			}
+		}
+		throw new IllegalArgumentException("Unknown Compression: " + name);
+	}
+}
@@ -0,0 +1,114 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.ResultCursor;
+
+/**
+ * Ein Cursor, der mehrere Quellen nacheinander liest, zum Beispiel eine Datei oder einen Block pro Task. Die nächste
+ * Quelle wird erst geöffnet, wenn die vorherige zu Ende gelesen ist.
+ */
+abstract class ChainedCursor implements ResultCursor {
+
+	private Iterator<KeyValuePair> current = Collections.<KeyValuePair> emptyList().iterator();
+
+	private boolean closed;
+
+	/**
+	 * @return die Resultate der nächsten Quelle, null wenn es keine mehr gibt
+	 */
+	protected abstract Iterator<KeyValuePair> nextSource();
+
+	/**
+	 * Gibt die aktuelle Quelle frei, bevor die nächste geöffnet wird oder der Cursor geschlossen wird.
+	 */
+	protected void closeSource() {
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!this.closed && !this.current.hasNext()) {
+			closeSource();
+			Iterator<KeyValuePair> next = nextSource();
+			if (next == null) {
+				this.closed = true;
+			} else {
+				this.current = next;
+			}
+		}
+		return !this.closed;
+	}
+
+	@Override
+	public KeyValuePair next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return this.current.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if (!this.closed) {
+			this.closed = true;
+			closeSource();
+		}
+	}
+
+	/**
+	 * Liest den Cursor bis zum Ende in eine Liste, für die Methoden der Persistence, die Listen liefern.
+	 */
+	static List<KeyValuePair> toList(ResultCursor cursor) {
+		List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+		try {
+			while (cursor.hasNext()) {
+				results.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Liest die Map-Resultate der Partitionen nacheinander in aufsteigender Reihenfolge, für
+	 * {@link Persistence#openMapResults()}. Jede Partition wird erst geöffnet, wenn die vorherige gelesen ist.
+	 */
+	static ResultCursor ofPartitions(final Persistence persistence, Collection<Integer> partitions) {
+		final Iterator<Integer> it = new TreeSet<Integer>(partitions).iterator();
+		return new ChainedCursor() {
+
+			private ResultCursor source;
+
+			@Override
+			protected Iterator<KeyValuePair> nextSource() {
+				if (!it.hasNext()) {
+					return null;
+				}
+				this.source = persistence.openMapResults(it.next());
+				return this.source;
+			}
+
+			@Override
+			protected void closeSource() {
+				if (this.source != null) {
+					this.source.close();
+					this.source = null;
+				}
+			}
+		};
+	}
+}
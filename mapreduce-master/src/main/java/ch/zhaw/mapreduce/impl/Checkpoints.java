@@ -0,0 +1,97 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Öffnet die Checkpoints der Berechnungen. Jede Job ID hat ihr eigenes Verzeichnis unter checkpoint.directory, ein
+ * Neustart mit der gleichen Job ID findet also den Checkpoint der abgebrochenen Berechnung wieder. Der Name des
+ * Verzeichnisses besteht aus der lesbar gemachten Job ID und einem Hash über die ganze Job ID, zusätzlich steht die Job
+ * ID im Manifest und wird beim Öffnen geprüft.
+ */
+public class Checkpoints {
+
+	private static final Logger LOG = Logger.getLogger(Checkpoints.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Länger wird der lesbare Teil des Verzeichnisnamens nicht, der Hash unterscheidet die Job IDs */
+	private static final int MAX_ESCAPED = 64;
+
+	/** null, wenn keine Checkpoints geschrieben werden */
+	private final File directory;
+
+	private volatile BlockCodec codec = BlockCodec.NONE;
+
+	@Inject
+	public Checkpoints(@Named("Checkpointing") boolean enabled, @Named("checkpoint.directory") String directory) {
+		this.directory = enabled ? new File(directory) : null;
+	}
+
+	/**
+	 * Keine Berechnung hat einen Checkpoint.
+	 */
+	public static Checkpoints disabled() {
+		return new Checkpoints(false, null);
+	}
+
+	/**
+	 * Mit diesem Codec werden die Resultate der Batches geschrieben. Standardmässig aus dem Property Compression.
+	 */
+	@Inject
+	public void setCompression(@Named("Compression") String codec) {
+		this.codec = BlockCodec.forName(codec);
+	}
+
+	/**
+	 * Öffnet den Checkpoint einer Berechnung oder legt ihn an. Kann er nicht geöffnet werden, läuft die Berechnung
+	 * ohne Checkpoint.
+	 */
+	public JobCheckpoint open(String jobId) {
+		if (this.directory == null) {
+			return JobCheckpoint.disabled();
+		}
+		try {
+			JobCheckpoint checkpoint = new JobCheckpoint(directory(jobId), jobId, this.codec);
+			if (checkpoint.completedBatches() > 0) {
+				LOG.log(Level.INFO, "Resuming Job {0} with {1} completed Batches",
+						new Object[] { jobId, checkpoint.completedBatches() });
+			}
+			return checkpoint;
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Failed to open Checkpoint of Job " + jobId + ", running without", e);
+			return JobCheckpoint.disabled();
+		}
+	}
+
+	/**
+	 * Das Verzeichnis des Checkpoints einer Berechnung. Die Job ID kommt vom Benutzer und darf nicht aus
+	 * checkpoint.directory herausführen, deshalb werden alle anderen Zeichen ersetzt. Damit zum Beispiel a/b und a_b
+	 * trotzdem nicht im gleichen Verzeichnis landen, wird der Hash der Job ID angehängt.
+	 */
+	File directory(String jobId) {
+		String escaped = jobId.replaceAll("[^A-Za-z0-9_-]", "_");
+		if (escaped.length() > MAX_ESCAPED) {
+			escaped = escaped.substring(0, MAX_ESCAPED);
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not available", e);
+		}
+		StringBuilder name = new StringBuilder(escaped).append('-');
+		for (byte b : digest.digest(jobId.getBytes(UTF8))) {
+			name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return new File(this.directory, name.toString());
+	}
+}
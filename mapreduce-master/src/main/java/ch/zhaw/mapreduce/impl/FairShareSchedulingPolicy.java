@@ -0,0 +1,116 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+
+import ch.zhaw.mapreduce.SchedulingPolicy;
+import ch.zhaw.mapreduce.WorkerTask;
+
+/**
+ * Gewichtete faire Verteilung der Worker auf die Jobs. Jeder Job mit eingereihten Tasks bekommt einen Anteil der
+ * Worker, der seiner Priorität entspricht. Ein Job mit Priorität 2 bekommt also doppelt so viele Tasks zugeteilt wie
+ * ein Job mit Priorität 1, kein Job verhungert. Innerhalb eines Jobs kommen Wiederholungen zuerst, sonst gilt die
+ * Reihenfolge des Einreihens.
+ *
+ * Jeder Job hat eine virtuelle Zeit, die bei jedem zugeteilten Task um 1/Priorität wächst. Es kommt immer der Job mit
+ * der kleinsten virtuellen Zeit an die Reihe. Das kostet O(log j) für j Jobs mit eingereihten Tasks.
+ */
+public final class FairShareSchedulingPolicy implements SchedulingPolicy {
+
+	/** Jobs mit eingereihten Tasks, nach virtueller Zeit geordnet */
+	private final TreeSet<JobQueue> active = new TreeSet<JobQueue>(new Comparator<JobQueue>() {
+		@Override
+		public int compare(JobQueue j1, JobQueue j2) {
+			int cmp = Double.compare(j1.virtualTime, j2.virtualTime);
+			if (cmp != 0) {
+				return cmp;
+			}
+			return j1.order < j2.order ? -1 : (j1.order == j2.order ? 0 : 1);
+		}
+	});
+
+	private final Map<String, JobQueue> jobs = new HashMap<String, JobQueue>();
+
+	/** Virtuelle Zeit des zuletzt bedienten Jobs */
+	private double virtualTime;
+
+	private long order;
+
+	private int size;
+
+	@Override
+	public void add(WorkerTask task) {
+		JobQueue job = this.jobs.get(task.getJobId());
+		if (job == null) {
+			// ein neuer job startet bei der aktuellen virtuellen zeit, sonst wuerde er nachholen, was er verpasst hat
+			job = new JobQueue(this.virtualTime, this.order++);
+			this.jobs.put(task.getJobId(), job);
+			this.active.add(job);
+		}
+		job.weight = Math.max(1, task.getPriority());
+		if (task.isRetry()) {
+			job.retries.add(task);
+		} else {
+			job.tasks.add(task);
+		}
+		this.size++;
+	}
+
+	@Override
+	public WorkerTask next() {
+		JobQueue job = this.active.pollFirst();
+		if (job == null) {
+			return null;
+		}
+		WorkerTask task = job.retries.isEmpty() ? job.tasks.poll() : job.retries.poll();
+		this.size--;
+		this.virtualTime = job.virtualTime;
+		job.virtualTime += 1.0 / job.weight;
+		if (job.isEmpty()) {
+			this.jobs.remove(task.getJobId());
+		} else {
+			this.active.add(job);
+		}
+		return task;
+	}
+
+	@Override
+	public boolean remove(WorkerTask task) {
+		JobQueue job = this.jobs.get(task.getJobId());
+		if (job == null || !(job.retries.remove(task) || job.tasks.remove(task))) {
+			return false;
+		}
+		this.size--;
+		if (job.isEmpty()) {
+			this.active.remove(job);
+			this.jobs.remove(task.getJobId());
+		}
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	private static final class JobQueue {
+		final Queue<WorkerTask> retries = new LinkedList<WorkerTask>();
+		final Queue<WorkerTask> tasks = new LinkedList<WorkerTask>();
+		final long order;
+		double virtualTime;
+		int weight = 1;
+
+		JobQueue(double virtualTime, long order) {
+			this.virtualTime = virtualTime;
+			this.order = order;
+		}
+
+		boolean isEmpty() {
+			return this.retries.isEmpty() && this.tasks.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+import ch.zhaw.mapreduce.SchedulingPolicy;
+import ch.zhaw.mapreduce.WorkerTask;
+
+/**
+ * Die Tasks werden in der Reihenfolge ausgeführt, in der sie eingereiht wurden.
+ */
+public final class FifoSchedulingPolicy implements SchedulingPolicy {
+
+	private final Queue<WorkerTask> tasks = new LinkedList<WorkerTask>();
+
+	@Override
+	public void add(WorkerTask task) {
+		this.tasks.add(task);
+	}
+
+	@Override
+	public WorkerTask next() {
+		return this.tasks.poll();
+	}
+
+	@Override
+	public boolean remove(WorkerTask task) {
+		return this.tasks.remove(task);
+	}
+
+	@Override
+	public int size() {
+		return this.tasks.size();
+	}
+}
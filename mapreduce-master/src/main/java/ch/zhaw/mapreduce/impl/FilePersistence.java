@@ -2,17 +2,15 @@ package ch.zhaw.mapreduce.impl;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,9 +20,11 @@ import javax.inject.Named;
 
 import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.ResultCursor;
 
 /**
- * Persistenz für Dateisysteme. Die (Zwischen-) Resultate werden in eine Dateigeschrieben.
+ * Persistenz für Dateisysteme. Die (Zwischen-) Resultate werden in eine Datei geschrieben, und zwar im binären Format
+ * von {@link RecordFile} statt mit Java-Serialisierung.
  * 
  * @author Reto Hablützel (rethab)
  * 
@@ -35,23 +35,29 @@ public class FilePersistence implements Persistence {
 
 	private static final Random seed = new Random();
 
-	private final File mapBaseDir;
-
 	private final File reduceBaseDir;
 
+	/** Enthält ein Verzeichnis pro Reduce-Partition mit den Map-Resultaten dieser Partition */
+	private final File partitionBaseDir;
+
+	/** Dateien, die seit dem letzten sync geschrieben wurden */
+	private final Queue<File> unsynced = new ConcurrentLinkedQueue<File>();
+
+	private volatile BlockCodec codec = BlockCodec.NONE;
+
 	@Inject
 	FilePersistence(@Named("filepersistence.directory") String directory) {
 		String distinctor = Long.toString(System.currentTimeMillis()) + seed.nextInt(Integer.MAX_VALUE);
-		this.mapBaseDir = new File(directory, distinctor + "map");
 		this.reduceBaseDir = new File(directory, distinctor + "red");
+		this.partitionBaseDir = new File(directory, distinctor + "part");
 	}
 
 	@PostConstruct
 	public void initDirectories() {
-		createAndWritable(mapBaseDir);
+		createAndWritable(partitionBaseDir);
 		createAndWritable(reduceBaseDir);
-		LOG.log(Level.INFO, "Using directory {0} and {1} for persistence", new Object[] { mapBaseDir.getAbsolutePath(),
-				reduceBaseDir.getAbsolutePath() });
+		LOG.log(Level.INFO, "Using directory {0} and {1} for persistence", new Object[] {
+				partitionBaseDir.getAbsolutePath(), reduceBaseDir.getAbsolutePath() });
 	}
 
 	private void createAndWritable(File dir) {
@@ -68,86 +74,80 @@ public class FilePersistence implements Persistence {
 		}
 	}
 
+	/**
+	 * {@inheritDoc} Standardmässig aus dem Property Compression.
+	 */
+	@Inject
+	@Override
+	public void setCompression(@Named("Compression") String codec) {
+		this.codec = BlockCodec.forName(codec);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public List<KeyValuePair> getMapResults() {
-		File[] files = this.mapBaseDir.listFiles();
-		if (files == null || files.length == 0) {
-			LOG.log(Level.FINEST, "No results found in {0}", this.mapBaseDir.getAbsolutePath());
-			return Collections.emptyList();
-		}
-
-		List<KeyValuePair> results = new LinkedList<KeyValuePair>();
-		for (File file : files) {
-			ObjectInputStream ois = null;
-			try {
-				ois = new ObjectInputStream(new FileInputStream(file));
-				results.addAll((List<KeyValuePair>) ois.readObject());
-			} catch (Exception e) {
-				LOG.log(Level.SEVERE, "Failed to read storage file ", e);
-			} finally {
-				if (ois != null) {
-					try {
-						ois.close();
-					} catch (Exception ignore) {
-					}
-				}
-			}
-
-		}
-		return results;
+		return ChainedCursor.toList(openMapResults());
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
+	public List<KeyValuePair> getMapResults(int partition) {
+		return ChainedCursor.toList(openMapResults(partition));
+	}
+
+	/**
+	 * {@inheritDoc} Nach Key sortiert, damit die Resultate ohne weiteres Sortieren zusammengeführt werden können.
+	 */
+	@Override
 	public Map<String, List<String>> getReduceResults() {
-		File[] files = this.reduceBaseDir.listFiles();
-		if (files == null || files.length == 0) {
-			LOG.log(Level.FINEST, "No results found in {0}", this.reduceBaseDir.getAbsolutePath());
-			return Collections.emptyMap();
-		}
+		return ReduceResults.collect(openReduceResults());
+	}
 
-		Map<String, List<String>> results = new HashMap<String, List<String>>();
-		for (File file : files) {
-			ObjectInputStream ois = null;
-			try {
-				ois = new ObjectInputStream(new FileInputStream(file));
-				ReduceResult res = (ReduceResult) ois.readObject();
-				if (results.put(res.key, res.values) != null) {
-					LOG.log(Level.SEVERE, "Stored dupicated Reduce Results for Key = {0}", res.key);
-				}
-			} catch (Exception e) {
-				LOG.log(Level.SEVERE, "Failed to read storage file ", e);
-			} finally {
-				if (ois != null) {
-					try {
-						ois.close();
-					} catch (Exception ignore) {
-					}
-				}
+	/**
+	 * {@inheritDoc} Die Partitionen sind die Unterverzeichnisse, die beim Speichern angelegt wurden.
+	 */
+	@Override
+	public ResultCursor openMapResults() {
+		List<Integer> partitions = new ArrayList<Integer>();
+		File[] dirs = this.partitionBaseDir.listFiles();
+		if (dirs != null) {
+			for (File dir : dirs) {
+				partitions.add(Integer.valueOf(dir.getName()));
 			}
-
 		}
-		return results;
+		return ChainedCursor.ofPartitions(this, partitions);
 	}
 
 	@Override
-	public boolean destroyMap(String taskUuid) {
-		File file = new File(this.mapBaseDir, taskUuid);
-		if (!file.exists()) {
-			LOG.log(Level.FINE, "File did not exist {0}", file.getAbsolutePath());
-			return true;
-		} else if (file.delete()) {
-			LOG.log(Level.FINEST, "Successfully deleted {0}", file.getAbsolutePath());
-			return true;
-		} else {
-			LOG.log(Level.WARNING, "Failed to delete {0}", file.getAbsolutePath());
-			return false;
+	public ResultCursor openMapResults(int partition) {
+		return new FileCursor(new File(this.partitionBaseDir, Integer.toString(partition)));
+	}
+
+	@Override
+	public ResultCursor openReduceResults() {
+		return new FileCursor(this.reduceBaseDir);
+	}
+
+	/**
+	 * {@inheritDoc} Der Teil liegt in jeder Partition als eigene Datei.
+	 */
+	@Override
+	public boolean destroyMap(String sliceId) {
+		File[] partitions = this.partitionBaseDir.listFiles();
+		if (partitions != null) {
+			for (File partition : partitions) {
+				File slice = new File(partition, sliceId);
+				if (slice.exists() && !slice.delete()) {
+					LOG.log(Level.WARNING, "Failed to delete {0}", slice.getAbsolutePath());
+					return false;
+				}
+			}
 		}
+		return true;
 	}
 
 	@Override
@@ -166,78 +166,133 @@ public class FilePersistence implements Persistence {
 	}
 
 	@Override
-	public boolean storeReduceResults(String taskUuid, String key, List<String> redRes) {
-		File file = new File(this.reduceBaseDir, taskUuid);
-		if (file.exists()) {
-			LOG.log(Level.SEVERE, "File {0} for TaskUuid {1} already exists", new Object[] { file.getAbsolutePath(),
-					taskUuid });
-			return false;
-		}
+	public boolean storeReduceResults(String taskUuid, List<KeyValuePair> redRes) {
+		return store(new File(this.reduceBaseDir, taskUuid), taskUuid, redRes);
+	}
 
-		ObjectOutputStream oos = null;
-		try {
-			oos = new ObjectOutputStream(new FileOutputStream(file));
-			oos.writeObject(new ReduceResult(key, redRes));
-			LOG.log(Level.FINEST, "Written to storage file {0}", file.getAbsolutePath());
-			return true;
-		} catch (IOException e) {
-			LOG.log(Level.SEVERE, "Failed to write to storage file ", e);
+	@Override
+	public boolean storeMapResults(String taskUuid, List<KeyValuePair> mapRes) {
+		return storeMapResults(taskUuid, 0, mapRes);
+	}
+
+	@Override
+	public boolean storeMapResults(String sliceId, int partition, List<KeyValuePair> mapRes) {
+		File dir = new File(this.partitionBaseDir, Integer.toString(partition));
+		// mehrere map tasks koennen gleichzeitig das verzeichnis erstellen
+		if (!dir.mkdir() && !dir.isDirectory()) {
+			LOG.log(Level.SEVERE, "Failed to create directory {0}", dir.getAbsolutePath());
 			return false;
-		} finally {
-			if (oos != null) {
-				try {
-					oos.close();
-				} catch (Exception ignore) {
-				}
-			}
 		}
+		return store(new File(dir, sliceId), sliceId, mapRes);
 	}
 
-	@Override
-	public boolean storeMapResults(String taskUuid, List<KeyValuePair> mapRes) {
-		File file = new File(this.mapBaseDir, taskUuid);
+	private boolean store(File file, String taskUuid, List<KeyValuePair> results) {
 		if (file.exists()) {
 			LOG.log(Level.SEVERE, "File {0} for TaskUuid {1} already exists", new Object[] { file.getAbsolutePath(),
 					taskUuid });
 			return false;
 		}
 
-		ObjectOutputStream oos = null;
 		try {
-			oos = new ObjectOutputStream(new FileOutputStream(file));
-			oos.writeObject(mapRes);
+			RecordFile.write(file, results, this.codec);
+			this.unsynced.add(file);
 			LOG.log(Level.FINEST, "Written to storage file {0}", file.getAbsolutePath());
 			return true;
 		} catch (IOException e) {
 			LOG.log(Level.SEVERE, "Failed to write to storage file ", e);
 			return false;
-		} finally {
-			if (oos != null) {
+		}
+	}
+
+	/**
+	 * {@inheritDoc} Jede Datei braucht ihr eigenes fsync, die Disk kann sie aber zusammen schreiben, statt nach jedem
+	 * Task zu warten.
+	 */
+	@Override
+	public boolean sync() {
+		boolean success = true;
+		File file;
+		while ((file = this.unsynced.poll()) != null) {
+			FileInputStream in;
+			try {
+				in = new FileInputStream(file);
+			} catch (FileNotFoundException e) {
+				// schon wieder geloescht, muss also auch nicht dauerhaft sein
+				continue;
+			}
+			try {
+				in.getChannel().force(true);
+			} catch (IOException e) {
+				LOG.log(Level.SEVERE, "Failed to sync storage file ", e);
+				success = false;
+			} finally {
 				try {
-					oos.close();
-				} catch (Exception ignore) {
+					in.close();
+				} catch (IOException ignore) {
 				}
 			}
 		}
+		return success;
 	}
 
 	@Override
 	public boolean suicide() {
 		LOG.entering(getClass().getName(), "suicide");
+		this.unsynced.clear();
 		boolean success = true;
-		if (!deletedir(this.mapBaseDir)) {
-			LOG.log(Level.SEVERE, "Failed to delete {0}", mapBaseDir.getAbsolutePath());
-			success = false;
-		}
 		if (!deletedir(this.reduceBaseDir)) {
 			LOG.log(Level.SEVERE, "Failed to delete {0}", reduceBaseDir.getAbsolutePath());
 			success = false;
 		}
+		if (!deletedir(this.partitionBaseDir)) {
+			LOG.log(Level.SEVERE, "Failed to delete {0}", partitionBaseDir.getAbsolutePath());
+			success = false;
+		}
 
 		LOG.exiting(getClass().getName(), "suicide", success);
 		return success;
 	}
 	
+	/**
+	 * Liest die Dateien eines Verzeichnisses nacheinander. Eine Datei enthält die Resultate eines Tasks und wird ganz
+	 * gelesen, bevor ihre Resultate geliefert werden. Eine beschädigte Datei bricht das Lesen ab, damit nicht
+	 * unbemerkt Resultate fehlen. Übersprungen wird nur eine Datei, die seit dem Öffnen gelöscht wurde.
+	 */
+	private static final class FileCursor extends ChainedCursor {
+
+		private final File[] files;
+
+		private int index;
+
+		FileCursor(File dir) {
+			File[] files = dir.listFiles();
+			if (files == null || files.length == 0) {
+				LOG.log(Level.FINEST, "No results found in {0}", dir.getAbsolutePath());
+				files = new File[0];
+			}
+			this.files = files;
+		}
+
+		@Override
+		protected Iterator<KeyValuePair> nextSource() {
+			while (this.index < this.files.length) {
+				File file = this.files[this.index++];
+				try {
+					List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+					RecordFile.readAll(file, results);
+					return results.iterator();
+				} catch (IOException e) {
+					if (file.exists()) {
+						throw new IllegalStateException("Failed to read storage file " + file.getAbsolutePath(), e);
+					}
+					// mit destroyMap oder destroyReduce geloescht, nachdem das verzeichnis gelesen wurde
+					LOG.log(Level.FINE, "Storage file {0} was deleted", file.getAbsolutePath());
+				}
+			}
+			return null;
+		}
+	}
+
 	/**
 	 * Löscht ein Verzeichnis rekursiv, da die Standard-Java-Methode nur leere Verzeichnisse löschen kann.
 	 * @return true, wenn das Verzeichnis gelöscht werden konnte, sonst false
@@ -252,20 +307,4 @@ public class FilePersistence implements Persistence {
 		}
 		return f.delete();
 	}
-
-	/**
-	 * Diese Klasse wird ausschliesslich zum speichern der Reduce-Resultate verwenet und ist gegen aussen nicht sichtbar.
-	 * @author Reto Hablützel (rethab)
-	 *
-	 */
-	private static class ReduceResult implements Serializable {
-		private static final long serialVersionUID = 1364848029826475659L;
-		final String key;
-		final List<String> values;
-
-		ReduceResult(String key, List<String> values) {
-			this.key = key;
-			this.values = values;
-		}
-	}
 }
@@ -1,29 +1,207 @@
 package ch.zhaw.mapreduce.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
 
 import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+import ch.zhaw.mapreduce.Partitioner;
 import ch.zhaw.mapreduce.Shuffler;
 
+/**
+ * Gruppiert die Resultate im Speicher. Jeder Key wird schon beim Hinzufügen seiner Partition zugeteilt und dort
+ * gruppiert. Die Worker, die gleichzeitig Resultate abliefern, teilen sich so die Arbeit auf alle Kerne auf und
+ * blockieren sich nur, wenn sie den gleichen Key haben. Am Ende gibt es keinen Durchgang mehr über alle Keys, die
+ * Partitionen werden ohne Kopie an die Reduce Tasks gegeben. Die Werte eines Keys werden als GroupedValues gehalten,
+ * der Key also nur einmal pro Key statt einmal pro Wert. Wird die Liste eines Keys lang, fasst der ShuffleCombiner sie
+ * zusammen. Der KeyCounter zählt die Werte pro Key, bevor sie kombiniert werden.
+ */
 public class InMemoryShuffler implements Shuffler {
 
+	/** Eine Map pro Partition, Index ist die Nummer der Partition */
+	private final List<ConcurrentMap<String, GroupedValues>> partitions;
+
+	private final Partitioner partitioner;
+
+	private final int nPartitions;
+
+	private final ShuffleCombiner combiner;
+
+	private final KeyCounter counter;
+
+	@Inject
+	public InMemoryShuffler(Partitioner partitioner, @Named("ReducePartitions") int nPartitions) {
+		this(partitioner, nPartitions, ShuffleCombiner.none());
+	}
+
+	public InMemoryShuffler(Partitioner partitioner, int nPartitions, ShuffleCombiner combiner) {
+		this(partitioner, nPartitions, combiner, KeyCounter.none());
+	}
+
+	public InMemoryShuffler(Partitioner partitioner, int nPartitions, ShuffleCombiner combiner, KeyCounter counter) {
+		this.partitioner = partitioner;
+		this.nPartitions = nPartitions;
+		this.combiner = combiner;
+		this.counter = counter;
+		this.partitions = new ArrayList<ConcurrentMap<String, GroupedValues>>(nPartitions);
+		for (int i = 0; i < nPartitions; i++) {
+			this.partitions.add(new ConcurrentHashMap<String, GroupedValues>());
+		}
+	}
+
+	/**
+	 * Shuffler, der alle Keys in eine einzige Partition gruppiert.
+	 */
+	public InMemoryShuffler() {
+		this(new HashPartitioner(), 1);
+	}
+
+	/**
+	 * {@inheritDoc} Die Resultate werden zuerst ohne Lock nach Key gruppiert und ihren Partitionen zugeteilt. Wirft
+	 * der Partitioner, ist noch nichts abgeliefert und der Map Task kann wiederholt werden. Das Hinzufügen danach kann
+	 * nicht mehr fehlschlagen, auch nicht wenn der Combiner wirft (siehe {@link ShuffleCombiner#tryCombine}). Sonst
+	 * wären die schon hinzugefügten Werte nach der Wiederholung doppelt. Pro Key wird nur einmal gelockt.
+	 */
 	@Override
-	public Map<String, List<KeyValuePair>> shuffle(List<KeyValuePair> results) {
-		Map<String, List<KeyValuePair>> mapResults = new HashMap<String, List<KeyValuePair>>();
+	public void put(List<KeyValuePair> results) {
+		Map<String, Staged> staged = new HashMap<String, Staged>();
 		for (KeyValuePair pair : results) {
-			String key = (String) pair.getKey();
-			String value = (String) pair.getValue();
-			if (mapResults.containsKey(key)) {
-				mapResults.get(key).add(new KeyValuePair(key, value));
-			} else {
-				List<KeyValuePair> newKeyValueList = new LinkedList<KeyValuePair>();
-				newKeyValueList.add(new KeyValuePair(key, value));
-				mapResults.put(key, newKeyValueList);
+			Staged stage = staged.get(pair.getKey());
+			if (stage == null) {
+				stage = new Staged(this.partitions.get(this.partitioner.partition(pair.getKey(), this.nPartitions)),
+						new GroupedValues(pair.getKey()));
+				staged.put(pair.getKey(), stage);
+			}
+			stage.values.addValue(pair.getValue());
+		}
+		for (Staged stage : staged.values()) {
+			String key = stage.values.getKey();
+			this.counter.add(key, stage.values.size());
+			GroupedValues values = stage.partition.get(key);
+			if (values == null) {
+				GroupedValues newValues = new GroupedValues(key);
+				values = stage.partition.putIfAbsent(key, newValues);
+				if (values == null) {
+					values = newValues;
+				}
+			}
+			synchronized (values) {
+				int before = values.size();
+				values.addAll(stage.values);
+				if (this.combiner.isDue(before, values.size())) {
+					this.combiner.tryCombine(values);
+				}
 			}
 		}
-		return mapResults;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * {@inheritDoc} Im Speicher gibt es nichts zu schreiben.
+	 */
+	@Override
+	public void put(List<KeyValuePair> mapResults, WriteBehind writeBehind, WriteBehind.Callback delivered) {
+		put(mapResults);
+		delivered.written(true);
+	}
+
+	/**
+	 * {@inheritDoc} Gruppiert wird im Speicher über alle Partitionen, daher teilen die Map Tasks nicht auf.
+	 */
+	@Override
+	public MapPartitioning getMapPartitioning() {
+		return null;
+	}
+
+	@Override
+	public void finish() {
+	}
+
+	/**
+	 * {@inheritDoc} Die heissen Keys werden aus ihren Partitionen entfernt.
+	 */
+	@Override
+	public Map<String, List<KeyValuePair>> takeHotKeys() {
+		Map<String, List<KeyValuePair>> hot = new HashMap<String, List<KeyValuePair>>();
+		for (String key : this.counter.hotKeys()) {
+			GroupedValues values = this.partitions.get(this.partitioner.partition(key, this.nPartitions)).remove(key);
+			if (values != null) {
+				hot.put(key, values);
+			}
+		}
+		return hot;
+	}
+
+	@Override
+	public Iterator<Map<String, List<KeyValuePair>>> partitions() {
+		// ein schlechter partitioner oder wenige keys koennen partitionen leer lassen. dafuer braucht es keinen task
+		List<Map<String, List<KeyValuePair>>> nonEmpty = new ArrayList<Map<String, List<KeyValuePair>>>();
+		for (Map<String, GroupedValues> partition : this.partitions) {
+			if (!partition.isEmpty()) {
+				nonEmpty.add(Collections.<String, List<KeyValuePair>> unmodifiableMap(partition));
+			}
+		}
+		return nonEmpty.iterator();
+	}
+
+	@Override
+	public Iterator<Entry<String, List<KeyValuePair>>> entries() {
+		final Iterator<ConcurrentMap<String, GroupedValues>> parts = this.partitions.iterator();
+		return new Iterator<Entry<String, List<KeyValuePair>>>() {
+
+			private Iterator<Entry<String, List<KeyValuePair>>> current = Collections
+					.<Entry<String, List<KeyValuePair>>> emptySet().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!this.current.hasNext() && parts.hasNext()) {
+					this.current = Collections.<String, List<KeyValuePair>> unmodifiableMap(parts.next()).entrySet()
+							.iterator();
+				}
+				return this.current.hasNext();
+			}
+
+			@Override
+			public Entry<String, List<KeyValuePair>> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return this.current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void discard() {
+		// ein AfterShuffleHook koennte die maps noch lesen, den rest erledigt der garbage collector
+	}
+
+	/**
+	 * Die Werte eines Keys aus einem Aufruf von put und die Partition, in die sie gehören.
+	 */
+	private static final class Staged {
+		final ConcurrentMap<String, GroupedValues> partition;
+
+		final GroupedValues values;
+
+		Staged(ConcurrentMap<String, GroupedValues> partition, GroupedValues values) {
+			this.partition = partition;
+			this.values = values;
+		}
+	}
+}
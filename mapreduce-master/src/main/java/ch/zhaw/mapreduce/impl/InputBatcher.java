@@ -0,0 +1,68 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Fasst die Inputs einer Berechnung zu Batches zusammen, damit bei vielen kleinen Inputs nicht für jeden einzelnen ein
+ * eigener MapWorkerTask erstellt werden muss. Ein Batch wird abgeschlossen, sobald er die maximale Anzahl Inputs
+ * enthält oder seine Grösse die maximale Anzahl Zeichen erreicht hat. Ein Batch enthält immer mindestens einen Input,
+ * auch wenn dieser alleine schon grösser ist.
+ *
+ * Die Inputs werden erst gelesen, wenn der nächste Batch angefordert wird.
+ */
+public final class InputBatcher implements Iterator<List<String>> {
+
+	private final Iterator<String> inputs;
+
+	private final int maxInputs;
+
+	private final long maxChars;
+
+	/**
+	 * @param inputs
+	 *            die Inputs der Berechnung
+	 * @param maxInputs
+	 *            maximale Anzahl Inputs pro Batch, mindestens 1
+	 * @param maxChars
+	 *            maximale Anzahl Zeichen pro Batch als Näherung für die Grösse. 0 für keine Beschränkung
+	 */
+	public InputBatcher(Iterator<String> inputs, int maxInputs, long maxChars) {
+		if (maxInputs < 1) {
+			throw new IllegalArgumentException("At least one Input per Batch required: " + maxInputs);
+		}
+		this.inputs = inputs;
+		this.maxInputs = maxInputs;
+		this.maxChars = maxChars;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.inputs.hasNext();
+	}
+
+	@Override
+	public List<String> next() {
+		if (!this.inputs.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		// ArrayList, weil der Batch fuer das Socket Plugin serialisiert wird
+		List<String> batch = new ArrayList<String>(Math.min(this.maxInputs, 1024));
+		long chars = 0;
+		while (this.inputs.hasNext() && batch.size() < this.maxInputs
+				&& (this.maxChars <= 0 || chars < this.maxChars)) {
+			String input = this.inputs.next();
+			batch.add(input);
+			chars += input.length();
+		}
+		return batch;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
@@ -0,0 +1,156 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.Pool;
+
+/**
+ * Liest die Inputs einer Berechnung auf einem eigenen Thread im Voraus, damit der Master nicht auf einen langsamen
+ * Iterator (z.B. beim Parsen von Dateien) warten muss, während die Worker nichts zu tun haben. Es werden höchstens
+ * perWorker Elemente pro Worker im Pool im Voraus gelesen, die Tiefe wächst also mit dem Pool.
+ *
+ * Mit perWorker 0 wird nichts im Voraus gelesen, sondern der Iterator direkt auf dem Thread des Masters gelesen.
+ */
+public final class InputPrefetcher<T> {
+
+	private static final Logger LOG = Logger.getLogger(InputPrefetcher.class.getName());
+
+	/** Intervall in Millisekunden, in dem der Thread prüft, ob der Pool gewachsen ist */
+	private static final long RECHECK_INTERVAL = 100;
+
+	/** Markiert das Ende der Inputs in der Queue */
+	private static final Object END = new Object();
+
+	private final Iterator<T> source;
+
+	private final Pool pool;
+
+	private final int perWorker;
+
+	private final BlockingQueue<Object> prefetched = new LinkedBlockingQueue<Object>();
+
+	private final Lock lock = new ReentrantLock();
+
+	private final Condition taken = this.lock.newCondition();
+
+	/** Fehler des Iterators, wird an den Master weitergegeben */
+	private volatile Throwable failure;
+
+	private Future<?> reader;
+
+	private boolean done;
+
+	public InputPrefetcher(Iterator<T> source, Pool pool, int perWorker) {
+		this.source = source;
+		this.pool = pool;
+		this.perWorker = perWorker;
+	}
+
+	/**
+	 * Startet das Lesen im Voraus auf dem gegebenen Executor. Ohne Vorauslesen passiert nichts.
+	 */
+	public void start(ExecutorService exec) {
+		if (this.perWorker > 0) {
+			this.reader = exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					read();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Blockiert, bis das nächste Element gelesen ist.
+	 *
+	 * @return das nächste Element oder null, wenn es keine mehr gibt
+	 */
+	@SuppressWarnings("unchecked")
+	public T take() throws InterruptedException {
+		if (this.done) {
+			return null;
+		}
+		if (this.reader == null) {
+			if (this.source.hasNext()) {
+				return this.source.next();
+			}
+			this.done = true;
+			return null;
+		}
+		Object next = this.prefetched.take();
+		this.lock.lock();
+		try {
+			this.taken.signal();
+		} finally {
+			this.lock.unlock();
+		}
+		if (next == END) {
+			this.done = true;
+			Throwable t = this.failure;
+			if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t != null) {
+				throw (RuntimeException) t;
+			}
+			return null;
+		}
+		return (T) next;
+	}
+
+	/**
+	 * Beendet das Lesen im Voraus, z.B. weil die Berechnung abgebrochen wurde.
+	 */
+	public void close() {
+		if (this.reader != null) {
+			this.reader.cancel(true);
+		}
+	}
+
+	private void read() {
+		try {
+			while (this.source.hasNext()) {
+				awaitSpace();
+				this.prefetched.add(this.source.next());
+			}
+		} catch (InterruptedException e) {
+			LOG.fine("Prefetching stopped");
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Failed to read Input", e);
+			this.failure = e;
+		} catch (Error e) {
+			this.failure = e;
+			throw e;
+		} finally {
+			this.prefetched.add(END);
+		}
+	}
+
+	private void awaitSpace() throws InterruptedException {
+		this.lock.lock();
+		try {
+			while (this.prefetched.size() >= depth()) {
+				this.taken.await(RECHECK_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return wie viele Elemente im Voraus gelesen werden
+	 */
+	int depth() {
+		return Math.max(1, this.pool.getCurrentPoolSize()) * this.perWorker;
+	}
+}
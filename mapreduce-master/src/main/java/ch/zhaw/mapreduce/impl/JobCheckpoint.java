@@ -0,0 +1,464 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+import ch.zhaw.mapreduce.Shuffler;
+
+/**
+ * Der Checkpoint einer Berechnung. Für jeden abgeschlossenen Map Task werden seine Resultate in eine eigene Datei
+ * geschrieben und im Manifest vermerkt, unter welchem Schlüssel (Nummer und Hash des Batches) sie liegen. Wird die
+ * Berechnung nach einem Absturz des Masters mit der gleichen Job ID neu gestartet, werden die vermerkten Batches nicht
+ * nochmals ausgeführt, sondern ihre Resultate direkt dem Shuffler übergeben. So wird auch der Zustand des Shufflers
+ * wiederhergestellt.
+ *
+ * Die erste Zeile im Manifest enthält die Job ID. Gehört das Verzeichnis einer anderen Berechnung, kann der Checkpoint
+ * nicht geöffnet werden.
+ *
+ * Eine Zeile im Manifest wird erst geschrieben, wenn die Datei mit den Resultaten vollständig auf der Disk ist. Eine
+ * abgeschnittene letzte Zeile nach einem Absturz wird ignoriert, der Batch dann eben nochmals ausgeführt.
+ *
+ * Mit einem WriteBehind werden die Dateien mit {@link #append} geschrieben und erst mit {@link #sync} für alle Batches
+ * zusammen auf die Disk gezwungen und im Manifest vermerkt.
+ */
+public class JobCheckpoint {
+
+	private static final Logger LOG = Logger.getLogger(JobCheckpoint.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final String MANIFEST = "manifest";
+
+	/** null, wenn nichts aufgezeichnet wird */
+	private final File directory;
+
+	/** Mit diesem Codec werden die Resultate geschrieben, gelesen wird mit dem Codec in der Datei */
+	private final BlockCodec codec;
+
+	/** Schlüssel der abgeschlossenen Batches auf die Dateien mit ihren Resultaten */
+	private final Map<String, File> completed = new ConcurrentHashMap<String, File>();
+
+	private FileOutputStream manifest;
+
+	/** Anzahl ins Manifest geschriebener Zeilen, geschützt durch this */
+	private long appended;
+
+	/** Damit immer nur ein Thread das Manifest synct */
+	private final Object syncLock = new Object();
+
+	/** Anzahl Zeilen, die sicher auf der Disk sind, geschützt durch syncLock */
+	private long synced;
+
+	/** Geschriebene, aber noch nicht vermerkte Batches: Schlüssel -> temporäre Datei, geschützt durch pending */
+	private final Map<String, File> pending = new LinkedHashMap<String, File>();
+
+	private JobCheckpoint() {
+		this.directory = null;
+		this.codec = BlockCodec.NONE;
+	}
+
+	/**
+	 * Öffnet den Checkpoint im Verzeichnis und liest das Manifest, falls es schon eines gibt.
+	 *
+	 * @throws IOException
+	 *             auch, wenn das Manifest zu einer anderen Job ID gehört
+	 */
+	JobCheckpoint(File directory, String jobId, BlockCodec codec) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Failed to create Checkpoint Directory " + directory.getAbsolutePath());
+		}
+		this.directory = directory;
+		this.codec = codec;
+		File file = new File(directory, MANIFEST);
+		boolean terminated = true;
+		if (file.length() == 0) {
+			createManifest(file, jobId);
+		} else {
+			terminated = load(file, jobId);
+		}
+		this.manifest = new FileOutputStream(file, true);
+		if (!terminated) {
+			// sonst wuerde die naechste zeile an die abgeschnittene angehaengt
+			this.manifest.write('\n');
+		}
+	}
+
+	/**
+	 * Zeichnet nichts auf und kennt keine abgeschlossenen Batches.
+	 */
+	public static JobCheckpoint disabled() {
+		return new JobCheckpoint();
+	}
+
+	/**
+	 * Legt das Manifest mit der Job ID an. Es wird zuerst unter einem anderen Namen geschrieben, damit nach einem
+	 * Absturz nie ein Manifest ohne vollständige Job ID existiert.
+	 */
+	private void createManifest(File file, String jobId) throws IOException {
+		File tmp = new File(this.directory, MANIFEST + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(header(jobId).getBytes(UTF8));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Failed to create Checkpoint Manifest " + file.getAbsolutePath());
+		}
+	}
+
+	private static String header(String jobId) throws IOException {
+		// kodiert, damit leerzeichen und zeilenumbrueche in der job id das manifest nicht zerlegen
+		return "job " + URLEncoder.encode(jobId, "UTF-8") + "\n";
+	}
+
+	/**
+	 * @return true, wenn das Manifest mit einem Zeilenumbruch endet
+	 */
+	private boolean load(File file, String jobId) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String header = reader.readLine();
+			if (!header(jobId).equals(header + "\n")) {
+				throw new IOException("Checkpoint " + this.directory.getAbsolutePath() + " does not belong to Job "
+						+ jobId + ": " + header);
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] tokens = line.split(" ");
+				if (tokens.length != 3 || !"map".equals(tokens[0])) {
+					LOG.log(Level.WARNING, "Ignore invalid Line in Checkpoint Manifest: {0}", line);
+					continue;
+				}
+				File results = new File(this.directory, tokens[2]);
+				if (results.isFile()) {
+					this.completed.put(tokens[1], results);
+				} else {
+					LOG.log(Level.WARNING, "Results of Batch {0} are missing", tokens[1]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(raf.length() - 1);
+			return raf.read() == '\n';
+		} finally {
+			raf.close();
+		}
+	}
+
+	public boolean isEnabled() {
+		return this.directory != null;
+	}
+
+	/**
+	 * Anzahl Batches, die in diesem Checkpoint abgeschlossen sind.
+	 */
+	public int completedBatches() {
+		return this.completed.size();
+	}
+
+	/**
+	 * Der Schlüssel eines Batches. Er enthält die Nummer des Batches und einen Hash über seine Inputs, damit nach einem
+	 * Neustart mit anderen Inputs keine falschen Resultate verwendet werden.
+	 *
+	 * @param seq
+	 *            die Nummer des Batches innerhalb der Berechnung
+	 */
+	public static String batchKey(int seq, List<String> inputs) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not available", e);
+		}
+		for (String input : inputs) {
+			byte[] bytes = input.getBytes(UTF8);
+			// die laenge trennt die inputs, sonst haetten [ab, c] und [a, bc] den gleichen hash
+			digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+					(byte) (bytes.length >>> 8), (byte) bytes.length });
+			digest.update(bytes);
+		}
+		StringBuilder key = new StringBuilder().append(seq).append('-');
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Liefert die Resultate eines abgeschlossenen Batches.
+	 *
+	 * @return die Resultate oder null, wenn der Batch nicht abgeschlossen ist oder seine Resultate nicht gelesen werden
+	 *         können. Dann muss er nochmals ausgeführt werden.
+	 */
+	public List<KeyValuePair> completedBatch(String key) {
+		File file = this.completed.get(key);
+		if (file == null) {
+			return null;
+		}
+		List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+		try {
+			RecordFile.readAll(file, results);
+			return results;
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Failed to read Results of Batch " + key + ", running it again", e);
+			this.completed.remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Schreibt die Resultate eines Batches und vermerkt ihn danach im Manifest. Beides wird auf die Disk gezwungen,
+	 * bevor die Methode zurückkehrt. Zeichnen mehrere Map Tasks gleichzeitig auf, teilen sie sich ein sync des
+	 * Manifests.
+	 */
+	public void record(String key, List<KeyValuePair> results) throws IOException {
+		if (this.directory == null) {
+			return;
+		}
+		File file = publish(key, writeTemporary(key, results));
+		syncManifest(appendLine(key, file));
+		this.completed.put(key, file);
+	}
+
+	/**
+	 * Schreibt die Resultate eines Batches, ohne sie auf die Disk zu zwingen. Vermerkt wird der Batch erst mit dem
+	 * nächsten {@link #sync}.
+	 */
+	public void append(String key, List<KeyValuePair> results) throws IOException {
+		if (this.directory == null) {
+			return;
+		}
+		File tmp = writeTemporary(key, results);
+		synchronized (this.pending) {
+			this.pending.put(key, tmp);
+		}
+	}
+
+	/**
+	 * Zwingt die Dateien aller mit append geschriebenen Batches auf die Disk und vermerkt sie danach mit einem
+	 * einzigen sync im Manifest.
+	 *
+	 * @return false, wenn nicht alle Batches vermerkt werden konnten
+	 */
+	public boolean sync() {
+		Map<String, File> batches;
+		synchronized (this.pending) {
+			batches = new LinkedHashMap<String, File>(this.pending);
+			this.pending.clear();
+		}
+		Map<String, File> published = new LinkedHashMap<String, File>();
+		long line = 0;
+		boolean success = true;
+		for (Map.Entry<String, File> batch : batches.entrySet()) {
+			try {
+				File file = publish(batch.getKey(), batch.getValue());
+				line = appendLine(batch.getKey(), file);
+				published.put(batch.getKey(), file);
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Failed to record Batch " + batch.getKey() + " in Checkpoint", e);
+				success = false;
+			}
+		}
+		if (published.isEmpty()) {
+			return success;
+		}
+		try {
+			syncManifest(line);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Failed to sync Checkpoint Manifest", e);
+			return false;
+		}
+		this.completed.putAll(published);
+		return success;
+	}
+
+	private File writeTemporary(String key, List<KeyValuePair> results) throws IOException {
+		File tmp = new File(this.directory, "map-" + key + ".tmp");
+		RecordFile.write(tmp, results, this.codec);
+		return tmp;
+	}
+
+	/**
+	 * Zwingt die temporäre Datei auf die Disk und gibt ihr den endgültigen Namen.
+	 */
+	private File publish(String key, File tmp) throws IOException {
+		forceFile(tmp);
+		File file = new File(this.directory, "map-" + key);
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Failed to rename " + tmp.getAbsolutePath());
+		}
+		return file;
+	}
+
+	/**
+	 * @return die Nummer der Zeile, die bis zum nächsten syncManifest noch nicht dauerhaft ist
+	 */
+	private synchronized long appendLine(String key, File file) throws IOException {
+		if (this.manifest == null) {
+			throw new IOException("Checkpoint is closed");
+		}
+		this.manifest.write(("map " + key + " " + file.getName() + "\n").getBytes(UTF8));
+		return ++this.appended;
+	}
+
+	/**
+	 * Zwingt das Manifest mindestens bis zur gegebenen Zeile auf die Disk. Ein sync nimmt alle Zeilen mit, die bis
+	 * dahin geschrieben wurden. Wer auf den Lock gewartet hat, findet seine Zeile deshalb meist schon gesynct.
+	 */
+	private void syncManifest(long line) throws IOException {
+		synchronized (this.syncLock) {
+			if (this.synced >= line) {
+				return;
+			}
+			FileOutputStream out;
+			long upTo;
+			synchronized (this) {
+				if (this.manifest == null) {
+					throw new IOException("Checkpoint is closed");
+				}
+				out = this.manifest;
+				upTo = this.appended;
+			}
+			// ohne den lock auf this, sonst wartet das schreiben der naechsten zeilen auf die disk
+			out.getFD().sync();
+			this.synced = upTo;
+		}
+	}
+
+	private static void forceFile(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.getChannel().force(true);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Ein Shuffler, der die Resultate zuerst als Batch key aufzeichnet und dann an target weitergibt. Kann nicht
+	 * aufgezeichnet werden, wird das nur geloggt, die Berechnung läuft weiter. Mit einem WriteBehind wird im
+	 * Hintergrund aufgezeichnet.
+	 */
+	public Shuffler recording(final Shuffler target, final String key) {
+		if (this.directory == null) {
+			return target;
+		}
+		return new Shuffler() {
+
+			@Override
+			public void put(List<KeyValuePair> mapResults) {
+				try {
+					record(key, mapResults);
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Failed to record Batch " + key + " in Checkpoint", e);
+				}
+				target.put(mapResults);
+			}
+
+			@Override
+			public void put(List<KeyValuePair> mapResults, WriteBehind writeBehind, WriteBehind.Callback delivered) {
+				writeBehind.record(JobCheckpoint.this, key, mapResults, new WriteBehind.Callback() {
+					@Override
+					public void written(boolean durable) {
+						// der batch wird nach einem neustart eben nochmals ausgefuehrt
+					}
+				});
+				target.put(mapResults, writeBehind, delivered);
+			}
+
+			@Override
+			public MapPartitioning getMapPartitioning() {
+				return target.getMapPartitioning();
+			}
+
+			@Override
+			public void finish() {
+				target.finish();
+			}
+
+			@Override
+			public Map<String, List<KeyValuePair>> takeHotKeys() {
+				return target.takeHotKeys();
+			}
+
+			@Override
+			public Iterator<Map<String, List<KeyValuePair>>> partitions() {
+				return target.partitions();
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, List<KeyValuePair>>> entries() {
+				return target.entries();
+			}
+
+			@Override
+			public void discard() {
+				target.discard();
+			}
+		};
+	}
+
+	/**
+	 * Schliesst das Manifest. Der Checkpoint bleibt auf der Disk, damit die Berechnung fortgesetzt werden kann.
+	 */
+	public synchronized void close() {
+		if (this.manifest == null) {
+			return;
+		}
+		try {
+			this.manifest.close();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Failed to close Checkpoint Manifest", e);
+		}
+		this.manifest = null;
+	}
+
+	/**
+	 * Löscht den Checkpoint, nachdem die Berechnung erfolgreich war.
+	 */
+	public void delete() {
+		if (this.directory == null) {
+			return;
+		}
+		close();
+		synchronized (this.pending) {
+			this.pending.clear();
+		}
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		if (!this.directory.delete()) {
+			LOG.log(Level.WARNING, "Failed to delete Checkpoint {0}", this.directory.getAbsolutePath());
+		}
+		this.completed.clear();
+	}
+}
@@ -0,0 +1,112 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+/**
+ * Zählt beim Shuffeln, wie viele Werte jeder Key bekommt, und merkt sich die Keys mit mehr als threshold Werten. Gezählt
+ * wird mit einem Count-Min Sketch: DEPTH Zeilen mit je WIDTH Zählern, jeder Key erhöht in jeder Zeile einen Zähler.
+ * Die Schätzung ist das Minimum seiner Zähler. Sie ist nie zu klein, kann aber zu gross sein, wenn andere Keys die
+ * gleichen Zähler treffen. Der Speicher ist fest, egal wie viele Keys es gibt. Nur die heissen Keys selbst werden
+ * gehalten.
+ *
+ * Thread-safe, die Zähler sind atomar.
+ */
+public final class KeyCounter {
+
+	private static final KeyCounter NONE = new KeyCounter(0);
+
+	private static final int DEPTH = 4;
+
+	/** Zweierpotenz, damit der Index mit einer Maske berechnet werden kann */
+	private static final int WIDTH = 1 << 14;
+
+	private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+	private final int threshold;
+
+	/** null, wenn nicht gezählt wird */
+	private final AtomicIntegerArray counts;
+
+	private final Set<String> hot = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * @param threshold
+	 *            ein Key mit mehr Werten ist heiss, 0 = es wird nicht gezählt
+	 */
+	public KeyCounter(int threshold) {
+		this.threshold = threshold;
+		this.counts = threshold > 0 ? new AtomicIntegerArray(DEPTH * WIDTH) : null;
+	}
+
+	/**
+	 * Zählt nie, es gibt keine heissen Keys.
+	 */
+	public static KeyCounter none() {
+		return NONE;
+	}
+
+	/**
+	 * Zählt n weitere Werte für den Key.
+	 */
+	public void add(String key, int n) {
+		if (this.counts == null || this.hot.contains(key)) {
+			return;
+		}
+		int hash = key.hashCode();
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			int count = this.counts.addAndGet(row * WIDTH + index(hash, row), n);
+			estimate = Math.min(estimate, count);
+		}
+		if (estimate > this.threshold) {
+			this.hot.add(key);
+		}
+	}
+
+	/**
+	 * Zählt alle Werte in den Resultaten. Sie werden zuerst pro Key zusammengezählt, damit jeder Key nur einmal die
+	 * gemeinsamen Zähler erhöht.
+	 */
+	public void addAll(List<KeyValuePair> results) {
+		if (this.counts == null) {
+			return;
+		}
+		Map<String, int[]> perKey = new HashMap<String, int[]>();
+		for (KeyValuePair pair : results) {
+			int[] count = perKey.get(pair.getKey());
+			if (count == null) {
+				count = new int[1];
+				perKey.put(pair.getKey(), count);
+			}
+			count[0]++;
+		}
+		for (Map.Entry<String, int[]> entry : perKey.entrySet()) {
+			add(entry.getKey(), entry.getValue()[0]);
+		}
+	}
+
+	/**
+	 * Die Keys, deren Schätzung threshold überschritten hat.
+	 */
+	public Set<String> hotKeys() {
+		return new HashSet<String>(this.hot);
+	}
+
+	private static int index(int hash, int row) {
+		// jede zeile mischt den hash anders, damit zwei keys nicht in allen zeilen zusammenfallen
+		int h = (hash ^ SEEDS[row]) * 0x5BD1E995;
+		h ^= h >>> 15;
+		h *= SEEDS[(row + 1) % DEPTH];
+		h ^= h >>> 13;
+		return h & (WIDTH - 1);
+	}
+}
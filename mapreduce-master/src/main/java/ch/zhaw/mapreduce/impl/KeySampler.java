@@ -0,0 +1,56 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Zieht eine gleichverteilte Stichprobe fester Grösse aus allen Keys, die ihm angeboten werden (Reservoir Sampling).
+ * Jedes angebotene Paar zählt, ein Key mit vielen Werten ist also entsprechend oft in der Stichprobe. Damit werden
+ * die Partitionen nach der Menge der Werte ausgeglichen, nicht nach der Anzahl Keys.
+ */
+public final class KeySampler {
+
+	private final String[] reservoir;
+
+	private final Random random;
+
+	/** Anzahl angebotener Keys, durch this geschützt */
+	private long offered;
+
+	public KeySampler(int size) {
+		this(size, new Random());
+	}
+
+	KeySampler(int size, Random random) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Sample Size must be greater than 0: " + size);
+		}
+		this.reservoir = new String[size];
+		this.random = random;
+	}
+
+	public synchronized void offer(String key) {
+		if (this.offered < this.reservoir.length) {
+			this.reservoir[(int) this.offered] = key;
+		} else {
+			long slot = (long) (this.random.nextDouble() * (this.offered + 1));
+			if (slot < this.reservoir.length) {
+				this.reservoir[(int) slot] = key;
+			}
+		}
+		this.offered++;
+	}
+
+	/**
+	 * @return eine Kopie der aktuellen Stichprobe, unsortiert
+	 */
+	public synchronized List<String> sample() {
+		int n = (int) Math.min(this.offered, this.reservoir.length);
+		List<String> sample = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			sample.add(this.reservoir[i]);
+		}
+		return sample;
+	}
+}
@@ -0,0 +1,82 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.zhaw.mapreduce.CombinerInstruction;
+import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.MapReduceJob;
+import ch.zhaw.mapreduce.Master;
+import ch.zhaw.mapreduce.ReduceInstruction;
+import ch.zhaw.mapreduce.ShuffleProcessorFactory;
+
+/**
+ * Serverseitiger Job. Alle Instruktionen werden beim Erstellen festgelegt, daher kann der gleiche Master von mehreren
+ * Jobs gleichzeitig verwendet werden.
+ */
+public final class MapReduceJobImpl implements MapReduceJob {
+
+	private final String jobId;
+
+	private final int priority;
+
+	private final Master master;
+
+	private final MapInstruction mapInstruction;
+
+	private final ReduceInstruction reduceInstruction;
+
+	private final CombinerInstruction combinerInstruction;
+
+	private final ShuffleProcessorFactory shuffleProcessorFactory;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	/** null fuer den konfigurierten Codec */
+	private volatile String compression;
+
+	public MapReduceJobImpl(String jobId, int priority, Master master, MapInstruction mapInstruction,
+			ReduceInstruction reduceInstruction, CombinerInstruction combinerInstruction,
+			ShuffleProcessorFactory shuffleProcessorFactory) {
+		this.jobId = jobId;
+		this.priority = priority;
+		this.master = master;
+		this.mapInstruction = mapInstruction;
+		this.reduceInstruction = reduceInstruction;
+		this.combinerInstruction = combinerInstruction;
+		this.shuffleProcessorFactory = shuffleProcessorFactory;
+	}
+
+	@Override
+	public String getJobId() {
+		return this.jobId;
+	}
+
+	@Override
+	public void setCompression(String codec) {
+		// schon hier pruefen, nicht erst wenn der job laeuft
+		BlockCodec.forName(codec);
+		this.compression = codec;
+	}
+
+	@Override
+	public Map<String, List<String>> run(Iterator<String> input) {
+		if (!this.started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Job " + this.jobId + " has already been run");
+		}
+		try {
+			return this.master.runComputation(this.jobId, this.priority, this.compression, this.mapInstruction,
+					this.combinerInstruction, this.reduceInstruction, this.shuffleProcessorFactory, input);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Computation aborted: " + this.jobId, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[JobId=" + this.jobId + ",Priority=" + this.priority + "]";
+	}
+}
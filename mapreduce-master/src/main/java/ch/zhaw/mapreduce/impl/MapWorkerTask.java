@@ -11,13 +11,17 @@ import javax.inject.Named;
 import ch.zhaw.mapreduce.CombinerInstruction;
 import ch.zhaw.mapreduce.Context;
 import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
 import ch.zhaw.mapreduce.MapInstruction;
 import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.Shuffler;
 
 import com.google.inject.assistedinject.Assisted;
 
 /**
- * Eine Implementation des MapRunners mit einem WorkerPool.
+ * Eine Implementation des MapRunners mit einem WorkerPool. Ein Task kann mehrere Inputs als Batch enthalten, diese
+ * werden alle im gleichen Context gemappt und danach gemeinsam kombiniert. Verlangt der Shuffler eine Aufteilung,
+ * teilt der Context die Resultate schon beim Emitten auf die Partitionen auf.
  * 
  * @author Max
  */
@@ -32,23 +36,47 @@ public class MapWorkerTask extends AbstractWorkerTask {
 	private final CombinerInstruction combinerInstruction;
 
 	/** Die derzeit zu bearbeitenden Daten */
-	private final String input;
+	private final List<String> inputs;
+
+	/** Nimmt die Resultate entgegen, sobald der Task erfolgreich war */
+	private final Shuffler shuffler;
+
+	/**
+	 * Schreibt, was der Shuffler speichert, ohne den abliefernden Thread zu blockieren
+	 */
+	private final WriteBehind writeBehind;
+
+	public MapWorkerTask(String taskUuid, String jobId, Persistence persistence, Shuffler shuffler,
+			MapInstruction mapInstruction, CombinerInstruction combinerInstruction, List<String> inputs) {
+		this(taskUuid, jobId, persistence, shuffler, mapInstruction, combinerInstruction, inputs, WriteBehind
+				.disabled());
+	}
 
 	@Inject
-	public MapWorkerTask(@Named("taskUuid") String taskUuid, @Assisted Persistence persistence,
-			@Assisted MapInstruction mapInstruction, @Assisted @Nullable CombinerInstruction combinerInstruction,
-			@Assisted("input") String input) {
-		super(taskUuid, persistence);
+	public MapWorkerTask(@Named("taskUuid") String taskUuid, @Assisted String jobId,
+			@Assisted Persistence persistence, @Assisted Shuffler shuffler, @Assisted MapInstruction mapInstruction,
+			@Assisted @Nullable CombinerInstruction combinerInstruction, @Assisted List<String> inputs,
+			WriteBehind writeBehind) {
+		super(taskUuid, jobId, persistence);
+		this.shuffler = shuffler;
 		this.mapInstruction = mapInstruction;
 		this.combinerInstruction = combinerInstruction;
-		this.input = input;
+		this.inputs = inputs;
+		this.writeBehind = writeBehind;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void runTask(Context ctx) {
+		MapPartitioning partitioning = getPartitioning();
+		if (partitioning != null) {
+			ctx.partitionMapResult(partitioning);
+		}
+
 		// Mappen
-		this.mapInstruction.map(ctx, input);
+		for (String input : this.inputs) {
+			this.mapInstruction.map(ctx, input);
+		}
 
 		// Alle Ergebnisse verdichten. Die Ergebnisse aus der derzeitigen Worker sollen
 		// einbezogen werden.
@@ -77,30 +105,83 @@ public class MapWorkerTask extends AbstractWorkerTask {
 		return this.combinerInstruction;
 	}
 
+	/**
+	 * Bei einem einzelnen Input dieser selbst, bei einem Batch nur die Anzahl Inputs.
+	 */
 	@Override
 	public String getInput() {
-		return this.input;
+		if (this.inputs.size() == 1) {
+			return this.inputs.get(0);
+		}
+		return this.inputs.size() + " Inputs";
 	}
 
+	/**
+	 * Liefert alle Inputs dieses Tasks.
+	 */
+	public List<String> getInputs() {
+		return this.inputs;
+	}
+
+	/**
+	 * Liefert den Shuffler, dem die Resultate dieses Tasks übergeben werden.
+	 */
+	public Shuffler getShuffler() {
+		return this.shuffler;
+	}
+
+	/**
+	 * Wie die Resultate dieses Tasks beim Emitten aufgeteilt werden.
+	 * 
+	 * @return die Aufteilung des Shufflers oder null, wenn nicht aufgeteilt wird
+	 */
+	public MapPartitioning getPartitioning() {
+		return this.shuffler.getMapPartitioning();
+	}
+
+	/**
+	 * {@inheritDoc} Gespeichert wird erst vom Shuffler, nachdem der Task erfolgreich war. Es gibt also nichts zu
+	 * löschen.
+	 */
 	@Override
 	public void abort() {
 		aborted();
-		this.persistence.destroyMap(getTaskUuid());
 	}
 
 	@Override
 	public void successful(List<?> result) {
+		// bei spekulativer ausfuehrung gibt es mehrere versuche, nur der erste darf seine resultate abliefern
+		if (!commit()) {
+			LOG.log(Level.FINE, "Discard Result of {0}, another Attempt was faster or it was aborted", getTaskUuid());
+			discarded();
+			return;
+		}
 		if (result != null && !result.isEmpty()) {
 			try {
 				@SuppressWarnings("unchecked")
 				// try catch
 				List<KeyValuePair> typedResult = (List<KeyValuePair>) result;
-				this.persistence.storeMapResults(getTaskUuid(), typedResult);
+				// die resultate werden sofort gruppiert, waehrend andere map tasks noch laufen. gespeichert werden sie
+				// vom shuffler, falls noetig. fertig ist der task erst, wenn sie abgeliefert sind
+				this.shuffler.put(typedResult, this.writeBehind, new WriteBehind.Callback() {
+					@Override
+					public void written(boolean durable) {
+						if (durable) {
+							completed();
+						} else {
+							LOG.log(Level.SEVERE, "Failed to store Results of {0}", getTaskUuid());
+							failed();
+						}
+					}
+				});
 			} catch (ClassCastException e) {
 				LOG.log(Level.SEVERE, "Wrong type for MapTask", e);
 				failed();
-				return;
+			} catch (RuntimeException e) {
+				LOG.log(Level.SEVERE, "Failed to shuffle Results of " + getTaskUuid(), e);
+				failed();
 			}
+			return;
 		}
 		completed();
 	}
@@ -108,7 +189,6 @@ public class MapWorkerTask extends AbstractWorkerTask {
 	@Override
 	public void fail() {
 		failed();
-		this.persistence.destroyMap(getTaskUuid());
 	}
 
 }
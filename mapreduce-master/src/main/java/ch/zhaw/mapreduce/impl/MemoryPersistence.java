@@ -0,0 +1,318 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.ResultCursor;
+
+/**
+ * Persistenz im Speicher. Die Resultate jedes Tasks werden als Block von {@link RecordFile} in einen Direct Buffer
+ * ausserhalb vom Heap geschrieben, der Garbage Collector muss also nur ein Objekt pro Task verwalten statt eines pro
+ * Resultat. Erst wenn die Blöcke einer Berechnung zusammen das Budget überschreiten, werden weitere Resultate in eine
+ * SegmentPersistence auf die Disk geschrieben. Das passiert auch, wenn kein Direct Memory mehr frei ist.
+ */
+public class MemoryPersistence implements Persistence {
+
+	private static final Logger LOG = Logger.getLogger(MemoryPersistence.class.getName());
+
+	/** Höchstens so viele Bytes in Direct Buffers pro Berechnung */
+	private final long budget;
+
+	private final Provider<? extends Persistence> spillProvider;
+
+	private final AtomicLong used = new AtomicLong();
+
+	/** Wird erst erstellt, wenn das Budget erreicht ist */
+	private volatile Persistence spill;
+
+	private final ConcurrentMap<Integer, ConcurrentMap<String, Slot>> partitionIndex = new ConcurrentHashMap<Integer, ConcurrentMap<String, Slot>>();
+
+	private final ConcurrentMap<String, Slot> reduceIndex = new ConcurrentHashMap<String, Slot>();
+
+	private volatile BlockCodec codec = BlockCodec.NONE;
+
+	@Inject
+	MemoryPersistence(@Named("MemoryPersistenceBudget") long budget, Provider<SegmentPersistence> spillProvider) {
+		this.budget = budget;
+		this.spillProvider = spillProvider;
+	}
+
+	/**
+	 * {@inheritDoc} Komprimierte Blöcke brauchen auch weniger vom Budget. Ausgelagerte Resultate werden gleich
+	 * komprimiert.
+	 */
+	@Inject
+	@Override
+	public void setCompression(@Named("Compression") String codec) {
+		this.codec = BlockCodec.forName(codec);
+	}
+
+	@Override
+	public boolean storeMapResults(String taskUuid, List<KeyValuePair> mapResults) {
+		return storeMapResults(taskUuid, 0, mapResults);
+	}
+
+	@Override
+	public boolean storeMapResults(String sliceId, int partition, List<KeyValuePair> mapResults) {
+		ConcurrentMap<String, Slot> slices = this.partitionIndex.get(partition);
+		if (slices == null) {
+			ConcurrentMap<String, Slot> newSlices = new ConcurrentHashMap<String, Slot>();
+			slices = this.partitionIndex.putIfAbsent(partition, newSlices);
+			if (slices == null) {
+				slices = newSlices;
+			}
+		}
+		Slot slot = keep(slices, sliceId, mapResults);
+		if (slot == null) {
+			return false;
+		} else if (slot.block != null) {
+			return true;
+		}
+		return spilled(slices, sliceId, slot, spill().storeMapResults(sliceId, partition, mapResults));
+	}
+
+	@Override
+	public boolean storeReduceResults(String taskUuid, List<KeyValuePair> results) {
+		Slot slot = keep(this.reduceIndex, taskUuid, results);
+		if (slot == null) {
+			return false;
+		} else if (slot.block != null) {
+			return true;
+		}
+		return spilled(this.reduceIndex, taskUuid, slot, spill().storeReduceResults(taskUuid, results));
+	}
+
+	/**
+	 * Legt die Resultate in einen Direct Buffer, solange das Budget reicht. Sonst wird nur vermerkt, dass sie in der
+	 * SegmentPersistence liegen.
+	 *
+	 * @return der neue Eintrag im Index, null wenn es schon Resultate unter dieser ID gibt oder sie nicht kodiert
+	 *         werden konnten
+	 */
+	private Slot keep(ConcurrentMap<String, Slot> index, String id, List<KeyValuePair> results) {
+		if (index.containsKey(id)) {
+			LOG.log(Level.SEVERE, "Results for TaskUuid {0} already exist", id);
+			return null;
+		}
+		byte[] bytes;
+		try {
+			bytes = RecordFile.encodeBlock(results, this.codec);
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Failed to encode results ", e);
+			return null;
+		}
+		ByteBuffer block = null;
+		if (reserve(bytes.length)) {
+			try {
+				block = ByteBuffer.allocateDirect(bytes.length);
+				block.put(bytes).flip();
+			} catch (OutOfMemoryError e) {
+				// das direct memory der jvm ist kleiner als die budgets aller laufenden berechnungen
+				LOG.log(Level.WARNING, "No Direct Memory left, spilling to disk");
+				this.used.addAndGet(-bytes.length);
+				block = null;
+			}
+		}
+		Slot slot = new Slot(block);
+		if (index.putIfAbsent(id, slot) != null) {
+			LOG.log(Level.SEVERE, "Results for TaskUuid {0} already exist", id);
+			release(slot);
+			return null;
+		}
+		return slot;
+	}
+
+	private boolean reserve(int bytes) {
+		while (true) {
+			long current = this.used.get();
+			if (current + bytes > this.budget) {
+				return false;
+			}
+			if (this.used.compareAndSet(current, current + bytes)) {
+				return true;
+			}
+		}
+	}
+
+	private void release(Slot slot) {
+		if (slot != null && slot.block != null) {
+			this.used.addAndGet(-slot.block.capacity());
+		}
+	}
+
+	/**
+	 * Entfernt den Eintrag wieder, wenn auch das Schreiben auf die Disk fehlgeschlagen ist.
+	 */
+	private boolean spilled(ConcurrentMap<String, Slot> index, String id, Slot slot, boolean stored) {
+		if (!stored) {
+			index.remove(id, slot);
+		}
+		return stored;
+	}
+
+	private Persistence spill() {
+		Persistence p = this.spill;
+		if (p == null) {
+			synchronized (this) {
+				p = this.spill;
+				if (p == null) {
+					LOG.log(Level.INFO, "Memory Budget of {0} Bytes exhausted, spilling to disk", this.budget);
+					p = this.spillProvider.get();
+					p.setCompression(this.codec.name());
+					this.spill = p;
+				}
+			}
+		}
+		return p;
+	}
+
+	@Override
+	public List<KeyValuePair> getMapResults() {
+		return ChainedCursor.toList(openMapResults());
+	}
+
+	@Override
+	public List<KeyValuePair> getMapResults(int partition) {
+		return ChainedCursor.toList(openMapResults(partition));
+	}
+
+	@Override
+	public Map<String, List<String>> getReduceResults() {
+		return ReduceResults.collect(openReduceResults());
+	}
+
+	@Override
+	public ResultCursor openMapResults() {
+		return ChainedCursor.ofPartitions(this, this.partitionIndex.keySet());
+	}
+
+	@Override
+	public ResultCursor openMapResults(int partition) {
+		Map<String, Slot> slices = this.partitionIndex.get(partition);
+		Persistence p = this.spill;
+		return open(slices != null ? slices.values() : Collections.<Slot> emptyList(),
+				p != null ? p.openMapResults(partition) : null);
+	}
+
+	@Override
+	public ResultCursor openReduceResults() {
+		Persistence p = this.spill;
+		return open(this.reduceIndex.values(), p != null ? p.openReduceResults() : null);
+	}
+
+	/**
+	 * Liest zuerst die Blöcke im Speicher, dann die ausgelagerten Resultate. Ein beschädigter Block bricht das Lesen
+	 * ab.
+	 *
+	 * @param spilled
+	 *            Cursor über die ausgelagerten Resultate, null wenn nichts ausgelagert wurde
+	 */
+	private ResultCursor open(Collection<Slot> slots, final ResultCursor spilled) {
+		final Iterator<Slot> blocks = new ArrayList<Slot>(slots).iterator();
+		return new ChainedCursor() {
+
+			private boolean spilledRead;
+
+			@Override
+			protected Iterator<KeyValuePair> nextSource() {
+				while (blocks.hasNext()) {
+					Slot slot = blocks.next();
+					if (slot.block == null) {
+						continue;
+					}
+					List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+					try {
+						RecordFile.decodeBlock(slot.bytes(), results);
+						return results.iterator();
+					} catch (IOException e) {
+						throw new IllegalStateException("Failed to decode results", e);
+					}
+				}
+				if (spilled != null && !this.spilledRead) {
+					this.spilledRead = true;
+					return spilled;
+				}
+				return null;
+			}
+
+			@Override
+			public void close() {
+				super.close();
+				if (spilled != null) {
+					spilled.close();
+				}
+			}
+		};
+	}
+
+	@Override
+	public boolean destroyMap(String sliceId) {
+		for (ConcurrentMap<String, Slot> slices : this.partitionIndex.values()) {
+			release(slices.remove(sliceId));
+		}
+		Persistence p = this.spill;
+		return p == null || p.destroyMap(sliceId);
+	}
+
+	@Override
+	public boolean destroyReduce(String taskUuid) {
+		release(this.reduceIndex.remove(taskUuid));
+		Persistence p = this.spill;
+		return p == null || p.destroyReduce(taskUuid);
+	}
+
+	/**
+	 * {@inheritDoc} Die Blöcke im Speicher überleben die JVM ohnehin nicht, also werden nur die ausgelagerten
+	 * Resultate geschrieben.
+	 */
+	@Override
+	public boolean sync() {
+		Persistence p = this.spill;
+		return p == null || p.sync();
+	}
+
+	@Override
+	public boolean suicide() {
+		this.partitionIndex.clear();
+		this.reduceIndex.clear();
+		this.used.set(0);
+		Persistence p = this.spill;
+		return p == null || p.suicide();
+	}
+
+	/**
+	 * Die Resultate eines Tasks. block ist null, wenn sie in der SegmentPersistence liegen.
+	 */
+	private static final class Slot {
+		final ByteBuffer block;
+
+		Slot(ByteBuffer block) {
+			this.block = block;
+		}
+
+		byte[] bytes() {
+			// duplicate, damit mehrere threads gleichzeitig lesen koennen
+			ByteBuffer view = this.block.duplicate();
+			byte[] bytes = new byte[view.remaining()];
+			view.get(bytes);
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+import ch.zhaw.mapreduce.Partitioner;
+import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.Shuffler;
+
+/**
+ * Speichert die Map-Resultate nach Reduce-Partition getrennt in der Persistence der Berechnung. Aufgeteilt wird schon
+ * beim Emitten im Context des Map Tasks, auf dem Worker oder Agent (siehe {@link #getMapPartitioning()}). Der Master
+ * speichert nur noch die fertigen Teile und hält nie Map-Resultate im Speicher. Jeder Reduce Task liest seine
+ * Partition selbst, wenn er läuft. Beim Gruppieren fasst der ShuffleCombiner lange Listen zusammen.
+ * 
+ * Der KeyCounter zählt die Werte pro Key, sobald sie gespeichert sind. So kennt der Master die heissen Keys, ohne die
+ * Partitionen zu lesen. Gelesen werden nur die Partitionen, in denen heisse Keys liegen, und nur deren Werte.
+ */
+public final class PersistentShuffler implements Shuffler {
+
+	private static final Logger LOG = Logger.getLogger(PersistentShuffler.class.getName());
+
+	private final Persistence persistence;
+
+	private final Partitioner partitioner;
+
+	private final int nPartitions;
+
+	private final ShuffleCombiner combiner;
+
+	private final KeyCounter counter;
+
+	/** Von takeHotKeys herausgenommen, fehlen in den Partitionen */
+	private volatile Set<String> taken = Collections.emptySet();
+
+	/** Partitionen, für die es Resultate gibt, sortiert */
+	private final Set<Integer> written = new ConcurrentSkipListSet<Integer>();
+
+	private final AtomicLong slices = new AtomicLong();
+
+	public PersistentShuffler(Persistence persistence, Partitioner partitioner, int nPartitions) {
+		this(persistence, partitioner, nPartitions, ShuffleCombiner.none());
+	}
+
+	public PersistentShuffler(Persistence persistence, Partitioner partitioner, int nPartitions,
+			ShuffleCombiner combiner) {
+		this(persistence, partitioner, nPartitions, combiner, KeyCounter.none());
+	}
+
+	public PersistentShuffler(Persistence persistence, Partitioner partitioner, int nPartitions,
+			ShuffleCombiner combiner, KeyCounter counter) {
+		this.persistence = persistence;
+		this.partitioner = partitioner;
+		this.nPartitions = nPartitions;
+		this.combiner = combiner;
+		this.counter = counter;
+	}
+
+	/**
+	 * {@inheritDoc} Die Map Tasks teilen mit dem Partitioner dieses Shufflers auf.
+	 */
+	@Override
+	public MapPartitioning getMapPartitioning() {
+		return new MapPartitioning(this.partitioner, this.nPartitions);
+	}
+
+	/**
+	 * {@inheritDoc} Schon aufgeteilte Resultate werden so gespeichert, nur andere (z.B. aus einem Checkpoint) werden
+	 * hier aufgeteilt. Kann eine Partition nicht gespeichert werden, werden die bereits gespeicherten Teile dieser
+	 * Resultate wieder gelöscht, bevor die Exception geworfen wird.
+	 */
+	@Override
+	public void put(List<KeyValuePair> mapResults) {
+		Map<Integer, List<KeyValuePair>> byPartition = slice(mapResults);
+		String sliceId = "slice" + this.slices.incrementAndGet();
+		boolean stored = false;
+		try {
+			for (Entry<Integer, List<KeyValuePair>> slice : byPartition.entrySet()) {
+				if (!this.persistence.storeMapResults(sliceId, slice.getKey(), slice.getValue())) {
+					// ohne diese resultate waere das ergebnis der berechnung falsch
+					throw new IllegalStateException("Failed to store Map Results for Partition " + slice.getKey());
+				}
+			}
+			stored = true;
+		} finally {
+			if (!stored) {
+				destroy(sliceId);
+			}
+		}
+		this.written.addAll(byPartition.keySet());
+		this.counter.addAll(mapResults);
+	}
+
+	/**
+	 * {@inheritDoc} Aufgeteilt wird im abliefernden Thread, die Teile werden im WriteBehind gespeichert und mit den
+	 * anderen Resultaten des Batches gesynct. Scheitert das Speichern oder das sync, werden alle Teile wieder
+	 * gelöscht.
+	 */
+	@Override
+	public void put(final List<KeyValuePair> mapResults, WriteBehind writeBehind,
+			final WriteBehind.Callback delivered) {
+		final Map<Integer, List<KeyValuePair>> byPartition = slice(mapResults);
+		final String sliceId = "slice" + this.slices.incrementAndGet();
+		writeBehind.store(this.persistence, sliceId, new WriteBehind.Store() {
+			@Override
+			public boolean store() {
+				boolean stored = false;
+				try {
+					for (Entry<Integer, List<KeyValuePair>> slice : byPartition.entrySet()) {
+						if (!persistence.storeMapResults(sliceId, slice.getKey(), slice.getValue())) {
+							LOG.log(Level.SEVERE, "Failed to store Map Results for Partition {0}", slice.getKey());
+							return false;
+						}
+					}
+					stored = true;
+					return true;
+				} finally {
+					if (!stored) {
+						destroy(sliceId);
+					}
+				}
+			}
+		}, new WriteBehind.Callback() {
+			@Override
+			public void written(boolean durable) {
+				if (durable) {
+					written.addAll(byPartition.keySet());
+					counter.addAll(mapResults);
+				} else {
+					destroy(sliceId);
+				}
+				delivered.written(durable);
+			}
+		});
+	}
+
+	/**
+	 * Löscht einen teilweise gespeicherten Teil. Der Map Task wird wiederholt und liefert alles nochmals ab, sonst
+	 * wären die Werte doppelt.
+	 */
+	private void destroy(String sliceId) {
+		if (!this.persistence.destroyMap(sliceId)) {
+			LOG.log(Level.SEVERE, "Failed to remove partially stored {0}", sliceId);
+		}
+	}
+
+	/**
+	 * Die Resultate nach Partition. Wurden sie schon im Context mit gleich vielen Partitionen aufgeteilt, werden die
+	 * Keys nicht mehr angeschaut.
+	 */
+	private Map<Integer, List<KeyValuePair>> slice(List<KeyValuePair> mapResults) {
+		if (mapResults instanceof PartitionedMapResult
+				&& ((PartitionedMapResult) mapResults).getPartitions() == this.nPartitions) {
+			return ((PartitionedMapResult) mapResults).getSlices();
+		}
+		Map<Integer, List<KeyValuePair>> byPartition = new HashMap<Integer, List<KeyValuePair>>();
+		for (KeyValuePair pair : mapResults) {
+			Integer partition = this.partitioner.partition(pair.getKey(), this.nPartitions);
+			List<KeyValuePair> slice = byPartition.get(partition);
+			if (slice == null) {
+				slice = new ArrayList<KeyValuePair>();
+				byPartition.put(partition, slice);
+			}
+			slice.add(pair);
+		}
+		return byPartition;
+	}
+
+	@Override
+	public void finish() {
+		LOG.log(Level.INFO, "Stored Map Results in {0} Partitions", this.written.size());
+	}
+
+	/**
+	 * {@inheritDoc} Gelesen werden nur die Partitionen, in die der Partitioner die heissen Keys legt.
+	 */
+	@Override
+	public Map<String, List<KeyValuePair>> takeHotKeys() {
+		Set<String> hot = this.counter.hotKeys();
+		Map<String, List<KeyValuePair>> values = new HashMap<String, List<KeyValuePair>>();
+		if (hot.isEmpty()) {
+			return values;
+		}
+		this.taken = hot;
+		Map<Integer, Set<String>> byPartition = new HashMap<Integer, Set<String>>();
+		for (String key : hot) {
+			Integer partition = this.partitioner.partition(key, this.nPartitions);
+			Set<String> keys = byPartition.get(partition);
+			if (keys == null) {
+				keys = new HashSet<String>();
+				byPartition.put(partition, keys);
+			}
+			keys.add(key);
+		}
+		for (Entry<Integer, Set<String>> partition : byPartition.entrySet()) {
+			if (this.written.contains(partition.getKey())) {
+				values.putAll(StoredPartition.read(this.persistence, partition.getKey(), this.combiner,
+						partition.getValue(), true));
+			}
+		}
+		LOG.log(Level.INFO, "Took {0} hot Keys from {1} Partitions", new Object[] { values.size(),
+				byPartition.size() });
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc} Die Partitionen werden hier nicht gelesen. Jede liest sich erst, wenn ihre Keys gebraucht werden,
+	 * also normalerweise im Reduce Task auf dem Worker.
+	 */
+	@Override
+	public Iterator<Map<String, List<KeyValuePair>>> partitions() {
+		final Iterator<Integer> partitions = new ArrayList<Integer>(this.written).iterator();
+		final Set<String> excluded = this.taken;
+		return new Iterator<Map<String, List<KeyValuePair>>>() {
+			@Override
+			public boolean hasNext() {
+				return partitions.hasNext();
+			}
+
+			@Override
+			public Map<String, List<KeyValuePair>> next() {
+				return new StoredPartition(persistence, partitions.next(), combiner, excluded);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc} Die Partitionen werden erst beim Iterieren gelesen, daher muss fertig gelesen werden, bevor die
+	 * Persistence der Berechnung gelöscht wird.
+	 */
+	@Override
+	public Iterator<Entry<String, List<KeyValuePair>>> entries() {
+		final Iterator<Map<String, List<KeyValuePair>>> partitions = partitions();
+		return new Iterator<Entry<String, List<KeyValuePair>>>() {
+
+			private Iterator<Entry<String, List<KeyValuePair>>> current = Collections
+					.<Entry<String, List<KeyValuePair>>> emptySet().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!this.current.hasNext() && partitions.hasNext()) {
+					this.current = partitions.next().entrySet().iterator();
+				}
+				return this.current.hasNext();
+			}
+
+			@Override
+			public Entry<String, List<KeyValuePair>> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return this.current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void discard() {
+		// die dateien gehoeren der persistence der berechnung und werden mit ihr geloescht
+	}
+}
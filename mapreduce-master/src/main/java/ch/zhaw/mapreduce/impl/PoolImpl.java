@@ -1,12 +1,18 @@
 package ch.zhaw.mapreduce.impl;
 
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,12 +21,22 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import ch.zhaw.mapreduce.Pool;
+import ch.zhaw.mapreduce.SchedulingPolicy;
 import ch.zhaw.mapreduce.Worker;
 import ch.zhaw.mapreduce.WorkerTask;
 
 /**
  * Implementation des Pools mit lokalen Threads auf dem jeweiligen PC
  * 
+ * Es gibt keinen eigenen Thread, der Tasks auf Worker verteilt. Wer einen Task einreiht oder einen Worker frei macht,
+ * übergibt gleich selbst so viele Tasks an freie Worker wie möglich. So verteilen alle Threads, die Tasks einreihen
+ * oder Resultate abliefern, gleichzeitig und ein einzelner Thread ist nicht mehr der Flaschenhals.
+ * 
+ * Damit stattdessen nicht ein einzelnes Lock zum Flaschenhals wird, kommen neue Tasks reihum in einen von mehreren
+ * Shards mit eigenem Lock. Es gibt aber nur eine SchedulingPolicy: ein verteilender Thread übergibt ihr zuerst die
+ * Tasks aus allen Shards und nimmt erst dann den nächsten Task. So sieht die Policy immer alle eingereihten Tasks und
+ * ihre Reihenfolge gilt über den ganzen Pool. Die Anzahl eingereihter Tasks wird ausserhalb der Locks gezählt.
+ * 
  * @author Max, Sacher
  * 
  */
@@ -28,39 +44,75 @@ public final class PoolImpl implements Pool {
 
 	private static final Logger LOG = Logger.getLogger(PoolImpl.class.getName());
 
-	// Liste mit allen Workern
-	private final Queue<Worker> workingWorkers = new ConcurrentLinkedQueue<Worker>();
+	/** Damit ein Thread, der gerade verteilt, nicht rekursiv nochmals verteilt (z.B. bei synchronen Workern) */
+	private static final ThreadLocal<Boolean> DISPATCHING = new ThreadLocal<Boolean>();
+
+	// Alle Worker, die gerade einen Task ausführen
+	private final Set<Worker> workingWorkers = Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
 
 	// Liste mit allen Workern, die Arbeit übernehmen können.
 	private final BlockingQueue<Worker> availableWorkers = new LinkedBlockingQueue<Worker>();
 
-	// Liste mit aller Arbeit, die von Workern übernommen werden kann.
-	private final BlockingQueue<WorkerTask> taskQueue = new LinkedBlockingQueue<WorkerTask>();
+	// Welcher Worker gerade welchen Task ausführt, damit ein Task abgebrochen werden kann.
+	private final Map<Worker, WorkerTask> assignments = new ConcurrentHashMap<Worker, WorkerTask>();
+
+	// Bestimmt, welcher eingereihte Task als nächstes ausgeführt wird. Nur unter policyLock verwenden.
+	private final SchedulingPolicy policy;
+
+	private final Lock policyLock = new ReentrantLock();
+
+	// Neu eingereihte Tasks, die noch nicht an die Policy übergeben wurden, aufgeteilt in Shards.
+	private final Shard[] shards;
+
+	// Anzahl eingereihter Tasks in den Shards und in der Policy. Wird unter einem Lock geändert, aber ohne Lock gelesen.
+	private final AtomicInteger queued = new AtomicInteger();
+
+	// In diesen Shard kommt der nächste eingereihte Task
+	private final AtomicInteger nextAdd = new AtomicInteger();
 
 	private final AtomicBoolean isRunning = new AtomicBoolean();
-	
+
 	private final AtomicLong runTasks = new AtomicLong();
 
-	private final Executor workTaskAdministrator;
+	/**
+	 * Erstellt einen neuen Pool der Aufgaben und Worker entgegen nimmt und sie in der Reihenfolge ihres Einreihens
+	 * ausführt. Es gibt einen Shard pro Prozessor.
+	 */
+	public PoolImpl() {
+		this(new FifoSchedulingPolicy(), 0);
+	}
 
 	/**
 	 * Erstellt einen neuen Pool der Aufgaben und Worker entgegen nimmt.
+	 * 
+	 * @param schedulingPolicy
+	 *            bestimmt, welcher eingereihte Task als nächstes ausgeführt wird
+	 * @param nShards
+	 *            Anzahl Shards, auf die neue Tasks verteilt werden. 0 für einen Shard pro Prozessor
 	 */
 	@Inject
-	public PoolImpl(@Named("poolExecutor") Executor workTaskAdministrator) {
-		this.workTaskAdministrator = workTaskAdministrator;
+	public PoolImpl(SchedulingPolicy schedulingPolicy, @Named("PoolQueueShards") int nShards) {
+		if (nShards < 0) {
+			throw new IllegalArgumentException("PoolQueueShards must not be negative: " + nShards);
+		}
+		this.policy = schedulingPolicy;
+		int n = nShards == 0 ? Runtime.getRuntime().availableProcessors() : nShards;
+		this.shards = new Shard[n];
+		for (int i = 0; i < n; i++) {
+			this.shards[i] = new Shard();
+		}
 	}
 
 	/**
-	 * Startet den Thread zur asynchronen Arbeit
+	 * Startet die Verteilung der Tasks. Tasks, die schon vorher eingereiht wurden, werden jetzt verteilt.
 	 */
 	// wird nach dem konstruktor aufgerufen
 	@PostConstruct
 	public void init() {
 		// nur starten, wenn er noch nicht gestartet wurde
 		if (this.isRunning.compareAndSet(false, true)) {
-			this.workTaskAdministrator.execute(new WorkerTaskAdministrator());
 			LOG.info("Pool started");
+			dispatch();
 		} else {
 			throw new IllegalStateException("Cannot start Pool twice");
 		}
@@ -85,7 +137,7 @@ public final class PoolImpl implements Pool {
 
 	@Override
 	public int enqueuedTasks() {
-		return this.taskQueue.size();
+		return this.queued.get();
 	}
 
 	@Override
@@ -106,40 +158,85 @@ public final class PoolImpl implements Pool {
 		if (this.workingWorkers.remove(deadWorker)) {
 			LOG.log(Level.INFO, "Removed {0} from workingWorker", new Object[] { deadWorker });
 		}
+		this.assignments.remove(deadWorker);
 		LOG.exiting(getClass().getName(), "iDied");
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * {@inheritDoc} Ist ein Task eingereiht, wird er gleich vom aufrufenden Thread einem freien Worker übergeben.
 	 */
 	@Override
 	public boolean workerIsFinished(Worker finishedWorker) {
 		LOG.entering(getClass().getName(), "workerIsFinished", finishedWorker);
 		boolean accepted;
+		this.assignments.remove(finishedWorker);
 		if (!workingWorkers.remove(finishedWorker)) {
 			LOG.warning("Worker was not working before");
 			accepted = false;
 		} else {
 			availableWorkers.add(finishedWorker);
 			accepted = true;
+			dispatch();
 		}
 		LOG.exiting(getClass().getName(), "workerIsFinished", accepted);
 		return accepted;
 	}
 
 	/**
-	 * Reiht eine Aufgabe in den Pool ein {@inheritDoc}
-	 * 
-	 * @throws InterruptedException
+	 * Reiht eine Aufgabe in den Pool ein {@inheritDoc} Ist ein Worker frei, wird sie gleich vom aufrufenden Thread
+	 * übergeben.
 	 */
 	@Override
 	public boolean enqueueTask(WorkerTask task) {
 		LOG.entering(getClass().getName(), "enqueueTask", task);
-		boolean retVal = false;
-		retVal = taskQueue.offer(task);
+		// zuerst den state setzen, sonst koennte ein schneller worker den task schon beendet haben, bevor er als
+		// ENQUEUED markiert wird
 		task.enqueued();
-		LOG.exiting(getClass().getName(), "enqueueTask", retVal);
-		return retVal;
+		this.shards[index(this.nextAdd)].add(task);
+		dispatch();
+		LOG.exiting(getClass().getName(), "enqueueTask", true);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc} Wurde der Task gerade erst einem Worker übergeben, kann es sein, dass er nicht mehr angehalten wird.
+	 * Er läuft dann zu Ende, aber seine Resultate werden verworfen. Darum wird er zuerst als abgebrochen markiert und
+	 * erst dann angehalten.
+	 */
+	@Override
+	public void abortTask(WorkerTask task) {
+		LOG.entering(getClass().getName(), "abortTask", task);
+		boolean removed = false;
+		for (int i = 0; i < this.shards.length && !removed; i++) {
+			removed = this.shards[i].remove(task);
+		}
+		if (!removed) {
+			// ein task wandert nur von den shards in die policy, darum wird er so nicht verpasst
+			this.policyLock.lock();
+			try {
+				removed = this.policy.remove(task);
+				if (removed) {
+					this.queued.decrementAndGet();
+				}
+			} finally {
+				this.policyLock.unlock();
+			}
+		}
+		task.abort();
+		if (removed) {
+			LOG.fine("Removed Task from Queue before it was started");
+		} else {
+			for (Map.Entry<Worker, WorkerTask> assignment : this.assignments.entrySet()) {
+				if (assignment.getValue() == task) {
+					try {
+						assignment.getKey().stopCurrentTask(task.getTaskUuid());
+					} catch (Exception e) {
+						LOG.log(Level.WARNING, "Failed to stop Task on Worker", e);
+					}
+				}
+			}
+		}
+		LOG.exiting(getClass().getName(), "abortTask");
 	}
 
 	/**
@@ -149,35 +246,128 @@ public final class PoolImpl implements Pool {
 	public boolean donateWorker(Worker newWorker) {
 		LOG.entering(getClass().getName(), "donateWorker", newWorker);
 		boolean retVal = availableWorkers.offer(newWorker);
+		dispatch();
 		LOG.exiting(getClass().getName(), "donateWorker", retVal);
 		return retVal;
 	}
 
-	private class WorkerTaskAdministrator implements Runnable {
+	/**
+	 * Übergibt eingereihte Tasks an freie Worker, bis eines von beiden ausgeht. Mehrere Threads können gleichzeitig
+	 * verteilen, jeder holt sich selbst einen Worker und einen Task. Niemand wartet auf einen Task: ist keiner
+	 * eingereiht, geht der Worker zurück.
+	 */
+	private void dispatch() {
+		if (!this.isRunning.get() || DISPATCHING.get() != null) {
+			// der aeussere aufruf verteilt weiter, bis nichts mehr zu tun ist
+			return;
+		}
+		DISPATCHING.set(Boolean.TRUE);
+		try {
+			while (true) {
+				Worker worker = this.availableWorkers.poll();
+				if (worker == null) {
+					return;
+				}
+				WorkerTask task = nextTask();
+				if (task == null) {
+					this.availableWorkers.add(worker);
+					// waehrend wir den worker hatten, kann ein anderer thread einen task eingereiht und keinen freien
+					// worker gefunden haben. dann muessen wir den task verteilen
+					if (enqueuedTasks() == 0) {
+						return;
+					}
+					continue;
+				}
+				this.workingWorkers.add(worker);
+				this.assignments.put(worker, task);
+
+				LOG.finest("Execute Task on Worker");
+				worker.executeTask(task);
+
+				this.runTasks.incrementAndGet();
+			}
+		} finally {
+			DISPATCHING.remove();
+		}
+	}
+
+	/**
+	 * Übergibt der Policy die Tasks aus allen Shards und nimmt dann den nächsten Task. Leere Shards werden ohne Lock
+	 * übersprungen.
+	 */
+	private WorkerTask nextTask() {
+		this.policyLock.lock();
+		try {
+			for (Shard shard : this.shards) {
+				if (shard.size.get() > 0) {
+					shard.drainTo(this.policy);
+				}
+			}
+			WorkerTask task = this.policy.next();
+			if (task != null) {
+				this.queued.decrementAndGet();
+			}
+			return task;
+		} finally {
+			this.policyLock.unlock();
+		}
+	}
+
+	private int index(AtomicInteger counter) {
+		return (counter.getAndIncrement() & Integer.MAX_VALUE) % this.shards.length;
+	}
+
+	/**
+	 * Nimmt neu eingereihte Tasks entgegen, bis ein verteilender Thread sie an die Policy übergibt. Die Zähler werden
+	 * unter dem Lock geändert, damit ein Task nie vor seinem Einreihen gezählt wird.
+	 */
+	private final class Shard {
+
+		final List<WorkerTask> tasks = new ArrayList<WorkerTask>();
+
+		final Lock lock = new ReentrantLock();
+
+		final AtomicInteger size = new AtomicInteger();
+
+		void add(WorkerTask task) {
+			this.lock.lock();
+			try {
+				this.tasks.add(task);
+				this.size.incrementAndGet();
+				queued.incrementAndGet();
+			} finally {
+				this.lock.unlock();
+			}
+		}
 
 		/**
-		 * Wartet auf Auftraege und fuert diese mit den Workers aus.
+		 * Muss unter policyLock aufgerufen werden. Die Tasks bleiben eingereiht, sie sind danach nur in der Policy.
 		 */
-		@Override
-		public void run() {
+		void drainTo(SchedulingPolicy policy) {
+			this.lock.lock();
 			try {
-				while (true) {
-					LOG.finest("Waiting for Task and Worker");
-					WorkerTask task = taskQueue.take(); // blockiert bis ein Task da ist
-					Worker worker = availableWorkers.take(); // blockiert, bis ein Worker frei ist
-					workingWorkers.add(worker);
-
-					LOG.finest("Execute Task on Worker");
-					worker.executeTask(task);
-					
-					runTasks.incrementAndGet();
+				for (WorkerTask task : this.tasks) {
+					policy.add(task);
 				}
-			} catch (InterruptedException e) {
-				LOG.info("Interrupted, stopping WorkerTaskAdministrator");
-				isRunning.set(false);
-				Thread.currentThread().interrupt();
+				this.tasks.clear();
+				this.size.set(0);
+			} finally {
+				this.lock.unlock();
 			}
 		}
 
+		boolean remove(WorkerTask task) {
+			this.lock.lock();
+			try {
+				if (!this.tasks.remove(task)) {
+					return false;
+				}
+				this.size.decrementAndGet();
+				queued.decrementAndGet();
+				return true;
+			} finally {
+				this.lock.unlock();
+			}
+		}
 	}
 }
@@ -0,0 +1,74 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import ch.zhaw.mapreduce.SchedulingPolicy;
+import ch.zhaw.mapreduce.WorkerTask;
+
+/**
+ * Strikte Priorität: Tasks von Jobs mit höherer Priorität werden immer zuerst ausgeführt. Bei gleicher Priorität
+ * kommen Wiederholungen zuerst, sonst gilt die Reihenfolge des Einreihens. Tasks mit tiefer Priorität können also
+ * verhungern, solange Tasks mit höherer Priorität eingereiht werden.
+ */
+public final class PrioritySchedulingPolicy implements SchedulingPolicy {
+
+	private final PriorityQueue<Entry> tasks = new PriorityQueue<Entry>(64, new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			if (e1.priority != e2.priority) {
+				return e1.priority > e2.priority ? -1 : 1;
+			}
+			if (e1.retry != e2.retry) {
+				return e1.retry ? -1 : 1;
+			}
+			return e1.seq < e2.seq ? -1 : (e1.seq == e2.seq ? 0 : 1);
+		}
+	});
+
+	/** Damit Tasks mit gleicher Priorität in der Reihenfolge des Einreihens ausgeführt werden */
+	private long seq;
+
+	@Override
+	public void add(WorkerTask task) {
+		this.tasks.add(new Entry(task, this.seq++));
+	}
+
+	@Override
+	public WorkerTask next() {
+		Entry next = this.tasks.poll();
+		return next != null ? next.task : null;
+	}
+
+	@Override
+	public boolean remove(WorkerTask task) {
+		for (Entry entry : this.tasks) {
+			if (entry.task == task) {
+				return this.tasks.remove(entry);
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return this.tasks.size();
+	}
+
+	/**
+	 * Priorität und Retry werden beim Einreihen festgehalten, damit sich die Ordnung der Queue nicht ändern kann.
+	 */
+	private static final class Entry {
+		final WorkerTask task;
+		final int priority;
+		final boolean retry;
+		final long seq;
+
+		Entry(WorkerTask task, long seq) {
+			this.task = task;
+			this.priority = task.getPriority();
+			this.retry = task.isRetry();
+			this.seq = seq;
+		}
+	}
+}
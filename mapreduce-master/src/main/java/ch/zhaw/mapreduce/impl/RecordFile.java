@@ -0,0 +1,361 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+/**
+ * Binäres Dateiformat für KeyValuePairs, das ohne Java-Serialisierung auskommt. Die Datei beginnt mit einer Kennung
+ * und der ID des {@link BlockCodec}, danach folgen Blöcke mit etwa BLOCK_SIZE Bytes Records:
+ *
+ * <pre>
+ * int Anzahl Records (0 = Ende der Datei), int Länge der Records, int Länge komprimiert, Records komprimiert,
+ * long CRC32 der komprimierten Records
+ * </pre>
+ *
+ * Ein Record ist der Key und der Wert, jeweils als int Länge und UTF-8 Bytes. Geschrieben und gelesen wird Block für
+ * Block, es muss also nie die ganze Datei im Speicher sein. Ein beschädigter Block wird an der Prüfsumme erkannt, noch
+ * bevor er dekomprimiert wird.
+ *
+ * Mit {@link #encodeBlock} und {@link #decodeBlock} kann ein einzelner Block auch ohne Datei drumherum verwendet
+ * werden, zum Beispiel in einem Segment mit Blöcken vieler Tasks. Dann steht die ID des Codecs im ersten Byte des
+ * Blocks.
+ */
+final class RecordFile {
+
+	static final int MAGIC = 0x4D524B56;
+
+	static final int BLOCK_SIZE = 64 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Um höchstens diesen Faktor kann ein Block beim Auspacken wachsen, Deflate erreicht knapp 1:1032 */
+	private static final int MAX_EXPANSION = 1032;
+
+	/** Ein Record hat mindestens die beiden Längen */
+	private static final int MIN_RECORD = 8;
+
+	private RecordFile() {
+	}
+
+	/**
+	 * Schreibt alle Paare in eine neue Datei.
+	 */
+	static void write(File file, List<KeyValuePair> pairs, BlockCodec codec) throws IOException {
+		Writer writer = new Writer(file, codec);
+		boolean written = false;
+		try {
+			for (KeyValuePair pair : pairs) {
+				writer.write(pair);
+			}
+			writer.close();
+			written = true;
+		} finally {
+			if (!written) {
+				writer.closeQuietly();
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Liest alle Paare einer Datei und fügt sie hinzu.
+	 */
+	static void readAll(File file, Collection<KeyValuePair> into) throws IOException {
+		Reader reader = new Reader(file);
+		try {
+			KeyValuePair pair;
+			while ((pair = reader.next()) != null) {
+				into.add(pair);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Kodiert alle Paare als einen einzigen Block mit Codec, Anzahl, Längen und Prüfsumme.
+	 */
+	static byte[] encodeBlock(List<KeyValuePair> pairs, BlockCodec codec) throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(records);
+		for (KeyValuePair pair : pairs) {
+			writeRecord(out, pair);
+		}
+		byte[] raw = records.toByteArray();
+		byte[] stored = codec.compress(raw);
+		CRC32 crc = new CRC32();
+		crc.update(stored);
+		ByteBuffer block = ByteBuffer.allocate(1 + 12 + stored.length + 8);
+		block.put((byte) codec.id()).putInt(pairs.size()).putInt(raw.length).putInt(stored.length);
+		block.put(stored).putLong(crc.getValue());
+		return block.array();
+	}
+
+	/**
+	 * Prüft und dekodiert einen Block aus {@link #encodeBlock}.
+	 *
+	 * @throws IOException
+	 *             wenn der Block abgeschnitten oder beschädigt ist
+	 */
+	static void decodeBlock(byte[] block, Collection<KeyValuePair> into) throws IOException {
+		if (block.length < 21) {
+			throw new IOException("Block is truncated");
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(block);
+		BlockCodec codec = BlockCodec.forId(bytes.get());
+		int count = bytes.getInt();
+		int rawLength = bytes.getInt();
+		int length = bytes.getInt();
+		if (length != block.length - 21) {
+			throw new IOException("Block is truncated");
+		}
+		checkHeader(count, rawLength, length);
+		CRC32 crc = new CRC32();
+		crc.update(block, 13, length);
+		if (crc.getValue() != bytes.getLong(13 + length)) {
+			throw new IOException("Checksum mismatch in Block");
+		}
+		byte[] stored = new byte[length];
+		bytes.get(stored);
+		into.addAll(decodeRecords(codec.decompress(stored, rawLength), count));
+	}
+
+	/**
+	 * Prüft die Angaben im Kopf eines Blocks, bevor dafür Speicher reserviert wird. Die Längen sind nicht in der
+	 * Prüfsumme und könnten sonst beliebig gross sein.
+	 */
+	private static void checkHeader(int count, int rawLength, int length) throws IOException {
+		if (count < 0 || rawLength < 0 || length < 0 || (long) rawLength > (long) length * MAX_EXPANSION + 64
+				|| (long) count * MIN_RECORD > rawLength) {
+			throw new IOException("Block Header is corrupt");
+		}
+	}
+
+	/**
+	 * Liest genau count Records, die ausgepackten Bytes müssen genau bis zum letzten reichen.
+	 */
+	private static List<KeyValuePair> decodeRecords(byte[] raw, int count) throws IOException {
+		ByteBuffer records = ByteBuffer.wrap(raw);
+		// die anzahl ist nicht in der pruefsumme, muss also genau bis zum ende der records reichen
+		List<KeyValuePair> pairs = new ArrayList<KeyValuePair>();
+		try {
+			for (int i = 0; i < count; i++) {
+				pairs.add(readRecord(records));
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Record Count does not match Block", e);
+		}
+		if (records.hasRemaining()) {
+			throw new IOException("Record Count does not match Block");
+		}
+		return pairs;
+	}
+
+	private static void writeRecord(DataOutputStream out, KeyValuePair pair) throws IOException {
+		writeBytes(out, pair.getKey().getBytes(UTF8));
+		writeBytes(out, pair.getValue().getBytes(UTF8));
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static KeyValuePair readRecord(ByteBuffer records) {
+		String key = readString(records);
+		String value = readString(records);
+		return new KeyValuePair(key, value);
+	}
+
+	private static String readString(ByteBuffer records) {
+		int length = records.getInt();
+		String s = new String(records.array(), records.position(), length, UTF8);
+		records.position(records.position() + length);
+		return s;
+	}
+
+	/**
+	 * Schreibt Paare blockweise über einen FileChannel. Jeder volle Block wird komprimiert, bevor er geschrieben wird.
+	 */
+	static final class Writer implements Closeable {
+
+		private final FileChannel channel;
+
+		private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+
+		private final DataOutputStream records = new DataOutputStream(this.block);
+
+		private final CRC32 crc = new CRC32();
+
+		private final BlockCodec codec;
+
+		private int count;
+
+		Writer(File file, BlockCodec codec) throws IOException {
+			this.codec = codec;
+			this.channel = new FileOutputStream(file).getChannel();
+			ByteBuffer header = ByteBuffer.allocate(5);
+			header.putInt(MAGIC).put((byte) codec.id()).flip();
+			writeFully(header);
+		}
+
+		void write(KeyValuePair pair) throws IOException {
+			writeRecord(this.records, pair);
+			this.count++;
+			if (this.block.size() >= BLOCK_SIZE) {
+				flushBlock();
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			byte[] raw = this.block.toByteArray();
+			byte[] bytes = this.codec.compress(raw);
+			this.crc.reset();
+			this.crc.update(bytes);
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putInt(this.count).putInt(raw.length).putInt(bytes.length).flip();
+			ByteBuffer trailer = ByteBuffer.allocate(8);
+			trailer.putLong(this.crc.getValue()).flip();
+			writeFully(header);
+			writeFully(ByteBuffer.wrap(bytes));
+			writeFully(trailer);
+			this.block.reset();
+			this.count = 0;
+		}
+
+		private void writeFully(ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer);
+			}
+		}
+
+		/**
+		 * Schreibt den letzten Block und das Ende der Datei.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if (this.count > 0) {
+					flushBlock();
+				}
+				ByteBuffer end = ByteBuffer.allocate(4);
+				end.putInt(0).flip();
+				writeFully(end);
+			} finally {
+				this.channel.close();
+			}
+		}
+
+		void closeQuietly() {
+			try {
+				this.channel.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Liest Paare blockweise. Jeder Block wird erst nach geprüfter Prüfsumme ausgepackt und dann ganz dekodiert, ein
+	 * beschädigter Block führt also immer zu einer IOException.
+	 */
+	static final class Reader implements Closeable {
+
+		private final DataInputStream in;
+
+		private final CRC32 crc = new CRC32();
+
+		private final BlockCodec codec;
+
+		/** Die Paare des aktuellen Blocks */
+		private Iterator<KeyValuePair> block = Collections.<KeyValuePair> emptyList().iterator();
+
+		/** Noch nicht gelesene Bytes der Datei, darüber hinaus kann kein Block reichen */
+		private long available;
+
+		private boolean ended;
+
+		Reader(File file) throws IOException {
+			this.available = file.length() - 5;
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BLOCK_SIZE));
+			try {
+				int magic = this.in.readInt();
+				if (magic != MAGIC) {
+					throw new IOException("Not a Record File: " + file.getAbsolutePath());
+				}
+				this.codec = BlockCodec.forId(this.in.readByte());
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return das nächste Paar, null am Ende der Datei
+		 * @throws IOException
+		 *             wenn die Datei nicht gelesen werden kann, abgeschnitten oder beschädigt ist
+		 */
+		KeyValuePair next() throws IOException {
+			while (!this.block.hasNext()) {
+				if (this.ended || !readBlock()) {
+					return null;
+				}
+			}
+			return this.block.next();
+		}
+
+		private boolean readBlock() throws IOException {
+			int count;
+			try {
+				count = this.in.readInt();
+			} catch (EOFException e) {
+				throw new IOException("Record File is truncated", e);
+			}
+			if (count == 0) {
+				this.ended = true;
+				return false;
+			}
+			int rawLength = this.in.readInt();
+			int length = this.in.readInt();
+			checkHeader(count, rawLength, length);
+			this.available -= 12;
+			if (length + 8L > this.available) {
+				throw new IOException("Record File is truncated");
+			}
+			this.available -= length + 8L;
+			byte[] bytes = new byte[length];
+			this.in.readFully(bytes);
+			long checksum = this.in.readLong();
+			this.crc.reset();
+			this.crc.update(bytes);
+			if (this.crc.getValue() != checksum) {
+				throw new IOException("Checksum mismatch in Record File");
+			}
+			this.block = decodeRecords(this.codec.decompress(bytes, rawLength), count).iterator();
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.ResultCursor;
+
+/**
+ * Fasst die gespeicherten Resultate der Reduce Tasks pro Key zusammen, für alle Persistence-Implementationen gleich.
+ */
+final class ReduceResults {
+
+	private ReduceResults() {
+	}
+
+	/**
+	 * Liest den Cursor bis zum Ende und gruppiert die Resultate nach Key.
+	 *
+	 * @return die Resultate nach Key sortiert
+	 */
+	static Map<String, List<String>> collect(ResultCursor cursor) {
+		Map<String, List<String>> results = new TreeMap<String, List<String>>();
+		try {
+			while (cursor.hasNext()) {
+				add(results, cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Hängt die Resultate eines Tasks an. Ein aufgeteilter Key kann Resultate von mehreren Tasks haben.
+	 */
+	static void add(Map<String, List<String>> results, Iterable<KeyValuePair> taskResults) {
+		for (KeyValuePair res : taskResults) {
+			add(results, res);
+		}
+	}
+
+	private static void add(Map<String, List<String>> results, KeyValuePair res) {
+		List<String> values = results.get(res.getKey());
+		if (values == null) {
+			values = new LinkedList<String>();
+			results.put(res.getKey(), values);
+		}
+		values.add(res.getValue());
+	}
+}
@@ -1,6 +1,8 @@
 package ch.zhaw.mapreduce.impl;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,7 +17,8 @@ import ch.zhaw.mapreduce.ReduceInstruction;
 import com.google.inject.assistedinject.Assisted;
 
 /**
- * Eine Implementation des ReduceRunner mit einem WorkerPool.
+ * Eine Implementation des ReduceRunner mit einem WorkerPool. Ein Task reduziert alle Keys einer Partition, damit nicht
+ * für jeden Key ein eigener Task mit Dispatching und Persistenz-Datei anfällt.
  * 
  * @author Reto
  * 
@@ -25,9 +28,9 @@ public class ReduceWorkerTask extends AbstractWorkerTask {
 	private static final Logger LOG = Logger.getLogger(ReduceWorkerTask.class.getName());
 
 	/**
-	 * Fuer diesen Key wollen wir reduzieren
+	 * Die Nummer der Partition, die dieser Task reduziert
 	 */
-	private final String key;
+	private final int partition;
 
 	/**
 	 * Diese ReduceInstruction wird angewendet
@@ -35,24 +38,39 @@ public class ReduceWorkerTask extends AbstractWorkerTask {
 	private final ReduceInstruction reduceInstruction;
 
 	/**
-	 * Der zu reduzierende Input
+	 * Der zu reduzierende Input: alle Keys dieser Partition mit ihren Werten. Liegt die Partition in der Persistence,
+	 * wird sie erst gelesen, wenn der Task läuft.
 	 */
-	private final List<KeyValuePair> values;
+	private final Map<String, List<KeyValuePair>> inputs;
+
+	/**
+	 * Speichert die Resultate, ohne den abliefernden Thread zu blockieren
+	 */
+	private final WriteBehind writeBehind;
+
+	public ReduceWorkerTask(String taskUuid, String jobId, Persistence persistence,
+			ReduceInstruction reduceInstruction, int partition, Map<String, List<KeyValuePair>> inputs) {
+		this(taskUuid, jobId, persistence, reduceInstruction, partition, inputs, WriteBehind.disabled());
+	}
 
 	@Inject
-	public ReduceWorkerTask(@Named("taskUuid") String taskUuid, @Assisted Persistence persistence,
-			@Assisted ReduceInstruction reduceInstruction, @Assisted("key") String key,
-			@Assisted List<KeyValuePair> inputs) {
-		super(taskUuid, persistence);
-		this.key = key;
+	public ReduceWorkerTask(@Named("taskUuid") String taskUuid, @Assisted String jobId,
+			@Assisted Persistence persistence, @Assisted ReduceInstruction reduceInstruction, @Assisted int partition,
+			@Assisted Map<String, List<KeyValuePair>> inputs, WriteBehind writeBehind) {
+		super(taskUuid, jobId, persistence);
+		this.partition = partition;
 		this.reduceInstruction = reduceInstruction;
-		this.values = inputs;
+		this.inputs = inputs;
+		this.writeBehind = writeBehind;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void runTask(Context ctx) {
-		this.reduceInstruction.reduce(ctx, key, values.iterator());
+		for (Entry<String, List<KeyValuePair>> entry : this.inputs.entrySet()) {
+			ctx.startReduce(entry.getKey());
+			this.reduceInstruction.reduce(ctx, entry.getKey(), entry.getValue().iterator());
+		}
 	}
 
 	/**
@@ -66,11 +84,15 @@ public class ReduceWorkerTask extends AbstractWorkerTask {
 
 	@Override
 	public String getInput() {
-		return this.key;
+		return Integer.toString(this.partition);
+	}
+
+	public int getPartition() {
+		return this.partition;
 	}
 
-	public List<KeyValuePair> getValues() {
-		return this.values;
+	public Map<String, List<KeyValuePair>> getInputs() {
+		return this.inputs;
 	}
 
 	@Override
@@ -81,17 +103,35 @@ public class ReduceWorkerTask extends AbstractWorkerTask {
 
 	@Override
 	public void successful(List<?> result) {
+		// bei spekulativer ausfuehrung gibt es mehrere versuche, nur der erste darf seine resultate abliefern
+		if (!commit()) {
+			LOG.log(Level.FINE, "Discard Result of {0}, another Attempt was faster or it was aborted", getTaskUuid());
+			discarded();
+			return;
+		}
 		if (result != null && !result.isEmpty()) {
 			try {
 				@SuppressWarnings("unchecked")
 				// try-catch
-				List<String> typedResult = (List<String>) result;
-				this.persistence.storeReduceResults(getTaskUuid(), getInput(), typedResult);
+				List<KeyValuePair> typedResult = (List<KeyValuePair>) result;
+				// fertig ist der task erst, wenn seine resultate dauerhaft gespeichert sind
+				this.writeBehind.storeReduceResults(this.persistence, getTaskUuid(), typedResult,
+						new WriteBehind.Callback() {
+							@Override
+							public void written(boolean durable) {
+								if (durable) {
+									completed();
+								} else {
+									LOG.log(Level.SEVERE, "Failed to store Results of {0}", getTaskUuid());
+									fail();
+								}
+							}
+						});
 			} catch (ClassCastException e) {
-				LOG.log(Level.SEVERE, "Wrong type for MapTask", e);
+				LOG.log(Level.SEVERE, "Wrong type for ReduceTask", e);
 				failed();
-				return;
 			}
+			return;
 		}
 		completed();
 	}
@@ -0,0 +1,43 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+import ch.zhaw.mapreduce.SchedulingPolicy;
+import ch.zhaw.mapreduce.WorkerTask;
+
+/**
+ * Wiederholungen (Neustarts und Backups) werden vor allen anderen Tasks ausgeführt, weil eine Phase erst fertig ist,
+ * wenn auch ihr letzter Task erfolgreich war. Sonst gilt die Reihenfolge des Einreihens.
+ */
+public final class RetriesFirstSchedulingPolicy implements SchedulingPolicy {
+
+	private final Queue<WorkerTask> retries = new LinkedList<WorkerTask>();
+
+	private final Queue<WorkerTask> tasks = new LinkedList<WorkerTask>();
+
+	@Override
+	public void add(WorkerTask task) {
+		if (task.isRetry()) {
+			this.retries.add(task);
+		} else {
+			this.tasks.add(task);
+		}
+	}
+
+	@Override
+	public WorkerTask next() {
+		WorkerTask retry = this.retries.poll();
+		return retry != null ? retry : this.tasks.poll();
+	}
+
+	@Override
+	public boolean remove(WorkerTask task) {
+		return this.retries.remove(task) || this.tasks.remove(task);
+	}
+
+	@Override
+	public int size() {
+		return this.retries.size() + this.tasks.size();
+	}
+}
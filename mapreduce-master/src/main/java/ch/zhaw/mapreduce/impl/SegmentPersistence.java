@@ -0,0 +1,310 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.ResultCursor;
+
+/**
+ * Persistenz, die alle Resultate einer Berechnung in zwei Segment-Dateien anhängt statt eine Datei pro Task zu
+ * erstellen: eine für die nach Partition getrennten Map-Resultate und eine für die Reduce-Resultate. Jeder Task
+ * schreibt seine Resultate als einen Block von {@link RecordFile} an eine reservierte Stelle im Segment, so können
+ * viele Tasks gleichzeitig schreiben, ohne sich zu blockieren.
+ *
+ * Welcher Block zu welchem Task gehört, steht in einem Index im Speicher. Löschen entfernt nur den Eintrag im Index,
+ * der Platz im Segment wird erst mit der ganzen Berechnung freigegeben. Am Ende müssen nur zwei Dateien gelöscht
+ * werden.
+ */
+public class SegmentPersistence implements Persistence {
+
+	private static final Logger LOG = Logger.getLogger(SegmentPersistence.class.getName());
+
+	private static final Random seed = new Random();
+
+	private final File directory;
+
+	private Segment partitionSegment;
+
+	private Segment reduceSegment;
+
+	/** Blöcke jeder Partition nach ID des Teils */
+	private final ConcurrentMap<Integer, ConcurrentMap<String, Extent>> partitionIndex = new ConcurrentHashMap<Integer, ConcurrentMap<String, Extent>>();
+
+	/** Block jedes Reduce Tasks */
+	private final ConcurrentMap<String, Extent> reduceIndex = new ConcurrentHashMap<String, Extent>();
+
+	private volatile BlockCodec codec = BlockCodec.NONE;
+
+	@Inject
+	SegmentPersistence(@Named("segmentpersistence.directory") String directory) {
+		String distinctor = Long.toString(System.currentTimeMillis()) + seed.nextInt(Integer.MAX_VALUE);
+		this.directory = new File(directory, distinctor + "seg");
+	}
+
+	@PostConstruct
+	public void initSegments() {
+		if (this.directory.exists()) {
+			throw new IllegalStateException("Directory must not have existed before: "
+					+ this.directory.getAbsolutePath());
+		}
+		if (!this.directory.mkdirs()) {
+			throw new IllegalArgumentException(this.directory.getAbsolutePath()
+					+ " does not exist and cannot be created");
+		}
+		try {
+			this.partitionSegment = new Segment(new File(this.directory, "part"));
+			this.reduceSegment = new Segment(new File(this.directory, "red"));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(this.directory.getAbsolutePath() + " is not writable", e);
+		}
+		LOG.log(Level.INFO, "Using directory {0} for persistence", this.directory.getAbsolutePath());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Inject
+	@Override
+	public void setCompression(@Named("Compression") String codec) {
+		this.codec = BlockCodec.forName(codec);
+	}
+
+	@Override
+	public boolean storeMapResults(String taskUuid, List<KeyValuePair> mapResults) {
+		return storeMapResults(taskUuid, 0, mapResults);
+	}
+
+	@Override
+	public boolean storeMapResults(String sliceId, int partition, List<KeyValuePair> mapResults) {
+		ConcurrentMap<String, Extent> slices = this.partitionIndex.get(partition);
+		if (slices == null) {
+			ConcurrentMap<String, Extent> newSlices = new ConcurrentHashMap<String, Extent>();
+			slices = this.partitionIndex.putIfAbsent(partition, newSlices);
+			if (slices == null) {
+				slices = newSlices;
+			}
+		}
+		return store(this.partitionSegment, slices, sliceId, mapResults);
+	}
+
+	@Override
+	public boolean storeReduceResults(String taskUuid, List<KeyValuePair> results) {
+		return store(this.reduceSegment, this.reduceIndex, taskUuid, results);
+	}
+
+	private boolean store(Segment segment, ConcurrentMap<String, Extent> index, String taskUuid,
+			List<KeyValuePair> results) {
+		if (index.containsKey(taskUuid)) {
+			LOG.log(Level.SEVERE, "Results for TaskUuid {0} already exist", taskUuid);
+			return false;
+		}
+		try {
+			Extent extent = segment.append(RecordFile.encodeBlock(results, this.codec));
+			if (index.putIfAbsent(taskUuid, extent) != null) {
+				LOG.log(Level.SEVERE, "Results for TaskUuid {0} already exist", taskUuid);
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, "Failed to write to segment ", e);
+			return false;
+		}
+	}
+
+	@Override
+	public List<KeyValuePair> getMapResults() {
+		return ChainedCursor.toList(openMapResults());
+	}
+
+	@Override
+	public List<KeyValuePair> getMapResults(int partition) {
+		return ChainedCursor.toList(openMapResults(partition));
+	}
+
+	/**
+	 * {@inheritDoc} Nach Key sortiert wie bei der FilePersistence.
+	 */
+	@Override
+	public Map<String, List<String>> getReduceResults() {
+		return ReduceResults.collect(openReduceResults());
+	}
+
+	@Override
+	public ResultCursor openMapResults() {
+		return ChainedCursor.ofPartitions(this, this.partitionIndex.keySet());
+	}
+
+	@Override
+	public ResultCursor openMapResults(int partition) {
+		Map<String, Extent> slices = this.partitionIndex.get(partition);
+		return open(this.partitionSegment, slices != null ? slices.values() : Collections.<Extent> emptyList());
+	}
+
+	@Override
+	public ResultCursor openReduceResults() {
+		return open(this.reduceSegment, this.reduceIndex.values());
+	}
+
+	/**
+	 * Liest die Blöcke nacheinander. Ein beschädigter Block bricht das Lesen ab.
+	 */
+	private ResultCursor open(final Segment segment, Collection<Extent> extents) {
+		final Iterator<Extent> blocks = new ArrayList<Extent>(extents).iterator();
+		return new ChainedCursor() {
+			@Override
+			protected Iterator<KeyValuePair> nextSource() {
+				while (blocks.hasNext()) {
+					List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+					try {
+						RecordFile.decodeBlock(segment.read(blocks.next()), results);
+						return results.iterator();
+					} catch (IOException e) {
+						throw new IllegalStateException("Failed to read from segment " + segment.file.getAbsolutePath(),
+								e);
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	@Override
+	public boolean destroyMap(String sliceId) {
+		for (ConcurrentMap<String, Extent> slices : this.partitionIndex.values()) {
+			slices.remove(sliceId);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean destroyReduce(String taskUuid) {
+		this.reduceIndex.remove(taskUuid);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc} Ein force pro Segment, egal wie viele Tasks seit dem letzten Mal geschrieben haben.
+	 */
+	@Override
+	public boolean sync() {
+		boolean success = true;
+		for (Segment segment : new Segment[] { this.partitionSegment, this.reduceSegment }) {
+			try {
+				segment.force();
+			} catch (IOException e) {
+				LOG.log(Level.SEVERE, "Failed to sync segment ", e);
+				success = false;
+			}
+		}
+		return success;
+	}
+
+	@Override
+	public boolean suicide() {
+		LOG.entering(getClass().getName(), "suicide");
+		this.partitionIndex.clear();
+		this.reduceIndex.clear();
+		boolean success = true;
+		for (Segment segment : new Segment[] { this.partitionSegment, this.reduceSegment }) {
+			if (segment != null && !segment.delete()) {
+				success = false;
+			}
+		}
+		if (!this.directory.delete()) {
+			LOG.log(Level.SEVERE, "Failed to delete {0}", this.directory.getAbsolutePath());
+			success = false;
+		}
+		LOG.exiting(getClass().getName(), "suicide", success);
+		return success;
+	}
+
+	/**
+	 * Position und Länge eines Blocks in einem Segment.
+	 */
+	private static final class Extent {
+		final long offset;
+		final int length;
+
+		Extent(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Eine Datei, an die Blöcke angehängt werden. Die Stelle für einen Block wird atomar reserviert, geschrieben wird
+	 * dann ohne Lock an diese Stelle.
+	 */
+	private static final class Segment {
+		private final File file;
+
+		private final RandomAccessFile raf;
+
+		private final FileChannel channel;
+
+		private final AtomicLong end = new AtomicLong();
+
+		Segment(File file) throws IOException {
+			this.file = file;
+			this.raf = new RandomAccessFile(file, "rw");
+			this.channel = this.raf.getChannel();
+		}
+
+		Extent append(byte[] block) throws IOException {
+			long offset = this.end.getAndAdd(block.length);
+			ByteBuffer buffer = ByteBuffer.wrap(block);
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer, offset + buffer.position());
+			}
+			return new Extent(offset, block.length);
+		}
+
+		byte[] read(Extent extent) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(extent.length);
+			while (buffer.hasRemaining()) {
+				if (this.channel.read(buffer, extent.offset + buffer.position()) < 0) {
+					throw new IOException("Segment is truncated: " + this.file.getAbsolutePath());
+				}
+			}
+			return buffer.array();
+		}
+
+		void force() throws IOException {
+			this.channel.force(false);
+		}
+
+		boolean delete() {
+			try {
+				this.raf.close();
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Failed to close " + this.file.getAbsolutePath(), e);
+			}
+			if (!this.file.delete()) {
+				LOG.log(Level.SEVERE, "Failed to delete {0}", this.file.getAbsolutePath());
+				return false;
+			}
+			return true;
+		}
+	}
+}
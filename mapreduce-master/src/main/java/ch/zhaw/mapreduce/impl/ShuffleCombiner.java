@@ -0,0 +1,124 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.CombinerInstruction;
+import ch.zhaw.mapreduce.KeyValuePair;
+
+/**
+ * Wendet die CombinerInstruction einer Berechnung beim Shuffeln nochmals an, diesmal über die Resultate aller Map
+ * Tasks hinweg. Bei vielen kleinen Map Tasks kann der Combiner pro Task kaum etwas zusammenfassen, die Liste eines
+ * Keys wird aber trotzdem sehr lang. Sobald sie threshold Werte erreicht, wird sie im Shuffler zusammengefasst.
+ *
+ * Fasst der Combiner kaum etwas zusammen, wird erst wieder kombiniert, wenn sich die Liste verdoppelt hat. So wird
+ * jeder Wert höchstens ein paar Mal kombiniert.
+ */
+public final class ShuffleCombiner {
+
+	private static final Logger LOG = Logger.getLogger(ShuffleCombiner.class.getName());
+
+	private static final ShuffleCombiner NONE = new ShuffleCombiner(null, 0);
+
+	private final CombinerInstruction combiner;
+
+	private final int threshold;
+
+	/** Ist der Combiner einmal fehlgeschlagen, wird beim Abliefern nicht mehr kombiniert */
+	private volatile boolean failed;
+
+	/**
+	 * @param combiner
+	 *            die CombinerInstruction der Berechnung, darf null sein
+	 * @param threshold
+	 *            ab so vielen Werten wird die Liste eines Keys kombiniert, 0 = nie
+	 */
+	public ShuffleCombiner(CombinerInstruction combiner, int threshold) {
+		this.combiner = combiner;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Kombiniert nie.
+	 */
+	public static ShuffleCombiner none() {
+		return NONE;
+	}
+
+	/**
+	 * Ob eine Liste, die gerade auf size Werte gewachsen ist, jetzt kombiniert werden soll. Das ist bei threshold,
+	 * 2*threshold, 4*threshold usw. der Fall.
+	 */
+	public boolean isDue(int size) {
+		if (this.combiner == null || this.threshold <= 0 || size < this.threshold || size % this.threshold != 0) {
+			return false;
+		}
+		int multiple = size / this.threshold;
+		return (multiple & (multiple - 1)) == 0;
+	}
+
+	/**
+	 * Ob die Liste eines Keys, die von before auf after Werte gewachsen ist, unterwegs fällig geworden ist.
+	 */
+	public boolean isDue(int before, int after) {
+		for (int size = before + 1; size <= after; size++) {
+			if (isDue(size)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Kombiniert die Werte wie {@link #combine(GroupedValues)}, wirft aber nicht. Für Werte, die beim Abliefern
+	 * schon zu den Werten anderer Tasks gelegt wurden: Würde das Abliefern fehlschlagen, würde der Map Task wiederholt
+	 * und seine Werte wären doppelt. Unkombiniert sind sie aber vollständig, der Reduce Task bekommt einfach mehr
+	 * Werte. Nach dem ersten Fehler wird für diese Berechnung nicht mehr kombiniert.
+	 * 
+	 * @return true, wenn kombiniert wurde
+	 */
+	public boolean tryCombine(GroupedValues values) {
+		if (this.failed) {
+			return false;
+		}
+		try {
+			combine(values);
+			return true;
+		} catch (RuntimeException e) {
+			this.failed = true;
+			LOG.log(Level.SEVERE, "Failed to combine Values of Key " + values.getKey()
+					+ " while shuffling, keeping them uncombined", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Kombiniert die Werte, wenn es mindestens threshold sind. Für Listen, die nicht mehr wachsen.
+	 */
+	public void combineIfLarge(GroupedValues values) {
+		if (this.combiner != null && this.threshold > 0 && values.size() >= this.threshold) {
+			combine(values);
+		}
+	}
+
+	/**
+	 * Ersetzt die Werte durch das Resultat des Combiners.
+	 *
+	 * @throws IllegalStateException
+	 *             wenn der Combiner Werte für einen anderen Key liefert. Die Werte bleiben dann unverändert
+	 */
+	public void combine(GroupedValues values) {
+		List<KeyValuePair> combined = this.combiner.combine(values.iterator());
+		for (KeyValuePair pair : combined) {
+			if (!values.getKey().equals(pair.getKey())) {
+				throw new IllegalStateException("Combiner returned Key " + pair.getKey() + " for Key "
+						+ values.getKey());
+			}
+		}
+		values.clear();
+		for (KeyValuePair pair : combined) {
+			values.addValue(pair.getValue());
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.ShuffleProcessorFactory;
+
+/**
+ * Führt den AfterShuffleHook einer Berechnung pro Partition aus, sobald die Partition für die Reduce-Phase geholt
+ * wird. Die Partitionen werden so nur einmal gelesen und der Hook läuft parallel auf mehreren Threads, während die
+ * Reduce Tasks laufen. Es warten höchstens maxPending Partitionen auf den Hook, damit nicht alle Partitionen
+ * gleichzeitig im Speicher gehalten werden, wenn der Hook langsamer ist als die Reduce-Phase.
+ */
+public final class ShuffleHookRunner {
+
+	private static final Logger LOG = Logger.getLogger(ShuffleHookRunner.class.getName());
+
+	private final ShuffleProcessorFactory hook;
+
+	private final Executor executor;
+
+	private final int maxPending;
+
+	private final Semaphore pending;
+
+	/** Erster Fehler des Hooks, wird beim Warten weitergegeben */
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	private volatile boolean cancelled;
+
+	public ShuffleHookRunner(ShuffleProcessorFactory hook, Executor executor, int maxPending) {
+		this.hook = hook;
+		this.executor = executor;
+		this.maxPending = maxPending;
+		this.pending = new Semaphore(maxPending);
+	}
+
+	/**
+	 * Übergibt eine Partition dem Hook. Blockiert, solange schon maxPending Partitionen auf den Hook warten.
+	 */
+	public void submit(Map<String, List<KeyValuePair>> partition) throws InterruptedException {
+		this.pending.acquire();
+		final Runnable runnable;
+		try {
+			runnable = this.hook.getNewRunnable(partition.entrySet().iterator());
+		} catch (RuntimeException e) {
+			this.pending.release();
+			throw e;
+		}
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!cancelled) {
+						runnable.run();
+					}
+				} catch (Throwable t) {
+					LOG.log(Level.SEVERE, "AfterShuffleHook failed", t);
+					failure.compareAndSet(null, t);
+				} finally {
+					pending.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wartet, bis der Hook alle übergebenen Partitionen verarbeitet hat.
+	 *
+	 * @throws IllegalStateException
+	 *             wenn der Hook für eine Partition fehlgeschlagen ist
+	 */
+	public void awaitAll() throws InterruptedException {
+		this.pending.acquire(this.maxPending);
+		this.pending.release(this.maxPending);
+		Throwable t = this.failure.get();
+		if (t != null) {
+			throw new IllegalStateException("AfterShuffleHook failed", t);
+		}
+	}
+
+	/**
+	 * Partitionen, die noch auf den Hook warten, werden nicht mehr verarbeitet. Bereits laufende laufen zu Ende.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+}
@@ -0,0 +1,646 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.lucene.util.PriorityQueue;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+import ch.zhaw.mapreduce.Partitioner;
+import ch.zhaw.mapreduce.Shuffler;
+
+/**
+ * Gruppiert die Resultate mit einem externen Sortierverfahren, damit auch Berechnungen mit mehr Zwischenresultaten
+ * als Heap möglich sind. Die Resultate werden im Speicher gesammelt, bis das Speicherbudget erreicht ist. Dann werden
+ * sie nach Partition und Key sortiert als Lauf auf die Disk geschrieben. Am Ende werden alle Läufe und der Rest im
+ * Speicher zusammengeführt (k-Wege-Merge). Weil nach Partition sortiert ist, kommen die Partitionen nacheinander und
+ * es muss immer nur eine Partition im Speicher sein.
+ *
+ * Solange das Budget nicht erreicht wird, bleibt alles im Speicher und es wird nichts geschrieben.
+ *
+ * Der ShuffleCombiner fasst lange Listen schon im Speicher zusammen, damit das Budget später erreicht wird, und beim
+ * Merge nochmals die Werte eines Keys aus allen Läufen.
+ *
+ * Mit totaler Ordnung ({@link #totalOrder}) wird nur nach Key sortiert und eine Stichprobe der Keys gezogen. Erst beim
+ * Merge werden die Keys mit einem TotalOrderPartitioner aus der Stichprobe in sortierte Bereiche aufgeteilt.
+ *
+ * Der KeyCounter zählt die Werte pro Key beim Abliefern. Die heissen Keys werden beim Merge übersprungen.
+ */
+public final class SortingShuffler implements Shuffler {
+
+	private static final Logger LOG = Logger.getLogger(SortingShuffler.class.getName());
+
+	/** Geschätzter Speicherbedarf eines neuen Keys in Bytes ohne die Zeichen: Eintrag in der Map, GroupedValues */
+	private static final int KEY_OVERHEAD = 96;
+
+	/** Geschätzter Speicherbedarf eines Werts in Bytes ohne die Zeichen: String, char[] und Platz im Array */
+	private static final int VALUE_OVERHEAD = 48;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String CHARSET = "UTF-8";
+
+	private final Partitioner partitioner;
+
+	private final int nPartitions;
+
+	/** Ungefähre Anzahl Bytes, die im Speicher gesammelt werden, bevor ein Lauf geschrieben wird */
+	private final long memoryBudget;
+
+	private final File directory;
+
+	private final ShuffleCombiner combiner;
+
+	/** Stichprobe der Keys für die totale Ordnung, null wenn der Partitioner verwendet wird */
+	private final KeySampler sampler;
+
+	private final KeyCounter counter;
+
+	/** Von takeHotKeys herausgenommen, werden beim Merge übersprungen */
+	private Set<String> taken = Collections.emptySet();
+
+	/** Resultate, die noch nicht geschrieben wurden. Alle Felder ausser den finalen sind durch this geschützt */
+	private Map<String, GroupedValues> buffer = new HashMap<String, GroupedValues>();
+
+	private long bufferedBytes;
+
+	private final List<File> runs = new ArrayList<File>();
+
+	private boolean finished;
+
+	@Inject
+	public SortingShuffler(Partitioner partitioner, @Named("ReducePartitions") int nPartitions,
+			@Named("ShufflerMemoryBudget") long memoryBudget, @Named("shuffler.directory") String directory) {
+		this(partitioner, nPartitions, memoryBudget, directory, ShuffleCombiner.none());
+	}
+
+	public SortingShuffler(Partitioner partitioner, int nPartitions, long memoryBudget, String directory,
+			ShuffleCombiner combiner) {
+		this(partitioner, nPartitions, memoryBudget, directory, combiner, KeyCounter.none());
+	}
+
+	public SortingShuffler(Partitioner partitioner, int nPartitions, long memoryBudget, String directory,
+			ShuffleCombiner combiner, KeyCounter counter) {
+		this(partitioner, nPartitions, memoryBudget, directory, combiner, counter, null);
+	}
+
+	private SortingShuffler(Partitioner partitioner, int nPartitions, long memoryBudget, String directory,
+			ShuffleCombiner combiner, KeyCounter counter, KeySampler sampler) {
+		this.partitioner = partitioner;
+		this.nPartitions = nPartitions;
+		this.memoryBudget = memoryBudget;
+		this.directory = new File(directory);
+		this.combiner = combiner;
+		this.counter = counter;
+		this.sampler = sampler;
+	}
+
+	/**
+	 * Shuffler, dessen Partitionen zusammenhängende, sortierte Bereiche von Keys sind. Die Keys kommen auch innerhalb
+	 * einer Partition sortiert.
+	 *
+	 * @param sampleSize
+	 *            Anzahl Keys in der Stichprobe, aus der die Grenzen der Partitionen bestimmt werden
+	 */
+	public static SortingShuffler totalOrder(int nPartitions, long memoryBudget, String directory,
+			ShuffleCombiner combiner, int sampleSize) {
+		return totalOrder(nPartitions, memoryBudget, directory, combiner, KeyCounter.none(), sampleSize);
+	}
+
+	public static SortingShuffler totalOrder(int nPartitions, long memoryBudget, String directory,
+			ShuffleCombiner combiner, KeyCounter counter, int sampleSize) {
+		return new SortingShuffler(null, nPartitions, memoryBudget, directory, combiner, counter, new KeySampler(
+				sampleSize));
+	}
+
+	/**
+	 * {@inheritDoc} Die Resultate werden zuerst ausserhalb vom Lock nach Key gruppiert und dann als Ganzes in den
+	 * Puffer übernommen. Danach kann put nicht mehr fehlschlagen: Der Combiner wird nur versucht (siehe
+	 * {@link ShuffleCombiner#tryCombine}) und ein fehlgeschlagener Lauf bleibt im Speicher. Sonst würde der Map Task
+	 * wiederholt und seine schon übernommenen Werte wären doppelt.
+	 */
+	@Override
+	public void put(List<KeyValuePair> mapResults) {
+		Map<String, GroupedValues> staged = new LinkedHashMap<String, GroupedValues>();
+		for (KeyValuePair pair : mapResults) {
+			GroupedValues values = staged.get(pair.getKey());
+			if (values == null) {
+				values = new GroupedValues(pair.getKey());
+				staged.put(pair.getKey(), values);
+			}
+			values.addValue(pair.getValue());
+		}
+		Map<String, GroupedValues> full = null;
+		synchronized (this) {
+			if (this.finished) {
+				throw new IllegalStateException("Shuffler is already finished");
+			}
+			for (GroupedValues stage : staged.values()) {
+				if (this.sampler != null) {
+					for (int i = 0; i < stage.size(); i++) {
+						this.sampler.offer(stage.getKey());
+					}
+				}
+				GroupedValues values = this.buffer.get(stage.getKey());
+				if (values == null) {
+					values = new GroupedValues(stage.getKey());
+					this.buffer.put(stage.getKey(), values);
+					this.bufferedBytes += 2 * stage.getKey().length() + KEY_OVERHEAD;
+				}
+				int before = values.size();
+				values.addAll(stage);
+				this.bufferedBytes += valueBytes(stage);
+				if (this.combiner.isDue(before, values.size())) {
+					this.bufferedBytes -= valueBytes(values);
+					this.combiner.tryCombine(values);
+					this.bufferedBytes += valueBytes(values);
+				}
+			}
+			if (this.bufferedBytes >= this.memoryBudget) {
+				full = this.buffer;
+				this.buffer = new HashMap<String, GroupedValues>();
+				this.bufferedBytes = 0;
+			}
+		}
+		for (GroupedValues stage : staged.values()) {
+			this.counter.add(stage.getKey(), stage.size());
+		}
+		if (full != null) {
+			// ausserhalb vom lock, damit die anderen worker weiter abliefern koennen
+			spill(full);
+		}
+	}
+
+	/**
+	 * {@inheritDoc} Die Resultate bleiben im Speicher, bis ein Lauf geschrieben wird. Schlägt das fehl, bleiben sie
+	 * einfach dort, daher gibt es nichts im Hintergrund zu schreiben.
+	 */
+	@Override
+	public void put(List<KeyValuePair> mapResults, WriteBehind writeBehind, WriteBehind.Callback delivered) {
+		put(mapResults);
+		delivered.written(true);
+	}
+
+	/**
+	 * {@inheritDoc} Die Grenzen der Partitionen stehen erst nach dem Merge fest, daher teilen die Map Tasks nicht auf.
+	 */
+	@Override
+	public MapPartitioning getMapPartitioning() {
+		return null;
+	}
+
+	@Override
+	public synchronized void finish() {
+		this.finished = true;
+		LOG.log(Level.INFO, "Shuffled into {0} Runs and {1} Keys in Memory",
+				new Object[] { this.runs.size(), this.buffer.size() });
+	}
+
+	/**
+	 * {@inheritDoc} Liegen schon Läufe auf der Disk, werden sie dafür einmal zusätzlich gelesen.
+	 */
+	@Override
+	public synchronized Map<String, List<KeyValuePair>> takeHotKeys() {
+		Set<String> hot = this.counter.hotKeys();
+		Map<String, List<KeyValuePair>> values = new HashMap<String, List<KeyValuePair>>();
+		if (hot.isEmpty()) {
+			return values;
+		}
+		if (this.runs.isEmpty()) {
+			for (String key : hot) {
+				GroupedValues buffered = this.buffer.remove(key);
+				if (buffered != null) {
+					values.put(key, buffered);
+				}
+			}
+		} else {
+			Merger merger = merge();
+			while (merger.hasNext()) {
+				Group group = merger.next();
+				if (hot.contains(group.key)) {
+					values.put(group.key, group.values);
+				}
+			}
+		}
+		this.taken = hot;
+		return values;
+	}
+
+	@Override
+	public synchronized Iterator<Map<String, List<KeyValuePair>>> partitions() {
+		if (this.sampler != null) {
+			// die laeufe sind nur nach key sortiert, die partition ergibt sich aus der stichprobe
+			Partitioner order = TotalOrderPartitioner.fromSample(this.sampler.sample(), this.nPartitions);
+			return new PartitionIterator(merge(), order, this.nPartitions);
+		}
+		if (this.runs.isEmpty()) {
+			return partition(this.buffer, this.partitioner, this.nPartitions).iterator();
+		}
+		return new PartitionIterator(merge(), null, this.nPartitions);
+	}
+
+	@Override
+	public synchronized Iterator<Entry<String, List<KeyValuePair>>> entries() {
+		if (this.runs.isEmpty() && this.sampler == null) {
+			return Collections.<String, List<KeyValuePair>> unmodifiableMap(this.buffer).entrySet().iterator();
+		}
+		final Merger merger = merge();
+		return new ReadOnlyIterator<Entry<String, List<KeyValuePair>>>() {
+			@Override
+			public boolean hasNext() {
+				return merger.hasNext();
+			}
+
+			@Override
+			public Entry<String, List<KeyValuePair>> next() {
+				Group group = merger.next();
+				return new AbstractMap.SimpleImmutableEntry<String, List<KeyValuePair>>(group.key, group.values);
+			}
+		};
+	}
+
+	@Override
+	public synchronized void discard() {
+		for (File run : this.runs) {
+			if (!run.delete()) {
+				LOG.log(Level.WARNING, "Failed to delete {0}", run.getAbsolutePath());
+			}
+		}
+		this.runs.clear();
+		this.buffer = new HashMap<String, GroupedValues>();
+		this.bufferedBytes = 0;
+	}
+
+	/**
+	 * Schreibt die Resultate sortiert als neuen Lauf. Schlägt das fehl, auch wegen dem Partitioner, bleiben sie im
+	 * Speicher.
+	 */
+	private void spill(Map<String, GroupedValues> results) {
+		try {
+			File run = writeRun(sorted(results));
+			synchronized (this) {
+				this.runs.add(run);
+			}
+			LOG.log(Level.FINE, "Spilled {0} Keys to {1}", new Object[] { results.size(), run.getAbsolutePath() });
+		} catch (IOException e) {
+			keep(results, e);
+		} catch (RuntimeException e) {
+			keep(results, e);
+		}
+	}
+
+	private void keep(Map<String, GroupedValues> results, Exception e) {
+		LOG.log(Level.SEVERE, "Failed to spill Results to Disk, keeping them in Memory", e);
+		synchronized (this) {
+			for (Entry<String, GroupedValues> entry : results.entrySet()) {
+				GroupedValues values = this.buffer.get(entry.getKey());
+				if (values == null) {
+					this.buffer.put(entry.getKey(), entry.getValue());
+				} else {
+					values.addAll(entry.getValue());
+				}
+			}
+		}
+	}
+
+	private static long valueBytes(GroupedValues values) {
+		long bytes = 0;
+		for (int i = 0; i < values.size(); i++) {
+			bytes += 2 * values.getValue(i).length() + VALUE_OVERHEAD;
+		}
+		return bytes;
+	}
+
+	private List<Group> sorted(Map<String, GroupedValues> results) {
+		List<Group> groups = new ArrayList<Group>(results.size());
+		for (Entry<String, GroupedValues> entry : results.entrySet()) {
+			int partition = this.sampler != null ? 0 : this.partitioner.partition(entry.getKey(), this.nPartitions);
+			groups.add(new Group(partition, entry.getKey(), entry.getValue()));
+		}
+		Collections.sort(groups);
+		return groups;
+	}
+
+	private File writeRun(List<Group> groups) throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException(this.directory.getAbsolutePath() + " does not exist and cannot be created");
+		}
+		File run = File.createTempFile("shuffle", ".run", this.directory);
+		DataOutputStream out = null;
+		boolean written = false;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE));
+			for (Group group : groups) {
+				out.writeBoolean(true);
+				out.writeInt(group.partition);
+				writeString(out, group.key);
+				out.writeInt(group.values.size());
+				for (int i = 0; i < group.values.size(); i++) {
+					writeString(out, group.values.getValue(i));
+				}
+			}
+			out.writeBoolean(false);
+			out.close();
+			written = true;
+			return run;
+		} finally {
+			if (!written) {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (Exception ignore) {
+					}
+				}
+				run.delete();
+			}
+		}
+	}
+
+	/**
+	 * Öffnet alle Läufe und den Rest im Speicher für einen neuen Merge. Die Dateien werden sofort geöffnet, damit sie
+	 * auch nach discard noch gelesen werden können.
+	 */
+	private Merger merge() {
+		List<Source> sources = new ArrayList<Source>(this.runs.size() + 1);
+		try {
+			for (File run : this.runs) {
+				sources.add(new RunSource(run));
+			}
+		} catch (IOException e) {
+			for (Source source : sources) {
+				source.close();
+			}
+			throw new IllegalStateException("Failed to open shuffled Results", e);
+		}
+		if (!this.buffer.isEmpty()) {
+			sources.add(new MemorySource(sorted(this.buffer)));
+		}
+		return new Merger(sources, this.combiner, this.taken);
+	}
+
+	/**
+	 * Teilt die Keys mit dem Partitioner auf die Partitionen auf. Es werden nie mehr Partitionen erstellt als es Keys
+	 * hat und leere Partitionen werden weggelassen.
+	 *
+	 * @return Partitionen mit jeweils allen Keys und ihren Werten
+	 */
+	private static List<Map<String, List<KeyValuePair>>> partition(Map<String, ? extends List<KeyValuePair>> shuffled,
+			Partitioner partitioner, int nPartitions) {
+		List<Map<String, List<KeyValuePair>>> partitions = new ArrayList<Map<String, List<KeyValuePair>>>(nPartitions);
+		for (int i = 0; i < nPartitions; i++) {
+			partitions.add(new HashMap<String, List<KeyValuePair>>());
+		}
+		for (Entry<String, ? extends List<KeyValuePair>> entry : shuffled.entrySet()) {
+			int partition = partitioner.partition(entry.getKey(), nPartitions);
+			partitions.get(partition).put(entry.getKey(), entry.getValue());
+		}
+		// ein schlechter partitioner oder wenige keys koennen partitionen leer lassen. dafuer braucht es keinen task
+		for (Iterator<Map<String, List<KeyValuePair>>> it = partitions.iterator(); it.hasNext();) {
+			if (it.next().isEmpty()) {
+				it.remove();
+			}
+		}
+		return partitions;
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(CHARSET);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	/**
+	 * Ein Key mit seinen Werten und seiner Partition. Sortiert wird nach Partition, dann nach Key.
+	 */
+	private static final class Group implements Comparable<Group> {
+		final int partition;
+		final String key;
+		final GroupedValues values;
+
+		Group(int partition, String key, GroupedValues values) {
+			this.partition = partition;
+			this.key = key;
+			this.values = values;
+		}
+
+		@Override
+		public int compareTo(Group other) {
+			if (this.partition != other.partition) {
+				return this.partition < other.partition ? -1 : 1;
+			}
+			return this.key.compareTo(other.key);
+		}
+
+		boolean sameKey(Group other) {
+			return this.partition == other.partition && this.key.equals(other.key);
+		}
+	}
+
+	/**
+	 * Ein sortierter Lauf, der Gruppe für Gruppe gelesen wird. current ist null, sobald er zu Ende ist.
+	 */
+	private abstract static class Source {
+		Group current;
+
+		abstract void advance() throws IOException;
+
+		void close() {
+		}
+	}
+
+	private static final class RunSource extends Source {
+		private final DataInputStream in;
+
+		RunSource(File run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+			advance();
+		}
+
+		@Override
+		void advance() throws IOException {
+			if (!this.in.readBoolean()) {
+				this.current = null;
+				close();
+				return;
+			}
+			int partition = this.in.readInt();
+			String key = readString(this.in);
+			int n = this.in.readInt();
+			GroupedValues values = new GroupedValues(key, n);
+			for (int i = 0; i < n; i++) {
+				values.addValue(readString(this.in));
+			}
+			this.current = new Group(partition, key, values);
+		}
+
+		@Override
+		void close() {
+			try {
+				this.in.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	private static final class MemorySource extends Source {
+		private final Iterator<Group> groups;
+
+		MemorySource(List<Group> groups) {
+			this.groups = groups.iterator();
+			advance();
+		}
+
+		@Override
+		void advance() {
+			this.current = this.groups.hasNext() ? this.groups.next() : null;
+		}
+	}
+
+	/**
+	 * Führt die sortierten Läufe zusammen und liefert jeden Key genau einmal mit allen seinen Werten.
+	 */
+	private static final class Merger {
+		private final PriorityQueue<Source> queue;
+
+		private final ShuffleCombiner combiner;
+
+		/** Diese Keys werden übersprungen */
+		private final Set<String> excluded;
+
+		Merger(List<Source> sources, ShuffleCombiner combiner, Set<String> excluded) {
+			this.combiner = combiner;
+			this.excluded = excluded;
+			this.queue = new PriorityQueue<Source>(sources.size()) {
+				@Override
+				protected boolean lessThan(Source a, Source b) {
+					return a.current.compareTo(b.current) < 0;
+				}
+			};
+			for (Source source : sources) {
+				if (source.current != null) {
+					this.queue.add(source);
+				}
+			}
+		}
+
+		boolean hasNext() {
+			// ein uebersprungener key kann in mehreren laeufen liegen, jeder lauf kommt dann nacheinander zuoberst
+			while (this.queue.size() > 0 && this.excluded.contains(this.queue.top().current.key)) {
+				advanceTop();
+			}
+			return this.queue.size() > 0;
+		}
+
+		/**
+		 * Der nächste Key, ohne ihn zu entfernen. null wenn es keine mehr gibt
+		 */
+		Group peek() {
+			return hasNext() ? this.queue.top().current : null;
+		}
+
+		Group next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Group first = this.queue.top().current;
+			GroupedValues values = new GroupedValues(first.key, first.values.size());
+			values.addAll(first.values);
+			advanceTop();
+			while (hasNext() && this.queue.top().current.sameKey(first)) {
+				values.addAll(this.queue.top().current.values);
+				advanceTop();
+			}
+			this.combiner.combineIfLarge(values);
+			return new Group(first.partition, first.key, values);
+		}
+
+		private void advanceTop() {
+			Source top = this.queue.top();
+			try {
+				top.advance();
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read shuffled Results", e);
+			}
+			if (top.current == null) {
+				this.queue.pop();
+			} else {
+				this.queue.updateTop();
+			}
+		}
+	}
+
+	/**
+	 * Sammelt die Keys einer Partition nach der anderen aus dem Merge. Die Keys bleiben innerhalb der Partition
+	 * sortiert.
+	 */
+	private static final class PartitionIterator extends ReadOnlyIterator<Map<String, List<KeyValuePair>>> {
+		private final Merger merger;
+
+		/** Teilt die nach Key sortierten Gruppen auf, null wenn die Gruppen ihre Partition schon kennen */
+		private final Partitioner order;
+
+		private final int nPartitions;
+
+		PartitionIterator(Merger merger, Partitioner order, int nPartitions) {
+			this.merger = merger;
+			this.order = order;
+			this.nPartitions = nPartitions;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.merger.hasNext();
+		}
+
+		@Override
+		public Map<String, List<KeyValuePair>> next() {
+			int partition = partitionOf(this.merger.peek());
+			Map<String, List<KeyValuePair>> keys = new LinkedHashMap<String, List<KeyValuePair>>();
+			while (this.merger.hasNext() && partitionOf(this.merger.peek()) == partition) {
+				Group group = this.merger.next();
+				keys.put(group.key, group.values);
+			}
+			return keys;
+		}
+
+		private int partitionOf(Group group) {
+			return this.order == null ? group.partition : this.order.partition(group.key, this.nPartitions);
+		}
+	}
+
+	private abstract static class ReadOnlyIterator<T> implements Iterator<T> {
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package ch.zhaw.mapreduce.impl;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Entscheidet, wann für einen langsamen Task ein Backup-Versuch gestartet wird. Ein Task gilt als Nachzügler, wenn er
+ * länger läuft als ein Vielfaches vom Median der bereits erfolgreichen Tasks seiner Phase und zusätzlich eine
+ * Mindestlaufzeit überschritten hat, damit nicht für sehr kurze Tasks Backups gestartet werden.
+ */
+public final class SpeculationPolicy {
+
+	/** Vielfaches vom Median. 0 deaktiviert die spekulative Ausführung */
+	private final double factor;
+
+	/** Mindestlaufzeit in Millisekunden */
+	private final long minRuntime;
+
+	/** Intervall in Millisekunden, in dem gegen Ende einer Phase nach Nachzüglern gesucht wird */
+	private final long checkInterval;
+
+	@Inject
+	public SpeculationPolicy(@Named("SpeculationFactor") double factor,
+			@Named("SpeculationMinRuntime") long minRuntime,
+			@Named("SpeculationCheckInterval") long checkInterval) {
+		this.factor = factor;
+		this.minRuntime = minRuntime;
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * Policy, mit der nie Backup-Versuche gestartet werden.
+	 */
+	public static SpeculationPolicy disabled() {
+		return new SpeculationPolicy(0, 0, 0);
+	}
+
+	public boolean isEnabled() {
+		return this.factor > 0;
+	}
+
+	/**
+	 * @param runtime
+	 *            bisherige Laufzeit des Tasks in Millisekunden
+	 * @param medianRuntime
+	 *            Median der Laufzeiten der erfolgreichen Tasks in Millisekunden
+	 * @return true, wenn für den Task ein Backup-Versuch gestartet werden soll
+	 */
+	public boolean isStraggler(long runtime, long medianRuntime) {
+		return isEnabled() && runtime >= this.minRuntime && runtime > this.factor * medianRuntime;
+	}
+
+	public long getCheckInterval() {
+		return this.checkInterval;
+	}
+}
@@ -0,0 +1,137 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.ResultCursor;
+
+/**
+ * Eine Partition, die in der Persistence liegt. Sie wird erst gelesen und gruppiert, wenn jemand ihre Keys braucht,
+ * normalerweise der Reduce Task selbst, sobald er auf seinem Worker läuft. Bis dahin hält der Master nur die Nummer
+ * der Partition. Wird sie über das Netz geschickt, wird sie vorher gelesen, der Agent bekommt eine gewöhnliche Map.
+ * 
+ * Die heissen Keys, die der Master selbst aufteilt, werden beim Lesen übersprungen.
+ * 
+ * Die gelesene Partition wird nur weich gehalten, damit sie nicht im Speicher bleibt, solange der Task wartet oder für
+ * einen weiteren Versuch aufbewahrt wird.
+ */
+final class StoredPartition extends AbstractMap<String, List<KeyValuePair>> implements Serializable {
+
+	private static final long serialVersionUID = 2931605736105473812L;
+
+	private final transient Persistence persistence;
+
+	private final int partition;
+
+	private final transient ShuffleCombiner combiner;
+
+	private final transient Set<String> excluded;
+
+	private transient SoftReference<Map<String, List<KeyValuePair>>> loaded;
+
+	StoredPartition(Persistence persistence, int partition, ShuffleCombiner combiner) {
+		this(persistence, partition, combiner, Collections.<String> emptySet());
+	}
+
+	/**
+	 * @param excluded
+	 *            diese Keys fehlen in der Partition
+	 */
+	StoredPartition(Persistence persistence, int partition, ShuffleCombiner combiner, Set<String> excluded) {
+		this.persistence = persistence;
+		this.partition = partition;
+		this.combiner = combiner;
+		this.excluded = excluded;
+	}
+
+	/**
+	 * Nummer der Partition in der Persistence
+	 */
+	int getPartition() {
+		return this.partition;
+	}
+
+	@Override
+	public Set<Entry<String, List<KeyValuePair>>> entrySet() {
+		return load().entrySet();
+	}
+
+	@Override
+	public List<KeyValuePair> get(Object key) {
+		return load().get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return load().containsKey(key);
+	}
+
+	/**
+	 * {@inheritDoc} Ohne zu lesen: es gibt nur Partitionen, in die etwas geschrieben wurde.
+	 */
+	@Override
+	public boolean isEmpty() {
+		return false;
+	}
+
+	/**
+	 * Liest die Partition aus der Persistence und gruppiert sie nach Key, ausser sie ist noch geladen.
+	 */
+	private synchronized Map<String, List<KeyValuePair>> load() {
+		Map<String, List<KeyValuePair>> grouped = this.loaded != null ? this.loaded.get() : null;
+		if (grouped == null) {
+			grouped = Collections.<String, List<KeyValuePair>> unmodifiableMap(read(this.persistence, this.partition,
+					this.combiner, this.excluded, false));
+			this.loaded = new SoftReference<Map<String, List<KeyValuePair>>>(grouped);
+		}
+		return grouped;
+	}
+
+	/**
+	 * Liest eine Partition aus der Persistence und gruppiert sie nach Key.
+	 * 
+	 * @param only
+	 *            true, wenn nur die Keys gelesen werden, false, wenn sie übersprungen werden
+	 */
+	static Map<String, GroupedValues> read(Persistence persistence, int partition, ShuffleCombiner combiner,
+			Set<String> keys, boolean only) {
+		Map<String, GroupedValues> grouped = new HashMap<String, GroupedValues>();
+		ResultCursor cursor = persistence.openMapResults(partition);
+		try {
+			while (cursor.hasNext()) {
+				KeyValuePair pair = cursor.next();
+				if (keys.contains(pair.getKey()) != only) {
+					continue;
+				}
+				GroupedValues values = grouped.get(pair.getKey());
+				if (values == null) {
+					values = new GroupedValues(pair.getKey());
+					grouped.put(pair.getKey(), values);
+				}
+				values.addValue(pair.getValue());
+				if (combiner.isDue(values.size())) {
+					combiner.combine(values);
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		return grouped;
+	}
+
+	/**
+	 * Über das Netz geht eine Kopie, die Persistence gibt es nur auf dem Master.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return new HashMap<String, List<KeyValuePair>>(load());
+	}
+}
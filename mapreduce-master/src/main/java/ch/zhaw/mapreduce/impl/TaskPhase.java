@@ -0,0 +1,254 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.Pool;
+import ch.zhaw.mapreduce.WorkerTask;
+import ch.zhaw.mapreduce.WorkerTaskObserver;
+
+/**
+ * Führt die Tasks einer Phase (Map oder Reduce) auf dem Pool aus. Die Tasks melden sich selbst, sobald sie fertig
+ * sind, daher muss nicht periodisch nach ihrem Zustand gefragt werden. Fehlgeschlagene Tasks werden neu gestartet.
+ *
+ * Gegen Ende der Phase, wenn keine ihrer Tasks mehr eingereiht sind, wird für Nachzügler ein Backup-Versuch
+ * gestartet (siehe SpeculationPolicy). Alle Versuche eines Tasks teilen sich das Recht, die Resultate zu speichern, so
+ * dass diese genau einmal in der Persistenz landen. Sobald ein Versuch erfolgreich war, werden die übrigen abgebrochen.
+ *
+ * Alle Methoden ausser taskFinished dürfen nur vom Thread des Masters aufgerufen werden.
+ */
+public abstract class TaskPhase<T extends AbstractWorkerTask> implements WorkerTaskObserver {
+
+	private static final Logger LOG = Logger.getLogger(TaskPhase.class.getName());
+
+	private final Pool pool;
+
+	private final SpeculationPolicy speculation;
+
+	/** Priorität des Jobs, wird jedem Versuch mitgegeben */
+	private final int priority;
+
+	private final Class<T> type;
+
+	private final BlockingQueue<T> finished = new LinkedBlockingQueue<T>();
+
+	/** So viele der letzten Laufzeiten werden für den Median verwendet */
+	static final int RUNTIME_SAMPLE = 256;
+
+	/** Die letzten Laufzeiten der erfolgreichen Versuche in Millisekunden als Ringpuffer, synchronisiert darauf */
+	private final long[] runtimes = new long[RUNTIME_SAMPLE];
+
+	/** Anzahl bisher erfolgreicher Versuche, die nächste Laufzeit kommt an diese Stelle modulo RUNTIME_SAMPLE */
+	private long runtimeCount;
+
+	/** Laufender Versuch -> alle laufenden Versuche desselben Tasks */
+	private final Map<T, List<T>> attempts = new IdentityHashMap<T, List<T>>();
+
+	/** Anzahl Tasks, die noch nicht erfolgreich waren */
+	private int running;
+
+	/** Gleitender Mittelwert der Laufzeiten der erfolgreichen Versuche in Millisekunden, -1 solange keiner fertig ist */
+	private long meanRuntime = -1;
+
+	public TaskPhase(Pool pool, SpeculationPolicy speculation, int priority, Class<T> type) {
+		this.pool = pool;
+		this.speculation = speculation;
+		this.priority = priority;
+		this.type = type;
+	}
+
+	/**
+	 * Erstellt einen neuen Versuch mit dem gleichen Input wie der gegebene Task. Wird für Neustarts und Backups
+	 * verwendet.
+	 */
+	protected abstract T newAttempt(T template);
+
+	@Override
+	public void taskFinished(WorkerTask task) {
+		T attempt = this.type.cast(task);
+		if (attempt.getCurrentState() == WorkerTask.State.COMPLETED) {
+			synchronized (this.runtimes) {
+				this.runtimes[(int) (this.runtimeCount++ % RUNTIME_SAMPLE)] = attempt.getRuntime();
+			}
+		}
+		this.finished.add(attempt);
+	}
+
+	/**
+	 * Wartet, bis das Fenster einen weiteren Task zulässt. Solange werden fertige Tasks behandelt.
+	 */
+	public void awaitWindow(TaskWindow window) throws InterruptedException {
+		while (!window.admits(this.running, this.pool, this.meanRuntime)) {
+			// das fenster haengt auch vom pool ab, darum nicht unbeschraenkt auf einen fertigen task warten
+			T attempt = this.finished.poll(TaskWindow.RECHECK_INTERVAL, TimeUnit.MILLISECONDS);
+			if (attempt != null) {
+				handle(attempt);
+			}
+		}
+	}
+
+	/**
+	 * Reiht einen neuen Task ein.
+	 */
+	public void submit(T task) {
+		enqueue(task, new ArrayList<T>(2));
+		this.running++;
+	}
+
+	/**
+	 * Wartet, bis alle Tasks erfolgreich waren. Die Phase ist fertig, sobald der letzte Task fertig ist.
+	 */
+	public void awaitAll() throws InterruptedException {
+		while (this.running > 0) {
+			if (!this.speculation.isEnabled()) {
+				handle(this.finished.take());
+				continue;
+			}
+			T attempt = this.finished.poll(this.speculation.getCheckInterval(), TimeUnit.MILLISECONDS);
+			if (attempt != null) {
+				handle(attempt);
+			} else {
+				speculate();
+			}
+		}
+	}
+
+	/**
+	 * Behandelt einen fertigen Versuch. Ist er erfolgreich, werden die übrigen Versuche desselben Tasks abgebrochen.
+	 * Schlägt er fehl oder hat er seine Resultate verworfen, wird der Task neu gestartet, sofern nicht noch ein anderer
+	 * Versuch läuft.
+	 *
+	 * @return true, wenn der Task damit erfolgreich war
+	 */
+	boolean handle(T attempt) {
+		LOG.entering(getClass().getName(), "handle", attempt);
+		List<T> group = this.attempts.remove(attempt);
+		if (group == null) {
+			LOG.log(Level.FINE, "Ignore {0}, Task is already done", attempt);
+			return false;
+		}
+		switch (attempt.getCurrentState()) {
+		case COMPLETED:
+			long runtime = attempt.getRuntime();
+			this.meanRuntime = this.meanRuntime < 0 ? runtime : (this.meanRuntime * 7 + runtime) / 8;
+			for (T other : group) {
+				if (other != attempt) {
+					LOG.log(Level.INFO, "Abort {0}, {1} was faster", new Object[] { other, attempt });
+					this.attempts.remove(other);
+					this.pool.abortTask(other);
+				}
+			}
+			this.running--;
+			return true;
+		case FAILED:
+		case ABORTED:
+			// ein abgebrochener versuch hat seine resultate verworfen, weil ein anderer das recht zum speichern hatte.
+			// schlaegt dieser danach fehl, muss der task von vorne beginnen
+			group.remove(attempt);
+			for (Iterator<T> it = group.iterator(); it.hasNext();) {
+				T other = it.next();
+				if (other.getCurrentState() == WorkerTask.State.ABORTED) {
+					it.remove();
+					this.attempts.remove(other);
+				}
+			}
+			if (group.isEmpty()) {
+				LOG.log(Level.FINE, "Restart {0}, committed before failing: {1}", new Object[] { attempt,
+						attempt.heldCommit() });
+				T restart = newAttempt(attempt);
+				restart.markRetry();
+				enqueue(restart, group);
+			} else {
+				LOG.log(Level.FINE, "{0} failed, another Attempt is still running", attempt);
+			}
+			return false;
+		default:
+			throw new IllegalStateException("Unhandled state for finished Task: " + attempt.getCurrentState());
+		}
+	}
+
+	/**
+	 * Startet Backup-Versuche für Nachzügler. Das geschieht erst, wenn keine Versuche dieser Phase mehr auf einen
+	 * Worker warten, damit Backups nicht regulären Tasks die Worker wegnehmen. Eingereihte Tasks anderer Jobs halten die
+	 * Backups nicht auf, sonst würde auf einem ausgelasteten Pool nie spekuliert.
+	 */
+	void speculate() {
+		if (hasWaitingAttempts()) {
+			return;
+		}
+		int freeWorkers = this.pool.getFreeWorkers();
+		long median = medianRuntime();
+		if (freeWorkers <= 0 || median < 0) {
+			return;
+		}
+		List<T> stragglers = new ArrayList<T>();
+		for (List<T> group : this.attempts.values()) {
+			// pro task hoechstens ein backup gleichzeitig
+			if (group.size() == 1) {
+				T attempt = group.get(0);
+				if (attempt.getCurrentState() == WorkerTask.State.INPROGRESS
+						&& this.speculation.isStraggler(attempt.getRuntime(), median)) {
+					stragglers.add(attempt);
+				}
+			}
+		}
+		for (T straggler : stragglers) {
+			if (freeWorkers-- <= 0) {
+				break;
+			}
+			LOG.log(Level.INFO, "Start Backup for {0}, running for {1}ms, Median is {2}ms", new Object[] { straggler,
+					straggler.getRuntime(), median });
+			T backup = newAttempt(straggler);
+			backup.joinAttempts(straggler);
+			backup.markRetry();
+			enqueue(backup, this.attempts.get(straggler));
+		}
+	}
+
+	/**
+	 * @return true, wenn ein Versuch dieser Phase eingereiht ist, aber noch nicht läuft
+	 */
+	private boolean hasWaitingAttempts() {
+		for (T attempt : this.attempts.keySet()) {
+			WorkerTask.State state = attempt.getCurrentState();
+			if (state == WorkerTask.State.INITIATED || state == WorkerTask.State.ENQUEUED) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return Median der letzten RUNTIME_SAMPLE Laufzeiten der erfolgreichen Versuche. -1 wenn noch keiner
+	 *         erfolgreich war
+	 */
+	long medianRuntime() {
+		long[] sorted;
+		synchronized (this.runtimes) {
+			sorted = Arrays.copyOf(this.runtimes, (int) Math.min(this.runtimeCount, RUNTIME_SAMPLE));
+		}
+		if (sorted.length == 0) {
+			return -1;
+		}
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private void enqueue(T attempt, List<T> group) {
+		group.add(attempt);
+		this.attempts.put(attempt, group);
+		attempt.setPriority(this.priority);
+		attempt.setObserver(this);
+		this.pool.enqueueTask(attempt);
+	}
+
+}
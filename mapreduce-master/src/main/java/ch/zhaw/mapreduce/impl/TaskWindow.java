@@ -0,0 +1,94 @@
+package ch.zhaw.mapreduce.impl;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import ch.zhaw.mapreduce.Pool;
+
+/**
+ * Entscheidet, wie viele Tasks einer Phase gleichzeitig unterwegs (eingereiht oder laufend) sein dürfen. Jeder Task
+ * hält seinen Input im Speicher, darum sollen nicht mehr Tasks erstellt werden als nötig, damit die Worker nie warten
+ * müssen. Der Master liest erst dann weitere Inputs, wenn das Fenster es zulässt.
+ *
+ * Das Fenster passt sich laufend an: Pro Worker ein laufender Task und zusätzlich so viele eingereihte, wie die Worker
+ * in der Vorausschau-Zeit abarbeiten (bei kurzen Tasks also mehr). Ist die Queue des Pools schon so lang, wird
+ * gewartet. Wird der Heap knapp, werden keine Tasks mehr auf Vorrat eingereiht. MaxRunningTasks ist die obere Grenze.
+ */
+public final class TaskWindow {
+
+	/** Intervall in Millisekunden, in dem das Fenster neu berechnet wird, während der Master wartet */
+	static final long RECHECK_INTERVAL = 100;
+
+	/** Obere Grenze für die Anzahl Tasks unterwegs */
+	private final int maxRunning;
+
+	/** Wie viele Millisekunden Arbeit pro Worker eingereiht sein sollen. Negativ für ein fixes Fenster */
+	private final long lookahead;
+
+	/** Anteil des Heaps, der mindestens frei sein muss, damit Tasks auf Vorrat eingereiht werden */
+	private final double minFreeHeap;
+
+	@Inject
+	public TaskWindow(@Named("MaxRunningTasks") int maxRunning, @Named("TaskWindowLookahead") long lookahead,
+			@Named("TaskWindowMinFreeHeap") double minFreeHeap) {
+		this.maxRunning = maxRunning;
+		this.lookahead = lookahead;
+		this.minFreeHeap = minFreeHeap;
+	}
+
+	/**
+	 * Fenster, das immer genau maxRunning Tasks zulässt, unabhängig vom Pool.
+	 */
+	public static TaskWindow fixed(int maxRunning) {
+		return new TaskWindow(maxRunning, -1, 0);
+	}
+
+	/**
+	 * @param running
+	 *            Anzahl Tasks der Phase, die eingereiht sind oder laufen
+	 * @param pool
+	 *            der Pool, auf dem die Tasks laufen
+	 * @param meanRuntime
+	 *            mittlere Laufzeit der erfolgreichen Tasks in Millisekunden, negativ wenn noch keiner fertig ist
+	 * @return true, wenn ein weiterer Task erstellt werden darf
+	 */
+	public boolean admits(int running, Pool pool, long meanRuntime) {
+		if (running == 0) {
+			// sonst wuerde die phase nie fertig, wenn andere jobs den pool fuellen
+			return true;
+		}
+		if (this.lookahead < 0) {
+			return running < this.maxRunning;
+		}
+		int workers = Math.max(1, pool.getCurrentPoolSize());
+		long buffer = buffer(workers, meanRuntime, freeHeap());
+		return running < limit(workers, buffer) && pool.enqueuedTasks() < Math.max(1, buffer);
+	}
+
+	/**
+	 * Anzahl Tasks, die zusätzlich zu den laufenden eingereiht sein sollen.
+	 */
+	long buffer(int workers, long meanRuntime, double freeHeap) {
+		if (freeHeap < this.minFreeHeap) {
+			return 0;
+		}
+		if (meanRuntime < 0) {
+			return workers;
+		}
+		// sehr kurze tasks werden als 1ms lang gezaehlt
+		return Math.max(workers, workers * this.lookahead / Math.max(1, meanRuntime));
+	}
+
+	int limit(int workers, long buffer) {
+		return (int) Math.min(this.maxRunning, workers + buffer);
+	}
+
+	/**
+	 * @return Anteil des Heaps, der noch belegt werden kann
+	 */
+	static double freeHeap() {
+		Runtime rt = Runtime.getRuntime();
+		long used = rt.totalMemory() - rt.freeMemory();
+		return (double) (rt.maxMemory() - used) / rt.maxMemory();
+	}
+}
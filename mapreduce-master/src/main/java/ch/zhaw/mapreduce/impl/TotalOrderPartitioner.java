@@ -0,0 +1,52 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ch.zhaw.mapreduce.Partitioner;
+
+/**
+ * Teilt die Keys in zusammenhängende, sortierte Bereiche auf. Alle Keys einer Partition sind kleiner als die Keys der
+ * nächsten Partition, die Resultate der Partitionen hintereinander sind also sortiert. Die Grenzen zwischen den
+ * Partitionen werden aus einer Stichprobe der Map-Resultate bestimmt, damit die Partitionen etwa gleich gross werden.
+ *
+ * Ein Key kann nicht auf zwei Partitionen verteilt werden. Ist ein Key in der Stichprobe so häufig, dass er mehrere
+ * Grenzen wäre, gibt es entsprechend weniger Partitionen.
+ */
+public final class TotalOrderPartitioner implements Partitioner {
+
+	private static final long serialVersionUID = -3418020667530291254L;
+
+	/** Der kleinste Key jeder Partition ausser der ersten, sortiert und ohne Duplikate */
+	private final String[] splits;
+
+	TotalOrderPartitioner(String[] splits) {
+		this.splits = splits;
+	}
+
+	/**
+	 * Bestimmt die Grenzen der Partitionen als Quantile der Stichprobe.
+	 */
+	public static TotalOrderPartitioner fromSample(List<String> sample, int partitions) {
+		List<String> sorted = new ArrayList<String>(sample);
+		Collections.sort(sorted);
+		List<String> splits = new ArrayList<String>(partitions - 1);
+		for (int i = 1; i < partitions && !sorted.isEmpty(); i++) {
+			String split = sorted.get((int) ((long) i * sorted.size() / partitions));
+			if (splits.isEmpty() || splits.get(splits.size() - 1).compareTo(split) < 0) {
+				splits.add(split);
+			}
+		}
+		return new TotalOrderPartitioner(splits.toArray(new String[splits.size()]));
+	}
+
+	@Override
+	public int partition(String key, int partitions) {
+		int index = Arrays.binarySearch(this.splits, key);
+		// ein key gleich einer grenze gehoert zur partition, die mit ihm beginnt
+		int partition = index >= 0 ? index + 1 : -(index + 1);
+		return Math.min(partition, partitions - 1);
+	}
+}
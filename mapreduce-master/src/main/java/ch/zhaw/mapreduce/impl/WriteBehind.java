@@ -0,0 +1,306 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Persistence;
+
+/**
+ * Speichert die Resultate von Tasks im Hintergrund, damit der Thread, der ein Resultat abliefert, nicht auf die Disk
+ * warten muss. Die Resultate kommen in eine beschränkte Queue, aus der ein Thread sie in Batches schreibt. Danach
+ * wird jede betroffene Persistence mit einem einzigen sync dauerhaft gemacht (Group Commit) und erst dann erfährt der
+ * Task, dass seine Resultate gespeichert sind. Über dieselbe Queue gehen die Resultate der Reduce Tasks, die Teile der
+ * Map-Resultate des PersistentShufflers und die Batches im JobCheckpoint.
+ *
+ * Je langsamer die Disk, desto mehr Resultate sammeln sich während eines syncs an und desto grösser wird der nächste
+ * Batch. Ist die Queue voll, wartet der abliefernde Thread, bis wieder Platz ist.
+ */
+public class WriteBehind {
+
+	private static final Logger LOG = Logger.getLogger(WriteBehind.class.getName());
+
+	/**
+	 * Wird benachrichtigt, sobald die Resultate geschrieben sind oder das Schreiben fehlgeschlagen ist.
+	 */
+	public interface Callback {
+
+		/**
+		 * @param durable
+		 *            true, wenn die Resultate gespeichert und dauerhaft sind
+		 */
+		void written(boolean durable);
+	}
+
+	/**
+	 * Schreibt in eine Persistence, ohne zu syncen.
+	 */
+	public interface Store {
+
+		/**
+		 * @return true, wenn alles geschrieben wurde. Sonst darf nichts davon liegen bleiben
+		 */
+		boolean store();
+	}
+
+	/** null, wenn direkt im abliefernden Thread gespeichert wird */
+	private final BlockingQueue<Write> queue;
+
+	private final int batchSize;
+
+	/** Sobald der Thread beendet ist, wird nichts mehr geschrieben */
+	private volatile boolean stopped;
+
+	private WriteBehind() {
+		this.queue = null;
+		this.batchSize = 0;
+	}
+
+	/**
+	 * Startet den Thread, der die Queue abarbeitet. Er läuft so lange wie die JVM.
+	 *
+	 * @param capacity
+	 *            höchstens so viele Resultate warten auf das Schreiben
+	 * @param batchSize
+	 *            höchstens so viele Resultate werden mit einem sync dauerhaft gemacht
+	 */
+	public WriteBehind(int capacity, int batchSize, ThreadFactory threadFactory) {
+		if (capacity < 1 || batchSize < 1) {
+			throw new IllegalArgumentException("Capacity and Batch Size must be at least 1");
+		}
+		this.queue = new ArrayBlockingQueue<Write>(capacity);
+		this.batchSize = batchSize;
+		Thread writer = threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		});
+		// was noch in der queue ist, hat noch keinen task abgeschlossen und darf verloren gehen
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Speichert direkt im abliefernden Thread und ohne sync, wie ohne WriteBehind.
+	 */
+	public static WriteBehind disabled() {
+		return new WriteBehind();
+	}
+
+	public boolean isEnabled() {
+		return this.queue != null;
+	}
+
+	/**
+	 * Reiht die Resultate eines Reduce Tasks zum Schreiben ein. Der Callback wird aus dem Thread des WriteBehind
+	 * aufgerufen, ausser wenn es deaktiviert ist.
+	 */
+	public void storeReduceResults(Persistence persistence, String taskUuid, List<KeyValuePair> results,
+			Callback callback) {
+		if (this.queue == null) {
+			callback.written(persistence.storeReduceResults(taskUuid, results));
+			return;
+		}
+		enqueue(new ReduceWrite(persistence, taskUuid, results, callback));
+	}
+
+	/**
+	 * Reiht ein Schreiben in die Persistence ein, zum Beispiel die Teile der Resultate eines Map Tasks. Die Persistence
+	 * wird danach mit den anderen Resultaten des Batches gesynct.
+	 *
+	 * @param id
+	 *            für das Log, falls das Schreiben fehlschlägt
+	 */
+	public void store(final Persistence persistence, final String id, final Store store, Callback callback) {
+		if (this.queue == null) {
+			callback.written(store.store());
+			return;
+		}
+		enqueue(new Write(persistence, id, callback) {
+			@Override
+			boolean store() {
+				return store.store();
+			}
+
+			@Override
+			boolean sync() {
+				return persistence.sync();
+			}
+		});
+	}
+
+	/**
+	 * Reiht die Resultate eines Batches zum Aufzeichnen im Checkpoint ein. Alle Batches eines Checkpoints im selben
+	 * Batch des WriteBehind teilen sich ein sync des Manifests.
+	 */
+	public void record(final JobCheckpoint checkpoint, final String key, final List<KeyValuePair> results,
+			Callback callback) {
+		if (this.queue == null) {
+			boolean recorded = false;
+			try {
+				checkpoint.record(key, results);
+				recorded = true;
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Failed to record Batch " + key + " in Checkpoint", e);
+			}
+			callback.written(recorded);
+			return;
+		}
+		enqueue(new Write(checkpoint, key, callback) {
+			@Override
+			boolean store() {
+				try {
+					checkpoint.append(key, results);
+					return true;
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Failed to record Batch " + key + " in Checkpoint", e);
+					return false;
+				}
+			}
+
+			@Override
+			boolean sync() {
+				return checkpoint.sync();
+			}
+		});
+	}
+
+	private void enqueue(Write write) {
+		if (this.stopped) {
+			write.callback.written(false);
+			return;
+		}
+		try {
+			this.queue.put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.log(Level.WARNING, "Interrupted while waiting to store Results of {0}", write.id);
+			write.callback.written(false);
+			return;
+		}
+		// der thread kann beendet worden sein, waehrend auf platz in der queue gewartet wurde
+		if (this.stopped && this.queue.remove(write)) {
+			write.callback.written(false);
+		}
+	}
+
+	private void writeLoop() {
+		List<Write> batch = new ArrayList<Write>(this.batchSize);
+		while (true) {
+			try {
+				batch.add(this.queue.take());
+			} catch (InterruptedException e) {
+				this.stopped = true;
+				List<Write> dropped = new ArrayList<Write>();
+				this.queue.drainTo(dropped);
+				LOG.log(Level.WARNING, "WriteBehind interrupted, {0} Results not written", dropped.size());
+				// sonst warten die tasks ewig auf ihren callback
+				for (Write write : dropped) {
+					notify(write, false);
+				}
+				return;
+			}
+			this.queue.drainTo(batch, this.batchSize - 1);
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Schreibt zuerst alle Resultate und macht dann jedes Ziel (Persistence oder Checkpoint) mit einem sync dauerhaft.
+	 */
+	void write(List<Write> batch) {
+		boolean[] stored = new boolean[batch.size()];
+		// ziel -> der erste write, der es gesynct haben will
+		Map<Object, Write> targets = new IdentityHashMap<Object, Write>();
+		for (int i = 0; i < batch.size(); i++) {
+			Write write = batch.get(i);
+			try {
+				stored[i] = write.store();
+			} catch (RuntimeException e) {
+				LOG.log(Level.SEVERE, "Failed to store Results of " + write.id, e);
+			}
+			if (stored[i] && !targets.containsKey(write.target)) {
+				targets.put(write.target, write);
+			}
+		}
+		Map<Object, Boolean> synced = new IdentityHashMap<Object, Boolean>();
+		for (Map.Entry<Object, Write> entry : targets.entrySet()) {
+			boolean success = false;
+			try {
+				success = entry.getValue().sync();
+			} catch (RuntimeException e) {
+				LOG.log(Level.SEVERE, "Failed to sync " + entry.getKey(), e);
+			}
+			synced.put(entry.getKey(), success);
+		}
+		LOG.log(Level.FINE, "Wrote {0} Results with {1} syncs", new Object[] { batch.size(), synced.size() });
+		for (int i = 0; i < batch.size(); i++) {
+			Write write = batch.get(i);
+			notify(write, stored[i] && synced.get(write.target));
+		}
+	}
+
+	private static void notify(Write write, boolean durable) {
+		try {
+			write.callback.written(durable);
+		} catch (RuntimeException e) {
+			LOG.log(Level.SEVERE, "Callback for " + write.id + " failed", e);
+		}
+	}
+
+	/**
+	 * Ein eingereihtes Schreiben. Alle Writes mit demselben Ziel werden zusammen gesynct.
+	 */
+	abstract static class Write {
+		final Object target;
+		final String id;
+		final Callback callback;
+
+		Write(Object target, String id, Callback callback) {
+			this.target = target;
+			this.id = id;
+			this.callback = callback;
+		}
+
+		/**
+		 * Schreibt ohne sync.
+		 */
+		abstract boolean store();
+
+		/**
+		 * Macht alles dauerhaft, was seit dem letzten sync in das Ziel geschrieben wurde.
+		 */
+		abstract boolean sync();
+	}
+
+	static final class ReduceWrite extends Write {
+		final Persistence persistence;
+		final List<KeyValuePair> results;
+
+		ReduceWrite(Persistence persistence, String taskUuid, List<KeyValuePair> results, Callback callback) {
+			super(persistence, taskUuid, callback);
+			this.persistence = persistence;
+			this.results = results;
+		}
+
+		@Override
+		boolean store() {
+			return this.persistence.storeReduceResults(this.id, this.results);
+		}
+
+		@Override
+		boolean sync() {
+			return this.persistence.sync();
+		}
+	}
+}
@@ -252,11 +252,18 @@ public final class SocketWorker implements Worker, SocketResultObserver {
 	}
 
 	/**
-	 * Stop den Task, der momentan grad ausgeführt wird, sodass der SocketWorker wieder für neues verfügbar ist.
+	 * Der Task kann auf dem Agent nicht unterbrochen werden. Der SocketWorker bleibt deshalb beschäftigt, bis das
+	 * Resultat eintrifft. Der abgebrochene Task verwirft dieses dann und der SocketWorker geht zurück zum Pool.
 	 */
 	@Override
 	public void stopCurrentTask(String taskUuid) {
-		throw new UnsupportedOperationException("implement me");
+		RunningTask runningTask = this.runningTask;
+		if (runningTask != null && taskUuid.equals(runningTask.task.getTaskUuid())) {
+			LOG.log(Level.FINE, "Task {0} cannot be stopped on Agent {1}, Result will be discarded", new Object[] {
+					taskUuid, agentIP });
+		} else {
+			LOG.log(Level.WARNING, "Task {0} is not running on Agent {1}", new Object[] { taskUuid, agentIP });
+		}
 	}
 
 	@Override
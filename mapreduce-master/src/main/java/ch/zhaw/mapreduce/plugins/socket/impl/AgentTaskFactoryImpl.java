@@ -50,7 +50,8 @@ public class AgentTaskFactoryImpl implements AgentTaskFactory {
 	private AgentTask createMapAgentTask(MapWorkerTask mwt) {
 		return new MapAgentTask(mwt.getTaskUuid(), name(mwt.getMapInstruction()), bytes(mwt.getMapInstruction()),
 				mwt.getCombinerInstruction() != null ? name(mwt.getCombinerInstruction()) : null,
-				mwt.getCombinerInstruction() != null ? bytes(mwt.getCombinerInstruction()) : null, mwt.getInput());
+				mwt.getCombinerInstruction() != null ? bytes(mwt.getCombinerInstruction()) : null, mwt.getInputs(),
+				mwt.getPartitioning());
 	}
 
 	/**
@@ -58,7 +59,7 @@ public class AgentTaskFactoryImpl implements AgentTaskFactory {
 	 */
 	private AgentTask createReduceAgentTask(ReduceWorkerTask rwt) {
 		return new ReduceAgentTask(rwt.getTaskUuid(), name(rwt.getReduceInstruction()),
-				bytes(rwt.getReduceInstruction()), rwt.getInput(), rwt.getValues());
+				bytes(rwt.getReduceInstruction()), rwt.getInputs());
 	}
 
 	/**
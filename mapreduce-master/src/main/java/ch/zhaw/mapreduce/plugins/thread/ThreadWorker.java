@@ -1,10 +1,13 @@
 package ch.zhaw.mapreduce.plugins.thread;
 
 import java.util.List;
-import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,9 +50,10 @@ public class ThreadWorker implements Worker {
 	 * Moegliche Tasks, die gerade von diesem Worker ausgefuehrt werden.
 	 * 
 	 * @DesignReason Map: damit nicht ein task einer anderen id gekillt wird
-	 * @DesignReason Weak: weil wir nicht genau wissen, wann wir aufräumen können, überlassen wir das dem GC
+	 * @DesignReason Concurrent: eingetragen wird vom Pool, gelesen von stopCurrentTask und entfernt vom Thread des
+	 *               Tasks, sobald er fertig ist
 	 */
-	private final WeakHashMap<String, Future<Void>> tasks = new WeakHashMap<String, Future<Void>>();
+	private final ConcurrentMap<String, RunningTask> tasks = new ConcurrentHashMap<String, RunningTask>();
 
 	/**
 	 * Erstellt einen neunen ThreadWorker mit dem gegebenen Pool und Executor.
@@ -65,45 +69,70 @@ public class ThreadWorker implements Worker {
 	}
 
 	/**
-	 * Fuehrt den gegebenen Task asynchron aus und offierirt sich selbst am Ende wieder dem Pool.
+	 * Fuehrt den gegebenen Task asynchron aus und offierirt sich selbst am Ende wieder dem Pool. Das macht immer nur
+	 * der Thread des Tasks, nachdem der Task angehalten hat, ausser der Task wurde abgebrochen, bevor er startete.
 	 */
 	@Override
 	public void executeTask(final WorkerTask task) {
 		final String taskUuid = task.getTaskUuid();
-		Future<Void> action = this.executor.submit(new Callable<Void>() {
+		// wer das zuerst setzt, der thread des tasks oder stopCurrentTask, gibt den worker zurueck
+		final AtomicBoolean claimed = new AtomicBoolean();
+		FutureTask<Void> action = new FutureTask<Void>(new Callable<Void>() {
 			@Override
 			public Void call() {
 				LOG.entering(getClass().getName(), "executeTask.call", task);
-				task.started();
+				if (!claimed.compareAndSet(false, true)) {
+					LOG.fine("Task was stopped before it started");
+					return null;
+				}
 				try {
+					task.started();
 					Context ctx = ctxProvider.get();
 					task.runTask(ctx);
 					completeTask(task, ctx);
 				} catch (Exception e) {
 					LOG.log(Level.SEVERE, "Failed to run Task", e);
 					task.fail();
-				}
-				if (!pool.workerIsFinished(ThreadWorker.this)) {
-					LOG.info("Not Accepted by Pool. Probably died in the meantime");
-				} else {
-					LOG.fine("Went back to Pool");
+				} finally {
+					// auch bei einem Error aus dem benutzercode, sonst ginge der worker verloren
+					tasks.remove(taskUuid);
+					if (Thread.interrupted()) {
+						// mit stopCurrentTask abgebrochen. der task laeuft nicht mehr, also darf der worker zurueck
+						LOG.fine("Task was stopped");
+					}
+					if (!pool.workerIsFinished(ThreadWorker.this)) {
+						LOG.info("Not Accepted by Pool. Probably died in the meantime");
+					} else {
+						LOG.fine("Went back to Pool");
+					}
 				}
 				LOG.exiting(getClass().getName(), "executeTask.call");
 				return null;
 			}
 		});
-		this.tasks.put(taskUuid, action);
+		// vor dem ausfuehren eintragen, sonst koennte der fertige task den eintrag entfernen, bevor er existiert
+		this.tasks.put(taskUuid, new RunningTask(action, claimed));
+		try {
+			this.executor.execute(action);
+		} catch (RuntimeException e) {
+			this.tasks.remove(taskUuid);
+			throw e;
+		}
 	}
 
+	/**
+	 * Unterbricht den Thread des Tasks. Dieser gibt den Worker zurueck, sobald er angehalten hat. Nur wenn der Task
+	 * noch gar nicht gestartet wurde, wird der Worker hier zurueckgegeben.
+	 */
 	@Override
 	public void stopCurrentTask(String taskUUID) {
-		Future<Void> task = this.tasks.get(taskUUID);
+		RunningTask task = this.tasks.get(taskUUID);
 		if (task != null) {
-			if (task.cancel(true)) {
-				// Task wurde abgebrochen
+			task.future.cancel(true);
+			if (task.claimed.compareAndSet(false, true)) {
+				// der task wird nie laufen
+				this.tasks.remove(taskUUID, task);
 				pool.workerIsFinished(this);
-			} else {
-				// Task war schon beendet. Worker ist bereits zurueck im Pool
 			}
 			LOG.fine("Stopped Task");
 		} else {
@@ -111,15 +140,32 @@ public class ThreadWorker implements Worker {
 		}
 	}
 
+	/**
+	 * Ob der Task mit dieser ID noch gestoppt werden kann, also noch nicht fertig ist.
+	 */
+	boolean isRunning(String taskUuid) {
+		return this.tasks.containsKey(taskUuid);
+	}
+
 	void completeTask(WorkerTask task, Context ctx) {
 		if (task instanceof MapWorkerTask) {
 			List<KeyValuePair> mapRes = ctx.getMapResult();
 			task.successful(mapRes);
 		} else if (task instanceof ReduceWorkerTask) {
-			List<String> redRes = ctx.getReduceResult();
+			List<KeyValuePair> redRes = ctx.getReduceResult();
 			task.successful(redRes);
 		} else {
 			throw new IllegalArgumentException("Unrecognized WorkerTask: " + task.getClass().getName());
 		}
 	}
-}
\ No newline at end of file
+
+	private static final class RunningTask {
+		final Future<Void> future;
+		final AtomicBoolean claimed;
+
+		RunningTask(Future<Void> future, AtomicBoolean claimed) {
+			this.future = future;
+			this.claimed = claimed;
+		}
+	}
+}
@@ -5,8 +5,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
@@ -36,15 +38,33 @@ public class MapReduceConfigTest {
 	@Mock
 	private Persistence persistence;
 
-	private String input = "input";
+	@Mock
+	private Shuffler shuffler;
+
+	private List<String> input = Arrays.asList("input");
 	
-	private List<KeyValuePair> toDo = Collections.emptyList();
+	private Map<String, List<KeyValuePair>> toDo = Collections.emptyMap();
+
+	private final String jobId = "jobId";
 
 	@Test
 	public void shouldDefineBindingForMaster() {
 		assertNotNull(Guice.createInjector(new MapReduceConfig()).getInstance(Master.class));
 	}
 
+	@Test
+	public void masterShouldBeSharedByAllJobs() {
+		Injector injector = Guice.createInjector(new MapReduceConfig());
+		assertSame(injector.getInstance(Master.class), injector.getInstance(Master.class));
+	}
+
+	@Test
+	public void shouldCreateNewShufflerForEachComputation() {
+		Injector injector = Guice.createInjector(new MapReduceConfig());
+		ShufflerFactory factory = injector.getInstance(ShufflerFactory.class);
+		assertNotSame(factory.createShuffler(persistence, null), factory.createShuffler(persistence, null));
+	}
+
 	@Test
 	public void poolShouldBeSingleton() {
 		Injector injector = Guice.createInjector(new MapReduceConfig());
@@ -82,7 +102,7 @@ public class MapReduceConfigTest {
 	@Test
 	public void shouldSetMapAndCombinerTaskToMapRunner() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		MapWorkerTask mapWorkerTask = factory.createMapWorkerTask(mapInstr, combInstr, input, persistence);
+		MapWorkerTask mapWorkerTask = factory.createMapWorkerTask(jobId, mapInstr, combInstr, input, persistence, shuffler);
 		assertSame(mapInstr, mapWorkerTask.getMapInstruction());
 		assertSame(combInstr, mapWorkerTask.getCombinerInstruction());
 	}
@@ -90,43 +110,43 @@ public class MapReduceConfigTest {
 	@Test
 	public void shouldCopeWithNullCombinerTask() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		MapWorkerTask mapperTask = factory.createMapWorkerTask(mapInstr, null, input, persistence);
+		MapWorkerTask mapperTask = factory.createMapWorkerTask(jobId, mapInstr, null, input, persistence, shuffler);
 		assertNotNull(mapperTask);
 	}
 
 	@Test
 	public void shouldCreatePrototypesForMapRunners() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		assertNotSame(factory.createMapWorkerTask(mapInstr, combInstr, input, persistence),
-				factory.createMapWorkerTask(mapInstr, combInstr, input, persistence));
+		assertNotSame(factory.createMapWorkerTask(jobId, mapInstr, combInstr, input, persistence, shuffler),
+				factory.createMapWorkerTask(jobId, mapInstr, combInstr, input, persistence, shuffler));
 	}
 
 	@Test
 	public void shouldSetReduceTaskToReduceRunner() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		ReduceWorkerTask reduceRunner = factory.createReduceWorkerTask(reduceInstr, "key", this.toDo, persistence);
+		ReduceWorkerTask reduceRunner = factory.createReduceWorkerTask(jobId, reduceInstr, 0, this.toDo, persistence);
 		assertSame(reduceInstr, reduceRunner.getReduceInstruction());
 	}
 
 	@Test
 	public void shouldCreatePrototypesForReduceRunners() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		assertNotSame(factory.createReduceWorkerTask(reduceInstr, "key1", toDo, persistence),
-				factory.createReduceWorkerTask(reduceInstr, "key2", toDo, persistence));
+		assertNotSame(factory.createReduceWorkerTask(jobId, reduceInstr, 1, toDo, persistence),
+				factory.createReduceWorkerTask(jobId, reduceInstr, 2, toDo, persistence));
 	}
 
 	@Test
 	public void shouldSetWorkerTaskUUIDToMapTask() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		MapWorkerTask mwt = factory.createMapWorkerTask(mapInstr, null, input, persistence);
+		MapWorkerTask mwt = factory.createMapWorkerTask(jobId, mapInstr, null, input, persistence, shuffler);
 		assertNotNull(mwt.getTaskUuid());
 	}
 
 	@Test
 	public void shouldGenerateDistinctWorkerTaskUUIDs() {
 		WorkerTaskFactory factory = Guice.createInjector(new MapReduceConfig()).getInstance(WorkerTaskFactory.class);
-		MapWorkerTask mwt1 = factory.createMapWorkerTask(mapInstr, null, input, persistence);
-		MapWorkerTask mwt2 = factory.createMapWorkerTask(mapInstr, null, input, persistence);
+		MapWorkerTask mwt1 = factory.createMapWorkerTask(jobId, mapInstr, null, input, persistence, shuffler);
+		MapWorkerTask mwt2 = factory.createMapWorkerTask(jobId, mapInstr, null, input, persistence, shuffler);
 		String uuid1 = mwt1.getTaskUuid();
 		String uuid2 = mwt2.getTaskUuid();
 		assertNotNull(uuid1);
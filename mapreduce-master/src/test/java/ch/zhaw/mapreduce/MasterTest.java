@@ -1,14 +1,15 @@
 package ch.zhaw.mapreduce;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.UUID;
 
 import javax.inject.Provider;
 
@@ -20,8 +21,13 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import ch.zhaw.mapreduce.WorkerTask.State;
+import ch.zhaw.mapreduce.impl.Checkpoints;
+import ch.zhaw.mapreduce.impl.GroupedValues;
+import ch.zhaw.mapreduce.impl.JobCheckpoint;
 import ch.zhaw.mapreduce.impl.MapWorkerTask;
 import ch.zhaw.mapreduce.impl.ReduceWorkerTask;
+import ch.zhaw.mapreduce.impl.SpeculationPolicy;
+import ch.zhaw.mapreduce.impl.TaskWindow;
 
 public class MasterTest {
 
@@ -37,9 +43,15 @@ public class MasterTest {
 	@Mock
 	private ReduceInstruction rInstr;
 
+	@Mock
+	private AssociativeReduceInstruction aInstr;
+
 	@Mock
 	private WorkerTaskFactory wtFactory;
 
+	@Mock
+	private ShufflerFactory sFactory;
+
 	@Mock
 	private Shuffler shuffler;
 
@@ -49,6 +61,9 @@ public class MasterTest {
 	@Mock
 	private Persistence pers;
 
+	@Mock
+	private Persistence partials;
+
 	@Mock
 	private Pool pool;
 
@@ -62,84 +77,204 @@ public class MasterTest {
 
 	private final List<KeyValuePair> redval2 = new ArrayList<KeyValuePair>();
 
+	private final Map<String, List<KeyValuePair>> redpart1 = Collections.singletonMap(redkey1, redval1);
+
+	private final Map<String, List<KeyValuePair>> redpart2 = Collections.singletonMap(redkey2, redval2);
+
 	private final String taskUuid = "taskUuid";
 
+	private final String jobId = "jobId";
+
 	@Test
-	public void shouldRemoveDoneTasksAndRestartFailedMap() throws Exception {
-		Master m = new Master(pool, wtFactory, shuffler, pProvider, 10000);
-		List<MapWorkerTask> tasks = l(mtask(State.COMPLETED), mtask(State.ENQUEUED), mtask(State.FAILED), mtask(),
-				mtask(State.INPROGRESS));
+	public void shouldRestartFailedMapTasksUntilCompleted() throws InterruptedException {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
 		mockery.checking(new Expectations() {
 			{
-				oneOf(wtFactory).createMapWorkerTask(mInstr, cInstr, mapin, pers);
-				will(returnValue(mtask()));
-				oneOf(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList(mapin), pers, shuffler);
+				will(returnValue(mtask(State.FAILED)));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList(mapin), pers, shuffler);
+				will(returnValue(mtask(State.COMPLETED)));
+				exactly(2).of(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
 			}
 		});
-		assertFalse(m.housekeepingMap(tasks));
-		assertEquals(4, tasks.size());
+		m.runMapTasks(jobId, 1, mInstr, cInstr, i(mapin), pers, shuffler);
 	}
 
 	@Test
-	public void shouldRemoveDoneTasksAndRestartFailedReduce() throws Exception {
-		Master m = new Master(pool, wtFactory, shuffler, pProvider, 10000);
-		List<ReduceWorkerTask> tasks = l(rtask(State.COMPLETED), rtask(State.ENQUEUED), rtask(State.FAILED), rtask(),
-				rtask(State.INPROGRESS));
+	public void shouldRunMapTasks() throws InterruptedException {
+		// die tasks werden alle als completed aufgegeben, dann werden sie grad wieder entfernt
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
 		mockery.checking(new Expectations() {
 			{
-				oneOf(wtFactory).createReduceWorkerTask(rInstr, redkey1, redval1, pers);
-				will(returnValue(rtask()));
-				oneOf(pool).enqueueTask(with(aNonNull(ReduceWorkerTask.class)));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("a"), pers, shuffler);
+				will(returnValue(mtask(State.COMPLETED)));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("b"), pers, shuffler);
+				will(returnValue(mtask(State.COMPLETED)));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("c"), pers, shuffler);
+				will(returnValue(mtask(State.COMPLETED)));
+				exactly(3).of(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
 			}
 		});
-		assertFalse(m.housekeepingReduce(tasks));
-		assertEquals(4, tasks.size());
+		m.runMapTasks(jobId, 1, mInstr, cInstr, i("a", "b", "c"), pers, shuffler);
 	}
 
 	@Test
-	public void shouldRunMapTasks() throws InterruptedException {
-		// die tasks werden alle als completed aufgegeben, dann werden sie grad wieder entfernt
-		Master m = new Master(pool, wtFactory, shuffler, pProvider, 10000);
+	public void shouldRunMapTasksInBatches() throws InterruptedException {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 2, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
 		mockery.checking(new Expectations() {
 			{
-				oneOf(wtFactory).createMapWorkerTask(mInstr, cInstr, "a", pers);
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("a", "b"), pers, shuffler);
+				will(returnValue(mtask(State.COMPLETED)));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("c"), pers, shuffler);
 				will(returnValue(mtask(State.COMPLETED)));
-				oneOf(wtFactory).createMapWorkerTask(mInstr, cInstr, "b", pers);
+				exactly(2).of(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
+			}
+		});
+		m.runMapTasks(jobId, 1, mInstr, cInstr, i("a", "b", "c"), pers, shuffler);
+	}
+
+	@Test
+	public void shouldRestartFailedBatchAsWhole() throws Exception {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 2, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
+		final MapWorkerTask failed = new MapWorkerTask(taskUuid, jobId, pers, shuffler, mInstr, cInstr, Arrays.asList("a",
+				"b"));
+		failed.setState(State.FAILED);
+		mockery.checking(new Expectations() {
+			{
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("a", "b"), pers, shuffler);
+				will(returnValue(failed));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("a", "b"), pers, shuffler);
 				will(returnValue(mtask(State.COMPLETED)));
-				oneOf(wtFactory).createMapWorkerTask(mInstr, cInstr, "c", pers);
+				exactly(2).of(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
+			}
+		});
+		m.runMapTasks(jobId, 1, mInstr, cInstr, i("a", "b"), pers, shuffler);
+	}
+
+	@Test
+	public void shouldSkipBatchesCompletedInCheckpoint() throws Exception {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
+		File dir = new File(System.getProperty("java.io.tmpdir"), "checkpoints-" + UUID.randomUUID());
+		JobCheckpoint checkpoint = new Checkpoints(true, dir.getAbsolutePath()).open(jobId);
+		final List<KeyValuePair> results = Arrays.asList(new KeyValuePair("a", "1"));
+		checkpoint.record(JobCheckpoint.batchKey(0, Arrays.asList("a")), results);
+		mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(results);
+				oneOf(wtFactory).createMapWorkerTask(with(jobId), with(mInstr), with(cInstr),
+						with(Arrays.asList("b")), with(pers), with(any(Shuffler.class)));
 				will(returnValue(mtask(State.COMPLETED)));
-				exactly(3).of(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
+				oneOf(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
 			}
 		});
-		m.runMapTasks(mInstr, cInstr, i("a", "b", "c"), pers);
+		try {
+			m.runMapTasks(jobId, 1, mInstr, cInstr, i("a", "b"), pers, shuffler, checkpoint);
+		} finally {
+			checkpoint.delete();
+			dir.delete();
+		}
 	}
 
 	@Test
 	public void shouldRunReduceTasks() throws InterruptedException {
 		// die tasks werden alle als completed aufgegeben, dann werden sie grad wieder entfernt
-		Master m = new Master(pool, wtFactory, shuffler, pProvider, 10000);
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
+		mockery.checking(new Expectations() {
+			{
+				oneOf(wtFactory).createReduceWorkerTask(jobId, rInstr, 0, redpart1, pers);
+				will(returnValue(rtask(State.COMPLETED)));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, rInstr, 1, redpart2, pers);
+				will(returnValue(rtask(State.COMPLETED)));
+				exactly(2).of(pool).enqueueTask(with(aNonNull(ReduceWorkerTask.class)));
+				oneOf(shuffler).partitions(); will(returnValue(partitions(redpart1, redpart2)));
+			}
+		});
+		m.runReduceTasks(jobId, 1, rInstr, shuffler, pers, null);
+	}
+
+	@Test
+	public void shouldSplitHotKeysOfAssociativeReduce() throws InterruptedException {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 2, SpeculationPolicy.disabled(), Checkpoints.disabled());
+		final Map<String, List<KeyValuePair>> part = Collections.singletonMap("cold", values("cold", "c1"));
+		mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).takeHotKeys();
+				will(returnValue(Collections.singletonMap("hot", values("hot", "v1", "v2", "v3", "v4", "v5"))));
+				oneOf(shuffler).partitions(); will(returnValue(partitions(part)));
+				oneOf(pProvider).get(); will(returnValue(partials));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 0, Collections.singletonMap("hot", values("hot", "v1", "v2")), partials);
+				will(returnValue(rtask(State.COMPLETED)));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 1, Collections.singletonMap("hot", values("hot", "v3", "v4")), partials);
+				will(returnValue(rtask(State.COMPLETED)));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 2, Collections.singletonMap("hot", values("hot", "v5")), partials);
+				will(returnValue(rtask(State.COMPLETED)));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 3, part, pers);
+				will(returnValue(rtask(State.COMPLETED)));
+				oneOf(partials).openReduceResults();
+				will(returnValue(cursor(values("hot", "r1", "r2", "r3"))));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 4, Collections.singletonMap("hot", values("hot", "r1", "r2", "r3")), pers);
+				will(returnValue(rtask(State.COMPLETED)));
+				exactly(5).of(pool).enqueueTask(with(aNonNull(ReduceWorkerTask.class)));
+				oneOf(partials).suicide();
+			}
+		});
+		m.runReduceTasks(jobId, 1, aInstr, shuffler, pers, null);
+	}
+
+	@Test
+	public void shouldNotSplitHotKeyWithFewValues() throws InterruptedException {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 2, SpeculationPolicy.disabled(), Checkpoints.disabled());
+		// beim abliefern zu viel gezaehlt
+		final Map<String, List<KeyValuePair>> hot = Collections.singletonMap("hot", values("hot", "v1", "v2"));
+		final Map<String, List<KeyValuePair>> part = Collections.singletonMap("cold", values("cold", "c1"));
 		mockery.checking(new Expectations() {
 			{
-				oneOf(wtFactory).createReduceWorkerTask(rInstr, redkey1, redval1, pers);
+				oneOf(shuffler).takeHotKeys(); will(returnValue(hot));
+				oneOf(shuffler).partitions(); will(returnValue(partitions(part)));
+				never(pProvider);
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 0, hot, pers);
 				will(returnValue(rtask(State.COMPLETED)));
-				oneOf(wtFactory).createReduceWorkerTask(rInstr, redkey2, redval2, pers);
+				oneOf(wtFactory).createReduceWorkerTask(jobId, aInstr, 1, part, pers);
 				will(returnValue(rtask(State.COMPLETED)));
 				exactly(2).of(pool).enqueueTask(with(aNonNull(ReduceWorkerTask.class)));
 			}
 		});
-		Map<String, List<KeyValuePair>> shuffled = new TreeMap<String, List<KeyValuePair>>();
-		shuffled.put(redkey1, redval1);
-		shuffled.put(redkey2, redval2);
-		m.runReduceTasks(rInstr, shuffled, pers);
+		m.runReduceTasks(jobId, 1, aInstr, shuffler, pers, null);
+	}
+
+	@Test
+	public void shouldNotSplitKeysOfOtherReduce() throws InterruptedException {
+		Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(10000), 1, 0,
+				0, 1, SpeculationPolicy.disabled(), Checkpoints.disabled());
+		final Map<String, List<KeyValuePair>> part = Collections.singletonMap("hot", values("hot", "v1", "v2"));
+		mockery.checking(new Expectations() {
+			{
+				oneOf(wtFactory).createReduceWorkerTask(jobId, rInstr, 0, part, pers);
+				will(returnValue(rtask(State.COMPLETED)));
+				oneOf(pool).enqueueTask(with(aNonNull(ReduceWorkerTask.class)));
+				never(shuffler).takeHotKeys();
+				oneOf(shuffler).partitions(); will(returnValue(partitions(part)));
+			}
+		});
+		m.runReduceTasks(jobId, 1, rInstr, shuffler, pers, null);
 	}
 
 	@Test
 	public void shouldOnlyRunCertainAmountOfMapTasks() throws InterruptedException {
-		final Master m = new Master(pool, wtFactory, shuffler, pProvider, 2);
+		final Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(2), 1, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
 		mockery.checking(new Expectations() {
 			{
-				oneOf(wtFactory).createMapWorkerTask(mInstr, cInstr, "a", pers); will(returnValue(mtask()));
-				oneOf(wtFactory).createMapWorkerTask(mInstr, cInstr, "b", pers); will(returnValue(mtask()));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("a"), pers, shuffler); will(returnValue(mtask()));
+				oneOf(wtFactory).createMapWorkerTask(jobId, mInstr, cInstr, Arrays.asList("b"), pers, shuffler); will(returnValue(mtask()));
 				exactly(2).of(pool).enqueueTask(with(aNonNull(MapWorkerTask.class)));
 			}
 		});
@@ -148,7 +283,7 @@ public class MasterTest {
 			@Override
 			public void run() {
 				try {
-					m.runMapTasks(mInstr, cInstr, i("a", "b", "c"), pers);
+					m.runMapTasks(jobId, 1, mInstr, cInstr, i("a", "b", "c"), pers, shuffler);
 				} catch (InterruptedException e) {
 					// stopped
 				}
@@ -163,11 +298,13 @@ public class MasterTest {
 	
 	@Test
 	public void shouldOnlyRunCertainAmountOfReduceTasks() throws InterruptedException {
-		final Master m = new Master(pool, wtFactory, shuffler, pProvider, 1);
+		final Master m = new Master(pool, wtFactory, sFactory, pProvider, TaskWindow.fixed(1), 1, 0,
+				0, 0, SpeculationPolicy.disabled(), Checkpoints.disabled());
 		mockery.checking(new Expectations() {
 			{
-				oneOf(wtFactory).createReduceWorkerTask(rInstr, redkey1, redval1, pers); will(returnValue(rtask()));
+				oneOf(wtFactory).createReduceWorkerTask(jobId, rInstr, 0, redpart1, pers); will(returnValue(rtask()));
 				exactly(1).of(pool).enqueueTask(with(aNonNull(ReduceWorkerTask.class)));
+				oneOf(shuffler).partitions(); will(returnValue(partitions(redpart1, redpart2)));
 			}
 		});
 		Thread t = new Thread(new Runnable() {
@@ -175,10 +312,7 @@ public class MasterTest {
 			@Override
 			public void run() {
 				try {
-					Map<String, List<KeyValuePair>> shuffled = new TreeMap<String, List<KeyValuePair>>();
-					shuffled.put(redkey1, redval1);
-					shuffled.put(redkey2, redval2);
-					m.runReduceTasks(rInstr, shuffled, pers);
+					m.runReduceTasks(jobId, 1, rInstr, shuffler, pers, null);
 				} catch (InterruptedException e) {
 					// stopped
 				}
@@ -195,12 +329,44 @@ public class MasterTest {
 		return Arrays.asList(vals).iterator();
 	}
 
-	List<ReduceWorkerTask> l(ReduceWorkerTask... tasks) {
-		return new ArrayList<ReduceWorkerTask>(Arrays.asList(tasks));
+	Iterator<Map<String, List<KeyValuePair>>> partitions(Map<String, List<KeyValuePair>>... parts) {
+		return Arrays.asList(parts).iterator();
+	}
+
+	List<KeyValuePair> values(String key, String... vals) {
+		GroupedValues values = new GroupedValues(key);
+		for (String val : vals) {
+			values.addValue(val);
+		}
+		return values;
+	}
+
+	ResultCursor cursor(List<KeyValuePair> pairs) {
+		final Iterator<KeyValuePair> it = pairs.iterator();
+		return new ResultCursor() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public KeyValuePair next() {
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
 	}
 
 	ReduceWorkerTask rtask() {
-		ReduceWorkerTask mwt = new ReduceWorkerTask(taskUuid, pers, rInstr, redkey1, redval1);
+		ReduceWorkerTask mwt = new ReduceWorkerTask(taskUuid, jobId, pers, rInstr, 0, redpart1);
 		return mwt;
 	}
 
@@ -210,12 +376,8 @@ public class MasterTest {
 		return mwt;
 	}
 
-	List<MapWorkerTask> l(MapWorkerTask... tasks) {
-		return new ArrayList<MapWorkerTask>(Arrays.asList(tasks));
-	}
-
 	MapWorkerTask mtask() {
-		MapWorkerTask mwt = new MapWorkerTask(taskUuid, pers, mInstr, cInstr, mapin);
+		MapWorkerTask mwt = new MapWorkerTask(taskUuid, jobId, pers, shuffler, mInstr, cInstr, Arrays.asList(mapin));
 		return mwt;
 	}
 
@@ -5,25 +5,32 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
-import java.util.concurrent.Executor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Provider;
 
 import org.jmock.Expectations;
+import org.jmock.api.Invocation;
 import org.jmock.Sequence;
 import org.jmock.auto.Auto;
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.concurrent.ExactCommandExecutor;
 import org.jmock.lib.concurrent.Synchroniser;
 import org.junit.Rule;
 import org.junit.Test;
 
+import ch.zhaw.mapreduce.impl.FifoSchedulingPolicy;
 import ch.zhaw.mapreduce.impl.PoolImpl;
+import ch.zhaw.mapreduce.impl.PrioritySchedulingPolicy;
 import ch.zhaw.mapreduce.plugins.thread.ThreadWorker;
 
 public class PoolImplTest {
@@ -52,11 +59,9 @@ public class PoolImplTest {
 	@Mock
 	private Persistence persistence;
 	
-	private Executor executor = Executors.newSingleThreadExecutor();
-	
 	@Test
 	public void shouldHaveZeroInitialWorker() {
-		PoolImpl p = new PoolImpl(executor);
+		PoolImpl p = new PoolImpl();
 		p.init();
 		assertEquals(0, p.getCurrentPoolSize());
 		assertEquals(0, p.getFreeWorkers());
@@ -64,7 +69,7 @@ public class PoolImplTest {
 
 	@Test
 	public void shouldHaveOneWorker() {
-		PoolImpl p = new PoolImpl(executor);
+		PoolImpl p = new PoolImpl();
 		p.init();
 		p.donateWorker(worker);
 		assertEquals(1, p.getCurrentPoolSize());
@@ -75,7 +80,7 @@ public class PoolImplTest {
 	public void shouldHaveTwoWorker() {
 		Worker w1 = this.mockery.mock(Worker.class, "w1");
 		Worker w2 = this.mockery.mock(Worker.class, "w2");
-		PoolImpl p = new PoolImpl(executor);
+		PoolImpl p = new PoolImpl();
 		p.init();
 		p.donateWorker(w1);
 		p.donateWorker(w2);
@@ -85,7 +90,7 @@ public class PoolImplTest {
 
 	@Test(expected = IllegalStateException.class)
 	public void shouldNotBeAbleToInitTwice() {
-		PoolImpl p = new PoolImpl(executor);
+		PoolImpl p = new PoolImpl();
 		try {
 			p.init(); // first time must work
 		} catch (IllegalStateException ise) {
@@ -97,7 +102,7 @@ public class PoolImplTest {
 	@Test
 	public void shouldExecuteWork() throws InterruptedException {
 		final ExactCommandExecutor threadExec = new ExactCommandExecutor(1);
-		PoolImpl p = new PoolImpl(executor);
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final ThreadWorker worker = new ThreadWorker(p, threadExec, ctxProvider);
 		p.donateWorker(worker);
@@ -119,23 +124,227 @@ public class PoolImplTest {
 	}
 	
 	@Test
-	public void shouldStopUponInterruption() throws InterruptedException {
-		final Thread[] ts = new Thread[1];
-		Executor exec = Executors.newSingleThreadExecutor(new ThreadFactory() {
-			@Override
-			public Thread newThread(Runnable command) {
-				ts[0] = new Thread(command);
-				return ts[0];
+	public void shouldNotExecuteBeforeInit() {
+		PoolImpl p = new PoolImpl();
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(task).enqueued();
+				never(worker);
+			}
+		});
+		p.donateWorker(worker);
+		p.enqueueTask(task);
+		assertFalse(p.isRunning());
+		assertEquals(1, p.enqueuedTasks());
+	}
+
+	@Test
+	public void shouldExecuteTasksEnqueuedBeforeInit() {
+		PoolImpl p = new PoolImpl();
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(task).enqueued();
+				oneOf(worker).executeTask(task);
 			}
 		});
-		PoolImpl p = new PoolImpl(exec);
+		p.donateWorker(worker);
+		p.enqueueTask(task);
 		p.init();
 		assertTrue(p.isRunning());
-		Thread.sleep(200);
-		ts[0].interrupt();
-		Thread.yield();
-		Thread.sleep(200);
-		assertFalse(p.isRunning());
+		assertEquals(0, p.enqueuedTasks());
+		assertEquals(0, p.getFreeWorkers());
+		assertEquals(1, p.totalRunTasks());
+	}
+
+	@Test
+	public void shouldDispatchFromManyThreads() throws InterruptedException {
+		final int ntasks = 2000;
+		final int nthreads = 4;
+		final PoolImpl p = new PoolImpl();
+		p.init();
+		final ExecutorService workerExec = Executors.newFixedThreadPool(8);
+		final AtomicInteger executed = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(ntasks);
+		for (int i = 0; i < 8; i++) {
+			p.donateWorker(new Worker() {
+				@Override
+				public void executeTask(WorkerTask task) {
+					final Worker me = this;
+					workerExec.execute(new Runnable() {
+						@Override
+						public void run() {
+							executed.incrementAndGet();
+							done.countDown();
+							p.workerIsFinished(me);
+						}
+					});
+				}
+
+				@Override
+				public void stopCurrentTask(String taskUuid) {
+				}
+			});
+		}
+		final WorkerTask[] tasks = new WorkerTask[ntasks];
+		for (int i = 0; i < ntasks; i++) {
+			tasks[i] = this.mockery.mock(WorkerTask.class, "task" + i);
+		}
+		this.mockery.checking(new Expectations() {
+			{
+				for (WorkerTask t : tasks) {
+					ignoring(t);
+				}
+			}
+		});
+		ExecutorService producers = Executors.newFixedThreadPool(nthreads);
+		for (int t = 0; t < nthreads; t++) {
+			final int offset = t * (ntasks / nthreads);
+			producers.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = offset; i < offset + ntasks / nthreads; i++) {
+						p.enqueueTask(tasks[i]);
+					}
+				}
+			});
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		// der letzte task kann fertig sein, bevor der verteilende thread ihn gezaehlt hat
+		producers.shutdown();
+		assertTrue(producers.awaitTermination(1, TimeUnit.SECONDS));
+		workerExec.shutdown();
+		assertTrue(workerExec.awaitTermination(1, TimeUnit.SECONDS));
+		assertEquals(ntasks, executed.get());
+		assertEquals(ntasks, p.totalRunTasks());
+		assertEquals(0, p.enqueuedTasks());
+		assertEquals(8, p.getFreeWorkers());
+	}
+
+	@Test
+	public void shouldTakeTasksFromAllShards() {
+		final PoolImpl p = new PoolImpl(new FifoSchedulingPolicy(), 4);
+		final WorkerTask[] tasks = new WorkerTask[6];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = this.mockery.mock(WorkerTask.class, "task" + i);
+		}
+		this.mockery.checking(new Expectations() {
+			{
+				for (WorkerTask t : tasks) {
+					ignoring(t);
+				}
+			}
+		});
+		for (WorkerTask t : tasks) {
+			p.enqueueTask(t);
+		}
+		assertEquals(6, p.enqueuedTasks());
+		// liegt im dritten shard
+		p.abortTask(tasks[2]);
+		assertEquals(5, p.enqueuedTasks());
+
+		final List<WorkerTask> executed = new ArrayList<WorkerTask>();
+		p.donateWorker(new Worker() {
+			@Override
+			public void executeTask(WorkerTask task) {
+				executed.add(task);
+				p.workerIsFinished(this);
+			}
+
+			@Override
+			public void stopCurrentTask(String taskUuid) {
+			}
+		});
+		p.init();
+		assertEquals(5, executed.size());
+		assertFalse(executed.contains(tasks[2]));
+		assertEquals(0, p.enqueuedTasks());
+		assertEquals(5, p.totalRunTasks());
+	}
+
+	@Test
+	public void shouldDispatchByPriorityAcrossShards() {
+		final PoolImpl p = new PoolImpl(new PrioritySchedulingPolicy(), 4);
+		final int[] priorities = { 1, 1, 5, 1, 3, 1, 4, 2 };
+		final WorkerTask[] tasks = new WorkerTask[priorities.length];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = this.mockery.mock(WorkerTask.class, "task" + i);
+		}
+		this.mockery.checking(new Expectations() {
+			{
+				for (int i = 0; i < tasks.length; i++) {
+					allowing(tasks[i]).getPriority();
+					will(returnValue(priorities[i]));
+					ignoring(tasks[i]);
+				}
+			}
+		});
+		for (WorkerTask t : tasks) {
+			p.enqueueTask(t);
+		}
+
+		final List<WorkerTask> executed = new ArrayList<WorkerTask>();
+		p.donateWorker(new Worker() {
+			@Override
+			public void executeTask(WorkerTask task) {
+				executed.add(task);
+				p.workerIsFinished(this);
+			}
+
+			@Override
+			public void stopCurrentTask(String taskUuid) {
+			}
+		});
+		p.init();
+		// die tasks liegen reihum in allen shards, die prioritaet gilt trotzdem ueber den ganzen pool
+		assertEquals(Arrays.asList(tasks[2], tasks[6], tasks[4], tasks[7], tasks[0], tasks[1], tasks[3],
+				tasks[5]), executed);
+	}
+
+	@Test
+	public void shouldRemoveEnqueuedTaskOnAbort() {
+		PoolImpl p = new PoolImpl();
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(task).enqueued();
+				oneOf(task).abort();
+				never(worker);
+			}
+		});
+		p.enqueueTask(task);
+		p.abortTask(task);
+		assertEquals(0, p.enqueuedTasks());
+	}
+
+	@Test
+	public void shouldStopWorkerOfRunningTaskOnAbort() throws InterruptedException {
+		PoolImpl p = new PoolImpl();
+		p.init();
+		final CountDownLatch executing = new CountDownLatch(1);
+		final Sequence aborting = this.mockery.sequence("aborting");
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(task).enqueued();
+				oneOf(worker).executeTask(task);
+				will(new CustomAction("count down") {
+					@Override
+					public Object invoke(Invocation invocation) {
+						executing.countDown();
+						return null;
+					}
+				});
+				allowing(task).getTaskUuid();
+				will(returnValue("taskUUID"));
+				// zuerst abbrechen, damit ein resultat, das in der zwischenzeit eintrifft, verworfen wird
+				oneOf(task).abort();
+				inSequence(aborting);
+				oneOf(worker).stopCurrentTask("taskUUID");
+				inSequence(aborting);
+			}
+		});
+		p.donateWorker(worker);
+		p.enqueueTask(task);
+		assertTrue(executing.await(300, TimeUnit.MILLISECONDS));
+		p.abortTask(task);
 	}
 
 }
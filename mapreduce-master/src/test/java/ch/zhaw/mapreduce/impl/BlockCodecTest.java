@@ -0,0 +1,109 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+public class BlockCodecTest {
+
+	private static final Logger LOG = Logger.getLogger(BlockCodecTest.class.getName());
+
+	private final byte[] text = "the quick brown fox jumps over the lazy dog, the lazy dog sleeps. ".getBytes();
+
+	@Test
+	public void shouldFindCodecByName() {
+		assertEquals(BlockCodec.SNAPPY, BlockCodec.forName("snappy"));
+		assertEquals(BlockCodec.DEFLATE, BlockCodec.forName("DEFLATE"));
+		assertEquals(BlockCodec.NONE, BlockCodec.forName("none"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectUnknownName() {
+		BlockCodec.forName("lzo");
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectUnknownId() throws IOException {
+		BlockCodec.forId(42);
+	}
+
+	@Test
+	public void shouldCompressRepeatedText() throws IOException {
+		byte[] raw = repeat(this.text, 100);
+		for (BlockCodec codec : new BlockCodec[] { BlockCodec.SNAPPY, BlockCodec.DEFLATE }) {
+			byte[] stored = codec.compress(raw);
+			assertTrue(codec.name(), stored.length < raw.length / 4);
+			assertArrayEquals(raw, codec.decompress(stored, raw.length));
+		}
+	}
+
+	@Test
+	public void shouldHandleEmptyBlock() throws IOException {
+		for (BlockCodec codec : BlockCodec.values()) {
+			assertEquals(0, codec.decompress(codec.compress(new byte[0]), 0).length);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldDetectWrongLength() throws IOException {
+		BlockCodec.SNAPPY.decompress(BlockCodec.SNAPPY.compress(this.text), this.text.length + 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldDetectTooShortDeflateBlock() throws IOException {
+		BlockCodec.DEFLATE.decompress(BlockCodec.DEFLATE.compress(this.text), this.text.length + 1);
+	}
+
+	/**
+	 * Vergleicht Zeit und Grösse der Codecs für Zwischenresultate wie beim Wörter zählen. Läuft nicht mit den Unit
+	 * Tests, die Resultate stehen im Log.
+	 */
+	@Ignore
+	@Test
+	public void compareCodecs() throws IOException {
+		Random rnd = new Random(42);
+		List<KeyValuePair> pairs = new ArrayList<KeyValuePair>();
+		for (int i = 0; i < 2000000; i++) {
+			pairs.add(new KeyValuePair("word" + rnd.nextInt(5000), "1"));
+		}
+		File file = File.createTempFile("codecs", ".bin");
+		try {
+			for (BlockCodec codec : BlockCodec.values()) {
+				// einmal zum aufwaermen, dann gemessen
+				RecordFile.write(file, pairs, codec);
+				long start = System.nanoTime();
+				RecordFile.write(file, pairs, codec);
+				long written = System.nanoTime();
+				List<KeyValuePair> read = new ArrayList<KeyValuePair>(pairs.size());
+				RecordFile.readAll(file, read);
+				long end = System.nanoTime();
+				LOG.log(Level.INFO, "{0}: {1} KB, write {2} ms, read {3} ms", new Object[] { codec,
+						file.length() / 1024, (written - start) / 1000000, (end - written) / 1000000 });
+				assertEquals(pairs.size(), read.size());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static byte[] repeat(byte[] bytes, int times) {
+		byte[] result = new byte[bytes.length * times];
+		for (int i = 0; i < times; i++) {
+			System.arraycopy(bytes, 0, result, i * bytes.length, bytes.length);
+		}
+		return result;
+	}
+}
@@ -4,15 +4,21 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.junit.Test;
 
 import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.ResultCursor;
 
 public class FilePersistenceTest {
 	
@@ -30,8 +36,8 @@ public class FilePersistenceTest {
 	public void shouldReturnEmptyListForMissingMapTasks() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertNotNull(pers.getMapResults());
-		assertTrue(pers.getMapResults().isEmpty());
+		assertNotNull(pers.getMapResults(0));
+		assertTrue(pers.getMapResults(0).isEmpty());
 	}
 	
 	@Test
@@ -40,8 +46,8 @@ public class FilePersistenceTest {
 		pers1.initDirectories();
 		FilePersistence pers2 = new FilePersistence(baseDir);
 		pers2.initDirectories();
-		assertTrue(pers1.storeMapResults(taskUuid, mapRes));
-		assertTrue(pers2.getMapResults().isEmpty());
+		assertTrue(pers1.storeMapResults(taskUuid, 0, mapRes));
+		assertTrue(pers2.getMapResults(0).isEmpty());
 	}
 	
 	@Test
@@ -56,15 +62,35 @@ public class FilePersistenceTest {
 	public void shouldReadPreviouslyStoredMapValues() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		pers.storeMapResults(taskUuid, mapRes);
+		pers.storeMapResults(taskUuid, 0, mapRes);
+		assertEquals(mapRes, pers.getMapResults(0));
+	}
+	
+	@Test
+	public void shouldStoreUnpartitionedMapValuesInFirstPartition() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeMapResults(taskUuid, mapRes));
+		assertEquals(mapRes, pers.getMapResults(0));
 		assertEquals(mapRes, pers.getMapResults());
 	}
 	
+	@Test
+	public void shouldReadMapValuesOfAllPartitions() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeMapResults("task1", 2, Arrays.asList(new KeyValuePair("b", "1"))));
+		assertTrue(pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("a", "1"))));
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")), pers.getMapResults());
+		assertTrue(pers.destroyMap("task1"));
+		assertTrue(pers.getMapResults().isEmpty());
+	}
+	
 	@Test
 	public void shouldReadPreviouslyStoredReduceValues() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		pers.storeReduceResults(taskUuid, key, redRes);
+		pers.storeReduceResults(taskUuid, red(key, redRes));
 		assertEquals(redRes, pers.getReduceResults().get(key));
 	}
 	
@@ -72,32 +98,32 @@ public class FilePersistenceTest {
 	public void shouldNotAcceptSecondMapWrite() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeMapResults(taskUuid, mapRes));
-		assertFalse(pers.storeMapResults(taskUuid, mapRes));
+		assertTrue(pers.storeMapResults(taskUuid, 0, mapRes));
+		assertFalse(pers.storeMapResults(taskUuid, 0, mapRes));
 	}
 	
 	@Test
 	public void shouldNotAcceptSecondReduceWrite() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeReduceResults(taskUuid, key, redRes));
-		assertFalse(pers.storeReduceResults(taskUuid, key, redRes));
+		assertTrue(pers.storeReduceResults(taskUuid, red(key, redRes)));
+		assertFalse(pers.storeReduceResults(taskUuid, red(key, redRes)));
 	}
 	
 	@Test
 	public void shouldRemoveMapResults() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeMapResults(taskUuid, mapRes));
+		assertTrue(pers.storeMapResults(taskUuid, 0, mapRes));
 		assertTrue(pers.destroyMap(taskUuid));
-		assertTrue(pers.getMapResults().isEmpty());
+		assertTrue(pers.getMapResults(0).isEmpty());
 	}
 	
 	@Test
 	public void shouldRemoveReduceResults() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeReduceResults(taskUuid, key, redRes));
+		assertTrue(pers.storeReduceResults(taskUuid, red(key, redRes)));
 		assertTrue(pers.destroyReduce(taskUuid));
 		assertTrue(pers.getReduceResults().isEmpty());
 	}
@@ -106,10 +132,10 @@ public class FilePersistenceTest {
 	public void shouldRemoveAllResults() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeMapResults(taskUuid, mapRes));
-		assertTrue(pers.storeReduceResults(taskUuid, key, redRes));
+		assertTrue(pers.storeMapResults(taskUuid, 0, mapRes));
+		assertTrue(pers.storeReduceResults(taskUuid, red(key, redRes)));
 		assertTrue(pers.suicide());
-		assertTrue(pers.getMapResults().isEmpty());
+		assertTrue(pers.getMapResults(0).isEmpty());
 		assertTrue(pers.getReduceResults().isEmpty());
 	}
 	
@@ -117,11 +143,11 @@ public class FilePersistenceTest {
 	public void shouldHandleMultiMapTaskResults() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeMapResults("task1", Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1"), new KeyValuePair("key2", "val2")})));
-		assertTrue(pers.storeMapResults("task2", Arrays.asList(new KeyValuePair[]{new KeyValuePair("key3", "val3")})));
-		assertTrue(pers.storeMapResults("task3", Arrays.asList(new KeyValuePair[]{new KeyValuePair("key4", "val4")})));
+		assertTrue(pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1"), new KeyValuePair("key2", "val2")})));
+		assertTrue(pers.storeMapResults("task2", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key3", "val3")})));
+		assertTrue(pers.storeMapResults("task3", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key4", "val4")})));
 		
-		List<KeyValuePair> mapResults = pers.getMapResults();
+		List<KeyValuePair> mapResults = pers.getMapResults(0);
 		assertEquals(4, mapResults.size());
 		assertTrue(mapResults.contains(new KeyValuePair("key1", "val1")));
 		assertTrue(mapResults.contains(new KeyValuePair("key2", "val2")));
@@ -133,9 +159,9 @@ public class FilePersistenceTest {
 	public void shouldHandleMultiReduceTaskResults() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeReduceResults("task1", "key1", Arrays.asList(new String[]{"res1","res2"})));
-		assertTrue(pers.storeReduceResults("task2", "key2", Arrays.asList(new String[]{"res3"})));
-		assertTrue(pers.storeReduceResults("task3", "key3", Arrays.asList(new String[]{"res4"})));
+		assertTrue(pers.storeReduceResults("task1", red("key1", Arrays.asList(new String[]{"res1","res2"}))));
+		assertTrue(pers.storeReduceResults("task2", red("key2", Arrays.asList(new String[]{"res3"}))));
+		assertTrue(pers.storeReduceResults("task3", red("key3", Arrays.asList(new String[]{"res4"}))));
 		
 		Map<String, List<String>> redResults = pers.getReduceResults();
 		assertEquals(3, redResults.size());
@@ -149,19 +175,104 @@ public class FilePersistenceTest {
 	public void shouldHandleMultiMapAndReduceTaskResults() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeMapResults("mapTask", mapRes));
-		assertTrue(pers.storeReduceResults("resTask", key, redRes));
-		assertEquals(mapRes, pers.getMapResults());
+		assertTrue(pers.storeMapResults("mapTask", 0, mapRes));
+		assertTrue(pers.storeReduceResults("resTask", red(key, redRes)));
+		assertEquals(mapRes, pers.getMapResults(0));
 		assertEquals(redRes, pers.getReduceResults().get(key));
 	}
 	
+	@Test
+	public void shouldFailOnFileWithCorruptHeaderInCursor() throws IOException {
+		File dir = new File(baseDir, "corrupt-" + UUID.randomUUID());
+		FilePersistence pers = new FilePersistence(dir.getAbsolutePath());
+		pers.initDirectories();
+		try {
+			assertTrue(pers.storeMapResults("task1", 0, mapRes));
+			assertTrue(pers.storeMapResults("task2", 0, mapRes));
+			RandomAccessFile raf = new RandomAccessFile(find(dir, "task1"), "rw");
+			// laenge des ersten blocks
+			raf.seek(13);
+			raf.writeInt(Integer.MAX_VALUE - 8);
+			raf.close();
+			ResultCursor cursor = pers.openMapResults(0);
+			List<KeyValuePair> read = new ArrayList<KeyValuePair>();
+			try {
+				while (cursor.hasNext()) {
+					read.add(cursor.next());
+				}
+				fail("corrupt file was skipped, read " + read);
+			} catch (IllegalStateException e) {
+				// erwartet, sonst wuerden die resultate von task1 unbemerkt fehlen
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			pers.suicide();
+			dir.delete();
+		}
+	}
+
+	private static File find(File dir, String name) {
+		for (File file : dir.listFiles()) {
+			if (file.isDirectory()) {
+				File found = find(file, name);
+				if (found != null) {
+					return found;
+				}
+			} else if (file.getName().equals(name)) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void shouldReadAllKeysOfReducePartition() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		List<KeyValuePair> partition = new ArrayList<KeyValuePair>();
+		partition.addAll(red("key1", Arrays.asList(new String[]{"res1","res2"})));
+		partition.addAll(red("key2", Arrays.asList(new String[]{"res3"})));
+		assertTrue(pers.storeReduceResults("task1", partition));
+		
+		Map<String, List<String>> redResults = pers.getReduceResults();
+		assertEquals(2, redResults.size());
+		assertEquals(Arrays.asList(new String[]{"res1","res2"}), redResults.get("key1"));
+		assertEquals(Arrays.asList(new String[]{"res3"}), redResults.get("key2"));
+	}
+	
+	@Test
+	public void shouldAppendResultsOfSameKeyFromSeveralTasks() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeReduceResults("task1", red("key1", Arrays.asList(new String[]{"res1"}))));
+		assertTrue(pers.storeReduceResults("task2", red("key1", Arrays.asList(new String[]{"res2"}))));
+		
+		Map<String, List<String>> redResults = pers.getReduceResults();
+		assertEquals(1, redResults.size());
+		assertEquals(2, redResults.get("key1").size());
+		assertTrue(redResults.get("key1").contains("res1"));
+		assertTrue(redResults.get("key1").contains("res2"));
+	}
+	
+	@Test
+	public void shouldReturnReduceResultsSortedByKey() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeReduceResults("task1", red("key3", Arrays.asList(new String[]{"res3"}))));
+		assertTrue(pers.storeReduceResults("task2", red("key1", Arrays.asList(new String[]{"res1"}))));
+		assertTrue(pers.storeReduceResults("task3", red("key2", Arrays.asList(new String[]{"res2"}))));
+		
+		assertEquals(Arrays.asList(new String[]{"key1", "key2", "key3"}), new ArrayList<String>(pers.getReduceResults().keySet()));
+	}
+	
 	@Test
 	public void shouldNotReturnDeletedReduceFiles() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeReduceResults("task1", "key1", Arrays.asList(new String[]{"res1","res2"})));
-		assertTrue(pers.storeReduceResults("task2", "key2", Arrays.asList(new String[]{"res3"})));
-		assertTrue(pers.storeReduceResults("task3", "key3", Arrays.asList(new String[]{"res4"})));
+		assertTrue(pers.storeReduceResults("task1", red("key1", Arrays.asList(new String[]{"res1","res2"}))));
+		assertTrue(pers.storeReduceResults("task2", red("key2", Arrays.asList(new String[]{"res3"}))));
+		assertTrue(pers.storeReduceResults("task3", red("key3", Arrays.asList(new String[]{"res4"}))));
 		
 		assertTrue(pers.destroyReduce("task1"));
 		assertTrue(pers.destroyReduce("task3"));
@@ -175,18 +286,107 @@ public class FilePersistenceTest {
 	public void shouldNotReturnDeletedMapFiles() {
 		FilePersistence pers = new FilePersistence(baseDir);
 		pers.initDirectories();
-		assertTrue(pers.storeMapResults("task1", Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1"), new KeyValuePair("key2", "val2")})));
-		assertTrue(pers.storeMapResults("task2", Arrays.asList(new KeyValuePair[]{new KeyValuePair("key3", "val3")})));
-		assertTrue(pers.storeMapResults("task3", Arrays.asList(new KeyValuePair[]{new KeyValuePair("key4", "val4")})));
+		assertTrue(pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1"), new KeyValuePair("key2", "val2")})));
+		assertTrue(pers.storeMapResults("task2", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key3", "val3")})));
+		assertTrue(pers.storeMapResults("task3", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key4", "val4")})));
 		
 		assertTrue(pers.destroyMap("task1"));
 		assertTrue(pers.destroyMap("task3"));
 		
-		List<KeyValuePair> mapResults = pers.getMapResults();
+		List<KeyValuePair> mapResults = pers.getMapResults(0);
 		assertEquals(1, mapResults.size());
 		assertTrue(mapResults.contains(new KeyValuePair("key3", "val3")));
 	}
 	
+	@Test
+	public void shouldReadOnlyResultsOfRequestedPartition() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeMapResults("slice1", 0, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1")})));
+		assertTrue(pers.storeMapResults("slice1", 1, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key2", "val2")})));
+		assertTrue(pers.storeMapResults("slice2", 1, Arrays.asList(new KeyValuePair[]{new KeyValuePair("key2", "val3")})));
+		
+		assertEquals(Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1")}), pers.getMapResults(0));
+		List<KeyValuePair> partition = pers.getMapResults(1);
+		assertEquals(2, partition.size());
+		assertTrue(partition.contains(new KeyValuePair("key2", "val2")));
+		assertTrue(partition.contains(new KeyValuePair("key2", "val3")));
+		assertTrue(pers.getMapResults(2).isEmpty());
+	}
+	
+	@Test
+	public void shouldDeleteSlicesInAllPartitions() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeMapResults("slice1", 0, mapRes));
+		assertTrue(pers.storeMapResults("slice1", 1, mapRes));
+		assertTrue(pers.storeMapResults("slice2", 1, mapRes));
+		assertTrue(pers.destroyMap("slice1"));
+		assertTrue(pers.getMapResults(0).isEmpty());
+		assertEquals(mapRes, pers.getMapResults(1));
+		assertTrue(pers.suicide());
+		assertTrue(pers.getMapResults(1).isEmpty());
+	}
+	
+	@Test
+	public void shouldStreamResultsFileByFile() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		pers.storeMapResults("task1", 0, mapRes);
+		pers.storeMapResults("task2", 0, mapRes);
+		ResultCursor cursor = pers.openMapResults(0);
+		List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+		while (cursor.hasNext()) {
+			results.add(cursor.next());
+		}
+		assertEquals(4, results.size());
+		assertTrue(results.containsAll(mapRes));
+		cursor.close();
+		assertFalse(cursor.hasNext());
+		assertTrue(pers.suicide());
+	}
+
+	@Test
+	public void shouldCloseCursorBeforeEnd() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		pers.storeReduceResults("task1", red(key, redRes));
+		ResultCursor cursor = pers.openReduceResults();
+		assertEquals(new KeyValuePair(key, "res1"), cursor.next());
+		cursor.close();
+		assertFalse(cursor.hasNext());
+		assertFalse(pers.openMapResults(3).hasNext());
+		assertTrue(pers.suicide());
+	}
+	
+	@Test
+	public void shouldReadResultsWrittenWithOtherCompression() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		pers.setCompression("snappy");
+		pers.storeMapResults("task1", 0, mapRes);
+		pers.setCompression("deflate");
+		pers.storeMapResults("task2", 0, mapRes);
+		assertEquals(4, pers.getMapResults(0).size());
+		assertTrue(pers.suicide());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectUnknownCompression() {
+		new FilePersistence(baseDir).setCompression("zip");
+	}
+
+	@Test
+	public void shouldSyncWrittenAndSkipDeletedFiles() {
+		FilePersistence pers = new FilePersistence(baseDir);
+		pers.initDirectories();
+		assertTrue(pers.storeReduceResults("task1", red(key, redRes)));
+		assertTrue(pers.storeReduceResults("task2", red(key, redRes)));
+		assertTrue(pers.destroyReduce("task2"));
+		assertTrue(pers.sync());
+		assertTrue(pers.suicide());
+	}
+
 	@Test
 	public void shouldRemovedNestedDirs() {
 		File kid = new File(this.baseDir, "kid" + System.currentTimeMillis());
@@ -194,4 +394,15 @@ public class FilePersistenceTest {
 		assertTrue(grandkid.mkdirs());
 		assertTrue(FilePersistence.deletedir(kid));
 	}
+
+	/**
+	 * Reduce Resultate werden mit ihrem Key gespeichert
+	 */
+	private static List<KeyValuePair> red(String key, List<String> values) {
+		List<KeyValuePair> res = new ArrayList<KeyValuePair>();
+		for (String value : values) {
+			res.add(new KeyValuePair(key, value));
+		}
+		return res;
+	}
 }
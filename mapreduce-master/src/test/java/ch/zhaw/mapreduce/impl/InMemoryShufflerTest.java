@@ -0,0 +1,207 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Partitioner;
+
+public class InMemoryShufflerTest {
+
+	@Test
+	public void shouldGroupByKey() {
+		InMemoryShuffler shuffler = new InMemoryShuffler();
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2")));
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(2, shuffled.size());
+		assertEquals(2, shuffled.get("a").size());
+		assertTrue(shuffled.get("a").contains(new KeyValuePair("a", "1")));
+		assertTrue(shuffled.get("a").contains(new KeyValuePair("a", "2")));
+		assertEquals(Arrays.asList(new KeyValuePair("b", "1")), shuffled.get("b"));
+	}
+
+	@Test
+	public void shouldCombineAcrossResultsOfSeveralTasks() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 1, new ShuffleCombiner(
+				ShuffleCombinerTest.SUM, 3));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(Arrays.asList(new KeyValuePair("a", "3"), new KeyValuePair("a", "1")), shuffled.get("a"));
+		assertEquals(Arrays.asList(new KeyValuePair("b", "1")), shuffled.get("b"));
+	}
+
+	@Test
+	public void shouldTakeNoResultsIfPartitionerFails() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new Partitioner() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public int partition(String key, int nPartitions) {
+				if ("b".equals(key)) {
+					throw new IllegalStateException("kaputt");
+				}
+				return 0;
+			}
+		}, 1);
+		try {
+			shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+			fail();
+		} catch (IllegalStateException e) {
+			// erwartet
+		}
+		shuffler.finish();
+		assertFalse(shuffler.entries().hasNext());
+	}
+
+	@Test
+	public void shouldKeepAllValuesIfCombinerFails() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 1, new ShuffleCombiner(
+				ShuffleCombinerTest.FAILING, 2));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "3")));
+		shuffler.finish();
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2"), new KeyValuePair("a", "3")),
+				toMap(shuffler.entries()).get("a"));
+	}
+
+	@Test
+	public void shouldBeEmptyWithoutResults() {
+		InMemoryShuffler shuffler = new InMemoryShuffler();
+		shuffler.finish();
+		assertFalse(shuffler.entries().hasNext());
+		assertFalse(shuffler.partitions().hasNext());
+	}
+
+	@Test
+	public void shouldAcceptResultsFromConcurrentWorkers() throws Exception {
+		final InMemoryShuffler shuffler = new InMemoryShuffler();
+		final int workers = 8;
+		final int perWorker = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService exec = Executors.newFixedThreadPool(workers);
+		for (int w = 0; w < workers; w++) {
+			exec.execute(new Runnable() {
+				@Override
+				public void run() {
+					List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+					for (int i = 0; i < perWorker; i++) {
+						results.add(new KeyValuePair("key" + (i % 10), "1"));
+					}
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					shuffler.put(results);
+				}
+			});
+		}
+		start.countDown();
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(5, TimeUnit.SECONDS));
+
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(10, shuffled.size());
+		for (List<KeyValuePair> values : shuffled.values()) {
+			assertEquals(workers * perWorker / 10, values.size());
+		}
+	}
+
+	@Test
+	public void shouldPutEveryKeyInExactlyOnePartition() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 3);
+		for (int i = 0; i < 100; i++) {
+			shuffler.put(Arrays.asList(new KeyValuePair("key" + i, "1")));
+		}
+		shuffler.finish();
+		int partitions = 0;
+		Map<String, List<KeyValuePair>> all = new TreeMap<String, List<KeyValuePair>>();
+		for (Iterator<Map<String, List<KeyValuePair>>> it = shuffler.partitions(); it.hasNext();) {
+			Map<String, List<KeyValuePair>> partition = it.next();
+			partitions++;
+			for (String key : partition.keySet()) {
+				assertNull(all.put(key, partition.get(key)));
+			}
+		}
+		assertEquals(3, partitions);
+		assertEquals(toMap(shuffler.entries()), all);
+	}
+
+	@Test
+	public void shouldSkipEmptyPartitions() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 100);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+		shuffler.finish();
+		Iterator<Map<String, List<KeyValuePair>>> partitions = shuffler.partitions();
+		assertEquals(Collections.singleton("a"), partitions.next().keySet());
+		assertFalse(partitions.hasNext());
+	}
+
+	@Test
+	public void shouldGroupIntoPartitionsWhilePutting() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 3);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		Map<String, List<KeyValuePair>> first = shuffler.partitions().next();
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2"), new KeyValuePair("b", "2")));
+		shuffler.finish();
+		// die partitionen werden nicht am ende kopiert, sondern direkt weitergegeben
+		assertEquals(2, first.values().iterator().next().size());
+	}
+
+	@Test
+	public void shouldTakeHotKeysOutOfTheirPartition() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 1, ShuffleCombiner.none(),
+				new KeyCounter(2));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2"), new KeyValuePair("a", "3")));
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> hot = shuffler.takeHotKeys();
+		assertEquals(Collections.singleton("a"), hot.keySet());
+		assertEquals(3, hot.get("a").size());
+		assertEquals(Collections.singleton("b"), shuffler.partitions().next().keySet());
+		assertEquals(Collections.singleton("b"), toMap(shuffler.entries()).keySet());
+	}
+
+	@Test
+	public void shouldTakeNoHotKeysWithoutCounter() {
+		InMemoryShuffler shuffler = new InMemoryShuffler(new HashPartitioner(), 1);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2")));
+		shuffler.finish();
+		assertTrue(shuffler.takeHotKeys().isEmpty());
+		assertEquals(2, shuffler.partitions().next().get("a").size());
+	}
+
+	static Map<String, List<KeyValuePair>> toMap(Iterator<Entry<String, List<KeyValuePair>>> entries) {
+		Map<String, List<KeyValuePair>> map = new TreeMap<String, List<KeyValuePair>>();
+		while (entries.hasNext()) {
+			Entry<String, List<KeyValuePair>> entry = entries.next();
+			assertNull(map.put(entry.getKey(), entry.getValue()));
+		}
+		return map;
+	}
+}
@@ -0,0 +1,65 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class InputBatcherTest {
+
+	@Test
+	public void shouldBatchByNumberOfInputs() {
+		InputBatcher b = new InputBatcher(i("a", "b", "c", "d", "e"), 2, 0);
+		assertEquals(Arrays.asList("a", "b"), b.next());
+		assertEquals(Arrays.asList("c", "d"), b.next());
+		assertEquals(Arrays.asList("e"), b.next());
+		assertFalse(b.hasNext());
+	}
+
+	@Test
+	public void shouldBatchByNumberOfChars() {
+		InputBatcher b = new InputBatcher(i("aa", "bb", "cc", "d"), 100, 4);
+		assertEquals(Arrays.asList("aa", "bb"), b.next());
+		assertEquals(Arrays.asList("cc", "d"), b.next());
+		assertFalse(b.hasNext());
+	}
+
+	@Test
+	public void shouldPutOversizedInputInOwnBatch() {
+		InputBatcher b = new InputBatcher(i("aaaaaaaa", "b"), 100, 4);
+		assertEquals(Arrays.asList("aaaaaaaa"), b.next());
+		assertEquals(Arrays.asList("b"), b.next());
+	}
+
+	@Test
+	public void shouldCreateOneTaskPerInputByDefault() {
+		InputBatcher b = new InputBatcher(i("a", "b"), 1, 0);
+		assertEquals(Arrays.asList("a"), b.next());
+		assertEquals(Arrays.asList("b"), b.next());
+		assertFalse(b.hasNext());
+	}
+
+	@Test
+	public void shouldHandleEmptyInput() {
+		assertFalse(new InputBatcher(Collections.<String> emptyList().iterator(), 10, 0).hasNext());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void shouldThrowWhenExhausted() {
+		new InputBatcher(Collections.<String> emptyList().iterator(), 10, 0).next();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRequireAtLeastOneInputPerBatch() {
+		new InputBatcher(i("a"), 0, 0);
+	}
+
+	private static Iterator<String> i(String... vals) {
+		return Arrays.asList(vals).iterator();
+	}
+}
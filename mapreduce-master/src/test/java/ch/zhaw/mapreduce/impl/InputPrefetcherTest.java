@@ -0,0 +1,156 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jmock.Expectations;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.Pool;
+
+public class InputPrefetcherTest {
+
+	@Rule
+	public JUnitRuleMockery mockery = new JUnitRuleMockery() {
+		{
+			setThreadingPolicy(new Synchroniser());
+		}
+	};
+
+	@Mock
+	private Pool pool;
+
+	private final ExecutorService exec = Executors.newSingleThreadExecutor();
+
+	@After
+	public void shutdown() {
+		this.exec.shutdownNow();
+	}
+
+	@Test
+	public void shouldReadDirectlyWithoutPrefetching() throws Exception {
+		InputPrefetcher<String> p = new InputPrefetcher<String>(Arrays.asList("a", "b").iterator(), pool, 0);
+		p.start(exec);
+		assertEquals("a", p.take());
+		assertEquals("b", p.take());
+		assertNull(p.take());
+		assertNull(p.take());
+	}
+
+	@Test
+	public void shouldPrefetchAllInputs() throws Exception {
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(pool).getCurrentPoolSize();
+				will(returnValue(2));
+			}
+		});
+		InputPrefetcher<String> p = new InputPrefetcher<String>(Arrays.asList("a", "b", "c").iterator(), pool, 1);
+		p.start(exec);
+		assertEquals("a", p.take());
+		assertEquals("b", p.take());
+		assertEquals("c", p.take());
+		assertNull(p.take());
+	}
+
+	@Test
+	public void shouldNotReadMoreThanDepthInAdvance() throws Exception {
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(pool).getCurrentPoolSize();
+				will(returnValue(2));
+			}
+		});
+		CountingIterator source = new CountingIterator(100);
+		InputPrefetcher<Integer> p = new InputPrefetcher<Integer>(source, pool, 2);
+		p.start(exec);
+		Thread.sleep(200);
+		assertEquals(4, source.read.get());
+		assertEquals(Integer.valueOf(0), p.take());
+		Thread.sleep(200);
+		assertEquals(5, source.read.get());
+		p.close();
+	}
+
+	@Test
+	public void shouldPassFailureOfIteratorToMaster() throws Exception {
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(pool).getCurrentPoolSize();
+				will(returnValue(1));
+			}
+		});
+		InputPrefetcher<Integer> p = new InputPrefetcher<Integer>(new CountingIterator(1) {
+			@Override
+			public boolean hasNext() {
+				if (read.get() == 1) {
+					throw new IllegalArgumentException("broken input");
+				}
+				return true;
+			}
+		}, pool, 1);
+		p.start(exec);
+		assertEquals(Integer.valueOf(0), p.take());
+		try {
+			p.take();
+			fail("failure expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("broken input", e.getMessage());
+		}
+	}
+
+	@Test
+	public void shouldStopReadingOnClose() throws Exception {
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(pool).getCurrentPoolSize();
+				will(returnValue(1));
+			}
+		});
+		InputPrefetcher<Integer> p = new InputPrefetcher<Integer>(new CountingIterator(100), pool, 1);
+		p.start(exec);
+		p.close();
+		this.exec.shutdown();
+		assertTrue(this.exec.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	private static class CountingIterator implements Iterator<Integer> {
+
+		final AtomicInteger read = new AtomicInteger();
+
+		private final int n;
+
+		CountingIterator(int n) {
+			this.n = n;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return read.get() < n;
+		}
+
+		@Override
+		public Integer next() {
+			return read.getAndIncrement();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
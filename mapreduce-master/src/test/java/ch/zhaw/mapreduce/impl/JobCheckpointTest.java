@@ -0,0 +1,282 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Shuffler;
+
+public class JobCheckpointTest {
+
+	@Rule
+	public JUnitRuleMockery mockery = new JUnitRuleMockery();
+
+	@Mock
+	private Shuffler shuffler;
+
+	private final File baseDir = new File(System.getProperty("java.io.tmpdir"), "checkpoints-" + UUID.randomUUID());
+
+	private final Checkpoints checkpoints = new Checkpoints(true, this.baseDir.getAbsolutePath());
+
+	private final List<KeyValuePair> results = Arrays.asList(new KeyValuePair("key1", "val1"), new KeyValuePair(
+			"key2", "val2"));
+
+	@After
+	public void cleanup() {
+		this.checkpoints.open("job").delete();
+		this.baseDir.delete();
+	}
+
+	@Test
+	public void shouldFindRecordedBatchAfterRestart() throws IOException {
+		String key = JobCheckpoint.batchKey(0, Arrays.asList("a", "b"));
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		checkpoint.record(key, this.results);
+		checkpoint.close();
+
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(1, restarted.completedBatches());
+		assertEquals(this.results, restarted.completedBatch(key));
+		assertNull(restarted.completedBatch(JobCheckpoint.batchKey(1, Arrays.asList("a", "b"))));
+		restarted.close();
+	}
+
+	@Test
+	public void shouldFindBatchesRecordedConcurrently() throws Exception {
+		final JobCheckpoint checkpoint = this.checkpoints.open("job");
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < 20; i++) {
+			final String key = i + "-abc";
+			futures.add(exec.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					checkpoint.record(key, results);
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		exec.shutdown();
+		checkpoint.close();
+
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(20, restarted.completedBatches());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(this.results, restarted.completedBatch(i + "-abc"));
+		}
+		restarted.close();
+	}
+
+	@Test
+	public void shouldDistinguishBatchesByInputs() {
+		assertEquals(JobCheckpoint.batchKey(3, Arrays.asList("a", "bc")),
+				JobCheckpoint.batchKey(3, Arrays.asList("a", "bc")));
+		assertFalse(JobCheckpoint.batchKey(3, Arrays.asList("a", "bc")).equals(
+				JobCheckpoint.batchKey(3, Arrays.asList("ab", "c"))));
+		assertFalse(JobCheckpoint.batchKey(3, Arrays.asList("a")).equals(
+				JobCheckpoint.batchKey(4, Arrays.asList("a"))));
+	}
+
+	@Test
+	public void shouldIgnoreTruncatedManifestLine() throws IOException {
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		checkpoint.record("0-abc", this.results);
+		checkpoint.close();
+		// absturz mitten im schreiben der naechsten zeile
+		FileOutputStream manifest = new FileOutputStream(new File(this.checkpoints.directory("job"),
+				JobCheckpoint.MANIFEST), true);
+		manifest.write("map 1-de".getBytes());
+		manifest.close();
+
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(1, restarted.completedBatches());
+		restarted.record("1-def", this.results);
+		restarted.close();
+
+		JobCheckpoint again = this.checkpoints.open("job");
+		assertEquals(2, again.completedBatches());
+		assertEquals(this.results, again.completedBatch("1-def"));
+		again.close();
+	}
+
+	@Test
+	public void shouldRunBatchAgainIfResultsAreMissing() throws IOException {
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		checkpoint.record("0-abc", this.results);
+		checkpoint.close();
+		new File(this.checkpoints.directory("job"), "map-0-abc").delete();
+
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(0, restarted.completedBatches());
+		assertNull(restarted.completedBatch("0-abc"));
+		restarted.close();
+	}
+
+	@Test
+	public void shouldRecordBeforePassingToShuffler() {
+		final JobCheckpoint checkpoint = this.checkpoints.open("job");
+		final List<KeyValuePair> recorded = new ArrayList<KeyValuePair>();
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(results);
+				will(new CustomAction("check recorded") {
+					@Override
+					public Object invoke(Invocation invocation) throws Throwable {
+						recorded.addAll(checkpoint.completedBatch("0-abc"));
+						return null;
+					}
+				});
+			}
+		});
+		checkpoint.recording(this.shuffler, "0-abc").put(this.results);
+		assertEquals(this.results, recorded);
+		checkpoint.close();
+	}
+
+	@Test
+	public void shouldRecordAppendedBatchesOnlyWithSync() throws IOException {
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		checkpoint.append("0-abc", this.results);
+		checkpoint.append("1-abc", this.results);
+		assertNull(checkpoint.completedBatch("0-abc"));
+		assertTrue(checkpoint.sync());
+		assertEquals(this.results, checkpoint.completedBatch("1-abc"));
+		checkpoint.close();
+
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(2, restarted.completedBatches());
+		assertEquals(this.results, restarted.completedBatch("0-abc"));
+		restarted.close();
+	}
+
+	@Test
+	public void shouldRecordInWriteBehindBeforePassingToShuffler() throws InterruptedException {
+		final JobCheckpoint checkpoint = this.checkpoints.open("job");
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final WriteBehind writeBehind = new WriteBehind(10, 10, Executors.defaultThreadFactory());
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(with(results), with(same(writeBehind)), with(any(WriteBehind.Callback.class)));
+				will(MapWorkerTaskTest.deliver(true));
+			}
+		});
+		checkpoint.recording(this.shuffler, "0-abc").put(this.results, writeBehind, new WriteBehind.Callback() {
+			@Override
+			public void written(boolean durable) {
+				delivered.countDown();
+			}
+		});
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		// der checkpoint wird im thread des writebehind geschrieben
+		for (int i = 0; i < 50 && checkpoint.completedBatches() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(this.results, checkpoint.completedBatch("0-abc"));
+		checkpoint.close();
+	}
+
+	@Test
+	public void shouldDeleteCheckpoint() throws IOException {
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		checkpoint.record("0-abc", this.results);
+		checkpoint.delete();
+		assertFalse(this.checkpoints.directory("job").exists());
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(0, restarted.completedBatches());
+		restarted.close();
+	}
+
+	@Test
+	public void shouldNotRecordIfDisabled() {
+		JobCheckpoint checkpoint = Checkpoints.disabled().open("job");
+		assertSame(this.shuffler, checkpoint.recording(this.shuffler, "0-abc"));
+		assertEquals(0, checkpoint.completedBatches());
+	}
+
+	@Test
+	public void shouldNotLeaveTheBaseDirectory() throws IOException {
+		JobCheckpoint checkpoint = this.checkpoints.open("../job");
+		checkpoint.record("0-abc", this.results);
+		checkpoint.delete();
+		assertFalse(new File(this.baseDir.getParentFile(), "job").exists());
+	}
+
+	@Test
+	public void shouldKeepJobsApartWhoseIdsLookAlike() throws IOException {
+		JobCheckpoint checkpoint = this.checkpoints.open("a/b");
+		checkpoint.record("0-abc", this.results);
+		checkpoint.close();
+
+		JobCheckpoint other = this.checkpoints.open("a_b");
+		assertTrue(other.isEnabled());
+		assertEquals(0, other.completedBatches());
+		other.delete();
+		this.checkpoints.open("a/b").delete();
+	}
+
+	@Test
+	public void shouldNotOpenCheckpointOfOtherJob() throws IOException {
+		File dir = this.checkpoints.directory("job");
+		assertTrue(dir.mkdirs());
+		File manifest = new File(dir, JobCheckpoint.MANIFEST);
+		FileOutputStream out = new FileOutputStream(manifest);
+		out.write("job other\nmap 0-abc map-0-abc\n".getBytes());
+		out.close();
+
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		assertFalse(checkpoint.isEnabled());
+		assertEquals(0, checkpoint.completedBatches());
+		manifest.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void shouldWriteResultsWithConfiguredCodec() throws IOException {
+		this.checkpoints.setCompression("deflate");
+		JobCheckpoint checkpoint = this.checkpoints.open("job");
+		checkpoint.record("0-abc", this.results);
+		checkpoint.close();
+
+		RandomAccessFile file = new RandomAccessFile(new File(this.checkpoints.directory("job"), "map-0-abc"), "r");
+		try {
+			// nach der kennung steht die id des codecs
+			file.seek(4);
+			assertEquals(BlockCodec.DEFLATE.id(), file.read());
+		} finally {
+			file.close();
+		}
+		JobCheckpoint restarted = this.checkpoints.open("job");
+		assertEquals(this.results, restarted.completedBatch("0-abc"));
+		restarted.close();
+	}
+}
@@ -0,0 +1,61 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+public class KeyCounterTest {
+
+	@Test
+	public void shouldFindKeysAboveThreshold() {
+		KeyCounter counter = new KeyCounter(3);
+		counter.add("a", 2);
+		counter.add("b", 3);
+		assertTrue(counter.hotKeys().isEmpty());
+		counter.add("a", 2);
+		assertEquals(Collections.singleton("a"), counter.hotKeys());
+	}
+
+	@Test
+	public void shouldCountEachValueInResults() {
+		KeyCounter counter = new KeyCounter(2);
+		counter.addAll(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1"),
+				new KeyValuePair("a", "2")));
+		assertTrue(counter.hotKeys().isEmpty());
+		counter.addAll(Arrays.asList(new KeyValuePair("a", "3")));
+		assertEquals(Collections.singleton("a"), counter.hotKeys());
+	}
+
+	@Test
+	public void shouldNotCountWhenDisabled() {
+		KeyCounter counter = new KeyCounter(0);
+		counter.add("a", 1000);
+		assertTrue(counter.hotKeys().isEmpty());
+		KeyCounter.none().add("a", 1000);
+		assertTrue(KeyCounter.none().hotKeys().isEmpty());
+	}
+
+	@Test
+	public void shouldNeverMissHotKeyAmongManyKeys() {
+		// mehr keys als zaehler pro zeile, die schaetzung darf zu gross, aber nie zu klein sein
+		KeyCounter counter = new KeyCounter(100);
+		List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+		for (int i = 0; i < 50000; i++) {
+			results.add(new KeyValuePair("key" + i, "1"));
+		}
+		for (int i = 0; i < 101; i++) {
+			results.add(new KeyValuePair("hot", "1"));
+		}
+		counter.addAll(results);
+		assertTrue(counter.hotKeys().contains("hot"));
+		assertTrue(counter.hotKeys().size() < 100);
+	}
+}
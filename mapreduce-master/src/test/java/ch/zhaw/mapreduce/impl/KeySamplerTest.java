@@ -0,0 +1,39 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class KeySamplerTest {
+
+	@Test
+	public void shouldKeepAllKeysBelowSize() {
+		KeySampler sampler = new KeySampler(5);
+		sampler.offer("a");
+		sampler.offer("b");
+		assertEquals(Arrays.asList("a", "b"), sampler.sample());
+	}
+
+	@Test
+	public void shouldNotGrowBeyondSize() {
+		KeySampler sampler = new KeySampler(10, new Random(1));
+		for (int i = 0; i < 1000; i++) {
+			sampler.offer(Integer.toString(i % 2));
+		}
+		List<String> sample = sampler.sample();
+		assertEquals(10, sample.size());
+		// beide keys sind gleich haeufig, also sollten beide in der stichprobe sein
+		assertTrue(sample.contains("0"));
+		assertTrue(sample.contains("1"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRequirePositiveSize() {
+		new KeySampler(0);
+	}
+}
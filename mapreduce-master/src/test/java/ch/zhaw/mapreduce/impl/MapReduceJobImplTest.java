@@ -0,0 +1,78 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.MapReduceConfig;
+import ch.zhaw.mapreduce.MapReduceJob;
+import ch.zhaw.mapreduce.Master;
+import ch.zhaw.mapreduce.plugins.thread.ThreadAgentPlugin;
+import ch.zhaw.mapreduce.roundtriptest.WordFrequencyMapInstruction;
+import ch.zhaw.mapreduce.roundtriptest.WordFrequencyReduceInstruction;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class MapReduceJobImplTest {
+
+	private Master master;
+
+	@Before
+	public void startMaster() throws Exception {
+		Injector injector = Guice.createInjector(new MapReduceConfig());
+		new ThreadAgentPlugin().start(injector);
+		this.master = injector.getInstance(Master.class);
+	}
+
+	@Test
+	public void shouldRunJobsConcurrentlyOnSamePool() throws Exception {
+		final MapReduceJob job1 = job("job1");
+		final MapReduceJob job2 = job("job2");
+		ExecutorService exec = Executors.newFixedThreadPool(2);
+		Future<Map<String, List<String>>> res1 = exec.submit(new Callable<Map<String, List<String>>>() {
+			@Override
+			public Map<String, List<String>> call() {
+				return job1.run(Arrays.asList("a b", "a c").iterator());
+			}
+		});
+		Future<Map<String, List<String>>> res2 = exec.submit(new Callable<Map<String, List<String>>>() {
+			@Override
+			public Map<String, List<String>> call() {
+				return job2.run(Arrays.asList("x x x").iterator());
+			}
+		});
+		assertEquals(Arrays.asList("2"), res1.get(10, TimeUnit.SECONDS).get("a"));
+		assertEquals(3, res1.get().size());
+		assertEquals(Arrays.asList("3"), res2.get(10, TimeUnit.SECONDS).get("x"));
+		assertEquals(1, res2.get().size());
+		exec.shutdown();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldOnlyRunOnce() {
+		MapReduceJob job = job("job");
+		job.run(Arrays.asList("a").iterator());
+		job.run(Arrays.asList("a").iterator());
+	}
+
+	@Test
+	public void shouldKeepJobId() {
+		assertEquals("myjob", job("myjob").getJobId());
+	}
+
+	private MapReduceJob job(String jobId) {
+		return new MapReduceJobImpl(jobId, 1, this.master, new WordFrequencyMapInstruction(),
+				new WordFrequencyReduceInstruction(), null, null);
+	}
+}
@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
@@ -20,9 +21,12 @@ import javax.inject.Provider;
 
 import org.jmock.Expectations;
 import org.jmock.Sequence;
+import org.jmock.api.Action;
+import org.jmock.api.Invocation;
 import org.jmock.auto.Auto;
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.concurrent.Synchroniser;
 import org.junit.Rule;
 import org.junit.Test;
@@ -32,7 +36,9 @@ import ch.zhaw.mapreduce.Context;
 import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.MapEmitter;
 import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.MapPartitioning;
 import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.Shuffler;
 import ch.zhaw.mapreduce.WorkerTask.State;
 import ch.zhaw.mapreduce.plugins.thread.ThreadWorker;
 
@@ -67,32 +73,37 @@ public class MapWorkerTaskTest {
 	
 	@Mock
 	private Persistence pers;
+
+	@Mock
+	private Shuffler shuffler;
 	
 	private String inputUUID = "inputUUID";
 
-	private String input = "hello";
+	private List<String> input = Arrays.asList("hello");
+
+	private final String jobId = "jobId";
 
 	@Test
 	public void shouldSetMapInstruction() {
-		MapWorkerTask task = new MapWorkerTask(inputUUID, pers, mapInstr, combInstr, input);
+		MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, input);
 		assertSame(mapInstr, task.getMapInstruction());
 	}
 
 	@Test
 	public void shouldSetCombinerInstruction() {
-		MapWorkerTask task = new MapWorkerTask(inputUUID, pers, mapInstr, combInstr, input);
+		MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, input);
 		assertSame(combInstr, task.getCombinerInstruction());
 	}
 
 	@Test
 	public void shouldCopeWithNullCombiner() {
-		MapWorkerTask task = new MapWorkerTask(inputUUID, pers, mapInstr, null, input);
+		MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, null, input);
 		assertNull(task.getCombinerInstruction());
 	}
 
 	@Test
 	public void shouldRunMapInstruction() {
-		final MapWorkerTask task = new MapWorkerTask(inputUUID, pers, new MapInstruction() {
+		final MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, new MapInstruction() {
 			@Override
 			public void map(MapEmitter emitter, String toDo) {
 				for (String part : toDo.split(" ")) {
@@ -102,6 +113,8 @@ public class MapWorkerTaskTest {
 		}, null, input);
 		this.mockery.checking(new Expectations() {
 			{
+				allowing(shuffler).getMapPartitioning();
+				will(returnValue(null));
 				oneOf(ctx).emitIntermediateMapResult("hello", "1");
 			}
 		});
@@ -110,13 +123,13 @@ public class MapWorkerTaskTest {
 
 	@Test
 	public void shouldSetInputUUID() {
-		final MapWorkerTask task = new MapWorkerTask(inputUUID, pers, mapInstr, combInstr, input);
+		final MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, input);
 		assertEquals(inputUUID, task.getTaskUuid());
 	}
 
 	@Test
 	public void shouldSetStateToInitiatedInitially() {
-		MapWorkerTask task = new MapWorkerTask(inputUUID, pers, mapInstr, combInstr, input);
+		MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, input);
 		assertEquals(State.INITIATED, task.getCurrentState());
 	}
 
@@ -124,11 +137,11 @@ public class MapWorkerTaskTest {
 	public void shouldBeInProgressWhileRunning() throws InterruptedException, BrokenBarrierException {
 		final CyclicBarrier barrier = new CyclicBarrier(2);
 		ExecutorService taskExec = Executors.newSingleThreadExecutor();
-		final PoolImpl pool = new PoolImpl(Executors.newSingleThreadExecutor());
+		final PoolImpl pool = new PoolImpl();
 		pool.init();
 		ThreadWorker worker = new ThreadWorker(pool, taskExec, ctxProvider);
 		pool.donateWorker(worker);
-		final MapWorkerTask task = new MapWorkerTask(inputUUID, pers, new MapInstruction() {
+		final MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, new MapInstruction() {
 
 			@Override
 			public void map(MapEmitter emitter, String toDo) {
@@ -141,6 +154,9 @@ public class MapWorkerTaskTest {
 		}, null, input);
 		this.mockery.checking(new Expectations() { {
 				oneOf(ctxProvider).get(); will(returnValue(ctx));
+				allowing(shuffler).getMapPartitioning(); will(returnValue(null));
+				// nach der barriere laeuft der worker weiter und holt die resultate ab
+				allowing(ctx).getMapResult(); will(returnValue(null));
 			} });
 		pool.enqueueTask(task);
 		Thread.yield();
@@ -155,9 +171,9 @@ public class MapWorkerTaskTest {
 
 	@Test
 	public void shouldBeEnqueuedAfterSubmissionToPool() throws Exception {
-		final PoolImpl pool = new PoolImpl(Executors.newSingleThreadExecutor());
+		final PoolImpl pool = new PoolImpl();
 		pool.init();
-		final MapWorkerTask task = new MapWorkerTask(inputUUID, pers, mapInstr, null, input);
+		final MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, null, input);
 		this.mockery.checking(new Expectations() {
 			{
 				never(mapInstr);
@@ -169,11 +185,13 @@ public class MapWorkerTaskTest {
 
 	@Test
 	public void shouldCombineAfterTask() {
-		final MapWorkerTask task = new MapWorkerTask("inputUUID", pers, mapInstr, combInstr, "hello");
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
 		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair[] { new KeyValuePair("hello", "1") });
 		final List<KeyValuePair> combined = Arrays.asList(new KeyValuePair[] { new KeyValuePair("hello", "2") });
 		this.mockery.checking(new Expectations() {
 			{
+				allowing(shuffler).getMapPartitioning();
+				will(returnValue(null));
 				oneOf(mapInstr).map(ctx, "hello");
 				oneOf(ctx).getMapResult();
 				will(returnValue(result));
@@ -188,15 +206,178 @@ public class MapWorkerTaskTest {
 	
 	@Test
 	public void shouldAlsoTransitionToCompleteIfResultIsEmpty() throws Exception {
-		final MapWorkerTask task = new MapWorkerTask("inputUUID", pers, mapInstr, combInstr, "hello");
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
 		task.successful(Collections.emptyList());
 		assertEquals(State.COMPLETED, task.getCurrentState());
 	}
 
 	@Test
 	public void shouldAlsoTransitionToCompleteIfResultIsNull() throws Exception {
-		final MapWorkerTask task = new MapWorkerTask("inputUUID", pers, mapInstr, combInstr, "hello");
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
 		task.successful(null);
 		assertEquals(State.COMPLETED, task.getCurrentState());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void shouldPassResultsToShufflerBeforeCompleting() throws Exception {
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair[] { new KeyValuePair("hello", "1") });
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				inSequence(events);
+				will(deliver(true));
+			}
+		});
+		task.successful(result);
+		assertEquals(State.COMPLETED, task.getCurrentState());
+	}
+
+	@Test
+	public void shouldCompleteOnlyOnceResultsAreDelivered() throws Exception {
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("hello", "1"));
+		final WriteBehind.Callback[] delivered = new WriteBehind.Callback[1];
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				will(new CustomAction("keep callback") {
+					@Override
+					public Object invoke(Invocation invocation) {
+						delivered[0] = (WriteBehind.Callback) invocation.getParameter(2);
+						return null;
+					}
+				});
+			}
+		});
+		task.started();
+		task.successful(result);
+		assertEquals(State.INPROGRESS, task.getCurrentState());
+		delivered[0].written(true);
+		assertEquals(State.COMPLETED, task.getCurrentState());
+	}
+
+	@Test
+	public void shouldFailIfResultsCannotBeDelivered() throws Exception {
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("hello", "1"));
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				will(deliver(false));
+			}
+		});
+		task.started();
+		task.successful(result);
+		assertEquals(State.FAILED, task.getCurrentState());
+	}
+
+	@Test
+	public void shouldNotPassEmptyResultsToShuffler() throws Exception {
+		final MapWorkerTask task = new MapWorkerTask("inputUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
+		this.mockery.checking(new Expectations() {
+			{
+				never(shuffler);
+			}
+		});
+		task.successful(Collections.emptyList());
+	}
+
+	@Test
+	public void shouldMapAllInputsOfBatchAndCombineOnce() {
+		final MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, Arrays.asList("a",
+				"b"));
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1"));
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(shuffler).getMapPartitioning();
+				will(returnValue(null));
+				oneOf(mapInstr).map(ctx, "a");
+				inSequence(events);
+				oneOf(mapInstr).map(ctx, "b");
+				inSequence(events);
+				oneOf(ctx).getMapResult();
+				will(returnValue(result));
+				oneOf(combInstr).combine(with(aNonNull(Iterator.class)));
+				will(returnValue(result));
+				oneOf(ctx).replaceMapResult(result);
+			}
+		});
+		task.runTask(ctx);
+		assertEquals(Arrays.asList("a", "b"), task.getInputs());
+	}
+
+	@Test
+	public void shouldStoreResultOfOnlyOneAttempt() {
+		MapWorkerTask first = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, input);
+		MapWorkerTask backup = new MapWorkerTask("backupUUID", jobId, pers, shuffler, mapInstr, combInstr, input);
+		backup.joinAttempts(first);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("hello", "1"));
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				will(deliver(true));
+			}
+		});
+		first.started();
+		backup.started();
+		backup.successful(result);
+		first.successful(result);
+		assertEquals(State.COMPLETED, backup.getCurrentState());
+		assertEquals(State.ABORTED, first.getCurrentState());
+	}
+
+	@Test
+	public void shouldPartitionResultsInContextIfShufflerWantsTo() {
+		final MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, new MapInstruction() {
+			@Override
+			public void map(MapEmitter emitter, String toDo) {
+				emitter.emitIntermediateMapResult(toDo, "1");
+			}
+		}, null, Arrays.asList("a", "b", "c"));
+		final MapPartitioning partitioning = new MapPartitioning(new HashPartitioner(), 2);
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(shuffler).getMapPartitioning();
+				will(returnValue(partitioning));
+			}
+		});
+		ContextImpl context = new ContextImpl();
+		task.runTask(context);
+		PartitionedMapResult result = (PartitionedMapResult) context.getMapResult();
+		assertEquals(3, result.size());
+		for (Map.Entry<Integer, List<KeyValuePair>> slice : result.getSlices().entrySet()) {
+			for (KeyValuePair pair : slice.getValue()) {
+				assertEquals(slice.getKey().intValue(), partitioning.partition(pair.getKey()));
+			}
+		}
+	}
+
+	@Test
+	public void shouldStayAbortedIfFailingAfterAbort() {
+		MapWorkerTask task = new MapWorkerTask(inputUUID, jobId, pers, shuffler, mapInstr, combInstr, input);
+		this.mockery.checking(new Expectations() {
+			{
+				// gespeichert wird erst vom shuffler, es gibt nichts zu loeschen
+				never(pers);
+			}
+		});
+		task.started();
+		task.abort();
+		task.fail();
+		assertEquals(State.ABORTED, task.getCurrentState());
+	}
+
+	/**
+	 * Ruft den Callback von Shuffler.put auf, wie ein Shuffler, der nichts im Hintergrund schreibt.
+	 */
+	static Action deliver(final boolean durable) {
+		return new CustomAction("deliver results") {
+			@Override
+			public Object invoke(Invocation invocation) {
+				((WriteBehind.Callback) invocation.getParameter(2)).written(durable);
+				return null;
+			}
+		};
+	}
+}
@@ -0,0 +1,129 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.inject.Provider;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.ResultCursor;
+
+public class MemoryPersistenceTest {
+
+	private final File baseDir = new File(System.getProperty("java.io.tmpdir"), "mempers-" + UUID.randomUUID());
+
+	private final List<SegmentPersistence> spills = new ArrayList<SegmentPersistence>();
+
+	private final Provider<SegmentPersistence> spillProvider = new Provider<SegmentPersistence>() {
+		@Override
+		public SegmentPersistence get() {
+			SegmentPersistence spill = new SegmentPersistence(baseDir.getAbsolutePath());
+			spill.initSegments();
+			spills.add(spill);
+			return spill;
+		}
+	};
+
+	@After
+	public void cleanup() {
+		for (SegmentPersistence spill : this.spills) {
+			spill.suicide();
+		}
+		this.baseDir.delete();
+	}
+
+	@Test
+	public void shouldKeepResultsInMemoryWithinBudget() {
+		MemoryPersistence pers = new MemoryPersistence(Long.MAX_VALUE, this.spillProvider);
+		assertTrue(pers.storeMapResults("slice1", 1, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertTrue(pers.storeMapResults("slice1", 0, Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(pers.storeReduceResults("task2", Arrays.asList(new KeyValuePair("b", "2"), new KeyValuePair("a", "1"))));
+		assertEquals(Arrays.asList(new KeyValuePair("key1", "val1")), pers.getMapResults(1));
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1")), pers.getMapResults(0));
+		Map<String, List<String>> results = pers.getReduceResults();
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(results.keySet()));
+		assertTrue(this.spills.isEmpty());
+		assertTrue(pers.suicide());
+	}
+
+	@Test
+	public void shouldSpillBeyondBudget() {
+		MemoryPersistence pers = new MemoryPersistence(60, this.spillProvider);
+		assertTrue(pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(this.spills.isEmpty());
+		assertTrue(pers.storeReduceResults("task2", Arrays.asList(new KeyValuePair("a", "2"), new KeyValuePair("b", "2"))));
+		assertEquals(1, this.spills.size());
+		Map<String, List<String>> results = pers.getReduceResults();
+		assertEquals(2, results.get("a").size());
+		assertEquals(Arrays.asList("2"), results.get("b"));
+		assertEquals(Arrays.asList("2"), this.spills.get(0).getReduceResults().get("a"));
+	}
+
+	@Test
+	public void shouldFreeBudgetWhenDestroyed() {
+		MemoryPersistence pers = new MemoryPersistence(40, this.spillProvider);
+		assertTrue(pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(pers.destroyReduce("task1"));
+		assertTrue(pers.getReduceResults().isEmpty());
+		assertTrue(pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("a", "2"))));
+		assertTrue(this.spills.isEmpty());
+	}
+
+	@Test
+	public void shouldDestroySpilledResults() {
+		MemoryPersistence pers = new MemoryPersistence(0, this.spillProvider);
+		assertTrue(pers.storeMapResults("slice1", 0, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertTrue(pers.storeMapResults("slice1", 3, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertEquals(1, pers.getMapResults(3).size());
+		assertTrue(pers.destroyMap("slice1"));
+		assertTrue(pers.getMapResults(0).isEmpty());
+		assertTrue(pers.getMapResults(3).isEmpty());
+	}
+
+	@Test
+	public void shouldNotStoreSameTaskTwice() {
+		MemoryPersistence pers = new MemoryPersistence(Long.MAX_VALUE, this.spillProvider);
+		assertTrue(pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertFalse(pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("key1", "val2"))));
+		assertEquals(1, pers.getMapResults(0).size());
+	}
+
+	@Test
+	public void shouldStreamMemoryAndSpilledResults() {
+		MemoryPersistence pers = new MemoryPersistence(60, this.spillProvider);
+		assertTrue(pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(pers.storeMapResults("task2", 0, Arrays.asList(new KeyValuePair("b", "2"), new KeyValuePair("c", "3"))));
+		assertEquals(1, this.spills.size());
+		ResultCursor cursor = pers.openMapResults(0);
+		List<KeyValuePair> results = new ArrayList<KeyValuePair>();
+		while (cursor.hasNext()) {
+			results.add(cursor.next());
+		}
+		cursor.close();
+		// zuerst der speicher, dann die ausgelagerten resultate
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "2"), new KeyValuePair("c", "3")),
+				results);
+	}
+
+	@Test
+	public void shouldReadMapResultsOfAllPartitionsInMemoryAndSpilled() {
+		MemoryPersistence pers = new MemoryPersistence(60, this.spillProvider);
+		assertTrue(pers.storeMapResults("task1", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(pers.storeMapResults("task2", 1, Arrays.asList(new KeyValuePair("b", "2"), new KeyValuePair("c", "3"))));
+		assertEquals(1, this.spills.size());
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1")), pers.getMapResults(0));
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "2"), new KeyValuePair("c", "3")),
+				pers.getMapResults());
+	}
+}
@@ -0,0 +1,244 @@
+package ch.zhaw.mapreduce.impl;
+
+import static ch.zhaw.mapreduce.impl.InMemoryShufflerTest.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Partitioner;
+import ch.zhaw.mapreduce.ResultCursor;
+
+public class PersistentShufflerTest {
+
+	private FilePersistence pers;
+
+	@Before
+	public void initPersistence() {
+		this.pers = new FilePersistence(System.getProperty("java.io.tmpdir"));
+		this.pers.initDirectories();
+	}
+
+	@After
+	public void cleanup() {
+		this.pers.suicide();
+	}
+
+	@Test
+	public void shouldStoreResultsByPartition() {
+		PersistentShuffler shuffler = new PersistentShuffler(this.pers, new HashPartitioner(), 3);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2")));
+		HashPartitioner partitioner = new HashPartitioner();
+		List<KeyValuePair> partition = this.pers.getMapResults(partitioner.partition("a", 3));
+		assertTrue(partition.contains(new KeyValuePair("a", "1")));
+		assertTrue(partition.contains(new KeyValuePair("a", "2")));
+	}
+
+	@Test
+	public void shouldStoreResultsPartitionedInContextWithoutLookingAtKeys() {
+		PersistentShuffler shuffler = new PersistentShuffler(this.pers, new Partitioner() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public int partition(String key, int partitions) {
+				throw new AssertionError("Results were partitioned in the Context already");
+			}
+		}, 3);
+		assertEquals(3, shuffler.getMapPartitioning().getPartitions());
+		PartitionedMapResult results = new PartitionedMapResult(3);
+		results.add(2, new KeyValuePair("a", "1"));
+		results.add(2, new KeyValuePair("b", "1"));
+		shuffler.put(results);
+		assertEquals(results, this.pers.getMapResults(2));
+		assertTrue(this.pers.getMapResults(0).isEmpty());
+	}
+
+	@Test
+	public void shouldReadPartitionOnlyWhenKeysAreUsed() {
+		final int[] reads = new int[1];
+		FilePersistence counting = new FilePersistence(System.getProperty("java.io.tmpdir")) {
+			@Override
+			public ResultCursor openMapResults(int partition) {
+				reads[0]++;
+				return super.openMapResults(partition);
+			}
+		};
+		counting.initDirectories();
+		try {
+			PersistentShuffler shuffler = new PersistentShuffler(counting, new HashPartitioner(), 1);
+			shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+			shuffler.finish();
+			Map<String, List<KeyValuePair>> partition = shuffler.partitions().next();
+			assertFalse(partition.isEmpty());
+			assertEquals(0, reads[0]);
+			assertEquals(Arrays.asList(new KeyValuePair("a", "1")), partition.get("a"));
+			assertEquals(1, reads[0]);
+		} finally {
+			counting.suicide();
+		}
+	}
+
+	@Test
+	public void shouldReadOnlyPartitionOfHotKey() {
+		final int[] reads = new int[3];
+		FilePersistence counting = new FilePersistence(System.getProperty("java.io.tmpdir")) {
+			@Override
+			public ResultCursor openMapResults(int partition) {
+				reads[partition]++;
+				return super.openMapResults(partition);
+			}
+		};
+		counting.initDirectories();
+		try {
+			PersistentShuffler shuffler = new PersistentShuffler(counting, new Partitioner() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public int partition(String key, int partitions) {
+					return "hot".equals(key) ? 0 : 1;
+				}
+			}, 3, ShuffleCombiner.none(), new KeyCounter(2));
+			shuffler.put(Arrays.asList(new KeyValuePair("hot", "1"), new KeyValuePair("cold", "1")));
+			shuffler.put(Arrays.asList(new KeyValuePair("hot", "2"), new KeyValuePair("hot", "3")));
+			shuffler.finish();
+			Map<String, List<KeyValuePair>> hot = shuffler.takeHotKeys();
+			assertEquals(3, hot.get("hot").size());
+			assertEquals(1, hot.size());
+			assertEquals(1, reads[0]);
+			assertEquals(0, reads[1]);
+
+			Map<String, List<KeyValuePair>> rest = toMap(shuffler.entries());
+			assertEquals(1, rest.size());
+			assertTrue(rest.containsKey("cold"));
+		} finally {
+			counting.suicide();
+		}
+	}
+
+	@Test
+	public void shouldGroupEachPartitionWhenRead() {
+		PersistentShuffler shuffler = new PersistentShuffler(this.pers, new HashPartitioner(), 3);
+		for (int i = 0; i < 100; i++) {
+			shuffler.put(Arrays.asList(new KeyValuePair("key" + (i % 50), Integer.toString(i))));
+		}
+		shuffler.finish();
+
+		HashPartitioner partitioner = new HashPartitioner();
+		int partitions = 0;
+		for (Iterator<Map<String, List<KeyValuePair>>> it = shuffler.partitions(); it.hasNext();) {
+			Map<String, List<KeyValuePair>> partition = it.next();
+			partitions++;
+			int expected = partitioner.partition(partition.keySet().iterator().next(), 3);
+			for (Map.Entry<String, List<KeyValuePair>> entry : partition.entrySet()) {
+				assertEquals(expected, partitioner.partition(entry.getKey(), 3));
+				assertEquals(2, entry.getValue().size());
+			}
+		}
+		assertEquals(3, partitions);
+		assertEquals(50, toMap(shuffler.entries()).size());
+	}
+
+	@Test
+	public void shouldSkipPartitionsWithoutResults() {
+		PersistentShuffler shuffler = new PersistentShuffler(this.pers, new HashPartitioner(), 100);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+		shuffler.finish();
+		Iterator<Map<String, List<KeyValuePair>>> partitions = shuffler.partitions();
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1")), partitions.next().get("a"));
+		assertFalse(partitions.hasNext());
+	}
+
+	@Test
+	public void shouldRemovePartiallyStoredResultsIfTaskIsRetried() {
+		FilePersistence failing = new FilePersistence(System.getProperty("java.io.tmpdir")) {
+			private int stores;
+
+			@Override
+			public boolean storeMapResults(String sliceId, int partition, List<KeyValuePair> mapResults) {
+				// die zweite partition des ersten versuchs kann nicht gespeichert werden
+				if (++this.stores == 2) {
+					return false;
+				}
+				return super.storeMapResults(sliceId, partition, mapResults);
+			}
+		};
+		failing.initDirectories();
+		try {
+			PersistentShuffler shuffler = new PersistentShuffler(failing, new HashPartitioner(), 100);
+			List<KeyValuePair> results = Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1"));
+			try {
+				shuffler.put(results);
+				fail("Expected IllegalStateException");
+			} catch (IllegalStateException e) {
+				// der map task schlaegt fehl und wird wiederholt
+			}
+			shuffler.put(results);
+			shuffler.finish();
+			Map<String, List<KeyValuePair>> entries = toMap(shuffler.entries());
+			assertEquals(Arrays.asList(new KeyValuePair("a", "1")), entries.get("a"));
+			assertEquals(Arrays.asList(new KeyValuePair("b", "1")), entries.get("b"));
+		} finally {
+			failing.suicide();
+		}
+	}
+
+	@Test
+	public void shouldRemoveResultsWrittenBehindIfSyncFails() throws InterruptedException {
+		FilePersistence failing = new FilePersistence(System.getProperty("java.io.tmpdir")) {
+			private boolean synced;
+
+			@Override
+			public boolean sync() {
+				// das erste sync schlaegt fehl
+				boolean success = this.synced;
+				this.synced = true;
+				return success && super.sync();
+			}
+		};
+		failing.initDirectories();
+		try {
+			PersistentShuffler shuffler = new PersistentShuffler(failing, new HashPartitioner(), 100);
+			WriteBehind writeBehind = new WriteBehind(10, 10, Executors.defaultThreadFactory());
+			List<KeyValuePair> results = Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1"));
+			assertFalse(deliver(shuffler, results, writeBehind));
+			// der map task wird wiederholt
+			assertTrue(deliver(shuffler, results, writeBehind));
+			shuffler.finish();
+			Map<String, List<KeyValuePair>> entries = toMap(shuffler.entries());
+			assertEquals(Arrays.asList(new KeyValuePair("a", "1")), entries.get("a"));
+			assertEquals(Arrays.asList(new KeyValuePair("b", "1")), entries.get("b"));
+		} finally {
+			failing.suicide();
+		}
+	}
+
+	private static boolean deliver(PersistentShuffler shuffler, List<KeyValuePair> results, WriteBehind writeBehind)
+			throws InterruptedException {
+		final BlockingQueue<Boolean> delivered = new LinkedBlockingQueue<Boolean>();
+		shuffler.put(results, writeBehind, new WriteBehind.Callback() {
+			@Override
+			public void written(boolean durable) {
+				delivered.add(durable);
+			}
+		});
+		Boolean durable = delivered.poll(5, TimeUnit.SECONDS);
+		assertNotNull(durable);
+		return durable;
+	}
+}
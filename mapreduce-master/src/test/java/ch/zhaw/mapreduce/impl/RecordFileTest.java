@@ -0,0 +1,192 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+public class RecordFileTest {
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		this.file = File.createTempFile("records", ".bin");
+		this.file.delete();
+	}
+
+	@After
+	public void deleteFile() {
+		this.file.delete();
+	}
+
+	@Test
+	public void shouldReadWhatWasWritten() throws IOException {
+		List<KeyValuePair> pairs = Arrays.asList(new KeyValuePair("key", "value"), new KeyValuePair("äöü", ""),
+				new KeyValuePair("", "€"));
+		RecordFile.write(this.file, pairs, BlockCodec.NONE);
+		List<KeyValuePair> read = new ArrayList<KeyValuePair>();
+		RecordFile.readAll(this.file, read);
+		assertEquals(pairs, read);
+	}
+
+	@Test
+	public void shouldReadEmptyFile() throws IOException {
+		RecordFile.write(this.file, Collections.<KeyValuePair> emptyList(), BlockCodec.NONE);
+		RecordFile.Reader reader = new RecordFile.Reader(this.file);
+		assertNull(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void shouldSpanSeveralBlocks() throws IOException {
+		List<KeyValuePair> pairs = new ArrayList<KeyValuePair>();
+		for (int i = 0; i < 20000; i++) {
+			pairs.add(new KeyValuePair("key" + i, "value" + i));
+		}
+		RecordFile.write(this.file, pairs, BlockCodec.NONE);
+		List<KeyValuePair> read = new ArrayList<KeyValuePair>();
+		RecordFile.readAll(this.file, read);
+		assertEquals(pairs, read);
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldDetectCorruptedBlock() throws IOException {
+		RecordFile.write(this.file, Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.NONE);
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		// das erste byte des keys nach kennung, codec, anzahl, laengen und laenge des keys
+		raf.seek(21);
+		raf.write('X');
+		raf.close();
+		RecordFile.readAll(this.file, new ArrayList<KeyValuePair>());
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldDetectTruncatedFile() throws IOException {
+		RecordFile.write(this.file, Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.NONE);
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		raf.setLength(raf.length() - 4);
+		raf.close();
+		RecordFile.readAll(this.file, new ArrayList<KeyValuePair>());
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectHugeLengthInBlockHeader() throws IOException {
+		RecordFile.write(this.file, Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.NONE);
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		// die laenge der komprimierten records nach kennung, codec, anzahl und laenge der records
+		raf.seek(13);
+		raf.writeInt(Integer.MAX_VALUE - 8);
+		raf.close();
+		new RecordFile.Reader(this.file).next();
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectRawLengthBeyondCompressionRatio() throws IOException {
+		RecordFile.write(this.file, Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.DEFLATE);
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		raf.seek(9);
+		raf.writeInt(Integer.MAX_VALUE);
+		raf.close();
+		new RecordFile.Reader(this.file).next();
+	}
+
+	@Test
+	public void shouldReportWrongCountInFileAsIOException() throws IOException {
+		RecordFile.write(this.file, Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.NONE);
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		// die anzahl ist nicht in der pruefsumme
+		raf.seek(5);
+		raf.writeInt(2);
+		raf.close();
+		RecordFile.Reader reader = new RecordFile.Reader(this.file);
+		try {
+			reader.next();
+			fail("Expected IOException");
+		} catch (IOException e) {
+			// der ganze block wird beim lesen geprueft, nicht erst beim zweiten record
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectOtherFiles() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		raf.writeInt(42);
+		raf.close();
+		new RecordFile.Reader(this.file);
+	}
+
+	@Test
+	public void shouldDecodeEncodedBlock() throws IOException {
+		List<KeyValuePair> pairs = Arrays.asList(new KeyValuePair("key", "value"), new KeyValuePair("ä", "b"));
+		List<KeyValuePair> read = new ArrayList<KeyValuePair>();
+		RecordFile.decodeBlock(RecordFile.encodeBlock(pairs, BlockCodec.NONE), read);
+		assertEquals(pairs, read);
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldDetectCorruptedCountOfBlock() throws IOException {
+		byte[] block = RecordFile.encodeBlock(Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.NONE);
+		block[4] = 2;
+		RecordFile.decodeBlock(block, new ArrayList<KeyValuePair>());
+	}
+
+	@Test
+	public void shouldReadCompressedFileWithCodecFromHeader() throws IOException {
+		List<KeyValuePair> pairs = new ArrayList<KeyValuePair>();
+		for (int i = 0; i < 20000; i++) {
+			pairs.add(new KeyValuePair("key" + (i % 100), "1"));
+		}
+		for (BlockCodec codec : BlockCodec.values()) {
+			RecordFile.write(this.file, pairs, codec);
+			List<KeyValuePair> read = new ArrayList<KeyValuePair>();
+			RecordFile.readAll(this.file, read);
+			assertEquals(codec.name(), pairs, read);
+			this.file.delete();
+		}
+	}
+
+	@Test
+	public void shouldDecodeCompressedBlocks() throws IOException {
+		List<KeyValuePair> pairs = Arrays.asList(new KeyValuePair("key", "value"), new KeyValuePair("key", "value"));
+		for (BlockCodec codec : BlockCodec.values()) {
+			List<KeyValuePair> read = new ArrayList<KeyValuePair>();
+			RecordFile.decodeBlock(RecordFile.encodeBlock(pairs, codec), read);
+			assertEquals(codec.name(), pairs, read);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldDetectCorruptedCompressedBlock() throws IOException {
+		byte[] block = RecordFile.encodeBlock(Arrays.asList(new KeyValuePair("key", "value")), BlockCodec.DEFLATE);
+		// ein byte der komprimierten records, die pruefsumme muss das merken bevor dekomprimiert wird
+		block[14] ^= 1;
+		RecordFile.decodeBlock(block, new ArrayList<KeyValuePair>());
+	}
+
+	@Test
+	public void shouldNotLeaveFileIfWritingFails() {
+		try {
+			RecordFile.write(this.file, Arrays.asList(new KeyValuePair("key", "value"), null), BlockCodec.NONE);
+		} catch (Exception e) {
+			// erwartet
+		}
+		assertFalse(this.file.exists());
+	}
+}
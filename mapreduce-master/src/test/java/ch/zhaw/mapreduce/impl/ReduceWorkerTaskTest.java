@@ -7,8 +7,11 @@ import static org.junit.Assert.fail;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -18,10 +21,12 @@ import java.util.concurrent.TimeoutException;
 import javax.inject.Provider;
 
 import org.jmock.Expectations;
+import org.jmock.api.Invocation;
 import org.jmock.Sequence;
 import org.jmock.auto.Auto;
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.concurrent.Synchroniser;
 import org.junit.Rule;
 import org.junit.Test;
@@ -69,34 +74,120 @@ public class ReduceWorkerTaskTest {
 
 	private final List<KeyValuePair> keyVals = Arrays.asList(new KeyValuePair[]{new KeyValuePair("key1", "val1"), new KeyValuePair("key2", "val2")});
 
+	private final Map<String, List<KeyValuePair>> inputs = Collections.singletonMap(key, keyVals);
+
+	private final String jobId = "jobId";
+
 	@Test
 	public void shouldSetReduceInstruction() {
-		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		assertSame(reduceInstr, task.getReduceInstruction());
 	}
 
 	@Test
 	public void shouldRunReduceInstruction() {
-		final PoolImpl pool = new PoolImpl(Executors.newSingleThreadExecutor());
+		final PoolImpl pool = new PoolImpl();
 		pool.init();
-		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		this.mockery.checking(new Expectations() {
 			{
+				oneOf(ctx).startReduce(key);
 				oneOf(reduceInstr).reduce(with(ctx), with(key), with(aNonNull(Iterator.class)));
 			}
 		});
 		task.runTask(ctx);
 	}
 
+	@Test
+	public void shouldReduceAllKeysOfPartition() {
+		Map<String, List<KeyValuePair>> partition = new LinkedHashMap<String, List<KeyValuePair>>();
+		partition.put("k1", keyVals);
+		partition.put("k2", keyVals);
+		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 3, partition);
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(ctx).startReduce("k1");
+				inSequence(events);
+				oneOf(reduceInstr).reduce(with(ctx), with("k1"), with(aNonNull(Iterator.class)));
+				inSequence(events);
+				oneOf(ctx).startReduce("k2");
+				inSequence(events);
+				oneOf(reduceInstr).reduce(with(ctx), with("k2"), with(aNonNull(Iterator.class)));
+				inSequence(events);
+			}
+		});
+		task.runTask(ctx);
+		assertEquals(3, task.getPartition());
+	}
+
+	@Test
+	public void shouldStoreResultsOfAllKeys() {
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("k1", "r1"), new KeyValuePair("k2", "r2"));
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers).storeReduceResults(taskUUID, result);
+				will(returnValue(true));
+			}
+		});
+		task.successful(result);
+		assertEquals(State.COMPLETED, task.getCurrentState());
+	}
+
+	@Test
+	public void shouldFailIfResultsCannotBeStored() {
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("k1", "r1"));
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers).storeReduceResults(taskUUID, result);
+				will(returnValue(false));
+				oneOf(pers).destroyReduce(taskUUID);
+			}
+		});
+		task.successful(result);
+		assertEquals(State.FAILED, task.getCurrentState());
+	}
+
+	@Test
+	public void shouldCompleteOnlyAfterResultsAreDurable() throws Exception {
+		final CountDownLatch synced = new CountDownLatch(1);
+		WriteBehind writeBehind = new WriteBehind(10, 10, Executors.defaultThreadFactory());
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs, writeBehind);
+		task.started();
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("k1", "r1"));
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers).storeReduceResults(taskUUID, result);
+				will(returnValue(true));
+				oneOf(pers).sync();
+				will(new CustomAction("await sync") {
+					@Override
+					public Object invoke(Invocation invocation) throws Throwable {
+						synced.await();
+						return true;
+					}
+				});
+			}
+		});
+		task.successful(result);
+		assertEquals(State.INPROGRESS, task.getCurrentState());
+		synced.countDown();
+		for (int i = 0; i < 100 && task.getCurrentState() != State.COMPLETED; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(State.COMPLETED, task.getCurrentState());
+	}
+
 	@Test
 	public void shouldSetInputUUID() {
-		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		assertEquals(taskUUID, task.getTaskUuid());
 	}
 
 	@Test
 	public void shouldSetStateToInitiatedInitially() {
-		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		assertEquals(State.INITIATED, task.getCurrentState());
 	}
 
@@ -104,11 +195,11 @@ public class ReduceWorkerTaskTest {
 	public void shouldBeInProgressWhileRunning() throws InterruptedException, BrokenBarrierException {
 		final CyclicBarrier barrier = new CyclicBarrier(2);
 		ExecutorService taskExec = Executors.newSingleThreadExecutor();
-		final PoolImpl pool = new PoolImpl(Executors.newSingleThreadExecutor());
+		final PoolImpl pool = new PoolImpl();
 		pool.init();
 		ThreadWorker worker = new ThreadWorker(pool, taskExec, ctxProvider);
 		pool.donateWorker(worker);
-		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID,  pers, new ReduceInstruction() {
+		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId,  pers, new ReduceInstruction() {
 			@Override
 			public void reduce(ReduceEmitter emitter, String key, Iterator<KeyValuePair> values) {
 				try {
@@ -118,11 +209,15 @@ public class ReduceWorkerTaskTest {
 				}
 			}
 
-		}, key, keyVals);
+		}, 0, inputs);
 		this.mockery.checking(new Expectations() {
 			{
 				oneOf(ctxProvider).get();
 				will(returnValue(ctx));
+				oneOf(ctx).startReduce(key);
+				// nach der barriere laeuft der worker weiter und holt die resultate ab
+				allowing(ctx).getReduceResult();
+				will(returnValue(null));
 			}
 		});
 		pool.enqueueTask(task);
@@ -138,9 +233,9 @@ public class ReduceWorkerTaskTest {
 
 	@Test
 	public void shouldBeEnqueuedAfterSubmissionToPool() throws Exception {
-		final PoolImpl pool = new PoolImpl(Executors.newSingleThreadExecutor());
+		final PoolImpl pool = new PoolImpl();
 		pool.init();
-		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		final ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		this.mockery.checking(new Expectations() {
 			{
 				never(reduceInstr);
@@ -152,14 +247,14 @@ public class ReduceWorkerTaskTest {
 	
 	@Test
 	public void shouldAlsoTransitionToCompleteIfResultIsEmpty() throws Exception {
-		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		task.successful(Collections.emptyList());
 		assertEquals(State.COMPLETED, task.getCurrentState());
 	}
 
 	@Test
 	public void shouldAlsoTransitionToCompleteIfResultIsNull() throws Exception {
-		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, pers, reduceInstr, key, keyVals);
+		ReduceWorkerTask task = new ReduceWorkerTask(taskUUID, jobId, pers, reduceInstr, 0, inputs);
 		task.successful(null);
 		assertEquals(State.COMPLETED, task.getCurrentState());
 	}
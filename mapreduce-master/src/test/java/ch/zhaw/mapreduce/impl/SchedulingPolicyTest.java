@@ -0,0 +1,159 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.SchedulingPolicy;
+import ch.zhaw.mapreduce.WorkerTask;
+
+public class SchedulingPolicyTest {
+
+	@Test
+	public void fifoShouldKeepOrder() {
+		SchedulingPolicy p = new FifoSchedulingPolicy();
+		WorkerTask t1 = task("job", 1, false);
+		WorkerTask t2 = task("job", 5, true);
+		p.add(t1);
+		p.add(t2);
+		assertEquals(2, p.size());
+		assertSame(t1, p.next());
+		assertSame(t2, p.next());
+		assertNull(p.next());
+		assertEquals(0, p.size());
+	}
+
+	@Test
+	public void retriesShouldComeFirst() {
+		SchedulingPolicy p = new RetriesFirstSchedulingPolicy();
+		WorkerTask t1 = task("job", 1, false);
+		WorkerTask t2 = task("job", 1, false);
+		WorkerTask retry = task("job", 1, true);
+		p.add(t1);
+		p.add(t2);
+		p.add(retry);
+		assertSame(retry, p.next());
+		assertSame(t1, p.next());
+		assertSame(t2, p.next());
+		assertNull(p.next());
+	}
+
+	@Test
+	public void priorityShouldPreferHigherPriority() {
+		SchedulingPolicy p = new PrioritySchedulingPolicy();
+		WorkerTask low1 = task("low", 1, false);
+		WorkerTask low2 = task("low", 1, false);
+		WorkerTask lowRetry = task("low", 1, true);
+		WorkerTask high = task("high", 3, false);
+		p.add(low1);
+		p.add(low2);
+		p.add(lowRetry);
+		p.add(high);
+		assertSame(high, p.next());
+		assertSame(lowRetry, p.next());
+		assertSame(low1, p.next());
+		assertSame(low2, p.next());
+		assertNull(p.next());
+	}
+
+	@Test
+	public void fairShareShouldAlternateBetweenEqualJobs() {
+		SchedulingPolicy p = new FairShareSchedulingPolicy();
+		WorkerTask a1 = task("a", 1, false);
+		WorkerTask a2 = task("a", 1, false);
+		WorkerTask b1 = task("b", 1, false);
+		WorkerTask b2 = task("b", 1, false);
+		p.add(a1);
+		p.add(a2);
+		p.add(b1);
+		p.add(b2);
+		assertEquals(4, p.size());
+		assertSame(a1, p.next());
+		assertSame(b1, p.next());
+		assertSame(a2, p.next());
+		assertSame(b2, p.next());
+		assertNull(p.next());
+		assertEquals(0, p.size());
+	}
+
+	@Test
+	public void fairShareShouldWeightByPriority() {
+		SchedulingPolicy p = new FairShareSchedulingPolicy();
+		for (int i = 0; i < 100; i++) {
+			p.add(task("low", 1, false));
+			p.add(task("high", 3, false));
+		}
+		Map<String, Integer> dispatched = new HashMap<String, Integer>();
+		for (int i = 0; i < 40; i++) {
+			String jobId = p.next().getJobId();
+			Integer n = dispatched.get(jobId);
+			dispatched.put(jobId, n == null ? 1 : n + 1);
+		}
+		assertEquals(Integer.valueOf(10), dispatched.get("low"));
+		assertEquals(Integer.valueOf(30), dispatched.get("high"));
+	}
+
+	@Test
+	public void fairShareShouldNotLetNewJobCatchUp() {
+		SchedulingPolicy p = new FairShareSchedulingPolicy();
+		for (int i = 0; i < 10; i++) {
+			p.add(task("old", 1, false));
+		}
+		for (int i = 0; i < 5; i++) {
+			assertEquals("old", p.next().getJobId());
+		}
+		for (int i = 0; i < 5; i++) {
+			p.add(task("new", 1, false));
+		}
+		// der neue job bekommt nicht die fuenf tasks, die er verpasst hat, am stueck
+		for (int i = 0; i < 4; i++) {
+			String first = p.next().getJobId();
+			String second = p.next().getJobId();
+			assertFalse(first.equals(second));
+		}
+	}
+
+	@Test
+	public void fairShareShouldPreferRetriesWithinJob() {
+		SchedulingPolicy p = new FairShareSchedulingPolicy();
+		WorkerTask t1 = task("job", 1, false);
+		WorkerTask retry = task("job", 1, true);
+		p.add(t1);
+		p.add(retry);
+		assertSame(retry, p.next());
+		assertSame(t1, p.next());
+	}
+
+	@Test
+	public void shouldRemoveEnqueuedTask() {
+		for (SchedulingPolicy p : Arrays.asList(new FifoSchedulingPolicy(), new RetriesFirstSchedulingPolicy(),
+				new PrioritySchedulingPolicy(), new FairShareSchedulingPolicy())) {
+			WorkerTask t1 = task("a", 1, false);
+			WorkerTask t2 = task("b", 2, true);
+			p.add(t1);
+			p.add(t2);
+			assertTrue(p.remove(t2));
+			assertFalse(p.remove(t2));
+			assertEquals(1, p.size());
+			assertSame(t1, p.next());
+			assertNull(p.next());
+		}
+	}
+
+	private static WorkerTask task(String jobId, int priority, boolean retry) {
+		MapWorkerTask task = new MapWorkerTask("uuid", jobId, null, null, null, null, Arrays.asList("in"));
+		task.setPriority(priority);
+		if (retry) {
+			task.markRetry();
+		}
+		return task;
+	}
+}
@@ -0,0 +1,164 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.ResultCursor;
+
+public class SegmentPersistenceTest {
+
+	private final File baseDir = new File(System.getProperty("java.io.tmpdir"), "segpers-" + UUID.randomUUID());
+
+	private SegmentPersistence pers;
+
+	@Before
+	public void init() {
+		this.pers = new SegmentPersistence(this.baseDir.getAbsolutePath());
+		this.pers.initSegments();
+	}
+
+	@After
+	public void cleanup() {
+		this.pers.suicide();
+		this.baseDir.delete();
+	}
+
+	@Test
+	public void shouldReadStoredMapResults() {
+		assertTrue(this.pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertTrue(this.pers.storeMapResults("task2", 0, Arrays.asList(new KeyValuePair("key2", "val2"))));
+		List<KeyValuePair> results = this.pers.getMapResults(0);
+		assertEquals(2, results.size());
+		assertTrue(results.contains(new KeyValuePair("key1", "val1")));
+		assertTrue(results.contains(new KeyValuePair("key2", "val2")));
+	}
+
+	@Test
+	public void shouldReadOnlyRequestedPartition() {
+		assertTrue(this.pers.storeMapResults("slice1", 0, Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(this.pers.storeMapResults("slice1", 1, Arrays.asList(new KeyValuePair("b", "1"))));
+		assertTrue(this.pers.storeMapResults("slice2", 0, Arrays.asList(new KeyValuePair("a", "2"))));
+		assertEquals(2, this.pers.getMapResults(0).size());
+		assertEquals(Arrays.asList(new KeyValuePair("b", "1")), this.pers.getMapResults(1));
+		assertTrue(this.pers.getMapResults(2).isEmpty());
+	}
+
+	@Test
+	public void shouldReadMapResultsOfAllPartitions() {
+		assertTrue(this.pers.storeMapResults("slice1", 1, Arrays.asList(new KeyValuePair("b", "1"))));
+		assertTrue(this.pers.storeMapResults("task2", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1")), this.pers.getMapResults(0));
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")), this.pers.getMapResults());
+	}
+
+	@Test
+	public void shouldReturnReduceResultsSortedAndAppended() {
+		assertTrue(this.pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("b", "1"),
+				new KeyValuePair("a", "1"))));
+		assertTrue(this.pers.storeReduceResults("task2", Arrays.asList(new KeyValuePair("a", "2"))));
+		Map<String, List<String>> results = this.pers.getReduceResults();
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(results.keySet()));
+		assertEquals(2, results.get("a").size());
+		assertTrue(results.get("a").contains("1"));
+		assertTrue(results.get("a").contains("2"));
+	}
+
+	@Test
+	public void shouldNotStoreSameTaskTwice() {
+		assertTrue(this.pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertFalse(this.pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("a", "2"))));
+		assertEquals(Arrays.asList("1"), this.pers.getReduceResults().get("a"));
+	}
+
+	@Test
+	public void shouldNotReturnDestroyedResults() {
+		assertTrue(this.pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertTrue(this.pers.storeMapResults("task1", 1, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertTrue(this.pers.storeReduceResults("task2", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(this.pers.destroyMap("task1"));
+		assertTrue(this.pers.destroyReduce("task2"));
+		assertTrue(this.pers.getMapResults(0).isEmpty());
+		assertTrue(this.pers.getMapResults(1).isEmpty());
+		assertTrue(this.pers.getReduceResults().isEmpty());
+		// ein neuer versuch darf wieder schreiben
+		assertTrue(this.pers.storeReduceResults("task2", Arrays.asList(new KeyValuePair("a", "2"))));
+	}
+
+	@Test
+	public void shouldAcceptConcurrentWriters() throws Exception {
+		ExecutorService exec = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 200; i++) {
+			final String task = "task" + i;
+			exec.execute(new Runnable() {
+				@Override
+				public void run() {
+					assertTrue(pers.storeReduceResults(task, Arrays.asList(new KeyValuePair(task, task))));
+				}
+			});
+		}
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(10, TimeUnit.SECONDS));
+		Map<String, List<String>> results = this.pers.getReduceResults();
+		assertEquals(200, results.size());
+		assertEquals(Arrays.asList("task7"), results.get("task7"));
+	}
+
+	@Test
+	public void shouldStreamResultsBlockByBlock() {
+		assertTrue(this.pers.storeMapResults("slice1", 2, Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(this.pers.storeMapResults("slice2", 2, Arrays.asList(new KeyValuePair("b", "2"))));
+		assertTrue(this.pers.destroyMap("slice1"));
+		ResultCursor cursor = this.pers.openMapResults(2);
+		assertTrue(cursor.hasNext());
+		assertEquals(new KeyValuePair("b", "2"), cursor.next());
+		assertFalse(cursor.hasNext());
+		cursor.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldFailOnCorruptBlock() throws IOException {
+		assertTrue(this.pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		RandomAccessFile raf = new RandomAccessFile(new File(this.baseDir.listFiles()[0], "part"), "rw");
+		try {
+			// letztes byte der daten, damit die pruefsumme nicht mehr stimmt
+			raf.seek(raf.length() - 1);
+			int last = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(last ^ 0xff);
+		} finally {
+			raf.close();
+		}
+		this.pers.getMapResults(0);
+	}
+
+	@Test
+	public void shouldSyncAllSegments() {
+		assertTrue(this.pers.storeReduceResults("task1", Arrays.asList(new KeyValuePair("a", "1"))));
+		assertTrue(this.pers.sync());
+	}
+
+	@Test
+	public void shouldDeleteAllSegments() {
+		assertTrue(this.pers.storeMapResults("task1", 0, Arrays.asList(new KeyValuePair("key1", "val1"))));
+		assertTrue(this.pers.suicide());
+		assertEquals(0, this.baseDir.list().length);
+	}
+}
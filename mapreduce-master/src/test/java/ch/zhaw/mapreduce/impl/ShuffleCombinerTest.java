@@ -0,0 +1,119 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.CombinerInstruction;
+import ch.zhaw.mapreduce.KeyValuePair;
+
+public class ShuffleCombinerTest {
+
+	/** Summiert die Werte eines Keys */
+	static final CombinerInstruction SUM = new CombinerInstruction() {
+		@Override
+		public List<KeyValuePair> combine(Iterator<KeyValuePair> toCombine) {
+			KeyValuePair first = toCombine.next();
+			int sum = Integer.parseInt(first.getValue());
+			while (toCombine.hasNext()) {
+				sum += Integer.parseInt(toCombine.next().getValue());
+			}
+			return Arrays.asList(new KeyValuePair(first.getKey(), Integer.toString(sum)));
+		}
+	};
+
+	/** Schlägt immer fehl */
+	static final CombinerInstruction FAILING = new CombinerInstruction() {
+		@Override
+		public List<KeyValuePair> combine(Iterator<KeyValuePair> toCombine) {
+			throw new IllegalArgumentException("kaputt");
+		}
+	};
+
+	@Test
+	public void shouldBeDueAtThresholdAndEachDoubling() {
+		ShuffleCombiner combiner = new ShuffleCombiner(SUM, 3);
+		assertFalse(combiner.isDue(1));
+		assertTrue(combiner.isDue(3));
+		assertTrue(combiner.isDue(6));
+		assertFalse(combiner.isDue(9));
+		assertTrue(combiner.isDue(12));
+		assertFalse(combiner.isDue(13));
+	}
+
+	@Test
+	public void shouldNeverBeDueWithoutCombiner() {
+		assertFalse(ShuffleCombiner.none().isDue(1000));
+		assertFalse(new ShuffleCombiner(null, 1).isDue(1));
+		assertFalse(new ShuffleCombiner(SUM, 0).isDue(1));
+	}
+
+	@Test
+	public void shouldReplaceValuesWithCombined() {
+		GroupedValues values = values("a", "1", "2", "3");
+		new ShuffleCombiner(SUM, 2).combine(values);
+		assertEquals(Arrays.asList(new KeyValuePair("a", "6")), values);
+	}
+
+	@Test
+	public void shouldOnlyCombineLargeLists() {
+		ShuffleCombiner combiner = new ShuffleCombiner(SUM, 3);
+		GroupedValues small = values("a", "1", "2");
+		combiner.combineIfLarge(small);
+		assertEquals(2, small.size());
+		GroupedValues large = values("a", "1", "2", "3", "4");
+		combiner.combineIfLarge(large);
+		assertEquals(Arrays.asList(new KeyValuePair("a", "10")), large);
+	}
+
+	@Test
+	public void shouldKeepValuesIfCombinerChangesKey() {
+		GroupedValues values = values("a", "1", "2");
+		ShuffleCombiner combiner = new ShuffleCombiner(new CombinerInstruction() {
+			@Override
+			public List<KeyValuePair> combine(Iterator<KeyValuePair> toCombine) {
+				return Arrays.asList(new KeyValuePair("b", "1"));
+			}
+		}, 2);
+		try {
+			combiner.combine(values);
+			fail();
+		} catch (IllegalStateException e) {
+			// erwartet
+		}
+		assertEquals(2, values.size());
+	}
+
+	@Test
+	public void shouldKeepValuesAndStopTryingIfCombinerFails() {
+		ShuffleCombiner combiner = new ShuffleCombiner(FAILING, 2);
+		GroupedValues values = values("a", "1", "2");
+		assertFalse(combiner.tryCombine(values));
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2")), values);
+		assertFalse(combiner.tryCombine(values));
+	}
+
+	@Test
+	public void shouldBeDueIfSizePassedDueSizeWhileGrowing() {
+		ShuffleCombiner combiner = new ShuffleCombiner(SUM, 3);
+		assertTrue(combiner.isDue(1, 4));
+		assertTrue(combiner.isDue(5, 7));
+		assertFalse(combiner.isDue(3, 5));
+		assertFalse(combiner.isDue(3, 3));
+	}
+
+	static GroupedValues values(String key, String... vals) {
+		GroupedValues values = new GroupedValues(key);
+		for (String val : vals) {
+			values.addValue(val);
+		}
+		return values;
+	}
+}
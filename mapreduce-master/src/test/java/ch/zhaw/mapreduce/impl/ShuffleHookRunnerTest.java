@@ -0,0 +1,148 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.ShuffleProcessorFactory;
+
+public class ShuffleHookRunnerTest {
+
+	private final ExecutorService exec = Executors.newFixedThreadPool(4);
+
+	private final Map<String, List<KeyValuePair>> partition = Collections.singletonMap("key",
+			Collections.singletonList(new KeyValuePair("key", "value")));
+
+	@After
+	public void shutdown() {
+		this.exec.shutdownNow();
+	}
+
+	@Test
+	public void shouldRunHookForEveryPartition() throws Exception {
+		final AtomicInteger keys = new AtomicInteger();
+		ShuffleHookRunner runner = new ShuffleHookRunner(new ShuffleProcessorFactory() {
+			@Override
+			public Runnable getNewRunnable(final Iterator<Entry<String, List<KeyValuePair>>> results) {
+				return new Runnable() {
+					@Override
+					public void run() {
+						while (results.hasNext()) {
+							results.next();
+							keys.incrementAndGet();
+						}
+					}
+				};
+			}
+		}, this.exec, 2);
+		for (int i = 0; i < 10; i++) {
+			runner.submit(this.partition);
+		}
+		runner.awaitAll();
+		assertEquals(10, keys.get());
+	}
+
+	@Test
+	public void shouldWaitForRunningHooks() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final ShuffleHookRunner runner = new ShuffleHookRunner(blockingHook(release), this.exec, 2);
+		runner.submit(this.partition);
+		final CountDownLatch done = new CountDownLatch(1);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runner.awaitAll();
+					done.countDown();
+				} catch (InterruptedException e) {
+					// test fehlgeschlagen
+				}
+			}
+		}).start();
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shouldNotQueueMoreThanMaxPendingPartitions() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final ShuffleHookRunner runner = new ShuffleHookRunner(blockingHook(release), this.exec, 2);
+		final AtomicInteger submitted = new AtomicInteger();
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 3; i++) {
+						runner.submit(partition);
+						submitted.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					// test fehlgeschlagen
+				}
+			}
+		});
+		t.start();
+		t.join(200);
+		assertEquals(2, submitted.get());
+		release.countDown();
+		t.join(1000);
+		assertEquals(3, submitted.get());
+	}
+
+	@Test
+	public void shouldFailIfHookFails() throws Exception {
+		ShuffleHookRunner runner = new ShuffleHookRunner(new ShuffleProcessorFactory() {
+			@Override
+			public Runnable getNewRunnable(Iterator<Entry<String, List<KeyValuePair>>> results) {
+				return new Runnable() {
+					@Override
+					public void run() {
+						throw new IllegalArgumentException("export failed");
+					}
+				};
+			}
+		}, this.exec, 2);
+		runner.submit(this.partition);
+		try {
+			runner.awaitAll();
+			fail("failure expected");
+		} catch (IllegalStateException e) {
+			assertEquals("export failed", e.getCause().getMessage());
+		}
+	}
+
+	private ShuffleProcessorFactory blockingHook(final CountDownLatch release) {
+		return new ShuffleProcessorFactory() {
+			@Override
+			public Runnable getNewRunnable(Iterator<Entry<String, List<KeyValuePair>>> results) {
+				return new Runnable() {
+					@Override
+					public void run() {
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				};
+			}
+		};
+	}
+}
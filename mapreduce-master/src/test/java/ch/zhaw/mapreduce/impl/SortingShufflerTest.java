@@ -0,0 +1,225 @@
+package ch.zhaw.mapreduce.impl;
+
+import static ch.zhaw.mapreduce.impl.InMemoryShufflerTest.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Partitioner;
+
+public class SortingShufflerTest {
+
+	private final File dir = new File(System.getProperty("java.io.tmpdir"), "shuffle-" + UUID.randomUUID());
+
+	@After
+	public void cleanup() {
+		File[] files = this.dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		this.dir.delete();
+	}
+
+	@Test
+	public void shouldStayInMemoryBelowBudget() {
+		SortingShuffler shuffler = shuffler(3, Long.MAX_VALUE);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2")));
+		shuffler.finish();
+		assertFalse(this.dir.exists());
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(2, shuffled.size());
+		assertEquals(2, shuffled.get("a").size());
+	}
+
+	@Test
+	public void shouldGroupByKeyAcrossSpilledRuns() {
+		// mit einem budget von einem byte wird jedes put zu einem eigenen lauf
+		SortingShuffler shuffler = shuffler(3, 1);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2"), new KeyValuePair("c", "ä")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "3")));
+		shuffler.finish();
+		assertEquals(3, this.dir.list().length);
+
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(3, shuffled.size());
+		assertEquals(3, shuffled.get("a").size());
+		assertTrue(shuffled.get("a").contains(new KeyValuePair("a", "1")));
+		assertTrue(shuffled.get("a").contains(new KeyValuePair("a", "2")));
+		assertTrue(shuffled.get("a").contains(new KeyValuePair("a", "3")));
+		assertEquals(Arrays.asList(new KeyValuePair("c", "ä")), shuffled.get("c"));
+	}
+
+	@Test
+	public void shouldMergeRunsWithResultsInMemory() {
+		SortingShuffler shuffler = shuffler(1, 200);
+		List<KeyValuePair> big = new ArrayList<KeyValuePair>();
+		for (int i = 0; i < 10; i++) {
+			big.add(new KeyValuePair("key" + i, "1"));
+		}
+		shuffler.put(big);
+		shuffler.put(Arrays.asList(new KeyValuePair("key0", "2")));
+		shuffler.finish();
+		assertEquals(1, this.dir.list().length);
+
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(10, shuffled.size());
+		assertEquals(2, shuffled.get("key0").size());
+	}
+
+	@Test
+	public void shouldReturnEachPartitionOnceWithAllItsKeys() {
+		SortingShuffler shuffler = shuffler(3, 1);
+		for (int i = 0; i < 100; i++) {
+			shuffler.put(Arrays.asList(new KeyValuePair("key" + (i % 50), Integer.toString(i))));
+		}
+		shuffler.finish();
+
+		HashPartitioner partitioner = new HashPartitioner();
+		int partitions = 0;
+		Map<String, List<KeyValuePair>> all = new TreeMap<String, List<KeyValuePair>>();
+		for (Iterator<Map<String, List<KeyValuePair>>> it = shuffler.partitions(); it.hasNext();) {
+			Map<String, List<KeyValuePair>> partition = it.next();
+			partitions++;
+			int expected = partitioner.partition(partition.keySet().iterator().next(), 3);
+			for (Map.Entry<String, List<KeyValuePair>> entry : partition.entrySet()) {
+				assertEquals(expected, partitioner.partition(entry.getKey(), 3));
+				assertEquals(2, entry.getValue().size());
+				assertNull(all.put(entry.getKey(), entry.getValue()));
+			}
+		}
+		assertEquals(3, partitions);
+		assertEquals(50, all.size());
+	}
+
+	@Test
+	public void shouldCombineValuesOfAllRunsWhenMerging() {
+		SortingShuffler shuffler = new SortingShuffler(new HashPartitioner(), 3, 1, this.dir.getAbsolutePath(),
+				new ShuffleCombiner(ShuffleCombinerTest.SUM, 3));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "3"), new KeyValuePair("b", "1")));
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(Arrays.asList(new KeyValuePair("a", "6")), shuffled.get("a"));
+		assertEquals(Arrays.asList(new KeyValuePair("b", "1")), shuffled.get("b"));
+	}
+
+	@Test
+	public void shouldPartitionIntoSortedRangesWithTotalOrder() {
+		SortingShuffler shuffler = SortingShuffler.totalOrder(4, 200, this.dir.getAbsolutePath(),
+				ShuffleCombiner.none(), 100);
+		for (int i = 0; i < 100; i++) {
+			shuffler.put(Arrays.asList(new KeyValuePair(String.format("%03d", (i * 37) % 100), "v")));
+		}
+		shuffler.finish();
+		List<String> keys = new ArrayList<String>();
+		int partitions = 0;
+		for (Iterator<Map<String, List<KeyValuePair>>> it = shuffler.partitions(); it.hasNext();) {
+			Map<String, List<KeyValuePair>> partition = it.next();
+			assertTrue(partition.size() >= 10);
+			keys.addAll(partition.keySet());
+			partitions++;
+		}
+		assertEquals(4, partitions);
+		assertEquals(100, keys.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(String.format("%03d", i), keys.get(i));
+		}
+	}
+
+	@Test
+	public void shouldDeleteRunsOnDiscard() {
+		SortingShuffler shuffler = shuffler(3, 1);
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("b", "1")));
+		shuffler.finish();
+		Iterator<Map.Entry<String, List<KeyValuePair>>> entries = shuffler.entries();
+		shuffler.discard();
+		assertEquals(0, this.dir.list().length);
+		// bereits gestartete iteratoren koennen noch zu ende gelesen werden
+		assertEquals(2, toMap(entries).size());
+	}
+
+	@Test
+	public void shouldKeepAllValuesIfCombinerFails() {
+		SortingShuffler shuffler = new SortingShuffler(new HashPartitioner(), 3, Long.MAX_VALUE,
+				this.dir.getAbsolutePath(), new ShuffleCombiner(ShuffleCombinerTest.FAILING, 2));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "3")));
+		shuffler.finish();
+		assertEquals(3, toMap(shuffler.entries()).get("a").size());
+	}
+
+	@Test
+	public void shouldKeepResultsInMemoryIfSpillFails() {
+		SortingShuffler shuffler = new SortingShuffler(new Partitioner() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public int partition(String key, int nPartitions) {
+				throw new IllegalStateException("kaputt");
+			}
+		}, 3, 1, this.dir.getAbsolutePath(), ShuffleCombiner.none());
+		// der map task darf nicht fehlschlagen, seine werte sind schon uebernommen
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2")));
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> shuffled = toMap(shuffler.entries());
+		assertEquals(2, shuffled.get("a").size());
+		assertEquals(1, shuffled.get("b").size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldNotAcceptResultsAfterFinish() {
+		SortingShuffler shuffler = shuffler(3, 1);
+		shuffler.finish();
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1")));
+	}
+
+	@Test
+	public void shouldTakeHotKeysFromSpilledRuns() {
+		SortingShuffler shuffler = new SortingShuffler(new HashPartitioner(), 1, 1, this.dir.getAbsolutePath(),
+				ShuffleCombiner.none(), new KeyCounter(2));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("b", "1")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "2")));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "3"), new KeyValuePair("c", "1")));
+		shuffler.finish();
+		Map<String, List<KeyValuePair>> hot = shuffler.takeHotKeys();
+		assertEquals(1, hot.size());
+		assertEquals(3, hot.get("a").size());
+		Map<String, List<KeyValuePair>> rest = toMap(shuffler.entries());
+		assertEquals(Arrays.asList("b", "c"), new ArrayList<String>(rest.keySet()));
+		assertFalse(shuffler.partitions().next().containsKey("a"));
+	}
+
+	@Test
+	public void shouldTakeHotKeysFromMemory() {
+		SortingShuffler shuffler = new SortingShuffler(new HashPartitioner(), 1, Long.MAX_VALUE,
+				this.dir.getAbsolutePath(), ShuffleCombiner.none(), new KeyCounter(1));
+		shuffler.put(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2"), new KeyValuePair("b", "1")));
+		shuffler.finish();
+		assertEquals(2, shuffler.takeHotKeys().get("a").size());
+		assertEquals(Arrays.asList("b"), new ArrayList<String>(toMap(shuffler.entries()).keySet()));
+	}
+
+	private SortingShuffler shuffler(int nPartitions, long budget) {
+		return new SortingShuffler(new HashPartitioner(), nPartitions, budget, this.dir.getAbsolutePath());
+	}
+}
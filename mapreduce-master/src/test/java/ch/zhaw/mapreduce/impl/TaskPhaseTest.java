@@ -0,0 +1,381 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.jmock.api.Invocation;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.CombinerInstruction;
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.Persistence;
+import ch.zhaw.mapreduce.Pool;
+import ch.zhaw.mapreduce.Shuffler;
+import ch.zhaw.mapreduce.WorkerTask.State;
+
+public class TaskPhaseTest {
+
+	@Rule
+	public JUnitRuleMockery mockery = new JUnitRuleMockery() {
+		{
+			setThreadingPolicy(new Synchroniser());
+		}
+	};
+
+	@Mock
+	private Pool pool;
+
+	@Mock
+	private Persistence pers;
+
+	@Mock
+	private Shuffler shuffler;
+
+	@Mock
+	private MapInstruction mInstr;
+
+	@Mock
+	private CombinerInstruction cInstr;
+
+	/** Die Tasks, die der Reihe nach als neue Versuche erstellt werden */
+	private final Queue<MapWorkerTask> newAttempts = new LinkedList<MapWorkerTask>();
+
+	private final String jobId = "jobId";
+
+	@Test
+	public void shouldAcceptCompletedTask() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(SpeculationPolicy.disabled());
+		final MapWorkerTask task = mtask("t1", State.COMPLETED);
+		mockery.checking(new Expectations() {
+			{
+				oneOf(pool).enqueueTask(task);
+			}
+		});
+		phase.submit(task);
+		phase.awaitAll();
+	}
+
+	@Test
+	public void shouldRestartFailedTask() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(SpeculationPolicy.disabled());
+		final MapWorkerTask failed = mtask("t1", State.FAILED);
+		final MapWorkerTask restarted = mtask("t2", State.COMPLETED);
+		newAttempts.add(restarted);
+		mockery.checking(new Expectations() {
+			{
+				oneOf(pool).enqueueTask(failed);
+				oneOf(pool).enqueueTask(restarted);
+			}
+		});
+		phase.submit(failed);
+		phase.awaitAll();
+		assertTrue(newAttempts.isEmpty());
+	}
+
+	@Test
+	public void shouldBeNotifiedWhenTaskFinishes() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(SpeculationPolicy.disabled());
+		MapWorkerTask task = mtask("t1");
+		mockery.checking(new Expectations() {
+			{
+				oneOf(pool).enqueueTask(with(any(MapWorkerTask.class)));
+			}
+		});
+		phase.submit(task);
+		task.successful(null);
+		phase.awaitAll();
+	}
+
+	@Test
+	public void shouldWaitForRunningTasks() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(SpeculationPolicy.disabled());
+		mockery.checking(new Expectations() {
+			{
+				exactly(2).of(pool).enqueueTask(with(any(MapWorkerTask.class)));
+			}
+		});
+		phase.submit(mtask("t1", State.COMPLETED));
+		phase.submit(mtask("t2", State.COMPLETED));
+		phase.awaitWindow(TaskWindow.fixed(1));
+	}
+
+	@Test
+	public void shouldStartBackupForStragglerAndCommitOnlyOnce() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(new SpeculationPolicy(2, 10, 10));
+		final MapWorkerTask fast = mtask("fast");
+		final MapWorkerTask straggler = mtask("straggler");
+		final MapWorkerTask backup = mtask("backup");
+		newAttempts.add(backup);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("key", "value"));
+		mockery.checking(new Expectations() {
+			{
+				oneOf(pool).enqueueTask(fast);
+				oneOf(pool).enqueueTask(straggler);
+				allowing(pool).getFreeWorkers();
+				will(returnValue(1));
+				oneOf(pool).enqueueTask(backup);
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				will(MapWorkerTaskTest.deliver(true));
+				oneOf(pool).abortTask(straggler);
+			}
+		});
+		phase.submit(fast);
+		phase.submit(straggler);
+		fast.started();
+		straggler.started();
+		fast.successful(null);
+		phase.awaitWindow(TaskWindow.fixed(2));
+		Thread.sleep(30);
+
+		phase.speculate();
+		assertTrue(newAttempts.isEmpty());
+		backup.started();
+		backup.successful(result);
+		phase.awaitAll();
+
+		// der langsamere versuch wird verworfen
+		straggler.successful(result);
+		assertEquals(State.ABORTED, straggler.getCurrentState());
+	}
+
+	@Test
+	public void shouldLetBackupCommitIfCommittingAttemptFails() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(new SpeculationPolicy(2, 10, 10));
+		final MapWorkerTask fast = mtask("fast", State.COMPLETED);
+		final MapWorkerTask straggler = mtask("straggler");
+		final MapWorkerTask backup = mtask("backup");
+		newAttempts.add(backup);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("key", "value"));
+		final Sequence puts = mockery.sequence("puts");
+		mockery.checking(new Expectations() {
+			{
+				exactly(3).of(pool).enqueueTask(with(any(MapWorkerTask.class)));
+				allowing(pool).getFreeWorkers();
+				will(returnValue(1));
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				inSequence(puts);
+				will(throwException(new IllegalStateException("disk full")));
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				inSequence(puts);
+				will(MapWorkerTaskTest.deliver(true));
+			}
+		});
+		phase.submit(fast);
+		phase.submit(straggler);
+		straggler.started();
+		phase.awaitWindow(TaskWindow.fixed(2));
+		Thread.sleep(30);
+		phase.speculate();
+		backup.started();
+
+		straggler.successful(result);
+		assertEquals(State.FAILED, straggler.getCurrentState());
+		backup.successful(result);
+		phase.awaitAll();
+		assertEquals(State.COMPLETED, backup.getCurrentState());
+	}
+
+	@Test
+	public void shouldRestartIfCommittingAttemptFailsAfterBackupWasDiscarded() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(new SpeculationPolicy(2, 10, 10));
+		final MapWorkerTask fast = mtask("fast", State.COMPLETED);
+		final MapWorkerTask straggler = mtask("straggler");
+		final MapWorkerTask backup = mtask("backup");
+		final MapWorkerTask restart = mtask("restart");
+		newAttempts.add(backup);
+		newAttempts.add(restart);
+		final List<KeyValuePair> result = Arrays.asList(new KeyValuePair("key", "value"));
+		final Sequence puts = mockery.sequence("puts");
+		mockery.checking(new Expectations() {
+			{
+				exactly(3).of(pool).enqueueTask(with(any(MapWorkerTask.class)));
+				allowing(pool).getFreeWorkers();
+				will(returnValue(1));
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				inSequence(puts);
+				// waehrend der straggler noch speichert, wird das backup fertig und verwirft seine resultate
+				will(doAll(new CustomAction("finish backup") {
+					@Override
+					public Object invoke(Invocation invocation) {
+						backup.successful(result);
+						return null;
+					}
+				}, throwException(new IllegalStateException("disk full"))));
+				oneOf(pool).enqueueTask(restart);
+				will(new CustomAction("run restart") {
+					@Override
+					public Object invoke(Invocation invocation) {
+						restart.started();
+						restart.successful(result);
+						return true;
+					}
+				});
+				oneOf(shuffler).put(with(result), with(any(WriteBehind.class)), with(any(WriteBehind.Callback.class)));
+				inSequence(puts);
+				will(MapWorkerTaskTest.deliver(true));
+			}
+		});
+		phase.submit(fast);
+		phase.submit(straggler);
+		straggler.started();
+		phase.awaitWindow(TaskWindow.fixed(2));
+		Thread.sleep(30);
+		phase.speculate();
+		backup.started();
+
+		straggler.successful(result);
+		assertEquals(State.ABORTED, backup.getCurrentState());
+		assertEquals(State.FAILED, straggler.getCurrentState());
+		phase.awaitAll();
+		assertEquals(State.COMPLETED, restart.getCurrentState());
+	}
+
+	@Test
+	public void shouldNotRestartFailedBackupWhileOriginalIsRunning() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(new SpeculationPolicy(2, 10, 10));
+		final MapWorkerTask fast = mtask("fast", State.COMPLETED);
+		final MapWorkerTask straggler = mtask("straggler");
+		final MapWorkerTask backup = mtask("backup");
+		newAttempts.add(backup);
+		mockery.checking(new Expectations() {
+			{
+				exactly(3).of(pool).enqueueTask(with(any(MapWorkerTask.class)));
+				allowing(pool).getFreeWorkers();
+				will(returnValue(1));
+				never(pool).abortTask(with(any(MapWorkerTask.class)));
+			}
+		});
+		phase.submit(fast);
+		phase.submit(straggler);
+		straggler.started();
+		phase.awaitWindow(TaskWindow.fixed(2));
+		Thread.sleep(30);
+		phase.speculate();
+
+		backup.started();
+		backup.fail();
+		straggler.successful(null);
+		phase.awaitAll();
+		assertEquals(State.COMPLETED, straggler.getCurrentState());
+	}
+
+	@Test
+	public void shouldNotSpeculateWhileTasksOfPhaseAreEnqueued() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(new SpeculationPolicy(2, 0, 10));
+		mockery.checking(new Expectations() {
+			{
+				exactly(3).of(pool).enqueueTask(with(any(MapWorkerTask.class)));
+				allowing(pool).getFreeWorkers();
+				will(returnValue(1));
+			}
+		});
+		phase.submit(mtask("fast", State.COMPLETED));
+		MapWorkerTask straggler = mtask("straggler");
+		phase.submit(straggler);
+		straggler.started();
+		phase.submit(mtask("waiting"));
+		phase.awaitWindow(TaskWindow.fixed(3));
+		Thread.sleep(30);
+		// ohne weiteren versuch in newAttempts wuerde ein backup fehlschlagen
+		phase.speculate();
+	}
+
+	@Test
+	public void shouldSpeculateWhileTasksOfOtherJobsAreEnqueued() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(new SpeculationPolicy(2, 0, 10));
+		final MapWorkerTask backup = mtask("backup");
+		newAttempts.add(backup);
+		mockery.checking(new Expectations() {
+			{
+				exactly(2).of(pool).enqueueTask(with(any(MapWorkerTask.class)));
+				allowing(pool).enqueuedTasks();
+				will(returnValue(5));
+				allowing(pool).getFreeWorkers();
+				will(returnValue(1));
+				oneOf(pool).enqueueTask(backup);
+			}
+		});
+		phase.submit(mtask("fast", State.COMPLETED));
+		MapWorkerTask straggler = mtask("straggler");
+		phase.submit(straggler);
+		straggler.started();
+		phase.awaitWindow(TaskWindow.fixed(2));
+		Thread.sleep(30);
+		phase.speculate();
+		assertTrue(newAttempts.isEmpty());
+	}
+
+	@Test
+	public void shouldComputeMedianOfCompletedTasks() {
+		TaskPhase<MapWorkerTask> phase = phase(SpeculationPolicy.disabled());
+		assertEquals(-1, phase.medianRuntime());
+		MapWorkerTask task = mtask("t1");
+		task.started();
+		task.successful(Collections.emptyList());
+		phase.taskFinished(task);
+		assertTrue(phase.medianRuntime() >= 0);
+	}
+
+	@Test
+	public void shouldComputeMedianOfLastRuntimesOnly() throws Exception {
+		TaskPhase<MapWorkerTask> phase = phase(SpeculationPolicy.disabled());
+		MapWorkerTask slow = mtask("slow");
+		slow.started();
+		Thread.sleep(20);
+		slow.successful(Collections.emptyList());
+		for (int i = 0; i < TaskPhase.RUNTIME_SAMPLE / 2; i++) {
+			phase.taskFinished(slow);
+		}
+		for (int i = 0; i < TaskPhase.RUNTIME_SAMPLE; i++) {
+			MapWorkerTask fast = mtask("fast" + i);
+			fast.started();
+			fast.successful(Collections.emptyList());
+			phase.taskFinished(fast);
+		}
+		// die langsamen laufzeiten sind aus dem ringpuffer verdraengt
+		assertTrue(phase.medianRuntime() < 20);
+	}
+
+	@Test
+	public void shouldIdentifyStragglers() {
+		SpeculationPolicy policy = new SpeculationPolicy(2, 100, 10);
+		assertTrue(policy.isStraggler(300, 100));
+		assertFalse(policy.isStraggler(150, 100));
+		assertFalse(policy.isStraggler(50, 10));
+		assertFalse(SpeculationPolicy.disabled().isStraggler(Long.MAX_VALUE, 0));
+	}
+
+	private TaskPhase<MapWorkerTask> phase(SpeculationPolicy policy) {
+		return new TaskPhase<MapWorkerTask>(pool, policy, 1, MapWorkerTask.class) {
+			@Override
+			protected MapWorkerTask newAttempt(MapWorkerTask template) {
+				return newAttempts.remove();
+			}
+		};
+	}
+
+	private MapWorkerTask mtask(String uuid) {
+		return new MapWorkerTask(uuid, jobId, pers, shuffler, mInstr, cInstr, Arrays.asList("input"));
+	}
+
+	private MapWorkerTask mtask(String uuid, State state) {
+		MapWorkerTask task = mtask(uuid);
+		task.setState(state);
+		return task;
+	}
+}
@@ -0,0 +1,92 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jmock.Expectations;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.Pool;
+
+public class TaskWindowTest {
+
+	@Rule
+	public JUnitRuleMockery mockery = new JUnitRuleMockery();
+
+	@Mock
+	private Pool pool;
+
+	@Test
+	public void fixedWindowShouldNotAskPool() {
+		TaskWindow w = TaskWindow.fixed(2);
+		this.mockery.checking(new Expectations() {
+			{
+				never(pool);
+			}
+		});
+		assertTrue(w.admits(1, pool, 10));
+		assertFalse(w.admits(2, pool, 10));
+	}
+
+	@Test
+	public void shouldAlwaysAdmitFirstTask() {
+		TaskWindow w = new TaskWindow(0, 500, 0.0);
+		assertTrue(w.admits(0, pool, -1));
+	}
+
+	@Test
+	public void shouldQueueOneTaskPerWorkerWithoutRuntimes() {
+		TaskWindow w = new TaskWindow(100000, 500, 0.2);
+		assertEquals(4, w.buffer(4, -1, 1.0));
+		assertEquals(8, w.limit(4, w.buffer(4, -1, 1.0)));
+	}
+
+	@Test
+	public void shouldQueueMoreForShortTasks() {
+		TaskWindow w = new TaskWindow(100000, 500, 0.2);
+		assertEquals(4, w.buffer(4, 1000, 1.0));
+		assertEquals(200, w.buffer(4, 10, 1.0));
+		assertEquals(2000, w.buffer(4, 0, 1.0));
+	}
+
+	@Test
+	public void shouldGrowWithPool() {
+		TaskWindow w = new TaskWindow(100000, 500, 0.2);
+		assertEquals(204, w.limit(4, w.buffer(4, 10, 1.0)));
+		assertEquals(15300, w.limit(300, w.buffer(300, 10, 1.0)));
+	}
+
+	@Test
+	public void shouldRespectUpperBound() {
+		TaskWindow w = new TaskWindow(1000, 500, 0.2);
+		assertEquals(1000, w.limit(300, w.buffer(300, 1, 1.0)));
+	}
+
+	@Test
+	public void shouldNotQueueWhenHeapIsLow() {
+		TaskWindow w = new TaskWindow(100000, 500, 0.2);
+		assertEquals(0, w.buffer(4, 10, 0.1));
+		assertEquals(4, w.limit(4, w.buffer(4, 10, 0.1)));
+	}
+
+	@Test
+	public void shouldWaitWhilePoolQueueIsFull() {
+		TaskWindow w = new TaskWindow(100000, 500, 0.0);
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(pool).getCurrentPoolSize();
+				will(returnValue(4));
+				oneOf(pool).enqueuedTasks();
+				will(returnValue(4));
+				oneOf(pool).enqueuedTasks();
+				will(returnValue(3));
+			}
+		});
+		assertFalse(w.admits(5, pool, 1000));
+		assertTrue(w.admits(5, pool, 1000));
+	}
+}
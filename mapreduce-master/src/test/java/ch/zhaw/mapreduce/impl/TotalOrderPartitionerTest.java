@@ -0,0 +1,47 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TotalOrderPartitionerTest {
+
+	@Test
+	public void shouldSplitSampleIntoEqualRanges() {
+		TotalOrderPartitioner p = TotalOrderPartitioner.fromSample(Arrays.asList("f", "b", "d", "c", "a", "e"), 3);
+		assertEquals(0, p.partition("a", 3));
+		assertEquals(0, p.partition("b", 3));
+		assertEquals(1, p.partition("c", 3));
+		assertEquals(1, p.partition("d", 3));
+		assertEquals(2, p.partition("e", 3));
+		assertEquals(2, p.partition("z", 3));
+	}
+
+	@Test
+	public void shouldKeepOrderOfPartitions() {
+		TotalOrderPartitioner p = TotalOrderPartitioner.fromSample(Arrays.asList("m", "g", "t"), 4);
+		int last = 0;
+		for (String key : Arrays.asList("", "a", "g", "h", "m", "n", "t", "zz")) {
+			int partition = p.partition(key, 4);
+			assertTrue(partition >= last && partition < 4);
+			last = partition;
+		}
+	}
+
+	@Test
+	public void shouldNotSplitFrequentKey() {
+		TotalOrderPartitioner p = TotalOrderPartitioner.fromSample(Arrays.asList("a", "b", "b", "b", "b", "c"), 3);
+		assertEquals(p.partition("b", 3), p.partition("b", 3));
+		assertTrue(p.partition("a", 3) < p.partition("b", 3));
+	}
+
+	@Test
+	public void shouldUseSinglePartitionWithoutSample() {
+		TotalOrderPartitioner p = TotalOrderPartitioner.fromSample(Collections.<String> emptyList(), 5);
+		assertEquals(0, p.partition("any", 5));
+	}
+}
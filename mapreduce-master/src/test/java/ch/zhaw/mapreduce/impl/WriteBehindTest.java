@@ -0,0 +1,173 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.Expectations;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.Rule;
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.Persistence;
+
+public class WriteBehindTest {
+
+	@Rule
+	public JUnitRuleMockery mockery = new JUnitRuleMockery() {
+		{
+			setThreadingPolicy(new Synchroniser());
+		}
+	};
+
+	@Mock
+	private Persistence pers1;
+
+	@Mock
+	private Persistence pers2;
+
+	private final List<KeyValuePair> results = Arrays.asList(new KeyValuePair("key", "value"));
+
+	private final List<Boolean> written = new ArrayList<Boolean>();
+
+	private final WriteBehind.Callback callback = new WriteBehind.Callback() {
+		@Override
+		public void written(boolean durable) {
+			written.add(durable);
+		}
+	};
+
+	@Test
+	public void shouldStoreDirectlyWithoutSyncIfDisabled() {
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers1).storeReduceResults("task1", results);
+				will(returnValue(true));
+			}
+		});
+		WriteBehind.disabled().storeReduceResults(pers1, "task1", results, callback);
+		assertEquals(Arrays.asList(true), this.written);
+	}
+
+	@Test
+	public void shouldSyncEachPersistenceOncePerBatch() {
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers1).storeReduceResults("task1", results);
+				will(returnValue(true));
+				oneOf(pers1).storeReduceResults("task2", results);
+				will(returnValue(true));
+				oneOf(pers2).storeReduceResults("task3", results);
+				will(returnValue(true));
+				oneOf(pers1).sync();
+				will(returnValue(true));
+				oneOf(pers2).sync();
+				will(returnValue(true));
+			}
+		});
+		WriteBehind.disabled().write(
+				Arrays.asList(write(pers1, "task1"), write(pers1, "task2"), write(pers2, "task3")));
+		assertEquals(Arrays.asList(true, true, true), this.written);
+	}
+
+	@Test
+	public void shouldReportFailedSyncToAllWritesOfPersistence() {
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers1).storeReduceResults("task1", results);
+				will(returnValue(true));
+				oneOf(pers2).storeReduceResults("task2", results);
+				will(returnValue(true));
+				oneOf(pers1).sync();
+				will(returnValue(false));
+				oneOf(pers2).sync();
+				will(returnValue(true));
+			}
+		});
+		WriteBehind.disabled().write(Arrays.asList(write(pers1, "task1"), write(pers2, "task2")));
+		assertEquals(Arrays.asList(false, true), this.written);
+	}
+
+	@Test
+	public void shouldNotSyncIfNothingWasStored() {
+		this.mockery.checking(new Expectations() {
+			{
+				oneOf(pers1).storeReduceResults("task1", results);
+				will(throwException(new IllegalStateException("disk full")));
+				never(pers1).sync();
+			}
+		});
+		WriteBehind.disabled().write(Arrays.asList(write(pers1, "task1")));
+		assertEquals(Arrays.asList(false), this.written);
+	}
+
+	@Test
+	public void shouldWriteInBackground() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(20);
+		this.mockery.checking(new Expectations() {
+			{
+				exactly(20).of(pers1).storeReduceResults(with(any(String.class)), with(results));
+				will(returnValue(true));
+				atLeast(1).of(pers1).sync();
+				will(returnValue(true));
+			}
+		});
+		WriteBehind writeBehind = new WriteBehind(5, 3, Executors.defaultThreadFactory());
+		for (int i = 0; i < 20; i++) {
+			writeBehind.storeReduceResults(pers1, "task" + i, results, new WriteBehind.Callback() {
+				@Override
+				public void written(boolean durable) {
+					if (durable) {
+						done.countDown();
+					}
+				}
+			});
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shouldReportQueuedWritesAsFailedWhenInterrupted() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread[] writer = new Thread[1];
+		WriteBehind writeBehind = new WriteBehind(5, 3, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				writer[0] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						r.run();
+					}
+				});
+				return writer[0];
+			}
+		});
+		writeBehind.storeReduceResults(pers1, "task1", results, callback);
+		writeBehind.storeReduceResults(pers1, "task2", results, callback);
+		writer[0].interrupt();
+		writer[0].join(5000);
+		assertEquals(Arrays.asList(false, false), this.written);
+		// danach wird nichts mehr angenommen
+		writeBehind.storeReduceResults(pers1, "task3", results, callback);
+		assertEquals(Arrays.asList(false, false, false), this.written);
+	}
+
+	private WriteBehind.Write write(Persistence pers, String taskUuid) {
+		return new WriteBehind.ReduceWrite(pers, taskUuid, this.results, this.callback);
+	}
+}
@@ -45,7 +45,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 	public void shoudlRunTask() throws Exception {
 		allowGetIp();
 		ExecutorService taskRunnerSrv = Executors.newSingleThreadExecutor();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final SocketWorker sw = new SocketWorker(sAgent, taskRunnerSrv, p, atFactory, resCollector, 200, schedService,
 				2000);
@@ -72,7 +72,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 	public void shouldSetToCompleteImmediately() throws Exception {
 		allowGetIp();
 		ExecutorService taskRunnerSrv = Executors.newSingleThreadExecutor();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final SocketWorker sw = new SocketWorker(sAgent, taskRunnerSrv, p, atFactory, resCollector, 200, schedService,
 				2000);
@@ -104,7 +104,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 	public void shouldSetToFailedImmediately() throws Exception {
 		allowGetIp();
 		ExecutorService taskRunnerSrv = Executors.newSingleThreadExecutor();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final SocketWorker sw = new SocketWorker(sAgent, taskRunnerSrv, p, atFactory, resCollector, 200, schedService,
 				2000);
@@ -130,7 +130,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 	public void shouldGoBackToPoolIfTaskIsRejected() throws Exception {
 		allowGetIp();
 		ExecutorService taskRunnerSrv = Executors.newSingleThreadExecutor();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final SocketWorker sw = new SocketWorker(sAgent, taskRunnerSrv, p, atFactory, resCollector, 200, schedService,
 				2000);
@@ -155,7 +155,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 	public void shouldGoBackToPoolWhenTaskIsFinished() throws Exception {
 		allowGetIp();
 		ExecutorService taskRunnerSrv = Executors.newSingleThreadExecutor();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final SocketWorker sw = new SocketWorker(sAgent, taskRunnerSrv, p, atFactory, resCollector, 200, schedService,
 				2000);
@@ -196,7 +196,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 	public void shouldGoBackToPoolWhenTaskHasFailed() throws Exception {
 		allowGetIp();
 		ExecutorService taskRunnerSrv = Executors.newSingleThreadExecutor();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final SocketWorker sw = new SocketWorker(sAgent, taskRunnerSrv, p, atFactory, resCollector, 200, schedService,
 				2000);
@@ -246,7 +246,7 @@ public class SocketWorkerTest extends AbstractMapReduceMasterSocketTest {
 		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 		SocketResultCollector resColl = new SocketResultCollectorImpl();
 		AgentTaskFactory atFactory = new TestAgentTaskFactory();
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		long pingertimeout = 300;
 		long triggertimeout = 200;
@@ -316,6 +316,21 @@ class TestTask implements WorkerTask {
 		return taskUuid;
 	}
 
+	@Override
+	public String getJobId() {
+		return "jobId";
+	}
+
+	@Override
+	public int getPriority() {
+		return 1;
+	}
+
+	@Override
+	public boolean isRetry() {
+		return false;
+	}
+
 	@Override
 	public String getInput() {
 		return "";
@@ -1,11 +1,14 @@
 package ch.zhaw.mapreduce.plugins.socket;
 
+import java.util.Arrays;
+
 import java.util.logging.Logger;
 
 import ch.zhaw.mapreduce.MapReduceConfig;
 import ch.zhaw.mapreduce.MapReduceUtil;
 import ch.zhaw.mapreduce.Persistence;
 import ch.zhaw.mapreduce.Pool;
+import ch.zhaw.mapreduce.impl.InMemoryShuffler;
 import ch.zhaw.mapreduce.impl.MapWorkerTask;
 import ch.zhaw.mapreduce.impl.PoolImpl;
 
@@ -33,7 +36,7 @@ public class TestSocketServer {
 		reg.bind(SharedSocketConfig.SOCKET_RESULT_COLLECTOR_SIMON_BINDING, resultCollector);
 		
 		for (int i = 0; i < 1000000; i++) {
-			p.enqueueTask(new MapWorkerTask("tUuid" + i, pers, new TestMapInstruction(), null, "input"));
+			p.enqueueTask(new MapWorkerTask("tUuid" + i, "testjob", pers, new InMemoryShuffler(), new TestMapInstruction(), null, Arrays.asList("input")));
 		}
 	}
 
@@ -1,6 +1,5 @@
 package ch.zhaw.mapreduce.plugins.socket.impl;
 
-import java.util.concurrent.Executors;
 
 import org.jmock.Expectations;
 import org.junit.Test;
@@ -14,7 +13,7 @@ public class AgentRegistratorImplTest extends AbstractMapReduceMasterSocketTest
 	@Test
 	public void shouldAcknowledgeAndCreateNewWorker() {
 		mockery.checking(new Expectations() {{ oneOf(sAgent).getIp(); }});
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		AgentRegistratorImpl reg = new AgentRegistratorImpl(p, swFactory, resCollector);
 		final SocketWorker sw = new SocketWorker(sAgent, execMock, p, atFactory, resCollector, 200, schedService, 2000);
@@ -4,11 +4,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
+import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.MapEmitter;
 import ch.zhaw.mapreduce.MapInstruction;
+import ch.zhaw.mapreduce.impl.HashPartitioner;
+import ch.zhaw.mapreduce.impl.InMemoryShuffler;
 import ch.zhaw.mapreduce.impl.MapWorkerTask;
+import ch.zhaw.mapreduce.impl.PersistentShuffler;
 import ch.zhaw.mapreduce.impl.ReduceWorkerTask;
 import ch.zhaw.mapreduce.plugins.socket.AbstractMapReduceMasterSocketTest;
 import ch.zhaw.mapreduce.plugins.socket.ByteArrayClassLoader;
@@ -20,19 +29,28 @@ public class AgentTaskFactoryImplTest extends AbstractMapReduceMasterSocketTest
 
 	@Test
 	public void shouldCorrectlyAssignMapParametersWithoutCombiner() {
-		MapWorkerTask mwt = new MapWorkerTask(taskUuid, persistence, new TestMapInstruction(), null, input);
+		MapWorkerTask mwt = new MapWorkerTask(taskUuid, "jobId", persistence, new InMemoryShuffler(), new TestMapInstruction(), null, Arrays.asList(input));
 		MapAgentTask agentTask = (MapAgentTask) new AgentTaskFactoryImpl(1).createAgentTask(mwt);
 		assertEquals(taskUuid, agentTask.getTaskUuid());
 		assertNotNull(agentTask.getMapInstruction());
 		assertEquals(TestMapInstruction.class.getName(), agentTask.getMapInstructionName());
 		assertNull(agentTask.getCombinerInstruction());
 		assertNull(agentTask.getCombinerInstructionName());
+		assertNull(agentTask.getPartitioning());
+	}
+
+	@Test
+	public void shouldPassPartitioningOfShuffler() {
+		MapWorkerTask mwt = new MapWorkerTask(taskUuid, "jobId", persistence, new PersistentShuffler(persistence,
+				new HashPartitioner(), 7), new TestMapInstruction(), null, Arrays.asList(input));
+		MapAgentTask agentTask = (MapAgentTask) new AgentTaskFactoryImpl(1).createAgentTask(mwt);
+		assertEquals(7, agentTask.getPartitioning().getPartitions());
 	}
 
 	@Test
 	public void shouldCorrectlyAssignMapParametersWithCombiner() {
-		MapWorkerTask mwt = new MapWorkerTask(taskUuid, persistence, new TestMapInstruction(),
-				new TestCombinerInstruction(), input);
+		MapWorkerTask mwt = new MapWorkerTask(taskUuid, "jobId", persistence, new InMemoryShuffler(), new TestMapInstruction(),
+				new TestCombinerInstruction(), Arrays.asList(input));
 		MapAgentTask agentTask = (MapAgentTask) new AgentTaskFactoryImpl(2).createAgentTask(mwt);
 		assertEquals(taskUuid, agentTask.getTaskUuid());
 		assertNotNull(agentTask.getMapInstruction());
@@ -43,12 +61,13 @@ public class AgentTaskFactoryImplTest extends AbstractMapReduceMasterSocketTest
 
 	@Test
 	public void shouldCorrectlyAssignReduceParameters() {
-		ReduceWorkerTask rwt = new ReduceWorkerTask(taskUuid, persistence, new TestReduceInstruction(), reduceKey,
-				reduceValues);
+		Map<String, List<KeyValuePair>> inputs = Collections.singletonMap(reduceKey, reduceValues);
+		ReduceWorkerTask rwt = new ReduceWorkerTask(taskUuid, "jobId", persistence, new TestReduceInstruction(), 0, inputs);
 		ReduceAgentTask agentTask = (ReduceAgentTask) new AgentTaskFactoryImpl(3).createAgentTask(rwt);
 		assertEquals(taskUuid, agentTask.getTaskUuid());
 		assertEquals(TestReduceInstruction.class.getName(), agentTask.getReduceInstructionName());
 		assertNotNull(agentTask.getReduceInstruction());
+		assertEquals(inputs, agentTask.getInputs());
 	}
 
 	@Test
@@ -22,8 +22,10 @@ public class ResultCleanerTaskTest extends AbstractMapReduceMasterSocketTest {
 	Entry<String, ResultState> entry;
 	
 	@Test
-	public void shouldRemoveEntry() {
+	public void shouldRemoveEntry() throws InterruptedException {
 		final ResultState state = ResultState.resultAvailable(saRes);
+		// die ttl von 1ms muss sicher abgelaufen sein
+		Thread.sleep(5);
 		mockery.checking(new Expectations() {{ 
 			oneOf(resCollector).getResultStates();
 			oneOf(iter).next(); will(returnValue(entry));
@@ -1,20 +1,30 @@
 package ch.zhaw.mapreduce.plugins.thread;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Provider;
 
 import org.jmock.Expectations;
 import org.jmock.Sequence;
+import org.jmock.api.Invocation;
 import org.jmock.auto.Auto;
 import org.jmock.auto.Mock;
 import org.jmock.integration.junit4.JUnitRuleMockery;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.concurrent.ExactCommandExecutor;
+import org.jmock.lib.concurrent.Synchroniser;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -25,6 +35,7 @@ import ch.zhaw.mapreduce.MapInstruction;
 import ch.zhaw.mapreduce.Persistence;
 import ch.zhaw.mapreduce.ReduceInstruction;
 import ch.zhaw.mapreduce.WorkerTask;
+import ch.zhaw.mapreduce.impl.InMemoryShuffler;
 import ch.zhaw.mapreduce.impl.MapWorkerTask;
 import ch.zhaw.mapreduce.impl.PoolImpl;
 import ch.zhaw.mapreduce.impl.ReduceWorkerTask;
@@ -32,7 +43,11 @@ import ch.zhaw.mapreduce.impl.ReduceWorkerTask;
 public class ThreadWorkerTest {
 
 	@Rule
-	public JUnitRuleMockery mockery = new JUnitRuleMockery();
+	public JUnitRuleMockery mockery = new JUnitRuleMockery() {
+		{
+			setThreadingPolicy(new Synchroniser());
+		}
+	};
 
 	@Auto
 	private Sequence events;
@@ -61,14 +76,16 @@ public class ThreadWorkerTest {
 	@Mock
 	private ReduceInstruction redInstr;
 
+	private final String jobId = "jobId";
+
 	@Test
 	public void shouldGoBackToPool() throws InterruptedException {
 		ExactCommandExecutor exec = new ExactCommandExecutor(1);
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final ThreadWorker worker = new ThreadWorker(p, exec, ctxProvider);
 		p.donateWorker(worker);
-		final MapWorkerTask task = new MapWorkerTask("taskUuid", pers, mapInstr, null, "input");
+		final MapWorkerTask task = new MapWorkerTask("taskUuid", jobId, pers, new InMemoryShuffler(), mapInstr, null, Arrays.asList("input"));
 		this.mockery.checking(new Expectations() {
 			{
 				allowing(mapInstr); 
@@ -79,20 +96,72 @@ public class ThreadWorkerTest {
 		p.enqueueTask(task);
 		exec.waitForExpectedTasks(200, TimeUnit.MILLISECONDS);
 		assertEquals(1, p.getFreeWorkers());
+		assertFalse(worker.isRunning("taskUuid"));
+	}
+
+	@Test
+	public void shouldGoBackToPoolOnceWhenStopped() throws Exception {
+		ExecutorService exec = Executors.newSingleThreadExecutor();
+		PoolImpl p = new PoolImpl();
+		p.init();
+		final ThreadWorker worker = new ThreadWorker(p, exec, ctxProvider);
+		p.donateWorker(worker);
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean interrupted = new AtomicBoolean();
+		this.mockery.checking(new Expectations() {
+			{
+				allowing(task).getTaskUuid(); will(returnValue("taskUuid"));
+				oneOf(task).enqueued();
+				oneOf(task).started();
+				oneOf(ctxProvider).get(); will(returnValue(ctx));
+				oneOf(task).runTask(ctx); will(new CustomAction("ignore interrupt until released") {
+					@Override
+					public Object invoke(Invocation invocation) throws Throwable {
+						running.countDown();
+						// wie benutzercode, der auf den interrupt nicht reagiert
+						while (release.getCount() > 0) {
+							try {
+								release.await();
+							} catch (InterruptedException e) {
+								interrupted.set(true);
+							}
+						}
+						// await kann auch normal zurueckkehren und den interrupt stehen lassen
+						if (Thread.interrupted()) {
+							interrupted.set(true);
+						}
+						throw new InterruptedException();
+					}
+				});
+				oneOf(task).fail();
+			}
+		});
+		p.enqueueTask(task);
+		assertTrue(running.await(1, TimeUnit.SECONDS));
+		worker.stopCurrentTask("taskUuid");
+		// erst der angehaltene thread gibt den worker zurueck
+		assertEquals(0, p.getFreeWorkers());
+		release.countDown();
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(1, TimeUnit.SECONDS));
+		assertTrue(interrupted.get());
+		assertEquals(1, p.getFreeWorkers());
+		assertFalse(worker.isRunning("taskUuid"));
 	}
 
 	@Test
 	public void shouldPersistReduceResultOnly() {
 		ExactCommandExecutor exec = new ExactCommandExecutor(1);
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final ThreadWorker worker = new ThreadWorker(p, exec, ctxProvider);
-		final ReduceWorkerTask task = new ReduceWorkerTask("taskUuid", pers, redInstr, "key", new ArrayList<KeyValuePair>());
+		final ReduceWorkerTask task = new ReduceWorkerTask("taskUuid", jobId, pers, redInstr, 0, new HashMap<String, List<KeyValuePair>>());
 		this.mockery.checking(new Expectations() {
 			{
 				allowing(redInstr);
 				oneOf(ctxProvider).get(); will(returnValue(ctx));
-				oneOf(ctx).getReduceResult(); will(returnValue(new ArrayList<String>()));
+				oneOf(ctx).getReduceResult(); will(returnValue(new ArrayList<KeyValuePair>()));
 			}
 		});
 		worker.executeTask(task);
@@ -102,7 +171,7 @@ public class ThreadWorkerTest {
 	@Test
 	public void shouldSetTaskToFailedOnException() throws Exception  {
 		ExactCommandExecutor exec = new ExactCommandExecutor(1);
-		PoolImpl p = new PoolImpl(Executors.newSingleThreadExecutor());
+		PoolImpl p = new PoolImpl();
 		p.init();
 		final ThreadWorker worker = new ThreadWorker(p, exec, ctxProvider);
 		this.mockery.checking(new Expectations() {
@@ -42,7 +42,7 @@ public class PerformanceTest {
 		int chunkSize = (int) Math.pow(10, 2);
 
 		// long start = System.currentTimeMillis();
-		Map<String, List<String>> results = master.runComputation(mapInstr, null, redInstr, null, generateIterator(inputs, chunkSize));
+		Map<String, List<String>> results = master.runComputation("performance", 1, mapInstr, null, redInstr, null, generateIterator(inputs, chunkSize));
 		//long time = System.currentTimeMillis() - start;
 		// System.out.println("Time: " + time /*+ ", Results: " + results*/);
 		int sum = 0;
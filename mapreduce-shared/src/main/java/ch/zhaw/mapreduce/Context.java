@@ -34,15 +34,25 @@ public interface Context extends MapEmitter, ReduceEmitter {
 	List<KeyValuePair> getMapResult() throws ComputationStoppedException;
 
 	/**
-	 * Liefert das Resultat für diesen ReduceTask. TODO A) was passiert, wenn der task noch nicht beendet ist? B) was
+	 * Liefert das Resultat für diesen ReduceTask. Da ein ReduceTask mehrere Keys reduziert, ist jedes Resultat mit dem
+	 * Key versehen, für den es emittet wurde. TODO A) was passiert, wenn der task noch nicht beendet ist? B) was
 	 * passiert, wenn dies ein map task ist?
 	 * 
-	 * @return Resultat vom ReduceTask
+	 * @return Resultat vom ReduceTask als Paare von Key und emittetem Wert
 	 * @throws ComputationStoppedException
 	 *             wenn diese Berechnung gestoppt wurde
 	 * @see ComputationStoppedException
 	 */
-	List<String> getReduceResult();
+	List<KeyValuePair> getReduceResult();
+
+	/**
+	 * Muss aufgerufen werden, bevor die ReduceInstruction für einen Key ausgeführt wird. Alle folgenden Resultate
+	 * werden diesem Key zugeordnet.
+	 * 
+	 * @param key
+	 *            der Key, der als nächstes reduziert wird
+	 */
+	void startReduce(String key);
 
 	/**
 	 * Diese Methode muss aufgerufen werden, wenn eine {@link CombinerInstruction} ein Map Resultat ersetzen will. Dies
@@ -54,4 +64,14 @@ public interface Context extends MapEmitter, ReduceEmitter {
 	 *             wenn diese Berechnung gestoppt wurde
 	 */
 	void replaceMapResult(List<KeyValuePair> afterCombining) throws ComputationStoppedException;
+
+	/**
+	 * Teilt die Map Resultate ab jetzt beim Emitten auf die Partitionen auf. Muss vor dem ersten Emitten aufgerufen
+	 * werden. {@link #getMapResult()} liefert danach eine {@link ch.zhaw.mapreduce.impl.PartitionedMapResult}, auch
+	 * nach {@link #replaceMapResult(List)}.
+	 * 
+	 * @param partitioning
+	 *            wie die Keys aufgeteilt werden
+	 */
+	void partitionMapResult(MapPartitioning partitioning);
 }
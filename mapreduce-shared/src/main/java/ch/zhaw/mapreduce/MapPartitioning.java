@@ -0,0 +1,43 @@
+package ch.zhaw.mapreduce;
+
+import java.io.Serializable;
+
+/**
+ * Wie ein Map Task seine Resultate schon beim Emitten auf die Reduce-Partitionen aufteilt. Wird mit dem Task zum
+ * Worker bzw. Agent geschickt, damit der Master die Resultate nicht nochmals Key für Key aufteilen muss.
+ */
+public final class MapPartitioning implements Serializable {
+
+	private static final long serialVersionUID = -7349184615398013357L;
+
+	private final Partitioner partitioner;
+
+	private final int partitions;
+
+	/**
+	 * @param partitions
+	 *            Anzahl Partitionen, grösser als 0
+	 */
+	public MapPartitioning(Partitioner partitioner, int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("Need at least one Partition: " + partitions);
+		}
+		this.partitioner = partitioner;
+		this.partitions = partitions;
+	}
+
+	/**
+	 * @return Nummer der Partition für diesen Key
+	 */
+	public int partition(String key) {
+		return this.partitioner.partition(key, this.partitions);
+	}
+
+	public Partitioner getPartitioner() {
+		return this.partitioner;
+	}
+
+	public int getPartitions() {
+		return this.partitions;
+	}
+}
@@ -0,0 +1,25 @@
+package ch.zhaw.mapreduce;
+
+import java.io.Serializable;
+
+/**
+ * Ein Partitioner teilt die Keys nach dem Shuffeln auf die Reduce Tasks auf. Alle Keys einer Partition werden von
+ * einem einzigen ReduceWorkerTask reduziert. So entsteht nicht pro Key ein eigener Task.
+ *
+ * Der gleiche Key muss immer derselben Partition zugeordnet werden. Teilen die Map Tasks ihre Resultate selbst auf
+ * (siehe {@link MapPartitioning}), wird der Partitioner zu den Agents geschickt und muss dort ebenfalls verfügbar sein.
+ */
+public interface Partitioner extends Serializable {
+
+	/**
+	 * Bestimmt die Partition für einen Key.
+	 *
+	 * @param key
+	 *            der zu reduzierende Key
+	 * @param partitions
+	 *            Anzahl Partitionen, immer grösser als 0
+	 * @return Nummer der Partition zwischen 0 (inklusive) und partitions (exklusive)
+	 */
+	int partition(String key, int partitions);
+
+}
@@ -20,52 +20,108 @@ import java.util.Map;
 public interface Persistence {
 
 	/**
-	 * Speichert ein Resultat von einer Berechnung.
+	 * Legt fest, wie die Resultate komprimiert gespeichert werden, zum Beispiel none, snappy oder deflate. Gilt für
+	 * alles, was danach gespeichert wird. Schon gespeicherte Resultate können weiterhin gelesen werden, weil der Codec
+	 * mit den Daten gespeichert wird.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             wenn es keinen Codec mit diesem Namen gibt
+	 */
+	void setCompression(String codec);
+
+	/**
+	 * Speichert Map-Resultate, die nicht nach Partition getrennt sind. Sie werden in Partition 0 gespeichert, wie bei
+	 * einer Berechnung mit nur einer Reduce-Partition.
 	 * 
 	 * @param taskUuid
 	 *            die ID vom Input für die Berechnung, die zu diesem Resultat geführt hat
-	 * @param key
-	 *            der Schlüssel für diese Berechnung
-	 * @param value
-	 *            der Wert dieser Berechnung
+	 * @param mapResults
+	 *            die Resultate dieser Berechnung
 	 * @return true, wenn das speichern funktioniert hat, sonst false
+	 * @see #storeMapResults(String, int, List)
 	 */
 	boolean storeMapResults(String taskUuid, List<KeyValuePair> mapResults);
 
 	/**
-	 * Speichert ein Resultat von einer Berechnung.
+	 * Speichert den Teil der Map-Resultate, der zu einer Reduce-Partition gehört. Die Resultate werden schon beim
+	 * Schreiben nach Partition getrennt, damit für einen Reduce Task nur seine Partition gelesen werden muss.
+	 * 
+	 * @param sliceId
+	 *            eindeutige ID dieses Teils innerhalb der Partition
+	 * @param partition
+	 *            die Nummer der Reduce-Partition
+	 * @param mapResults
+	 *            die Resultate, deren Keys alle zu dieser Partition gehören
+	 * @return true, wenn das speichern funktioniert hat, sonst false
+	 */
+	boolean storeMapResults(String sliceId, int partition, List<KeyValuePair> mapResults);
+
+	/**
+	 * Speichert die Resultate von einem ReduceTask. Ein ReduceTask reduziert alle Keys einer Partition, daher ist jedes
+	 * Resultat mit seinem Key versehen.
 	 * 
 	 * @param taskUuid
 	 *            die ID vom Input für die Berechnung, die zu diesem Resultat geführt hat
-	 * @param result
-	 *            das Resultat dieser Berechnung
+	 * @param results
+	 *            die Resultate dieser Berechnung als Paare von Key und Resultat
 	 * @return true, wenn das speichern funktioniert hat, sonst false
 	 */
-	boolean storeReduceResults(String taskUuid, String key, List<String> results);
+	boolean storeReduceResults(String taskUuid, List<KeyValuePair> results);
 
 	/**
 	 * Liefert das gespeicherte Resultat einer Reduce-Berechnung (Instruction) für diese MapReduceTaskID und Input-ID.
+	 * Haben mehrere Tasks Resultate für denselben Key gespeichert, werden sie aneinandergehängt. Die Keys sind
+	 * sortiert.
 	 * 
 	 * @return das gespeicherte Resultat falls vorhanden, sonst null
 	 */
 	Map<String, List<String>> getReduceResults();
 
 	/**
-	 * Liefert die gespeicherten Resultate einer Map-Berechnung (Instruction) für diese MapReduceTaskID und Input-ID.
+	 * Liefert die gespeicherten Map-Resultate aller Partitionen.
 	 * 
-	 * @return die gespeicherten Resultate falls vorhanden, sonst null
+	 * @return die gespeicherten Resultate, eine leere Liste, wenn es keine gibt
 	 */
 	List<KeyValuePair> getMapResults();
 
 	/**
-	 * Löscht das Resultat dieser MapReduce Berechnung für diese Input ID.
+	 * Liefert alle gespeicherten Map-Resultate einer Reduce-Partition.
 	 * 
-	 * @param taskUuid
-	 *            die ID vom Input für die Berechnung, die zu diesem Resultat geführt hat
-	 * @throws IllegalArgumentException
-	 *             falls kein Resultat für diese MapReduceID/inputUuid Kombination existiert
+	 * @param partition
+	 *            die Nummer der Reduce-Partition
+	 * @return die gespeicherten Resultate, eine leere Liste, wenn es keine gibt
 	 */
-	boolean destroyMap(String taskUuid);
+	List<KeyValuePair> getMapResults(int partition);
+
+	/**
+	 * Liest die gespeicherten Map-Resultate aller Partitionen nacheinander, Partition für Partition.
+	 * {@link #getMapResults()} liefert dieselben Resultate als Liste.
+	 */
+	ResultCursor openMapResults();
+
+	/**
+	 * Liest die gespeicherten Map-Resultate einer Reduce-Partition nacheinander, ohne sie alle gleichzeitig im Speicher
+	 * zu halten. {@link #getMapResults(int)} liefert dieselben Resultate als Liste.
+	 * 
+	 * @param partition
+	 *            die Nummer der Reduce-Partition
+	 */
+	ResultCursor openMapResults(int partition);
+
+	/**
+	 * Liest die gespeicherten Reduce-Resultate nacheinander als Paare von Key und Resultat, Task für Task und nicht
+	 * nach Key sortiert. {@link #getReduceResults()} liefert sie nach Key gruppiert.
+	 */
+	ResultCursor openReduceResults();
+
+	/**
+	 * Löscht einen Teil der Map-Resultate in allen Partitionen, in denen er gespeichert wurde.
+	 * 
+	 * @param sliceId
+	 *            die ID, unter der die Teile mit {@link #storeMapResults(String, int, List)} gespeichert wurden
+	 * @return true, wenn nichts mehr von diesem Teil gespeichert ist
+	 */
+	boolean destroyMap(String sliceId);
 
 	/**
 	 * Löscht das Resultat dieser MapReduce Berechnung für diese Input ID.
@@ -77,6 +133,14 @@ public interface Persistence {
 	 */
 	boolean destroyReduce(String taskUuid);
 
+	/**
+	 * Schreibt alle bisher gespeicherten Resultate dauerhaft auf das Medium, zum Beispiel mit fsync. Die store Methoden
+	 * tun das nicht selbst, damit mehrere Resultate mit einem einzigen sync dauerhaft gemacht werden können.
+	 * 
+	 * @return true, wenn alle Resultate dauerhaft gespeichert sind
+	 */
+	boolean sync();
+
 	/**
 	 * Löscht alle gespeicherten Resultate.
 	 */
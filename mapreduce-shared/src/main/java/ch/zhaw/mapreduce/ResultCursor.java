@@ -0,0 +1,23 @@
+package ch.zhaw.mapreduce;
+
+import java.util.Iterator;
+
+/**
+ * Liest gespeicherte Resultate aus einer {@link Persistence} eins nach dem anderen, statt sie alle auf einmal in eine
+ * Liste zu laden. Es ist immer nur ein kleiner Teil der Resultate im Speicher, typischerweise die Resultate eines
+ * Tasks oder ein Block einer Datei.
+ *
+ * Ein Cursor muss geschlossen werden, wenn er nicht bis zum Ende gelesen wird, damit offene Dateien freigegeben
+ * werden. Am Ende schliesst er sich selbst.
+ *
+ * Können gespeicherte Resultate nicht gelesen werden, etwa weil eine Datei beschädigt oder abgeschnitten ist, werfen
+ * hasNext und next eine IllegalStateException. Fehlende Resultate würden sonst unbemerkt ein falsches Ergebnis
+ * liefern.
+ */
+public interface ResultCursor extends Iterator<KeyValuePair> {
+
+	/**
+	 * Gibt die Ressourcen des Cursors frei. Danach liefert er keine Resultate mehr.
+	 */
+	void close();
+}
@@ -44,6 +44,22 @@ public interface WorkerTask {
 	 */
 	String getTaskUuid();
 
+	/**
+	 * Die ID des Jobs, zu dem dieser Task gehört. Mehrere Jobs können sich den gleichen Pool teilen.
+	 */
+	String getJobId();
+
+	/**
+	 * Die Priorität des Jobs, zu dem dieser Task gehört. Je höher, desto wichtiger. Der Pool verteilt die Tasks je nach
+	 * SchedulingPolicy anhand dieser Priorität.
+	 */
+	int getPriority();
+
+	/**
+	 * Ob dieser Task eine Wiederholung (Neustart oder Backup) eines anderen Tasks ist.
+	 */
+	boolean isRetry();
+
 	/**
 	 * Gibt den von diesem Worker bearbeiteten Input zurück
 	 * @return
@@ -5,6 +5,7 @@ import java.util.List;
 
 import ch.zhaw.mapreduce.Context;
 import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
 
 /**
  * Kontext für lokale Berechnungen
@@ -16,16 +17,44 @@ public class ContextImpl implements Context {
 	
 	private List<KeyValuePair> mapResults = new LinkedList<KeyValuePair>();
 	
-	private List<String> reduceResults = new LinkedList<String>();
+	private List<KeyValuePair> reduceResults = new LinkedList<KeyValuePair>();
+
+	/**
+	 * Der Key, der gerade reduziert wird
+	 */
+	private String reduceKey;
+
+	/**
+	 * Wie die Map Resultate aufgeteilt werden, null wenn nicht
+	 */
+	private MapPartitioning partitioning;
 
 	@Override
 	public void emitIntermediateMapResult(String key, String value) {
-		this.mapResults.add(new KeyValuePair(key, value));
+		if (this.partitioning != null) {
+			((PartitionedMapResult) this.mapResults).add(this.partitioning.partition(key), new KeyValuePair(key, value));
+		} else {
+			this.mapResults.add(new KeyValuePair(key, value));
+		}
+	}
+
+	@Override
+	public void partitionMapResult(MapPartitioning partitioning) {
+		if (!this.mapResults.isEmpty()) {
+			throw new IllegalStateException("Map Results already emitted");
+		}
+		this.partitioning = partitioning;
+		this.mapResults = new PartitionedMapResult(partitioning.getPartitions());
 	}
 
 	@Override
 	public void emit(String result) {
-		this.reduceResults.add(result);
+		this.reduceResults.add(new KeyValuePair(this.reduceKey, result));
+	}
+
+	@Override
+	public void startReduce(String key) {
+		this.reduceKey = key;
 	}
 
 	@Override
@@ -35,11 +64,15 @@ public class ContextImpl implements Context {
 
 	@Override
 	public void replaceMapResult(List<KeyValuePair> afterCombining) {
-		this.mapResults = afterCombining;
+		if (this.partitioning != null) {
+			this.mapResults = PartitionedMapResult.of(this.partitioning, afterCombining);
+		} else {
+			this.mapResults = afterCombining;
+		}
 	}
 
 	@Override
-	public List<String> getReduceResult() {
+	public List<KeyValuePair> getReduceResult() {
 		return this.reduceResults;
 	}
 }
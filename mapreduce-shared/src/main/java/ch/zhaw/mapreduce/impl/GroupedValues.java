@@ -0,0 +1,154 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+/**
+ * Alle Werte eines Keys nach dem Shuffeln. Der Key wird nur einmal gespeichert und die Werte in einem Array, statt für
+ * jeden Wert ein KeyValuePair mit einer Kopie des Keys zu halten. Die KeyValuePairs werden erst beim Lesen erstellt,
+ * leben also nur so lange, wie die ReduceInstruction sie braucht.
+ *
+ * Nicht thread-safe, gleichzeitiges Hinzufügen muss synchronisiert werden.
+ */
+public final class GroupedValues extends AbstractList<KeyValuePair> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = -2284301529713386213L;
+
+	private static final String[] EMPTY = new String[0];
+
+	private final String key;
+
+	private transient String[] values;
+
+	private transient int size;
+
+	public GroupedValues(String key) {
+		this(key, 4);
+	}
+
+	public GroupedValues(String key, int capacity) {
+		if (key == null) {
+			throw new IllegalArgumentException("Key must not be null");
+		}
+		this.key = key;
+		this.values = capacity > 0 ? new String[capacity] : EMPTY;
+	}
+
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * Fügt einen Wert hinzu, ohne dafür ein KeyValuePair zu brauchen.
+	 */
+	public void addValue(String value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value must not be null");
+		}
+		ensureCapacity(this.size + 1);
+		this.values[this.size++] = value;
+		this.modCount++;
+	}
+
+	public String getValue(int index) {
+		checkIndex(index);
+		return this.values[index];
+	}
+
+	@Override
+	public boolean add(KeyValuePair pair) {
+		checkKey(pair.getKey());
+		addValue(pair.getValue());
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends KeyValuePair> pairs) {
+		if (!(pairs instanceof GroupedValues)) {
+			return super.addAll(pairs);
+		}
+		GroupedValues other = (GroupedValues) pairs;
+		checkKey(other.key);
+		ensureCapacity(this.size + other.size);
+		System.arraycopy(other.values, 0, this.values, this.size, other.size);
+		this.size += other.size;
+		this.modCount++;
+		return other.size > 0;
+	}
+
+	/**
+	 * Entfernt alle Werte. Die Kapazität bleibt erhalten.
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+		this.modCount++;
+	}
+
+	/**
+	 * Kopiert die Werte von from (inklusive) bis to (exklusive) in neue GroupedValues mit demselben Key.
+	 */
+	public GroupedValues copyOfRange(int from, int to) {
+		if (from < 0 || to > this.size || from > to) {
+			throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + this.size);
+		}
+		GroupedValues copy = new GroupedValues(this.key, to - from);
+		System.arraycopy(this.values, from, copy.values, 0, to - from);
+		copy.size = to - from;
+		return copy;
+	}
+
+	@Override
+	public KeyValuePair get(int index) {
+		return new KeyValuePair(this.key, getValue(index));
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	private void checkKey(String other) {
+		if (!this.key.equals(other)) {
+			throw new IllegalArgumentException("Expected Key " + this.key + " but was " + other);
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > this.values.length) {
+			this.values = Arrays.copyOf(this.values, Math.max(capacity, this.values.length * 2));
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.size);
+		for (int i = 0; i < this.size; i++) {
+			out.writeObject(this.values[i]);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.size = in.readInt();
+		this.values = this.size > 0 ? new String[this.size] : EMPTY;
+		for (int i = 0; i < this.size; i++) {
+			this.values[i] = (String) in.readObject();
+		}
+	}
+}
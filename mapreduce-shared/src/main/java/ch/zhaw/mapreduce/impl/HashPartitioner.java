@@ -0,0 +1,18 @@
+package ch.zhaw.mapreduce.impl;
+
+import ch.zhaw.mapreduce.Partitioner;
+
+/**
+ * Verteilt die Keys anhand ihres HashCodes auf die Partitionen.
+ */
+public class HashPartitioner implements Partitioner {
+
+	private static final long serialVersionUID = 6210847307512365714L;
+
+	@Override
+	public int partition(String key, int partitions) {
+		// das vorzeichen-bit entfernen, da der hashcode negativ sein kann
+		return (key.hashCode() & Integer.MAX_VALUE) % partitions;
+	}
+
+}
@@ -0,0 +1,140 @@
+package ch.zhaw.mapreduce.impl;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+
+/**
+ * Die Resultate eines Map Tasks, schon beim Emitten nach Reduce-Partition getrennt. Als Liste gelesen kommen die
+ * Partitionen nacheinander, so kann das Resultat überall verwendet werden, wo bisher eine Liste erwartet wurde. Wer
+ * die Partitionen braucht, holt sie mit {@link #getSlices()}, ohne die Keys nochmals aufzuteilen.
+ *
+ * Nicht thread-safe.
+ */
+public final class PartitionedMapResult extends AbstractList<KeyValuePair> implements Serializable {
+
+	private static final long serialVersionUID = 4407316219338120843L;
+
+	/** Anzahl Partitionen, auf die aufgeteilt wurde */
+	private final int partitions;
+
+	/** Nummer der Partition auf ihre Resultate, nur Partitionen mit Resultaten */
+	private final TreeMap<Integer, List<KeyValuePair>> slices;
+
+	private int size;
+
+	public PartitionedMapResult(int partitions) {
+		this.partitions = partitions;
+		this.slices = new TreeMap<Integer, List<KeyValuePair>>();
+	}
+
+	/**
+	 * Teilt bestehende Resultate auf, z.B. nachdem sie ein Combiner ersetzt hat.
+	 */
+	public static PartitionedMapResult of(MapPartitioning partitioning, List<KeyValuePair> results) {
+		PartitionedMapResult partitioned = new PartitionedMapResult(partitioning.getPartitions());
+		for (KeyValuePair pair : results) {
+			partitioned.add(partitioning.partition(pair.getKey()), pair);
+		}
+		return partitioned;
+	}
+
+	/**
+	 * Fügt ein Resultat der gegebenen Partition hinzu.
+	 */
+	public void add(int partition, KeyValuePair pair) {
+		List<KeyValuePair> slice = this.slices.get(partition);
+		if (slice == null) {
+			slice = new ArrayList<KeyValuePair>();
+			this.slices.put(partition, slice);
+		}
+		slice.add(pair);
+		this.size++;
+		this.modCount++;
+	}
+
+	/**
+	 * Anzahl Partitionen, auf die aufgeteilt wurde. Auch leere Partitionen zählen.
+	 */
+	public int getPartitions() {
+		return this.partitions;
+	}
+
+	/**
+	 * Die Resultate nach Nummer der Partition. Leere Partitionen fehlen.
+	 */
+	public SortedMap<Integer, List<KeyValuePair>> getSlices() {
+		return Collections.unmodifiableSortedMap(this.slices);
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public KeyValuePair get(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		for (List<KeyValuePair> slice : this.slices.values()) {
+			if (index < slice.size()) {
+				return slice.get(index);
+			}
+			index -= slice.size();
+		}
+		throw new IllegalStateException("Size does not match Slices");
+	}
+
+	/**
+	 * {@inheritDoc} Geht Partition für Partition durch, statt jedes Element mit get zu suchen.
+	 */
+	@Override
+	public Iterator<KeyValuePair> iterator() {
+		final Iterator<List<KeyValuePair>> slices = this.slices.values().iterator();
+		return new Iterator<KeyValuePair>() {
+
+			private Iterator<KeyValuePair> current = Collections.<KeyValuePair> emptyList().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!this.current.hasNext() && slices.hasNext()) {
+					this.current = slices.next().iterator();
+				}
+				return this.current.hasNext();
+			}
+
+			@Override
+			public KeyValuePair next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return this.current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("PartitionedMapResult[");
+		for (Map.Entry<Integer, List<KeyValuePair>> slice : this.slices.entrySet()) {
+			sb.append(slice.getKey()).append('=').append(slice.getValue().size()).append(' ');
+		}
+		return sb.append("of ").append(this.partitions).append(']').toString();
+	}
+}
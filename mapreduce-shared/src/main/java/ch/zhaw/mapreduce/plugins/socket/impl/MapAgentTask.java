@@ -1,12 +1,17 @@
 package ch.zhaw.mapreduce.plugins.socket.impl;
 
+import java.util.List;
+
 import javax.annotation.Nullable;
 
+import ch.zhaw.mapreduce.MapPartitioning;
 import ch.zhaw.mapreduce.plugins.socket.AgentTask;
 
 
 /**
  * Task mit MapInstruction, optinaler CombinerInstruction und Input, der über das Netz zu einem Client/Worker gesandt wird.
+ * Der Input kann ein Batch aus mehreren Inputs sein, so wird der Byte Code der Instruktionen nur einmal pro Batch
+ * übertragen.
  * 
  * @author Reto Hablützel (rethab)
  *
@@ -31,16 +36,28 @@ public final class MapAgentTask implements AgentTask {
 	 */
 	private final byte[] combinerInstruction;
 
-	private final String input;
+	private final List<String> inputs;
+
+	/**
+	 * Optional. Kann null sein
+	 */
+	private final MapPartitioning partitioning;
+
+	MapAgentTask(String taskUuid, String mapInstructionName, byte[] mapInstruction,
+			@Nullable String combinerInstructionName, @Nullable byte[] combinerInstruction, List<String> inputs) {
+		this(taskUuid, mapInstructionName, mapInstruction, combinerInstructionName, combinerInstruction, inputs, null);
+	}
 
 	MapAgentTask(String taskUuid, String mapInstructionName, byte[] mapInstruction,
-			@Nullable String combinerInstructionName, @Nullable byte[] combinerInstruction, String input) {
+			@Nullable String combinerInstructionName, @Nullable byte[] combinerInstruction, List<String> inputs,
+			@Nullable MapPartitioning partitioning) {
 		this.taskUuid = taskUuid;
 		this.mapInstructionName = mapInstructionName;
 		this.mapInstruction = mapInstruction;
 		this.combinerInstructionName = combinerInstructionName;
 		this.combinerInstruction = combinerInstruction;
-		this.input = input;
+		this.inputs = inputs;
+		this.partitioning = partitioning;
 	}
 
 	/**
@@ -80,9 +97,16 @@ public final class MapAgentTask implements AgentTask {
 	}
 
 	/**
-	 * Input für die MapInstruction
+	 * Inputs für die MapInstruction
+	 */
+	public List<String> getInputs() {
+		return inputs;
+	}
+
+	/**
+	 * Wie die Resultate beim Emitten auf die Partitionen aufgeteilt werden, null wenn nicht
 	 */
-	public String getInput() {
-		return input;
+	public MapPartitioning getPartitioning() {
+		return partitioning;
 	}
 }
@@ -1,6 +1,7 @@
 package ch.zhaw.mapreduce.plugins.socket.impl;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -8,7 +9,8 @@ import ch.zhaw.mapreduce.KeyValuePair;
 import ch.zhaw.mapreduce.plugins.socket.AgentTask;
 
 /**
- * Task mit ReduceInstruction und Inputs, der über das Netz zu einem Client/Worker gesandt wird.
+ * Task mit ReduceInstruction und Inputs, der über das Netz zu einem Client/Worker gesandt wird. Ein Task enthält alle
+ * Keys einer Partition.
  * 
  * @author Reto Hablützel (rethab)
  *
@@ -23,18 +25,14 @@ public final class ReduceAgentTask implements AgentTask {
 	
 	private final byte[] ri;
 	
-	private final String key;
-	
-	private final List<KeyValuePair> values;
+	private final Map<String, List<KeyValuePair>> inputs;
 
 	@Inject
-	ReduceAgentTask(String taskUuid, String riName, byte[] ri, String key,
-			List<KeyValuePair> values) {
+	ReduceAgentTask(String taskUuid, String riName, byte[] ri, Map<String, List<KeyValuePair>> inputs) {
 		this.taskUuid = taskUuid;
 		this.riName = riName;
 		this.ri = ri;
-		this.key = key;
-		this.values = values;
+		this.inputs = inputs;
 	}
 
 	/**
@@ -60,17 +58,10 @@ public final class ReduceAgentTask implements AgentTask {
 	}
 
 	/**
-	 * Schlüssel zum Reduzieren
-	 */
-	public String getKey() {
-		return this.key;
-	}
-
-	/**
-	 * Werte zum Reduzieren
+	 * Schlüssel mit ihren Werten zum Reduzieren
 	 */
-	public List<KeyValuePair> getValues() {
-		return this.values;
+	public Map<String, List<KeyValuePair>> getInputs() {
+		return this.inputs;
 	}
 
 }
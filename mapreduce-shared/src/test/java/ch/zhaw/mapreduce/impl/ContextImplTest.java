@@ -1,9 +1,18 @@
 package ch.zhaw.mapreduce.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
+import ch.zhaw.mapreduce.KeyValuePair;
+import ch.zhaw.mapreduce.MapPartitioning;
+
 public class ContextImplTest {
 	
 	@Test
@@ -13,4 +22,44 @@ public class ContextImplTest {
 		assertNotNull(ctx.getReduceResult());
 	}
 
+	@Test
+	public void shouldAssignReduceResultsToCurrentKey() {
+		ContextImpl ctx = new ContextImpl();
+		ctx.startReduce("a");
+		ctx.emit("1");
+		ctx.emit("2");
+		ctx.startReduce("b");
+		ctx.emit("3");
+		assertEquals(Arrays.asList(new KeyValuePair("a", "1"), new KeyValuePair("a", "2"), new KeyValuePair("b", "3")),
+				ctx.getReduceResult());
+	}
+
+	@Test
+	public void shouldPartitionMapResultsWhenEmittedAndAfterCombining() {
+		MapPartitioning partitioning = new MapPartitioning(new HashPartitioner(), 3);
+		ContextImpl ctx = new ContextImpl();
+		ctx.partitionMapResult(partitioning);
+		ctx.emitIntermediateMapResult("a", "1");
+		ctx.emitIntermediateMapResult("b", "1");
+		ctx.emitIntermediateMapResult("a", "1");
+		assertEquals(3, ctx.getMapResult().size());
+		ctx.replaceMapResult(Arrays.asList(new KeyValuePair("a", "2"), new KeyValuePair("b", "1")));
+		PartitionedMapResult result = (PartitionedMapResult) ctx.getMapResult();
+		assertEquals(2, result.size());
+		assertEquals(3, result.getPartitions());
+		for (Map.Entry<Integer, List<KeyValuePair>> slice : result.getSlices().entrySet()) {
+			for (KeyValuePair pair : slice.getValue()) {
+				assertEquals(slice.getKey().intValue(), partitioning.partition(pair.getKey()));
+			}
+		}
+		assertTrue(result.contains(new KeyValuePair("a", "2")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldNotPartitionAfterEmitting() {
+		ContextImpl ctx = new ContextImpl();
+		ctx.emitIntermediateMapResult("a", "1");
+		ctx.partitionMapResult(new MapPartitioning(new HashPartitioner(), 3));
+	}
+
 }
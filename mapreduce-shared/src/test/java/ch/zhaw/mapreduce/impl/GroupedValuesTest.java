@@ -0,0 +1,101 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import ch.zhaw.mapreduce.KeyValuePair;
+
+public class GroupedValuesTest {
+
+	@Test
+	public void shouldReturnPairsWithKey() {
+		GroupedValues values = new GroupedValues("key", 1);
+		values.addValue("v1");
+		values.add(new KeyValuePair("key", "v2"));
+		values.addValue("v3");
+		assertEquals(3, values.size());
+		assertEquals("v2", values.getValue(1));
+		Iterator<KeyValuePair> it = values.iterator();
+		assertEquals(new KeyValuePair("key", "v1"), it.next());
+		assertEquals(new KeyValuePair("key", "v2"), it.next());
+		assertEquals(new KeyValuePair("key", "v3"), it.next());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void shouldBeEqualToOtherListsWithSamePairs() {
+		GroupedValues values = new GroupedValues("key");
+		values.addValue("v1");
+		values.addValue("v2");
+		assertEquals(Arrays.asList(new KeyValuePair("key", "v1"), new KeyValuePair("key", "v2")), values);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotAcceptOtherKey() {
+		new GroupedValues("key").add(new KeyValuePair("other", "v"));
+	}
+
+	@Test
+	public void shouldAddAllValuesOfSameKey() {
+		GroupedValues a = new GroupedValues("key", 0);
+		a.addValue("v1");
+		GroupedValues b = new GroupedValues("key");
+		b.addValue("v2");
+		b.addValue("v3");
+		a.addAll(b);
+		a.addAll(Arrays.asList(new KeyValuePair("key", "v4")));
+		assertEquals(4, a.size());
+		assertEquals("v3", a.getValue(2));
+		assertEquals("v4", a.getValue(3));
+	}
+
+	@Test
+	public void shouldCopyRange() {
+		GroupedValues values = new GroupedValues("key");
+		values.addValue("v1");
+		values.addValue("v2");
+		values.addValue("v3");
+		GroupedValues copy = values.copyOfRange(1, 3);
+		assertEquals("key", copy.getKey());
+		assertEquals(Arrays.asList(new KeyValuePair("key", "v2"), new KeyValuePair("key", "v3")), copy);
+		assertEquals(0, values.copyOfRange(3, 3).size());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void shouldNotCopyBeyondSize() {
+		new GroupedValues("key").copyOfRange(0, 1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void shouldNotReadBeyondSize() {
+		GroupedValues values = new GroupedValues("key");
+		values.addValue("v1");
+		values.get(1);
+	}
+
+	@Test
+	public void shouldSerializeKeyAndValues() throws Exception {
+		GroupedValues values = new GroupedValues("key");
+		values.addValue("v1");
+		values.addValue("v2");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(values);
+		out.close();
+		GroupedValues copy = (GroupedValues) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+				.readObject();
+		assertEquals("key", copy.getKey());
+		assertEquals(values, copy);
+		copy.addValue("v3");
+		assertEquals(3, copy.size());
+	}
+}
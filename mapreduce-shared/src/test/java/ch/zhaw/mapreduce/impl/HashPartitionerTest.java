@@ -0,0 +1,29 @@
+package ch.zhaw.mapreduce.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HashPartitionerTest {
+
+	@Test
+	public void shouldAlwaysReturnSamePartitionForKey() {
+		HashPartitioner p = new HashPartitioner();
+		assertEquals(p.partition("hello", 7), p.partition("hello", 7));
+	}
+
+	@Test
+	public void shouldStayInRangeForNegativeHashCodes() {
+		HashPartitioner p = new HashPartitioner();
+		// "polygenelubricants".hashCode() == Integer.MIN_VALUE
+		assertTrue("polygenelubricants".hashCode() < 0);
+		int partition = p.partition("polygenelubricants", 7);
+		assertTrue(partition >= 0 && partition < 7);
+	}
+
+	@Test
+	public void shouldUseSinglePartition() {
+		assertEquals(0, new HashPartitioner().partition("any", 1));
+	}
+}
@@ -2,6 +2,9 @@ package ch.zhaw.mapreduce.plugins.socket.impl;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 public class MapAgentTaskTest {
@@ -16,16 +19,16 @@ public class MapAgentTaskTest {
 	
 	private final byte[] ci = new byte[]{2, 3, 4};
 	
-	private final String input = "input";
+	private final List<String> inputs = Arrays.asList("input1", "input2");
 	
 	@Test
 	public void shouldCorrectlyAssignParameters() {
-		MapAgentTask mat = new MapAgentTask(taskUuid, miName, mi, ciName, ci, input);
+		MapAgentTask mat = new MapAgentTask(taskUuid, miName, mi, ciName, ci, inputs);
 		assertEquals(taskUuid, mat.getTaskUuid());
 		assertEquals(miName, mat.getMapInstructionName());
 		assertEquals(mi, mat.getMapInstruction());
 		assertEquals(ciName, mat.getCombinerInstructionName());
 		assertEquals(ci, mat.getCombinerInstruction());
-		assertEquals(input, mat.getInput());
+		assertEquals(inputs, mat.getInputs());
 	}
 }
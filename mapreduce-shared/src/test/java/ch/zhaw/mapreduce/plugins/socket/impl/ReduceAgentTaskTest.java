@@ -3,7 +3,9 @@ package ch.zhaw.mapreduce.plugins.socket.impl;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -23,11 +25,12 @@ public class ReduceAgentTaskTest {
 	
 	@Test
 	public void shouldCorrectlyAssignParameters() {
-		ReduceAgentTask mat = new ReduceAgentTask(taskUuid, riName, ri, key, vals);
+		Map<String, List<KeyValuePair>> inputs = new HashMap<String, List<KeyValuePair>>();
+		inputs.put(key, vals);
+		ReduceAgentTask mat = new ReduceAgentTask(taskUuid, riName, ri, inputs);
 		assertEquals(taskUuid, mat.getTaskUuid());
 		assertEquals(riName, mat.getReduceInstructionName());
 		assertEquals(ri, mat.getReduceInstruction());
-		assertEquals(key, mat.getKey());
-		assertEquals(vals, mat.getValues());
+		assertEquals(inputs, mat.getInputs());
 	}
 }